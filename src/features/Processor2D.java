@@ -66,6 +66,18 @@ public abstract class Processor2D {
 
 	}
 
+	public int getInputWidth() {
+		return inputWidth;
+	}
+
+	public int getInputHeight() {
+		return inputHeight;
+	}
+
+	public int getFeatureVectorLength() {
+		return features.length;
+	}
+
 	public abstract double[][] normaliseInput(double[][] input, double min, double max);
 
 	/*
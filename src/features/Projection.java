@@ -0,0 +1,30 @@
+package features;
+
+/**
+ * Interface for a projection of input patterns to a lower-dimensional space,
+ * in which they are clustered. Projected patterns (e.g. cluster means) can be
+ * mapped back to the input space.
+ * <p>
+ * A projection may need to adapt to the inputs first. Patterns must only be
+ * projected once it is ready, and the projection must not change afterwards,
+ * as all projected patterns stored so far would become invalid.
+ */
+public interface Projection {
+
+	public int getInputDim();
+
+	public int getOutputDim();
+
+	/**
+	 * Adapts the projection to the given input pattern (if it is not ready
+	 * yet).
+	 */
+	public void adapt(double[] pattern);
+
+	public boolean isReady();
+
+	public double[] project(double[] pattern);
+
+	public double[] reconstruct(double[] patternProjected);
+
+}
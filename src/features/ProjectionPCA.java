@@ -0,0 +1,186 @@
+package features;
+
+/**
+ * Projection onto the principal components of the inputs, which are estimated
+ * incrementally (candid covariance-free incremental PCA). Each input updates
+ * the mean and the component estimates without storing a covariance matrix.
+ * <p>
+ * The projection adapts to a given number of inputs and is ready afterwards,
+ * with the estimates orthonormalised in order of their index.
+ * The components are not changed any more from then on.
+ */
+public class ProjectionPCA implements Projection {
+
+	private int inputDim;
+
+	private int outputDim;
+
+	private int numPatternsAdapt; // number of inputs before the projection is ready
+
+	private double amnesia; // weight of recent inputs, 0 = equal weights
+
+	private long numPatterns;
+
+	private double[] mean;
+
+	private double[][] estimates; // unnormalised component estimates
+
+	private double[][] components; // normalised components
+
+	public ProjectionPCA(int inputDim, int outputDim, int numPatternsAdapt) {
+		this.inputDim = inputDim;
+		this.outputDim = outputDim;
+		this.numPatternsAdapt = numPatternsAdapt;
+		amnesia = 2.0;
+		numPatterns = 0;
+		mean = new double[inputDim];
+		estimates = new double[outputDim][inputDim];
+		components = null;
+	}
+
+	@Override
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	@Override
+	public int getOutputDim() {
+		return outputDim;
+	}
+
+	public int getNumPatternsAdapt() {
+		return numPatternsAdapt;
+	}
+
+	public double getAmnesia() {
+		return amnesia;
+	}
+
+	public void setAmnesia(double amnesia) {
+		this.amnesia = amnesia;
+	}
+
+	public long getNumPatterns() {
+		return numPatterns;
+	}
+
+	public double[] getMean() {
+		return mean;
+	}
+
+	@Override
+	public void adapt(double[] pattern) {
+		if (isReady()) {
+			return;
+		}
+		numPatterns++;
+
+		// update mean
+		double[] residual = new double[inputDim];
+		for (int i = 0; i < inputDim; i++) {
+			mean[i] += (pattern[i] - mean[i]) / numPatterns;
+			residual[i] = pattern[i] - mean[i];
+		}
+
+		// update estimates, each from the residual of the previous ones
+		double rate = Math.min(1.0, (1.0 + amnesia) / numPatterns);
+		for (int c = 0; c < outputDim; c++) {
+			double[] estimate = estimates[c];
+
+			// initialise estimate with residual
+			double norm = norm(estimate);
+			if (norm == 0.0) {
+				System.arraycopy(residual, 0, estimate, 0, inputDim);
+				break;
+			}
+
+			// move estimate towards residual
+			double projection = dot(residual, estimate) / norm;
+			for (int i = 0; i < inputDim; i++) {
+				estimate[i] = (1.0 - rate) * estimate[i] + rate * projection * residual[i];
+			}
+
+			// remove component from residual
+			norm = norm(estimate);
+			if (norm == 0.0) {
+				continue;
+			}
+			projection = dot(residual, estimate) / (norm * norm);
+			for (int i = 0; i < inputDim; i++) {
+				residual[i] -= projection * estimate[i];
+			}
+		}
+
+		// orthonormalise components once ready
+		if (isReady()) {
+			components = new double[outputDim][inputDim];
+			for (int c = 0; c < outputDim; c++) {
+				double[] component = components[c];
+				System.arraycopy(estimates[c], 0, component, 0, inputDim);
+				for (int cPrevious = 0; cPrevious < c; cPrevious++) {
+					double projection = dot(component, components[cPrevious]);
+					for (int i = 0; i < inputDim; i++) {
+						component[i] -= projection * components[cPrevious][i];
+					}
+				}
+				double norm = norm(component);
+				for (int i = 0; i < inputDim; i++) {
+					component[i] = (norm > 0.0) ? component[i] / norm : 0.0;
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isReady() {
+		return numPatterns >= numPatternsAdapt && numPatterns > 0;
+	}
+
+	@Override
+	public double[] project(double[] pattern) {
+		if (components == null) {
+			System.err.println("Projection is not ready");
+			return null;
+		}
+		double[] patternProjected = new double[outputDim];
+		for (int c = 0; c < outputDim; c++) {
+			double[] component = components[c];
+			double sum = 0.0;
+			for (int i = 0; i < inputDim; i++) {
+				sum += component[i] * (pattern[i] - mean[i]);
+			}
+			patternProjected[c] = sum;
+		}
+		return patternProjected;
+	}
+
+	@Override
+	public double[] reconstruct(double[] patternProjected) {
+		if (components == null) {
+			System.err.println("Projection is not ready");
+			return null;
+		}
+		double[] pattern = mean.clone();
+		for (int c = 0; c < outputDim; c++) {
+			double[] component = components[c];
+			double value = patternProjected[c];
+			for (int i = 0; i < inputDim; i++) {
+				pattern[i] += value * component[i];
+			}
+		}
+		return pattern;
+	}
+
+	private double dot(double[] A, double[] B) {
+		double sum = 0.0;
+		for (int i = 0; i < inputDim; i++) {
+			sum += A[i] * B[i];
+		}
+		return sum;
+	}
+
+	private double norm(double[] A) {
+		return Math.sqrt(dot(A, A));
+	}
+
+}
@@ -0,0 +1,106 @@
+package features;
+
+/**
+ * Projection of an image onto the feature vector of a 2D processor. The input
+ * pattern holds the values of all channels of a pixel next to each other,
+ * pixels ordered by rows (as created by the camera interactors). Each channel
+ * is processed separately and the feature vectors are concatenated.
+ * <p>
+ * The projection is ready immediately. Patterns are reconstructed by
+ * overlaying the features.
+ */
+public class ProjectionProcessor2D implements Projection {
+
+	private Processor2D processor2D;
+
+	private int numChannels;
+
+	private double min; // input value range
+
+	private double max;
+
+	private int width;
+
+	private int height;
+
+	public ProjectionProcessor2D(Processor2D processor2D, int numChannels, double min, double max) {
+		this.processor2D = processor2D;
+		this.numChannels = numChannels;
+		this.min = min;
+		this.max = max;
+		width = processor2D.getInputWidth();
+		height = processor2D.getInputHeight();
+	}
+
+	@Override
+	public int getInputDim() {
+		return width * height * numChannels;
+	}
+
+	@Override
+	public int getOutputDim() {
+		return processor2D.getFeatureVectorLength() * numChannels;
+	}
+
+	public Processor2D getProcessor2D() {
+		return processor2D;
+	}
+
+	public int getNumChannels() {
+		return numChannels;
+	}
+
+	@Override
+	public void adapt(double[] pattern) {
+	}
+
+	@Override
+	public boolean isReady() {
+		return true;
+	}
+
+	@Override
+	public double[] project(double[] pattern) {
+		int featureVectorLength = processor2D.getFeatureVectorLength();
+		double[] patternProjected = new double[featureVectorLength * numChannels];
+		double[][] input = new double[width][height];
+		for (int c = 0; c < numChannels; c++) {
+
+			// extract channel
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					input[x][y] = pattern[(y * width + x) * numChannels + c];
+				}
+			}
+
+			// normalise & process channel
+			double[] featureVector = processor2D.process(processor2D.normaliseInput(input, min, max));
+			System.arraycopy(featureVector, 0, patternProjected, c * featureVectorLength, featureVectorLength);
+
+		}
+		return patternProjected;
+	}
+
+	@Override
+	public double[] reconstruct(double[] patternProjected) {
+		int featureVectorLength = processor2D.getFeatureVectorLength();
+		double[] pattern = new double[width * height * numChannels];
+		double[] featureVector = new double[featureVectorLength];
+		for (int c = 0; c < numChannels; c++) {
+
+			// reconstruct & denormalise channel
+			System.arraycopy(patternProjected, c * featureVectorLength, featureVector, 0, featureVectorLength);
+			double[][] input = processor2D.denormaliseInput(processor2D.reconstruct(featureVector), min, max);
+
+			// insert channel
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					pattern[(y * width + x) * numChannels + c] = input[x][y];
+				}
+			}
+
+		}
+		return pattern;
+	}
+
+}
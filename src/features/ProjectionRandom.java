@@ -0,0 +1,218 @@
+package features;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Sparse random projection. Each output dimension sums a random subset of
+ * about sqrt(inputDim) input dimensions with random signs, so projecting costs
+ * only a fraction of a dense projection. Distances are approximately
+ * preserved.
+ * <p>
+ * The projection is ready immediately and is determined by the given seed.
+ * Patterns are reconstructed with the least-squares inverse: the result is
+ * the pattern nearest to the mean of the inputs adapted to so far that is
+ * projected onto the given pattern. Components of the original pattern that
+ * are lost by the projection are taken from the mean.
+ */
+public class ProjectionRandom implements Projection {
+
+	private int inputDim;
+
+	private int outputDim;
+
+	private long seed;
+
+	private int[][] indices; // input dimensions per output dimension
+
+	private double[][] weights; // weights per output dimension
+
+	private double[][] gramFactor; // Cholesky factor of the projection times its transpose
+
+	private long numPatterns;
+
+	private double[] mean; // of the inputs adapted to
+
+	public ProjectionRandom(int inputDim, int outputDim, long seed) {
+		this.inputDim = inputDim;
+		this.outputDim = outputDim;
+		this.seed = seed;
+
+		// each entry is +-sqrt(s/outputDim) with probability 1/(2s) each
+		double s = Math.sqrt(inputDim);
+		double weight = Math.sqrt(s / outputDim);
+		Random random = new Random(seed);
+		indices = new int[outputDim][];
+		weights = new double[outputDim][];
+		ArrayList<Integer> indexList = new ArrayList<Integer>();
+		ArrayList<Double> weightList = new ArrayList<Double>();
+		for (int o = 0; o < outputDim; o++) {
+			indexList.clear();
+			weightList.clear();
+			for (int i = 0; i < inputDim; i++) {
+				double r = random.nextDouble() * s;
+				if (r < 0.5) {
+					indexList.add(i);
+					weightList.add(+weight);
+				} else if (r < 1.0) {
+					indexList.add(i);
+					weightList.add(-weight);
+				}
+			}
+			indices[o] = new int[indexList.size()];
+			weights[o] = new double[weightList.size()];
+			for (int n = 0; n < indices[o].length; n++) {
+				indices[o][n] = indexList.get(n);
+				weights[o][n] = weightList.get(n);
+			}
+		}
+
+		// factorise the projection times its transpose for reconstructing
+		computeGramFactor();
+		numPatterns = 0;
+		mean = new double[inputDim];
+	}
+
+	@Override
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	@Override
+	public int getOutputDim() {
+		return outputDim;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getNumPatterns() {
+		return numPatterns;
+	}
+
+	public double[] getMean() {
+		return mean;
+	}
+
+	/**
+	 * Updates the mean of the inputs, which is used for reconstructing. The
+	 * projection itself does not change.
+	 */
+	@Override
+	public void adapt(double[] pattern) {
+		numPatterns++;
+		for (int i = 0; i < inputDim; i++) {
+			mean[i] += (pattern[i] - mean[i]) / numPatterns;
+		}
+	}
+
+	@Override
+	public boolean isReady() {
+		return true;
+	}
+
+	@Override
+	public double[] project(double[] pattern) {
+		double[] patternProjected = new double[outputDim];
+		for (int o = 0; o < outputDim; o++) {
+			int[] indicesOutput = indices[o];
+			double[] weightsOutput = weights[o];
+			double sum = 0.0;
+			for (int n = 0; n < indicesOutput.length; n++) {
+				sum += weightsOutput[n] * pattern[indicesOutput[n]];
+			}
+			patternProjected[o] = sum;
+		}
+		return patternProjected;
+	}
+
+	/**
+	 * Returns the pattern nearest to the mean that is projected onto the given
+	 * pattern, i.e. the mean plus the transposed projection applied to the
+	 * solution of (R R^T) z = patternProjected - R mean.
+	 */
+	@Override
+	public double[] reconstruct(double[] patternProjected) {
+
+		// difference to the projected mean
+		double[] z = project(mean);
+		for (int o = 0; o < outputDim; o++) {
+			z[o] = patternProjected[o] - z[o];
+		}
+
+		// solve with the Cholesky factor (forward and backward substitution)
+		for (int o = 0; o < outputDim; o++) {
+			double sum = z[o];
+			for (int k = 0; k < o; k++) {
+				sum -= gramFactor[o][k] * z[k];
+			}
+			z[o] = sum / gramFactor[o][o];
+		}
+		for (int o = outputDim - 1; o >= 0; o--) {
+			double sum = z[o];
+			for (int k = o + 1; k < outputDim; k++) {
+				sum -= gramFactor[k][o] * z[k];
+			}
+			z[o] = sum / gramFactor[o][o];
+		}
+
+		// apply transposed projection
+		double[] pattern = mean.clone();
+		for (int o = 0; o < outputDim; o++) {
+			int[] indicesOutput = indices[o];
+			double[] weightsOutput = weights[o];
+			for (int n = 0; n < indicesOutput.length; n++) {
+				pattern[indicesOutput[n]] += weightsOutput[n] * z[o];
+			}
+		}
+		return pattern;
+	}
+
+	/**
+	 * Computes the Cholesky factor of the projection times its transpose. A
+	 * small ridge keeps it positive definite if output dimensions are linearly
+	 * dependent (e.g. more output than input dimensions).
+	 */
+	private void computeGramFactor() {
+
+		// projection times its transpose (lower triangle)
+		double[][] gram = new double[outputDim][outputDim];
+		double[] row = new double[inputDim];
+		double trace = 0.0;
+		for (int o = 0; o < outputDim; o++) {
+			for (int n = 0; n < indices[o].length; n++) {
+				row[indices[o][n]] = weights[o][n];
+			}
+			for (int oOther = 0; oOther <= o; oOther++) {
+				double sum = 0.0;
+				for (int n = 0; n < indices[oOther].length; n++) {
+					sum += weights[oOther][n] * row[indices[oOther][n]];
+				}
+				gram[o][oOther] = sum;
+			}
+			for (int n = 0; n < indices[o].length; n++) {
+				row[indices[o][n]] = 0.0;
+			}
+			trace += gram[o][o];
+		}
+		double ridge = Math.max(trace / Math.max(outputDim, 1), 1.0) * 1e-10;
+
+		// Cholesky decomposition
+		gramFactor = new double[outputDim][outputDim];
+		for (int o = 0; o < outputDim; o++) {
+			for (int oOther = 0; oOther <= o; oOther++) {
+				double sum = gram[o][oOther];
+				for (int k = 0; k < oOther; k++) {
+					sum -= gramFactor[o][k] * gramFactor[oOther][k];
+				}
+				if (o == oOther) {
+					gramFactor[o][o] = Math.sqrt(Math.max(sum + ridge, ridge));
+				} else {
+					gramFactor[o][oOther] = sum / gramFactor[oOther][oOther];
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package features.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import features.IntensityDetector2D;
+import features.Processor2D;
+import features.ProjectionPCA;
+import features.ProjectionProcessor2D;
+import features.ProjectionRandom;
+
+public class ProjectionTest {
+
+	@Test
+	public void testProjectionPCA() {
+
+		// create patterns within a three-dimensional affine subspace
+		Random random = new Random(1);
+		double[] offset = createPattern(random, 10);
+		double[][] basis = { createPattern(random, 10), createPattern(random, 10), createPattern(random, 10) };
+		ProjectionPCA projection = new ProjectionPCA(10, 3, 500);
+
+		// adapt until ready
+		for (int n = 0; n < 500; n++) {
+			assertFalse("ready", projection.isReady());
+			projection.adapt(createPattern(random, offset, basis));
+		}
+		assertTrue("ready", projection.isReady());
+
+		// round trip of patterns within the subspace
+		for (int n = 0; n < 100; n++) {
+			double[] pattern = createPattern(random, offset, basis);
+			double[] patternProjected = projection.project(pattern);
+			assertEquals("output dimensionality", 3, patternProjected.length);
+			assertArrayEquals("round trip", pattern, projection.reconstruct(patternProjected), 1e-9);
+		}
+
+		// components do not change any more
+		double[] pattern = createPattern(random, offset, basis);
+		double[] patternProjected = projection.project(pattern);
+		projection.adapt(createPattern(random, 10));
+		assertArrayEquals("frozen components", patternProjected, projection.project(pattern), 0.0);
+
+	}
+
+	@Test
+	public void testProjectionRandom() {
+
+		// create projection and adapt to random patterns
+		Random random = new Random(2);
+		ProjectionRandom projection = new ProjectionRandom(400, 100, 3);
+		assertTrue("ready", projection.isReady());
+		for (int n = 0; n < 200; n++) {
+			projection.adapt(createPattern(random, 400));
+		}
+		double[] mean = projection.getMean();
+
+		// same seed gives same projection
+		double[] pattern = createPattern(random, 400);
+		assertArrayEquals("same seed", projection.project(pattern), new ProjectionRandom(400, 100, 3).project(pattern), 0.0);
+
+		for (int n = 0; n < 100; n++) {
+			double[] patternA = createPattern(random, 400);
+			double[] patternB = createPattern(random, 400);
+			double[] patternProjectedA = projection.project(patternA);
+			double[] patternProjectedB = projection.project(patternB);
+
+			// distances are approximately preserved
+			double ratio = distance(patternProjectedA, patternProjectedB) / distance(patternA, patternB);
+			assertTrue("distance ratio " + ratio, ratio > 0.5 && ratio < 1.5);
+
+			// reconstructed pattern is projected onto the same pattern
+			double[] patternReconstructed = projection.reconstruct(patternProjectedA);
+			assertArrayEquals("projection of reconstruction", patternProjectedA, projection.project(patternReconstructed), 1e-9);
+
+			// reconstructed pattern is nearer to the original pattern than the mean
+			assertTrue("reconstruction error", distance(patternA, patternReconstructed) < distance(patternA, mean));
+		}
+
+		// mean is reconstructed from its projection
+		assertArrayEquals("mean", mean, projection.reconstruct(projection.project(mean)), 1e-9);
+
+		// reconstruction is affine (combined cluster means)
+		double[] patternProjectedA = projection.project(createPattern(random, 400));
+		double[] patternProjectedB = projection.project(createPattern(random, 400));
+		double[] patternProjectedMean = new double[100];
+		for (int o = 0; o < 100; o++) {
+			patternProjectedMean[o] = 0.25 * patternProjectedA[o] + 0.75 * patternProjectedB[o];
+		}
+		double[] patternReconstructedA = projection.reconstruct(patternProjectedA);
+		double[] patternReconstructedB = projection.reconstruct(patternProjectedB);
+		double[] patternReconstructedMean = projection.reconstruct(patternProjectedMean);
+		for (int i = 0; i < 400; i++) {
+			assertEquals("affine", 0.25 * patternReconstructedA[i] + 0.75 * patternReconstructedB[i], patternReconstructedMean[i], 1e-9);
+		}
+
+	}
+
+	@Test
+	public void testProjectionProcessor2D() {
+
+		// create projection of two channels
+		Processor2D processor2D = new IntensityDetector2D(8, 6, 2);
+		ProjectionProcessor2D projection = new ProjectionProcessor2D(processor2D, 2, 0.0, 255.0);
+		int featureVectorLength = processor2D.getFeatureVectorLength();
+		assertEquals("input dimensionality", 8 * 6 * 2, projection.getInputDim());
+		assertEquals("output dimensionality", featureVectorLength * 2, projection.getOutputDim());
+
+		// create pattern with interleaved channels
+		Random random = new Random(4);
+		double[][][] channels = new double[2][8][6];
+		double[] pattern = new double[8 * 6 * 2];
+		for (int y = 0; y < 6; y++) {
+			for (int x = 0; x < 8; x++) {
+				for (int c = 0; c < 2; c++) {
+					channels[c][x][y] = random.nextInt(256);
+					pattern[(y * 8 + x) * 2 + c] = channels[c][x][y];
+				}
+			}
+		}
+
+		// compare with processing each channel separately
+		double[] patternProjected = projection.project(pattern);
+		double[] patternReconstructed = projection.reconstruct(patternProjected);
+		for (int c = 0; c < 2; c++) {
+			double[] featureVector = processor2D.process(processor2D.normaliseInput(channels[c], 0.0, 255.0));
+			for (int f = 0; f < featureVectorLength; f++) {
+				assertEquals("feature", featureVector[f], patternProjected[c * featureVectorLength + f], 0.0);
+			}
+			double[][] channelReconstructed = processor2D.denormaliseInput(processor2D.reconstruct(featureVector), 0.0, 255.0);
+			for (int y = 0; y < 6; y++) {
+				for (int x = 0; x < 8; x++) {
+					assertEquals("reconstructed value", channelReconstructed[x][y], patternReconstructed[(y * 8 + x) * 2 + c], 0.0);
+				}
+			}
+		}
+
+		// uniform channels are reconstructed exactly
+		for (int i = 0; i < pattern.length; i++) {
+			pattern[i] = (i % 2 == 0) ? 51.0 : 204.0;
+		}
+		assertArrayEquals("uniform channels", pattern, projection.reconstruct(projection.project(pattern)), 1e-9);
+
+	}
+
+	private static double[] createPattern(Random random, int inputDim) {
+		double[] pattern = new double[inputDim];
+		for (int i = 0; i < inputDim; i++) {
+			pattern[i] = random.nextGaussian();
+		}
+		return pattern;
+	}
+
+	private static double[] createPattern(Random random, double[] offset, double[][] basis) {
+		double[] pattern = offset.clone();
+		for (double[] vector : basis) {
+			double weight = random.nextGaussian();
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] += weight * vector[i];
+			}
+		}
+		return pattern;
+	}
+
+	private static double distance(double[] A, double[] B) {
+		double sum = 0.0;
+		for (int i = 0; i < A.length; i++) {
+			sum += (A[i] - B[i]) * (A[i] - B[i]);
+		}
+		return Math.sqrt(sum);
+	}
+
+}
@@ -1,12 +1,25 @@
 package interactor;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import features.Projection;
+import soinnm.BinaryReader;
+import soinnm.BinaryWriter;
 import soinnm.Cluster;
+import soinnm.ClusterSnapshot;
+import soinnm.Journal;
 import soinnm.SOINNM;
+import soinnm.TopologyEvents;
+import soinnm.TopologyListener;
+import soinnm.TopologySnapshot;
 import soinnm.XMLReader;
 import soinnm.XMLWriter;
 
@@ -19,7 +32,13 @@ import java.net.InetAddress;
  * Abstract class for an interactor using the UDP protocol. Basis for an M-SOINN
  * module for reading sensory data, sending cluster data to TOSAM, requesting
  * the network state for this module and calculating the output. Allows to
- * write/read a topology state to/from an XML file.
+ * write/read a topology state to/from an XML file. Files are written and read in
+ * the background: a copy of the topology is written, and a topology that has
+ * been read replaces (or is inserted into) the topology between two cycles.
+ * <p>
+ * Optionally, inputs are projected to a lower-dimensional space before they
+ * are clustered, and the output is mapped back to the input space. Topology
+ * files then contain projected patterns.
  * <p>
  * An interactor runs continously in cycles of a given cycle time. Each cycle
  * consists of the following steps: read an input from a given source (e.g. a
@@ -47,9 +66,15 @@ public abstract class InteractorUDP implements Runnable {
 
 	private String name;
 
+	private Projection projection;
+
 	private SOINNM topology;
 
-	private HashMap<Cluster, Double> activationMap;
+	private Journal journal; // journal of topology changes (null if not journaling)
+
+	private TopologyEvents topologyEvents; // changes of the topology which have not been sent yet
+
+	private volatile HashMap<Long, Double> activationMap; // activations by cluster id, replaced for each output
 
 	private double activationOutput;
 
@@ -65,24 +90,58 @@ public abstract class InteractorUDP implements Runnable {
 
 	private final static int PACKET_SIZE = 4096; // maximum size of received data
 
+	private final static String FILE_EXTENSION_BINARY = ".bin"; // topology files with other extensions are XML files
+
 	private DatagramSocket socketSend;
 
 	private DatagramSocket socketReceive;
 
 	private static final int RECEIVE_TIMEOUT = 100; // milliseconds
 
+	private static final long FILE_WAIT_MAX = 60000; // milliseconds
+
 	protected File fileSave;
 
 	protected File fileLoad;
 
 	protected File fileInsert;
 
+	private ExecutorService fileExecutor; // writes and reads topology files in the background
+
+	private Future<SOINNM> topologyLoaded; // topology being read from fileLoad (null if none)
+
+	private Future<SOINNM> topologyInserted; // topology being read from fileInsert (null if none)
+
+	protected File fileJournal; // basename of the journal to recover from and record to
+
 	public InteractorUDP(String name, int inputDim) {
+		this(name, inputDim, null);
+	}
+
+	public InteractorUDP(String name, int inputDim, Projection projection) {
 		this.name = name;
+		this.projection = projection;
 
 		// create topology		
-		topology = new SOINNM(inputDim);
-		activationMap = new HashMap<Cluster, Double>();
+		if (projection != null) {
+			if (projection.getInputDim() != inputDim) {
+				System.err.println("Projection has input dimension " + projection.getInputDim() + " instead of " + inputDim);
+			}
+			topology = new SOINNM(projection.getOutputDim());
+		} else {
+			topology = new SOINNM(inputDim);
+		}
+		topology.setParallelSearch(true); // only used for large topologies
+		topology.setPublishSnapshots(true); // read by user interfaces
+		topology.setPublishSnapshotsOnInput(false); // published once per cycle
+		topologyEvents = new TopologyEvents();
+		topology.addTopologyListener(new TopologyListener() {
+			@Override
+			public void topologyChanged(SOINNM soinnm, TopologyEvents events) {
+				topologyEvents.addAll(events);
+			}
+		});
+		activationMap = new HashMap<Long, Double>();
 
 		// create sockets
 		try {
@@ -102,6 +161,17 @@ public abstract class InteractorUDP implements Runnable {
 		fileSave = null;
 		fileLoad = null;
 		fileInsert = null;
+		fileJournal = null;
+		fileExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "File executor");
+				thread.setDaemon(true); // does not keep the application running
+				return thread;
+			}
+		});
+		topologyLoaded = null;
+		topologyInserted = null;
 
 		resume();
 	}
@@ -134,7 +204,40 @@ public abstract class InteractorUDP implements Runnable {
 		return topology;
 	}
 
-	public HashMap<Cluster, Double> getActivationMap() {
+	public Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Maps a pattern of the topology (e.g. a cluster mean) back to the input
+	 * space.
+	 */
+	public double[] reconstruct(double[] pattern) {
+		if (projection == null) {
+			return pattern;
+		}
+		return projection.reconstruct(pattern);
+	}
+
+	/**
+	 * Maps an input pattern to the space of the topology. Returns null if the
+	 * projection is not ready yet.
+	 */
+	private double[] project(double[] pattern) {
+		if (projection == null) {
+			return pattern;
+		}
+		if (!projection.isReady()) {
+			return null;
+		}
+		return projection.project(pattern);
+	}
+
+	/**
+	 * Returns the activations of the last output by cluster id. The map is not
+	 * modified afterwards and can be read together with the topology snapshot.
+	 */
+	public HashMap<Long, Double> getActivationMap() {
 		return activationMap;
 	}
 
@@ -270,6 +373,52 @@ public abstract class InteractorUDP implements Runnable {
 		return responses;
 	}
 
+	private boolean isBinaryFile(File file) {
+		return file.getName().toLowerCase().endsWith(FILE_EXTENSION_BINARY);
+	}
+
+	private void saveTopology(final SOINNM topologyCopy, final File file) {
+		fileExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				if (isBinaryFile(file)) {
+					BinaryWriter binaryWriter = new BinaryWriter();
+					binaryWriter.writeToFile(topologyCopy, file.getAbsolutePath());
+				} else {
+					XMLWriter xmlWriter = new XMLWriter();
+					xmlWriter.writeToFile(topologyCopy, file.getAbsolutePath());
+				}
+			}
+		});
+	}
+
+	private Future<SOINNM> readTopology(final File file) {
+		final SOINNM topologyRead = topology.createEmpty();
+		return fileExecutor.submit(new Callable<SOINNM>() {
+			@Override
+			public SOINNM call() {
+				boolean read;
+				if (isBinaryFile(file)) {
+					BinaryReader binaryReader = new BinaryReader();
+					read = binaryReader.readFromFile(file.getAbsolutePath(), topologyRead);
+				} else {
+					XMLReader xmlReader = new XMLReader();
+					read = xmlReader.readFromFile(file.getAbsolutePath(), topologyRead);
+				}
+				return read ? topologyRead : null;
+			}
+		});
+	}
+
+	private SOINNM getTopologyRead(Future<SOINNM> topologyRead) {
+		try {
+			return topologyRead.get();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
 	private double[] computeOutput(LinkedList<String> responses) {
 
 		// initialise
@@ -277,10 +426,11 @@ public abstract class InteractorUDP implements Runnable {
 		boolean outputComputed = false;
 		double activationMax = 0.0;
 		double activationSum = 0.0;
-		activationMap.clear();
+		HashMap<Long, Double> activationMap = new HashMap<Long, Double>();
+		TopologySnapshot snapshot = topology.getSnapshot(); // of the previous cycle, responses refer to clusters sent before
 
 		// compute output
-		double[] pattern = new double[topology.getInputDim()];
+		double[] pattern = new double[snapshot.getInputDim()];
 		for (String response : responses) {
 
 			// parse response
@@ -289,12 +439,7 @@ public abstract class InteractorUDP implements Runnable {
 			double activation = Double.valueOf(responseSplit[2]);
 
 			// retrieve cluster
-			Cluster cluster = null;
-			for (Cluster c : topology.getClusterSet()) {
-				if (c.getId() == clusterId) {
-					cluster = c;
-				}
-			}
+			ClusterSnapshot cluster = snapshot.getCluster(clusterId);
 			if (cluster == null)
 				continue;
 
@@ -309,7 +454,7 @@ public abstract class InteractorUDP implements Runnable {
 			outputComputed = true;
 
 			// update activation map
-			activationMap.put(cluster, activation);
+			activationMap.put(clusterId, activation);
 
 			// update maximum activation
 			if (activation > activationMax) {
@@ -317,6 +462,7 @@ public abstract class InteractorUDP implements Runnable {
 			}
 
 		}
+		this.activationMap = activationMap;
 
 		// check if output has been computed
 		if (outputComputed) {
@@ -326,6 +472,9 @@ public abstract class InteractorUDP implements Runnable {
 				pattern[i] /= activationSum;
 			}
 
+			// map pattern to input space
+			pattern = reconstruct(pattern);
+
 			// set activation for output
 			//activationOutput = activationSum / responses.size();
 			activationOutput = activationMax;
@@ -344,6 +493,10 @@ public abstract class InteractorUDP implements Runnable {
 
 		// read input pattern
 		double[] patternInput = readInput();
+		if (patternInput != null && projection != null) {
+			projection.adapt(patternInput);
+			patternInput = project(patternInput);
+		}
 		if (patternInput != null) {
 
 			// read label
@@ -358,32 +511,23 @@ public abstract class InteractorUDP implements Runnable {
 				sendActivatedCluster(activatedCluster.getId());
 			}
 
-			// send split clusters
-			LinkedList<Cluster> splitClusters = topology.getSplitClusters();
-			Iterator<Cluster> itSplitClusters = splitClusters.iterator();
-			while (itSplitClusters.hasNext()) {
-				Cluster clusterOld = itSplitClusters.next();
-				Cluster clusterNew = itSplitClusters.next();
-				sendSplitClusters(clusterOld.getId(), clusterNew.getId());
-			}
-			splitClusters.clear();
-
-			// send joined clusters
-			LinkedList<Cluster> joinedClusters = topology.getJoinedClusters();
-			Iterator<Cluster> itJoinedClusters = joinedClusters.iterator();
-			while (itJoinedClusters.hasNext()) {
-				Cluster clusterKept = itJoinedClusters.next();
-				Cluster clusterRemoved = itJoinedClusters.next();
-				sendJoinedClusters(clusterKept.getId(), clusterRemoved.getId());
-			}
-			joinedClusters.clear();
-
-			// send removed clusters
-			LinkedList<Cluster> removedClusters = topology.getRemovedClusters();
-			for (Cluster cluster : removedClusters) {
-				sendRemovedCluster(cluster.getId());
+			// send split, joined and removed clusters (in order of occurrence)
+			for (int e = 0; e < topologyEvents.getNumEvents(); e++) {
+				switch (topologyEvents.getType(e)) {
+				case CLUSTER_SPLIT:
+					sendSplitClusters(topologyEvents.getIdA(e), topologyEvents.getIdB(e));
+					break;
+				case CLUSTER_JOINED:
+					sendJoinedClusters(topologyEvents.getIdA(e), topologyEvents.getIdB(e));
+					break;
+				case CLUSTER_REMOVED:
+					sendRemovedCluster(topologyEvents.getIdA(e));
+					break;
+				default:
+					break;
+				}
 			}
-			removedClusters.clear();
+			topologyEvents.clear();
 
 		}
 
@@ -401,8 +545,10 @@ public abstract class InteractorUDP implements Runnable {
 
 		// inner feedback
 		if (innerFeedback && patternOutput != null) {
-			double[] patternFeedback = patternOutput.clone();
-			topology.input(patternFeedback);
+			double[] patternFeedback = project(patternOutput.clone());
+			if (patternFeedback != null) {
+				topology.input(patternFeedback);
+			}
 		}
 
 	}
@@ -428,30 +574,55 @@ public abstract class InteractorUDP implements Runnable {
 				// simulate step
 				step();
 
-				// update user interface
+				// publish snapshot and update user interface
+				topology.publishSnapshot();
 				updateUI();
 
-				// save topology
+				// save topology (copy is written in the background)
 				if (fileSave != null) {
-					XMLWriter xmlWriter = new XMLWriter();
-					xmlWriter.writeToFile(topology, fileSave.getAbsolutePath());
+					saveTopology(topology.copy(), fileSave);
 					fileSave = null;
 				}
 
-				// load topology
+				// load topology (read in the background)
 				if (fileLoad != null) {
-					XMLReader xmlReader = new XMLReader();
-					xmlReader.readFromFile(fileLoad.getAbsolutePath(), topology);
+					topologyLoaded = readTopology(fileLoad);
 					fileLoad = null;
 				}
 
-				// insert topology
+				// insert topology (read in the background)
 				if (fileInsert != null) {
-					XMLReader xmlReader = new XMLReader();
-					xmlReader.insertFromFile(fileInsert.getAbsolutePath(), topology);
+					topologyInserted = readTopology(fileInsert);
 					fileInsert = null;
 				}
 
+				// replace topology once it has been read
+				if (topologyLoaded != null && topologyLoaded.isDone()) {
+					SOINNM topologyRead = getTopologyRead(topologyLoaded);
+					if (topologyRead != null) {
+						topology.replaceWith(topologyRead);
+					}
+					topologyLoaded = null;
+				}
+
+				// insert topology once it has been read
+				if (topologyInserted != null && topologyInserted.isDone()) {
+					SOINNM topologyRead = getTopologyRead(topologyInserted);
+					if (topologyRead != null) {
+						topology.insert(topologyRead);
+					}
+					topologyInserted = null;
+				}
+
+				// open journal
+				if (fileJournal != null) {
+					if (journal != null) {
+						journal.close();
+					}
+					journal = Journal.open(fileJournal.getAbsolutePath(), topology, fileExecutor); // snapshots are written in the background
+					fileJournal = null;
+				}
+
 				// measure time
 				cycleEnd = System.currentTimeMillis();
 				cycleDuration = cycleEnd - cycleStart;
@@ -486,6 +657,22 @@ public abstract class InteractorUDP implements Runnable {
 
 		}
 
+		// close journal
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+
+		// finish writing files (the daemon thread does not keep the application running)
+		fileExecutor.shutdown();
+		try {
+			if (!fileExecutor.awaitTermination(FILE_WAIT_MAX, TimeUnit.MILLISECONDS)) {
+				System.err.println("Writing files has not finished!");
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
 		shutdown();
 	}
 
@@ -138,6 +138,7 @@ public class Distribution2DRandom extends InteractorUDP {
 			int height = panel.getHeight() - 1;
 			int xPos, yPos;
 			double[] pattern;
+			double[] patternBuffer = new double[INPUT_DIM];
 
 			// clear panel
 			g.setColor(Color.BLACK);
@@ -147,7 +148,7 @@ public class Distribution2DRandom extends InteractorUDP {
 			g.setColor(Color.RED);
 			int diameterNode = 8;
 			for (Node node : getTopology().getNodeSet()) {
-				pattern = node.getPattern();
+				pattern = node.getPattern(patternBuffer);
 				xPos = (int) Math.round(pattern[0] * width);
 				yPos = (int) Math.round(pattern[1] * height);
 				g.fillOval(xPos, yPos, diameterNode, diameterNode);
@@ -157,10 +158,10 @@ public class Distribution2DRandom extends InteractorUDP {
 			g.setColor(Color.BLUE);
 			int xPosA, yPosA, xPosB, yPosB;
 			for (Edge edge : getTopology().getEdgeSet()) {
-				pattern = edge.getNodeA().getPattern();
+				pattern = edge.getNodeA().getPattern(patternBuffer);
 				xPosA = (int) Math.round(pattern[0] * width);
 				yPosA = (int) Math.round(pattern[1] * height);
-				pattern = edge.getNodeB().getPattern();
+				pattern = edge.getNodeB().getPattern(patternBuffer);
 				xPosB = (int) Math.round(pattern[0] * width);
 				yPosB = (int) Math.round(pattern[1] * height);
 				g.drawLine(xPosA, yPosA, xPosB, yPosB);
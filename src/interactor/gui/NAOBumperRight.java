@@ -148,6 +148,7 @@ public class NAOBumperRight extends InteractorUDP {
 			int textWidth;
 			int xPos, yPos;
 			double[] pattern;
+			double[] patternBuffer = new double[INPUT_DIM];
 			double[] patternNorm;
 
 			// clear panel
@@ -168,7 +169,7 @@ public class NAOBumperRight extends InteractorUDP {
 			g.setColor(Color.RED);
 			int diameterNode = 8;
 			for (Node node : getTopology().getNodeSet()) {
-				pattern = node.getPattern();
+				pattern = node.getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPos = (int) Math.round(patternNorm[0] * width);
 				yPos = (int) Math.round(patternNorm[1] * height);
@@ -179,11 +180,11 @@ public class NAOBumperRight extends InteractorUDP {
 			g.setColor(Color.BLUE);
 			int xPosA, yPosA, xPosB, yPosB;
 			for (Edge edge : getTopology().getEdgeSet()) {
-				pattern = edge.getNodeA().getPattern();
+				pattern = edge.getNodeA().getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPosA = (int) Math.round(patternNorm[0] * width);
 				yPosA = (int) Math.round(patternNorm[1] * height);
-				pattern = edge.getNodeB().getPattern();
+				pattern = edge.getNodeB().getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPosB = (int) Math.round(patternNorm[0] * width);
 				yPosB = (int) Math.round(patternNorm[1] * height);
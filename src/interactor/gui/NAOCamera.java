@@ -16,6 +16,7 @@ import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.HashMap;
 import java.util.Random;
 
 import javax.swing.BorderFactory;
@@ -30,8 +31,11 @@ import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 
-import soinnm.Cluster;
+import features.ProjectionRandom;
+import soinnm.ClusterSnapshot;
+import soinnm.Node;
 import soinnm.SOINNM;
+import soinnm.TopologySnapshot;
 import util.ImagePanel;
 import util.PatternPanel;
 import util.WrapLayout;
@@ -71,6 +75,7 @@ public class NAOCamera extends InteractorUDP {
 	private final static int IMAGE_WIDTH = 80;
 	private final static int IMAGE_HEIGHT = 60;
 	private final static int INPUT_DIM = IMAGE_WIDTH * IMAGE_HEIGHT * BITS_PER_PIXEL;
+	private final static int PROJECTION_DIM = 0; // 0=none, e.g. 256 for a sparse random projection
 
 	private double[] patternInput;
 	private double[] patternOutput;
@@ -97,7 +102,7 @@ public class NAOCamera extends InteractorUDP {
 	private JLabel lbNumClusters;
 
 	public NAOCamera() {
-		super(NAME, INPUT_DIM);
+		super(NAME, INPUT_DIM, (PROJECTION_DIM > 0) ? new ProjectionRandom(INPUT_DIM, PROJECTION_DIM, 0) : null);
 
 		// set interactor parameters
 		setCycleTime(CYCLE_TIME_DEFAULT);
@@ -125,6 +130,7 @@ public class NAOCamera extends InteractorUDP {
 		topology.setUseAbsoluteJoinTolerance(true); // true
 		topology.setJoinToleranceAbsolute(0.1); // 0.1
 		topology.setJoiningIterationsMax(10); // 10
+		topology.setPatternPrecision(Node.PRECISION.FLOAT, null); // DOUBLE
 
 		// initialise NAO
 		try {
@@ -367,6 +373,16 @@ public class NAOCamera extends InteractorUDP {
 		});
 		pnTopologyControls.add(btInsert);
 
+		JButton btJournal = new JButton("Journal topology");
+		btJournal.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (fcSaveLoad.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+					fileJournal = fcSaveLoad.getSelectedFile();
+				}
+			}
+		});
+		pnTopologyControls.add(btJournal);
+
 		// create panel for clusters
 		pnClusters = new JPanel();
 		pnClusters.setBorder(BorderFactory.createTitledBorder("Clusters"));
@@ -504,20 +520,22 @@ public class NAOCamera extends InteractorUDP {
 
 		// clusters
 		pnClusters.removeAll();
-		for (Cluster cluster : getTopology().getClusterSet()) {
-			if (cluster.getNodes().size() >= getActivateClusterThreshold()) {
+		TopologySnapshot snapshot = getTopology().getSnapshot();
+		HashMap<Long, Double> activationMap = getActivationMap();
+		for (ClusterSnapshot cluster : snapshot.getClusters()) {
+			if (cluster.getNumNodes() >= getActivateClusterThreshold()) {
 				int alpha = 255;
 				if (CLUSTERS_ALPHA) {
-					Double activation = getActivationMap().get(cluster);
+					Double activation = activationMap.get(cluster.getId());
 					if (activation != null) {
 						alpha = (int) Math.round(activation.doubleValue() * 200) + 55;
 					}
 				}
-				ImagePanel ipCluster = new ImagePanel(getBufferedImage(cluster.getMean(), IMAGE_WIDTH, IMAGE_HEIGHT, alpha));
+				ImagePanel ipCluster = new ImagePanel(getBufferedImage(reconstruct(cluster.getMean()), IMAGE_WIDTH, IMAGE_HEIGHT, alpha));
 				String strClusterId = "Cluster " + cluster.getId();
-				String strNodes = cluster.getNodes().size() + " Nodes";
+				String strNodes = cluster.getNumNodes() + " Nodes";
 				PatternPanel ppCluster = new PatternPanel(ipCluster, strClusterId, strNodes);
-				if (cluster == getTopology().getActivatedCluster()) {
+				if (cluster.getId() == snapshot.getActivatedClusterId()) {
 					ppCluster.setBackground(Color.RED);
 				}
 				pnClusters.add(ppCluster);
@@ -16,6 +16,7 @@ import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.HashMap;
 import java.util.Random;
 
 import javax.swing.BorderFactory;
@@ -30,8 +31,9 @@ import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 
-import soinnm.Cluster;
+import soinnm.ClusterSnapshot;
 import soinnm.SOINNM;
+import soinnm.TopologySnapshot;
 import util.ImagePanel;
 import util.PatternPanel;
 import util.WrapLayout;
@@ -376,6 +378,16 @@ public class NAOCameraFeatures extends InteractorUDP {
 		});
 		pnTopologyControls.add(btInsert);
 
+		JButton btJournal = new JButton("Journal topology");
+		btJournal.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (fcSaveLoad.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+					fileJournal = fcSaveLoad.getSelectedFile();
+				}
+			}
+		});
+		pnTopologyControls.add(btJournal);
+
 		// create panel for clusters
 		pnClusters = new JPanel();
 		pnClusters.setBorder(BorderFactory.createTitledBorder("Clusters"));
@@ -522,12 +534,14 @@ public class NAOCameraFeatures extends InteractorUDP {
 
 		// clusters
 		pnClusters.removeAll();
-		for (Cluster cluster : getTopology().getClusterSet()) {
-			if (cluster.getNodes().size() >= getActivateClusterThreshold()) {
+		TopologySnapshot snapshot = getTopology().getSnapshot();
+		HashMap<Long, Double> activationMap = getActivationMap();
+		for (ClusterSnapshot cluster : snapshot.getClusters()) {
+			if (cluster.getNumNodes() >= getActivateClusterThreshold()) {
 				BufferedImage image = imageProcessorRGB.reconstructImageRGB(cluster.getMean());
 				int alpha = 255;
 				if (CLUSTERS_ALPHA) {
-					Double activation = getActivationMap().get(cluster);
+					Double activation = activationMap.get(cluster.getId());
 					if (activation != null) {
 						alpha = (int) Math.round(activation.doubleValue() * 200) + 55;
 						for (int y = 0; y < IMAGE_HEIGHT; y++) {
@@ -542,9 +556,9 @@ public class NAOCameraFeatures extends InteractorUDP {
 				}
 				ImagePanel ipCluster = new ImagePanel(image);
 				String strClusterId = "Cluster " + cluster.getId();
-				String strNodes = cluster.getNodes().size() + " Nodes";
+				String strNodes = cluster.getNumNodes() + " Nodes";
 				PatternPanel ppCluster = new PatternPanel(ipCluster, strClusterId, strNodes);
-				if (cluster == getTopology().getActivatedCluster()) {
+				if (cluster.getId() == snapshot.getActivatedClusterId()) {
 					ppCluster.setBackground(Color.RED);
 				}
 				pnClusters.add(ppCluster);
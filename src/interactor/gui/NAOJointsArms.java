@@ -266,6 +266,16 @@ public class NAOJointsArms extends InteractorUDP {
 		});
 		pnTopologyControls.add(btInsert);
 
+		JButton btJournal = new JButton("Journal topology");
+		btJournal.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (fcSaveLoad.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+					fileJournal = fcSaveLoad.getSelectedFile();
+				}
+			}
+		});
+		pnTopologyControls.add(btJournal);
+
 		JPanel pnTopologyStatus = new JPanel();
 		pnTopologyStatus.setLayout(new BoxLayout(pnTopologyStatus, BoxLayout.Y_AXIS));
 		pnTopology.add(pnTopologyStatus);
@@ -477,6 +487,7 @@ public class NAOJointsArms extends InteractorUDP {
 			Graphics g = panel.getGraphics().create(insets.left, insets.top, width, height);
 			int xPos, yPos;
 			double[] pattern;
+			double[] patternBuffer = new double[INPUT_DIM];
 			double[] patternNorm;
 
 			// clear pnLShoulder
@@ -492,7 +503,7 @@ public class NAOJointsArms extends InteractorUDP {
 			g.setColor(Color.RED);
 			int diameterNode = 8;
 			for (Node node : getTopology().getNodeSet()) {
-				pattern = node.getPattern();
+				pattern = node.getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPos = (int) Math.round(patternNorm[index0] * width);
 				yPos = (int) Math.round(patternNorm[index1] * height);
@@ -503,11 +514,11 @@ public class NAOJointsArms extends InteractorUDP {
 			g.setColor(Color.BLUE);
 			int xPosA, yPosA, xPosB, yPosB;
 			for (Edge edge : getTopology().getEdgeSet()) {
-				pattern = edge.getNodeA().getPattern();
+				pattern = edge.getNodeA().getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPosA = (int) Math.round(patternNorm[index0] * width);
 				yPosA = (int) Math.round(patternNorm[index1] * height);
-				pattern = edge.getNodeB().getPattern();
+				pattern = edge.getNodeB().getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPosB = (int) Math.round(patternNorm[index0] * width);
 				yPosB = (int) Math.round(patternNorm[index1] * height);
@@ -176,6 +176,7 @@ public class NAOLaserDistance extends InteractorUDP {
 			int textWidth;
 			int xPos, yPos;
 			double[] pattern;
+			double[] patternBuffer = new double[INPUT_DIM];
 			double[] patternNorm;
 
 			// clear panel
@@ -202,7 +203,7 @@ public class NAOLaserDistance extends InteractorUDP {
 			g.setColor(Color.RED);
 			int diameterNode = 8;
 			for (Node node : getTopology().getNodeSet()) {
-				pattern = node.getPattern();
+				pattern = node.getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPos = (int) Math.round(0.5 * width);
 				yPos = (int) Math.round(patternNorm[0] * height);
@@ -213,11 +214,11 @@ public class NAOLaserDistance extends InteractorUDP {
 			g.setColor(Color.BLUE);
 			int xPosA, yPosA, xPosB, yPosB;
 			for (Edge edge : getTopology().getEdgeSet()) {
-				pattern = edge.getNodeA().getPattern();
+				pattern = edge.getNodeA().getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPosA = (int) Math.round(0.5 * width);
 				yPosA = (int) Math.round(patternNorm[0] * height);
-				pattern = edge.getNodeB().getPattern();
+				pattern = edge.getNodeB().getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPosB = (int) Math.round(0.5 * width);
 				yPosB = (int) Math.round(patternNorm[0] * height);
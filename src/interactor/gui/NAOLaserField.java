@@ -192,6 +192,16 @@ public class NAOLaserField extends InteractorUDP {
 		});
 		pnControls.add(btInsert);
 
+		JButton btJournal = new JButton("Journal topology");
+		btJournal.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (fcSaveLoad.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+					fileJournal = fcSaveLoad.getSelectedFile();
+				}
+			}
+		});
+		pnControls.add(btJournal);
+
 		JButton btClear = new JButton("Clear topology");
 		btClear.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
@@ -207,6 +207,16 @@ public class NAOProxemicsLaser extends InteractorUDP {
 		});
 		pnControls.add(btInsert);
 
+		JButton btJournal = new JButton("Journal topology");
+		btJournal.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (fcSaveLoad.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+					fileJournal = fcSaveLoad.getSelectedFile();
+				}
+			}
+		});
+		pnControls.add(btJournal);
+
 		// create panel for topology
 		pnTopology = new JPanel();
 		pnTopology.setBorder(BorderFactory.createTitledBorder("Topology"));
@@ -405,6 +415,7 @@ public class NAOProxemicsLaser extends InteractorUDP {
 			int textWidth;
 			int xPos, yPos;
 			double[] pattern;
+			double[] patternBuffer = new double[INPUT_DIM];
 			double[] patternNorm;
 
 			// clear panel
@@ -430,7 +441,7 @@ public class NAOProxemicsLaser extends InteractorUDP {
 			g.setColor(Color.RED);
 			int diameterNode = 8;
 			for (Node node : getTopology().getNodeSet()) {
-				pattern = node.getPattern();
+				pattern = node.getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPos = (int) Math.round(0.5 * width);
 				yPos = (int) Math.round(patternNorm[0] * height);
@@ -441,11 +452,11 @@ public class NAOProxemicsLaser extends InteractorUDP {
 			g.setColor(Color.BLUE);
 			int xPosA, yPosA, xPosB, yPosB;
 			for (Edge edge : getTopology().getEdgeSet()) {
-				pattern = edge.getNodeA().getPattern();
+				pattern = edge.getNodeA().getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPosA = (int) Math.round(0.5 * width);
 				yPosA = (int) Math.round(patternNorm[0] * height);
-				pattern = edge.getNodeB().getPattern();
+				pattern = edge.getNodeB().getPattern(patternBuffer);
 				patternNorm = normalisePattern(pattern);
 				xPosB = (int) Math.round(0.5 * width);
 				yPosB = (int) Math.round(patternNorm[0] * height);
@@ -12,6 +12,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.HashMap;
 import java.util.Random;
 
 import javax.imageio.ImageIO;
@@ -30,8 +31,10 @@ import javax.swing.SpinnerNumberModel;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
-import soinnm.Cluster;
+import soinnm.ClusterSnapshot;
+import soinnm.Node;
 import soinnm.SOINNM;
+import soinnm.TopologySnapshot;
 import util.ImagePanel;
 import util.PatternPanel;
 import util.WrapLayout;
@@ -153,6 +156,7 @@ public class Signs extends InteractorUDP {
 		topology.setUseAbsoluteJoinTolerance(true); // true
 		topology.setJoinToleranceAbsolute(0.1); // 0.1
 		topology.setJoiningIterationsMax(10); // 10
+		topology.setPatternPrecision(Node.PRECISION.FLOAT, null); // DOUBLE
 
 		// create frame
 		frame = new JFrame(NAME);
@@ -342,6 +346,16 @@ public class Signs extends InteractorUDP {
 		});
 		pnTopologyControls.add(btInsert);
 
+		JButton btJournal = new JButton("Journal topology");
+		btJournal.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (fcSaveLoad.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+					fileJournal = fcSaveLoad.getSelectedFile();
+				}
+			}
+		});
+		pnTopologyControls.add(btJournal);
+
 		// create panel for clusters
 		pnClusters = new JPanel();
 		pnClusters.setBorder(BorderFactory.createTitledBorder("Clusters"));
@@ -498,20 +512,22 @@ public class Signs extends InteractorUDP {
 
 		// clusters
 		pnClusters.removeAll();
-		for (Cluster cluster : getTopology().getClusterSet()) {
-			if (cluster.getNodes().size() >= getActivateClusterThreshold()) {
+		TopologySnapshot snapshot = getTopology().getSnapshot();
+		HashMap<Long, Double> activationMap = getActivationMap();
+		for (ClusterSnapshot cluster : snapshot.getClusters()) {
+			if (cluster.getNumNodes() >= getActivateClusterThreshold()) {
 				int alpha = 255;
 				if (CLUSTERS_ALPHA) {
-					Double activation = getActivationMap().get(cluster);
+					Double activation = activationMap.get(cluster.getId());
 					if (activation != null) {
 						alpha = (int) Math.round(activation.doubleValue() * 200) + 55;
 					}
 				}
 				ImagePanel ipCluster = new ImagePanel(getBufferedImage(cluster.getMean(), IMAGE_WIDTH, IMAGE_HEIGHT, alpha));
 				String strClusterId = "Cluster " + cluster.getId();
-				String strNodes = cluster.getNodes().size() + " Nodes";
+				String strNodes = cluster.getNumNodes() + " Nodes";
 				PatternPanel ppCluster = new PatternPanel(ipCluster, strClusterId, strNodes);
-				if (cluster == getTopology().getActivatedCluster()) {
+				if (cluster.getId() == snapshot.getActivatedClusterId()) {
 					ppCluster.setBackground(Color.RED);
 				}
 				pnClusters.add(ppCluster);
@@ -270,6 +270,17 @@ public class TextLabel extends InteractorUDP {
 		btInsert.setEnabled(false); // Problem: HashMaps are not inserted!
 		pnTopologyControls.add(btInsert);
 
+		JButton btJournal = new JButton("Journal topology");
+		btJournal.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (fcSaveLoad.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+					fileJournal = fcSaveLoad.getSelectedFile();
+				}
+			}
+		});
+		btJournal.setEnabled(false); // Problem: HashMaps are not recovered!
+		pnTopologyControls.add(btJournal);
+
 		// create panel for clusters
 		pnClusters = new JPanel();
 		pnClusters.setBorder(BorderFactory.createTitledBorder("Clusters"));
@@ -339,15 +350,16 @@ public class TextLabel extends InteractorUDP {
 
 				// use cluster with maximum activation 				
 				double activationMax = Double.MIN_VALUE;
-				Cluster clusterMax = null;
-				for (Cluster cluster : getActivationMap().keySet()) {
-					double activation = getActivationMap().get(cluster);
+				long clusterIdMax = -1;
+				HashMap<Long, Double> activationMap = getActivationMap();
+				for (long clusterId : activationMap.keySet()) {
+					double activation = activationMap.get(clusterId);
 					if (activation > activationMax) {
 						activationMax = activation;
-						clusterMax = cluster;
+						clusterIdMax = clusterId;
 					}
 				}
-				double index = clusterMax.getMean()[0];
+				double index = getTopology().getSnapshot().getCluster(clusterIdMax).getMean()[0];
 
 				// fetch string
 				String output = hmOutputs.get(index);
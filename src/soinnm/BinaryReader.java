@@ -0,0 +1,229 @@
+package soinnm;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import soinnm.Cluster;
+import soinnm.Edge;
+import soinnm.Node;
+import soinnm.SOINNM;
+
+/**
+ * Class for reading a topology state of M-SOINN from a binary file (see
+ * BinaryTopologyFile for the layout).
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class BinaryReader {
+
+	/**
+	 * Reads the topology from the given file. Returns false if the file cannot
+	 * be read, in which case the topology is not changed.
+	 */
+	public boolean readFromFile(String filename, SOINNM soinnm) {
+
+		// DEBUG
+		System.out.println("Loading from binary file...");
+
+		// DEBUG
+		System.out.println("Reading from file \"" + filename + "\"...");
+
+		BinaryTopologyFile topologyFile = BinaryTopologyFile.open(filename);
+		if (topologyFile == null) {
+			return false;
+		}
+
+		try {
+
+			// check input dimensionality
+			int inputDim = topologyFile.getInputDim();
+			if (inputDim != soinnm.getInputDim()) {
+				System.err.println("Wrong input dimensionality!");
+				return false;
+			}
+
+			// DEBUG
+			System.out.println("Recreating nodes, edges and clusters...");
+
+			// Nodes, Edges, Clusters (with original ids)
+			ArrayList<Node> nodes = new ArrayList<Node>();
+			ArrayList<Edge> edges = new ArrayList<Edge>();
+			ArrayList<Cluster> clusters = new ArrayList<Cluster>();
+			readFile(topologyFile, nodes, edges, clusters, false, 0, 0, 0);
+
+			// DEBUG
+			System.out.println("Setting parameters...");
+
+			// Parameters (same order as in BinaryWriter)
+			ByteBuffer parameters = topologyFile.getParameters();
+			soinnm.setNoiseLevel(parameters.getDouble());
+			soinnm.setUseFixedThreshold(parameters.get() != 0);
+			soinnm.setFixedThreshold(parameters.getDouble());
+			soinnm.setMinimumThreshold(parameters.getDouble());
+			soinnm.setAgeDead(parameters.getInt());
+			soinnm.setConnectNewNodes(parameters.get() != 0);
+			soinnm.setLambda(parameters.getInt());
+			soinnm.setEdgeMaxRemoval(parameters.get() != 0);
+			soinnm.setNodeNumSignalsMinRemoval(parameters.get() != 0);
+			soinnm.setReduceErrorInsertion(parameters.get() != 0);
+			soinnm.setSmallClusterRemoval(parameters.get() != 0);
+			soinnm.setC2Param(parameters.getDouble());
+			soinnm.setC1Param(parameters.getDouble());
+			soinnm.setClusterJoining(parameters.get() != 0);
+			soinnm.setJoinTolerance(parameters.getDouble());
+			soinnm.setUseAbsoluteJoinTolerance(parameters.get() != 0);
+			soinnm.setJoinToleranceAbsolute(parameters.getDouble());
+			soinnm.setJoiningIterationsMax(parameters.getInt());
+
+			// Nodes, Edges, Clusters
+			soinnm.getNodeSet().clear();
+			soinnm.getNodeSet().addAll(nodes);
+			soinnm.getEdgeSet().clear();
+			soinnm.getEdgeSet().addAll(edges);
+			soinnm.getClusterSet().clear();
+			soinnm.getClusterSet().addAll(clusters);
+
+			// DEBUG
+			System.out.println("Setting variables...");
+
+			// Variables
+			soinnm.setNextNodeId(topologyFile.getNextNodeId());
+			soinnm.setNextEdgeId(topologyFile.getNextEdgeId());
+			soinnm.setNextClusterId(topologyFile.getNextClusterId());
+			soinnm.setNumInputs(topologyFile.getNumInputs());
+
+			// rebuild auxiliary structures
+			soinnm.rebuild();
+			/* not included:
+			activatedCluster
+			topologyEvents
+			*/
+
+			// DEBUG
+			System.out.println("Loading from binary file finished!");
+
+			return true;
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			topologyFile.close();
+		}
+	}
+
+	/**
+	 * Inserts the nodes, edges and clusters of the given file into the
+	 * topology with new ids. Returns false if the file cannot be read, in
+	 * which case the topology is not changed.
+	 */
+	public boolean insertFromFile(String filename, SOINNM soinnm) {
+
+		// DEBUG
+		System.out.println("Inserting from binary file...");
+
+		// DEBUG
+		System.out.println("Reading from file \"" + filename + "\"...");
+
+		BinaryTopologyFile topologyFile = BinaryTopologyFile.open(filename);
+		if (topologyFile == null) {
+			return false;
+		}
+
+		try {
+
+			// check input dimensionality
+			int inputDim = topologyFile.getInputDim();
+			if (inputDim != soinnm.getInputDim()) {
+				System.err.println("Wrong input dimensionality!");
+				return false;
+			}
+
+			// DEBUG
+			System.out.println("Skipping parameters...");
+
+			// DEBUG
+			System.out.println("Inserting nodes, edges and clusters...");
+
+			// Nodes, Edges, Clusters (with new ids)
+			ArrayList<Node> nodes = new ArrayList<Node>();
+			ArrayList<Edge> edges = new ArrayList<Edge>();
+			ArrayList<Cluster> clusters = new ArrayList<Cluster>();
+			readFile(topologyFile, nodes, edges, clusters, true, soinnm.getNextNodeId(), soinnm.getNextEdgeId(), soinnm.getNextClusterId());
+			soinnm.getNodeSet().addAll(nodes);
+			soinnm.getEdgeSet().addAll(edges);
+			soinnm.getClusterSet().addAll(clusters);
+
+			// use next ids after inserted elements
+			soinnm.setNextNodeId(soinnm.getNextNodeId() + nodes.size());
+			soinnm.setNextEdgeId(soinnm.getNextEdgeId() + edges.size());
+			soinnm.setNextClusterId(soinnm.getNextClusterId() + clusters.size());
+
+			// DEBUG
+			System.out.println("Skipping variables...");
+
+			// rebuild auxiliary structures
+			soinnm.rebuild();
+
+			// DEBUG
+			System.out.println("Inserting from binary file finished!");
+
+			return true;
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			topologyFile.close();
+		}
+	}
+
+	/**
+	 * Reads nodes, edges and clusters of the file into the given lists without
+	 * changing the topology. New ids start at the given ids if requested
+	 * (labels are not inserted then).
+	 */
+	private void readFile(BinaryTopologyFile topologyFile, ArrayList<Node> nodes, ArrayList<Edge> edges, ArrayList<Cluster> clusters, boolean newIds, long nextNodeId, long nextEdgeId, long nextClusterId) {
+
+		// Nodes
+		for (int i = 0; i < topologyFile.getNumNodes(); i++) {
+
+			// create node
+			Node node = new Node(newIds ? nextNodeId++ : topologyFile.getNodeId(i), topologyFile.getPattern(i));
+			node.setThreshold(topologyFile.getNodeThreshold(i));
+			node.setError(topologyFile.getNodeError(i));
+			node.setNumSignals(topologyFile.getNodeNumSignals(i));
+			if (!newIds) {
+				node.setLabel(topologyFile.getNodeLabel(i));
+			}
+			nodes.add(node);
+		}
+
+		// Edges
+		for (int i = 0; i < topologyFile.getNumEdges(); i++) {
+
+			// create edge
+			Node nodeA = nodes.get(topologyFile.getEdgeNodeIndexA(i));
+			Node nodeB = nodes.get(topologyFile.getEdgeNodeIndexB(i));
+			Edge edge = new Edge(newIds ? nextEdgeId++ : topologyFile.getEdgeId(i), nodeA, nodeB);
+			edge.setAge(topologyFile.getEdgeAge(i));
+			edges.add(edge);
+		}
+
+		// Clusters
+		for (int i = 0; i < topologyFile.getNumClusters(); i++) {
+
+			// collect nodes
+			LinkedList<Node> clusterNodes = new LinkedList<Node>();
+			for (int n = 0; n < topologyFile.getClusterNumNodes(i); n++) {
+				clusterNodes.add(nodes.get(topologyFile.getClusterNodeIndex(i, n)));
+			}
+
+			// create cluster
+			clusters.add(new Cluster(newIds ? nextClusterId++ : topologyFile.getClusterId(i), clusterNodes));
+		}
+	}
+
+}
@@ -0,0 +1,305 @@
+package soinnm;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Class for a topology state of M-SOINN in a binary file. The file is mapped
+ * into memory and nodes, edges and clusters are read on demand, so large
+ * topologies can be inspected without loading them completely.
+ * <p>
+ * File layout (big endian):
+ * <ul>
+ * <li>header: magic number, file version, input dimensionality, numbers of
+ * nodes, edges, clusters and cluster members, variables, section offsets and
+ * parameters (HEADER_SIZE bytes)</li>
+ * <li>node table: id, threshold, error, number of signals, label offset and
+ * label length (-1 for no label) per node</li>
+ * <li>pattern block: patterns of all nodes in order of the node table</li>
+ * <li>edge table: id, age and the node indices of both nodes per edge</li>
+ * <li>cluster table: id, index of the first member and number of members per
+ * cluster</li>
+ * <li>member block: node indices of the members of all clusters</li>
+ * <li>label block: labels encoded as UTF-8</li>
+ * </ul>
+ * Edges and clusters refer to nodes by their index in the node table instead
+ * of their id, so no lookup is needed when loading.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class BinaryTopologyFile {
+
+	static final int MAGIC = 0x534F494E; // "SOIN"
+
+	static final int FILE_VERSION = 1;
+
+	static final int HEADER_SIZE = 512;
+
+	static final int PARAMETERS_OFFSET = 128; // position of parameters in header
+
+	static final int NODE_RECORD_SIZE = 40;
+
+	static final int EDGE_RECORD_SIZE = 24;
+
+	static final int CLUSTER_RECORD_SIZE = 16;
+
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private RandomAccessFile file;
+
+	private ByteBuffer header;
+
+	private int inputDim;
+
+	private int numNodes;
+
+	private int numEdges;
+
+	private int numClusters;
+
+	private int numMembers;
+
+	private long nextNodeId;
+
+	private long nextEdgeId;
+
+	private long nextClusterId;
+
+	private long numInputs;
+
+	private ByteBuffer nodeTable;
+
+	private DoubleBuffer[] patternChunks; // mapped in chunks (a mapping is limited to 2 GB)
+
+	private int numPatternsChunk; // number of patterns per chunk
+
+	private ByteBuffer edgeTable;
+
+	private ByteBuffer clusterTable;
+
+	private ByteBuffer memberBlock;
+
+	private ByteBuffer labelBlock;
+
+	/**
+	 * Opens the given file. Returns null if the file cannot be read or is not
+	 * a topology file of the current version.
+	 */
+	public static BinaryTopologyFile open(String filename) {
+		BinaryTopologyFile topologyFile = new BinaryTopologyFile();
+		try {
+			topologyFile.file = new RandomAccessFile(filename, "r");
+			if (!topologyFile.map()) {
+				topologyFile.close();
+				return null;
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			topologyFile.close();
+			return null;
+		}
+		return topologyFile;
+	}
+
+	private BinaryTopologyFile() {
+	}
+
+	private boolean map() throws Exception {
+		FileChannel channel = file.getChannel();
+		if (channel.size() < HEADER_SIZE) {
+			System.err.println("File is too short!");
+			return false;
+		}
+
+		// header
+		header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+		if (header.getInt(0) != MAGIC) {
+			System.err.println("Wrong file format!");
+			return false;
+		}
+		if (header.getInt(4) != FILE_VERSION) {
+			System.err.println("Wrong file version!");
+			return false;
+		}
+		inputDim = header.getInt(8);
+		numNodes = header.getInt(12);
+		numEdges = header.getInt(16);
+		numClusters = header.getInt(20);
+		numMembers = header.getInt(24);
+		nextNodeId = header.getLong(32);
+		nextEdgeId = header.getLong(40);
+		nextClusterId = header.getLong(48);
+		numInputs = header.getLong(56);
+		long nodeTableOffset = header.getLong(64);
+		long patternBlockOffset = header.getLong(72);
+		long edgeTableOffset = header.getLong(80);
+		long clusterTableOffset = header.getLong(88);
+		long memberBlockOffset = header.getLong(96);
+		long labelBlockOffset = header.getLong(104);
+		long fileSize = header.getLong(112);
+		if (channel.size() < fileSize) {
+			System.err.println("File is incomplete!");
+			return false;
+		}
+
+		// tables
+		nodeTable = channel.map(FileChannel.MapMode.READ_ONLY, nodeTableOffset, (long) numNodes * NODE_RECORD_SIZE);
+		edgeTable = channel.map(FileChannel.MapMode.READ_ONLY, edgeTableOffset, (long) numEdges * EDGE_RECORD_SIZE);
+		clusterTable = channel.map(FileChannel.MapMode.READ_ONLY, clusterTableOffset, (long) numClusters * CLUSTER_RECORD_SIZE);
+		memberBlock = channel.map(FileChannel.MapMode.READ_ONLY, memberBlockOffset, (long) numMembers * 4);
+		labelBlock = channel.map(FileChannel.MapMode.READ_ONLY, labelBlockOffset, fileSize - labelBlockOffset);
+
+		// patterns
+		long patternSize = (long) inputDim * 8;
+		numPatternsChunk = (int) Math.max(1, Integer.MAX_VALUE / Math.max(1, patternSize));
+		int numChunks = (numNodes + numPatternsChunk - 1) / numPatternsChunk;
+		patternChunks = new DoubleBuffer[numChunks];
+		for (int c = 0; c < numChunks; c++) {
+			int numPatterns = Math.min(numPatternsChunk, numNodes - c * numPatternsChunk);
+			long offset = patternBlockOffset + (long) c * numPatternsChunk * patternSize;
+			patternChunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset, numPatterns * patternSize).asDoubleBuffer();
+		}
+
+		return true;
+	}
+
+	public void close() {
+		try {
+			if (file != null) {
+				file.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the header, positioned at the parameters.
+	 */
+	ByteBuffer getParameters() {
+		ByteBuffer parameters = header.duplicate();
+		parameters.position(PARAMETERS_OFFSET);
+		return parameters;
+	}
+
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	public int getNumEdges() {
+		return numEdges;
+	}
+
+	public int getNumClusters() {
+		return numClusters;
+	}
+
+	public long getNextNodeId() {
+		return nextNodeId;
+	}
+
+	public long getNextEdgeId() {
+		return nextEdgeId;
+	}
+
+	public long getNextClusterId() {
+		return nextClusterId;
+	}
+
+	public long getNumInputs() {
+		return numInputs;
+	}
+
+	// nodes
+
+	public long getNodeId(int index) {
+		return nodeTable.getLong(index * NODE_RECORD_SIZE);
+	}
+
+	public double getNodeThreshold(int index) {
+		return nodeTable.getDouble(index * NODE_RECORD_SIZE + 8);
+	}
+
+	public double getNodeError(int index) {
+		return nodeTable.getDouble(index * NODE_RECORD_SIZE + 16);
+	}
+
+	public long getNodeNumSignals(int index) {
+		return nodeTable.getLong(index * NODE_RECORD_SIZE + 24);
+	}
+
+	public String getNodeLabel(int index) {
+		int labelOffset = nodeTable.getInt(index * NODE_RECORD_SIZE + 32);
+		int labelLength = nodeTable.getInt(index * NODE_RECORD_SIZE + 36);
+		if (labelLength < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[labelLength];
+		ByteBuffer label = labelBlock.duplicate();
+		label.position(labelOffset);
+		label.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	public double[] getPattern(int index) {
+		double[] pattern = new double[inputDim];
+		getPattern(index, pattern);
+		return pattern;
+	}
+
+	/**
+	 * Copies the pattern of the node with the given index into the given
+	 * array.
+	 */
+	public void getPattern(int index, double[] pattern) {
+		DoubleBuffer patterns = patternChunks[index / numPatternsChunk].duplicate();
+		patterns.position((index % numPatternsChunk) * inputDim);
+		patterns.get(pattern, 0, inputDim);
+	}
+
+	// edges
+
+	public long getEdgeId(int index) {
+		return edgeTable.getLong(index * EDGE_RECORD_SIZE);
+	}
+
+	public long getEdgeAge(int index) {
+		return edgeTable.getLong(index * EDGE_RECORD_SIZE + 8);
+	}
+
+	public int getEdgeNodeIndexA(int index) {
+		return edgeTable.getInt(index * EDGE_RECORD_SIZE + 16);
+	}
+
+	public int getEdgeNodeIndexB(int index) {
+		return edgeTable.getInt(index * EDGE_RECORD_SIZE + 20);
+	}
+
+	// clusters
+
+	public long getClusterId(int index) {
+		return clusterTable.getLong(index * CLUSTER_RECORD_SIZE);
+	}
+
+	public int getClusterNumNodes(int index) {
+		return clusterTable.getInt(index * CLUSTER_RECORD_SIZE + 12);
+	}
+
+	/**
+	 * Returns the node index of the given member of the cluster with the given
+	 * index.
+	 */
+	public int getClusterNodeIndex(int index, int member) {
+		int memberFirst = clusterTable.getInt(index * CLUSTER_RECORD_SIZE + 8);
+		return memberBlock.getInt((memberFirst + member) * 4);
+	}
+
+}
@@ -0,0 +1,229 @@
+package soinnm;
+
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+import soinnm.Cluster;
+import soinnm.Edge;
+import soinnm.Node;
+import soinnm.SOINNM;
+
+/**
+ * Class for writing a topology state of M-SOINN to a binary file (see
+ * BinaryTopologyFile for the layout).
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class BinaryWriter {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private FileChannel channel;
+
+	private ByteBuffer buffer;
+
+	public void writeToFile(SOINNM soinnm, String filename) {
+
+		FileOutputStream fileOutputStream = null;
+
+		try {
+
+			// DEBUG
+			System.out.println("Saving to binary file...");
+
+			int inputDim = soinnm.getInputDim();
+			int numNodes = soinnm.getNodeSet().size();
+			int numEdges = soinnm.getEdgeSet().size();
+			int numClusters = soinnm.getClusterSet().size();
+
+			// index nodes and encode labels
+			HashMap<Node, Integer> nodeIndexMap = new HashMap<Node, Integer>();
+			byte[][] labels = new byte[numNodes][];
+			int index = 0;
+			int labelBlockSize = 0;
+			for (Node node : soinnm.getNodeSet()) {
+				nodeIndexMap.put(node, index);
+				if (node.getLabel() != null) {
+					labels[index] = node.getLabel().getBytes(BinaryTopologyFile.CHARSET);
+					labelBlockSize += labels[index].length;
+				}
+				index++;
+			}
+			int numMembers = 0;
+			for (Cluster cluster : soinnm.getClusterSet()) {
+				numMembers += cluster.getNodes().size();
+			}
+
+			// compute offsets
+			long nodeTableOffset = BinaryTopologyFile.HEADER_SIZE;
+			long patternBlockOffset = nodeTableOffset + (long) numNodes * BinaryTopologyFile.NODE_RECORD_SIZE;
+			long edgeTableOffset = patternBlockOffset + (long) numNodes * inputDim * 8;
+			long clusterTableOffset = edgeTableOffset + (long) numEdges * BinaryTopologyFile.EDGE_RECORD_SIZE;
+			long memberBlockOffset = clusterTableOffset + (long) numClusters * BinaryTopologyFile.CLUSTER_RECORD_SIZE;
+			long labelBlockOffset = memberBlockOffset + (long) numMembers * 4;
+			long fileSize = labelBlockOffset + labelBlockSize;
+
+			// DEBUG
+			System.out.println("Writing to file \"" + filename + "\"...");
+
+			fileOutputStream = new FileOutputStream(filename);
+			channel = fileOutputStream.getChannel();
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+			// header
+			buffer.putInt(BinaryTopologyFile.MAGIC);
+			buffer.putInt(BinaryTopologyFile.FILE_VERSION);
+			buffer.putInt(inputDim);
+			buffer.putInt(numNodes);
+			buffer.putInt(numEdges);
+			buffer.putInt(numClusters);
+			buffer.putInt(numMembers);
+			buffer.putInt(0);
+			buffer.putLong(soinnm.getNextNodeId());
+			buffer.putLong(soinnm.getNextEdgeId());
+			buffer.putLong(soinnm.getNextClusterId());
+			buffer.putLong(soinnm.getNumInputs());
+			buffer.putLong(nodeTableOffset);
+			buffer.putLong(patternBlockOffset);
+			buffer.putLong(edgeTableOffset);
+			buffer.putLong(clusterTableOffset);
+			buffer.putLong(memberBlockOffset);
+			buffer.putLong(labelBlockOffset);
+			buffer.putLong(fileSize);
+
+			// parameters (same order as in BinaryReader)
+			buffer.position(BinaryTopologyFile.PARAMETERS_OFFSET);
+			buffer.putDouble(soinnm.getNoiseLevel());
+			putBoolean(soinnm.isUseFixedThreshold());
+			buffer.putDouble(soinnm.getFixedThreshold());
+			buffer.putDouble(soinnm.getMinimumThreshold());
+			buffer.putInt(soinnm.getAgeDead());
+			putBoolean(soinnm.isConnectNewNodes());
+			buffer.putInt(soinnm.getLambda());
+			putBoolean(soinnm.isEdgeMaxRemoval());
+			putBoolean(soinnm.isNodeNumSignalsMinRemoval());
+			putBoolean(soinnm.isReduceErrorInsertion());
+			putBoolean(soinnm.isSmallClusterRemoval());
+			buffer.putDouble(soinnm.getC2Param());
+			buffer.putDouble(soinnm.getC1Param());
+			putBoolean(soinnm.isClusterJoining());
+			buffer.putDouble(soinnm.getJoinTolerance());
+			putBoolean(soinnm.isUseAbsoluteJoinTolerance());
+			buffer.putDouble(soinnm.getJoinToleranceAbsolute());
+			buffer.putInt(soinnm.getJoiningIterationsMax());
+			while (buffer.position() < BinaryTopologyFile.HEADER_SIZE) {
+				buffer.put((byte) 0);
+			}
+
+			// node table
+			int labelOffset = 0;
+			index = 0;
+			for (Node node : soinnm.getNodeSet()) {
+				ensureRemaining(BinaryTopologyFile.NODE_RECORD_SIZE);
+				buffer.putLong(node.getId());
+				buffer.putDouble(node.getThreshold());
+				buffer.putDouble(node.getError());
+				buffer.putLong(node.getNumSignals());
+				if (labels[index] != null) {
+					buffer.putInt(labelOffset);
+					buffer.putInt(labels[index].length);
+					labelOffset += labels[index].length;
+				} else {
+					buffer.putInt(labelOffset);
+					buffer.putInt(-1);
+				}
+				index++;
+			}
+
+			// pattern block
+			for (Node node : soinnm.getNodeSet()) {
+				for (double value : node.getPattern()) {
+					ensureRemaining(8);
+					buffer.putDouble(value);
+				}
+			}
+
+			// edge table
+			for (Edge edge : soinnm.getEdgeSet()) {
+				ensureRemaining(BinaryTopologyFile.EDGE_RECORD_SIZE);
+				buffer.putLong(edge.getId());
+				buffer.putLong(edge.getAge());
+				buffer.putInt(nodeIndexMap.get(edge.getNodeA()));
+				buffer.putInt(nodeIndexMap.get(edge.getNodeB()));
+			}
+
+			// cluster table
+			int memberFirst = 0;
+			for (Cluster cluster : soinnm.getClusterSet()) {
+				ensureRemaining(BinaryTopologyFile.CLUSTER_RECORD_SIZE);
+				buffer.putLong(cluster.getId());
+				buffer.putInt(memberFirst);
+				buffer.putInt(cluster.getNodes().size());
+				memberFirst += cluster.getNodes().size();
+			}
+
+			// member block
+			for (Cluster cluster : soinnm.getClusterSet()) {
+				for (Node node : cluster.getNodes()) {
+					ensureRemaining(4);
+					buffer.putInt(nodeIndexMap.get(node));
+				}
+			}
+
+			// label block
+			for (byte[] label : labels) {
+				if (label != null) {
+					for (byte b : label) {
+						ensureRemaining(1);
+						buffer.put(b);
+					}
+				}
+			}
+			/* not included:
+			activatedCluster
+			topologyEvents
+			*/
+
+			flush();
+
+			// DEBUG
+			System.out.println("Saving to binary file finished!");
+
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				if (fileOutputStream != null) {
+					fileOutputStream.close();
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			channel = null;
+			buffer = null;
+		}
+
+	}
+
+	private void putBoolean(boolean value) {
+		buffer.put(value ? (byte) 1 : (byte) 0);
+	}
+
+	private void ensureRemaining(int size) throws Exception {
+		if (buffer.remaining() < size) {
+			flush();
+		}
+	}
+
+	private void flush() throws Exception {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,567 @@
+package soinnm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import soinnm.Edge;
+import soinnm.IndexedHeap;
+import soinnm.Node;
+
+/**
+ * Class for the structures used by the periodic cleanup of M-SOINN, so that
+ * the longest edge, the node with the minimum number of signals, the node with
+ * the maximum error and the nodes with few neighbours are found without
+ * scanning all nodes and edges.
+ * <p>
+ * Nodes and edges are kept in indexed heaps. Nodes with up to DEGREE_MAX
+ * neighbours are additionally kept in one heap per number of neighbours,
+ * ordered by the number of signals. Ties are resolved by the order in which
+ * nodes and edges have been registered, which equals the iteration order of
+ * the node and edge sets, so results are the same as those of a scan.
+ * <p>
+ * Changes of the number of signals and the error are passed on by the nodes.
+ * Edge lengths are only recomputed for edges whose nodes have moved, once the
+ * longest edge is requested.
+ * <p>
+ * For the similarity thresholds, the maximum length of the edges of each node
+ * is cached until the node or a neighbour moves or an edge of the node
+ * changes. The distance of an isolated node to its nearest node is cached
+ * together with that node, and dropped once the isolated node, its nearest
+ * node or its edges change. An added or moved node that is nearer replaces
+ * the nearest node. Distances are computed in the summation order of the
+ * node index, so cached distances equal the ones of a new search (with an
+ * exact node index).
+ *
+ * @author Matthias Keysermann
+ *
+ */
+class CleanupIndex {
+
+	public static final int DEGREE_MAX = 2; // maximum number of neighbours of nodes kept by degree
+
+	private static class NodeEntry {
+		private Node node;
+		private long sequence; // registration order
+		private int numSignalsIndex = -1;
+		private int errorIndex = -1;
+		private int degreeIndex = -1;
+		private int degree = -1; // degree heap containing the node (-1 for none)
+		private double edgeLengthMax;
+		private boolean edgeLengthMaxValid;
+		private Node nearestNode; // null if there is no other node
+		private double nearestDistance;
+		private boolean nearestDistanceValid;
+	}
+
+	private static class EdgeEntry {
+		private Edge edge;
+		private long sequence; // registration order
+		private double length;
+		private boolean lengthValid;
+		private boolean removed;
+		private boolean queued; // contained in the invalid edges
+		private int index = -1;
+	}
+
+	private static final Comparator<NodeEntry> SEQUENCE_COMPARATOR = new Comparator<NodeEntry>() {
+		@Override
+		public int compare(NodeEntry entryA, NodeEntry entryB) {
+			if (entryA.sequence != entryB.sequence) {
+				return (entryA.sequence < entryB.sequence) ? -1 : 1;
+			}
+			return 0;
+		}
+	};
+
+	private int inputDim;
+
+	private HashMap<Node, NodeEntry> nodeEntries;
+
+	private HashMap<Edge, EdgeEntry> edgeEntries;
+
+	private IndexedHeap<NodeEntry> numSignalsHeap; // minimum number of signals first
+
+	private IndexedHeap<NodeEntry> errorHeap; // maximum error first
+
+	private ArrayList<IndexedHeap<NodeEntry>> degreeHeaps; // minimum number of signals first
+
+	private IndexedHeap<EdgeEntry> edgeHeap; // maximum length first
+
+	private ArrayList<EdgeEntry> invalidEdges; // edges with outdated lengths
+
+	private long numSignalsSum;
+
+	private long nextSequence;
+
+	private HashSet<NodeEntry> nearestEntries; // entries with a valid nearest distance
+
+	public CleanupIndex(int inputDim) {
+		this.inputDim = inputDim;
+		nodeEntries = new HashMap<Node, NodeEntry>();
+		edgeEntries = new HashMap<Edge, EdgeEntry>();
+		numSignalsHeap = new IndexedHeap<NodeEntry>() {
+			@Override
+			protected boolean isBefore(NodeEntry A, NodeEntry B) {
+				long numSignalsA = A.node.getNumSignals();
+				long numSignalsB = B.node.getNumSignals();
+				return numSignalsA < numSignalsB || (numSignalsA == numSignalsB && A.sequence < B.sequence);
+			}
+
+			@Override
+			protected int getIndex(NodeEntry entry) {
+				return entry.numSignalsIndex;
+			}
+
+			@Override
+			protected void setIndex(NodeEntry entry, int index) {
+				entry.numSignalsIndex = index;
+			}
+		};
+		errorHeap = new IndexedHeap<NodeEntry>() {
+			@Override
+			protected boolean isBefore(NodeEntry A, NodeEntry B) {
+				double errorA = A.node.getError();
+				double errorB = B.node.getError();
+				return errorA > errorB || (errorA == errorB && A.sequence < B.sequence);
+			}
+
+			@Override
+			protected int getIndex(NodeEntry entry) {
+				return entry.errorIndex;
+			}
+
+			@Override
+			protected void setIndex(NodeEntry entry, int index) {
+				entry.errorIndex = index;
+			}
+		};
+		degreeHeaps = new ArrayList<IndexedHeap<NodeEntry>>();
+		for (int degree = 0; degree <= DEGREE_MAX; degree++) {
+			degreeHeaps.add(new IndexedHeap<NodeEntry>() {
+				@Override
+				protected boolean isBefore(NodeEntry A, NodeEntry B) {
+					long numSignalsA = A.node.getNumSignals();
+					long numSignalsB = B.node.getNumSignals();
+					return numSignalsA < numSignalsB || (numSignalsA == numSignalsB && A.sequence < B.sequence);
+				}
+
+				@Override
+				protected int getIndex(NodeEntry entry) {
+					return entry.degreeIndex;
+				}
+
+				@Override
+				protected void setIndex(NodeEntry entry, int index) {
+					entry.degreeIndex = index;
+				}
+			});
+		}
+		edgeHeap = new IndexedHeap<EdgeEntry>() {
+			@Override
+			protected boolean isBefore(EdgeEntry A, EdgeEntry B) {
+				return A.length > B.length || (A.length == B.length && A.sequence < B.sequence);
+			}
+
+			@Override
+			protected int getIndex(EdgeEntry entry) {
+				return entry.index;
+			}
+
+			@Override
+			protected void setIndex(EdgeEntry entry, int index) {
+				entry.index = index;
+			}
+		};
+		invalidEdges = new ArrayList<EdgeEntry>();
+		numSignalsSum = 0;
+		nextSequence = 0;
+		nearestEntries = new HashSet<NodeEntry>();
+	}
+
+	public void clear() {
+		for (Node node : nodeEntries.keySet()) {
+			node.setCleanupIndex(null);
+		}
+		nodeEntries.clear();
+		edgeEntries.clear();
+		numSignalsHeap.clear();
+		errorHeap.clear();
+		for (IndexedHeap<NodeEntry> degreeHeap : degreeHeaps) {
+			degreeHeap.clear();
+		}
+		edgeHeap.clear();
+		invalidEdges.clear();
+		numSignalsSum = 0;
+		nearestEntries.clear();
+	}
+
+	public void addNode(Node node) {
+		NodeEntry entry = new NodeEntry();
+		entry.node = node;
+		entry.sequence = nextSequence++;
+		nodeEntries.put(node, entry);
+		node.setCleanupIndex(this);
+		numSignalsSum += node.getNumSignals();
+		numSignalsHeap.add(entry);
+		errorHeap.add(entry);
+		updateDegree(entry);
+		nodeMoved(node);
+	}
+
+	public void removeNode(Node node) {
+		NodeEntry entry = nodeEntries.remove(node);
+		if (entry == null) {
+			return;
+		}
+		node.setCleanupIndex(null);
+		numSignalsSum -= node.getNumSignals();
+		numSignalsHeap.remove(entry);
+		errorHeap.remove(entry);
+		if (entry.degree >= 0) {
+			degreeHeaps.get(entry.degree).remove(entry);
+		}
+		invalidateNearestDistance(entry);
+		Iterator<NodeEntry> iterator = nearestEntries.iterator();
+		while (iterator.hasNext()) {
+			NodeEntry nearestEntry = iterator.next();
+			if (nearestEntry.nearestNode == node) {
+				nearestEntry.nearestDistanceValid = false;
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Registers an edge and updates the number of neighbours of its nodes
+	 * (after the edge has been added to the nodes).
+	 */
+	public void addEdge(Edge edge) {
+		EdgeEntry entry = new EdgeEntry();
+		entry.edge = edge;
+		entry.sequence = nextSequence++;
+		entry.lengthValid = false;
+		edgeEntries.put(edge, entry);
+		addInvalidEdge(entry);
+		edgesChanged(edge.getNodeA());
+		edgesChanged(edge.getNodeB());
+	}
+
+	/**
+	 * Unregisters an edge and updates the number of neighbours of its nodes
+	 * (after the edge has been removed from the nodes).
+	 */
+	public void removeEdge(Edge edge) {
+		EdgeEntry entry = edgeEntries.remove(edge);
+		if (entry == null) {
+			return;
+		}
+		entry.removed = true;
+		edgeHeap.remove(entry);
+		edgesChanged(edge.getNodeA());
+		edgesChanged(edge.getNodeB());
+	}
+
+	/**
+	 * Marks the lengths of all edges of a node as outdated after its pattern
+	 * has changed.
+	 */
+	public void patternChanged(Node node) {
+		invalidateEdgeLengthMax(node);
+		for (Edge edge : node.getEdges()) {
+			EdgeEntry entry = edgeEntries.get(edge);
+			if (entry != null && entry.lengthValid) {
+				entry.lengthValid = false;
+				addInvalidEdge(entry);
+			}
+			invalidateEdgeLengthMax((edge.getNodeA() == node) ? edge.getNodeB() : edge.getNodeA());
+		}
+		NodeEntry entry = nodeEntries.get(node);
+		if (entry != null) {
+			invalidateNearestDistance(entry);
+		}
+		nodeMoved(node);
+	}
+
+	void numSignalsChanged(Node node, long numSignalsOld) {
+		NodeEntry entry = nodeEntries.get(node);
+		if (entry == null) {
+			return;
+		}
+		numSignalsSum += node.getNumSignals() - numSignalsOld;
+		numSignalsHeap.update(entry);
+		if (entry.degree >= 0) {
+			degreeHeaps.get(entry.degree).update(entry);
+		}
+	}
+
+	void errorChanged(Node node) {
+		NodeEntry entry = nodeEntries.get(node);
+		if (entry == null) {
+			return;
+		}
+		errorHeap.update(entry);
+	}
+
+	public long getNumSignalsSum() {
+		return numSignalsSum;
+	}
+
+	/**
+	 * Returns the edge with the maximum length (the first registered one in
+	 * case of ties).
+	 */
+	public Edge getLongestEdge() {
+		for (EdgeEntry entry : invalidEdges) {
+			entry.queued = false;
+			if (!entry.removed && !entry.lengthValid) {
+				validateEdge(entry);
+			}
+		}
+		invalidEdges.clear();
+		EdgeEntry entry = edgeHeap.peek();
+		return (entry != null) ? entry.edge : null;
+	}
+
+	/**
+	 * Returns the length of the given edge as of the last call of
+	 * getLongestEdge().
+	 */
+	public double getLength(Edge edge) {
+		return edgeEntries.get(edge).length;
+	}
+
+	/**
+	 * Returns the maximum length of the edges of a node (Double.MIN_VALUE if
+	 * there is no edge longer than that).
+	 */
+	public double getEdgeLengthMax(Node node) {
+		NodeEntry nodeEntry = nodeEntries.get(node);
+		if (nodeEntry.edgeLengthMaxValid) {
+			return nodeEntry.edgeLengthMax;
+		}
+		double edgeLengthMax = Double.MIN_VALUE;
+		for (Edge edge : node.getEdges()) {
+			EdgeEntry entry = edgeEntries.get(edge);
+			if (!entry.lengthValid) {
+				validateEdge(entry);
+			}
+			if (entry.length > edgeLengthMax) {
+				edgeLengthMax = entry.length;
+			}
+		}
+		nodeEntry.edgeLengthMax = edgeLengthMax;
+		nodeEntry.edgeLengthMaxValid = true;
+		return edgeLengthMax;
+	}
+
+	/**
+	 * Returns the cached distance of an isolated node to its nearest node, or
+	 * NaN if it is not cached.
+	 */
+	public double getNearestDistance(Node node) {
+		NodeEntry entry = nodeEntries.get(node);
+		if (!entry.nearestDistanceValid) {
+			return Double.NaN;
+		}
+		return entry.nearestDistance;
+	}
+
+	/**
+	 * Caches the distance of an isolated node to its nearest node (null and
+	 * Double.MAX_VALUE if there is no other node).
+	 */
+	public void setNearestDistance(Node node, Node nearestNode, double nearestDistance) {
+		NodeEntry entry = nodeEntries.get(node);
+		entry.nearestNode = nearestNode;
+		entry.nearestDistance = nearestDistance;
+		entry.nearestDistanceValid = true;
+		nearestEntries.add(entry);
+	}
+
+	/**
+	 * Updates the cached nearest distances after a node has been added or
+	 * moved: the distance of isolated nodes having it as nearest node may have
+	 * grown, and it may have become the nearest node of other isolated nodes.
+	 */
+	private void nodeMoved(Node node) {
+		Iterator<NodeEntry> iterator = nearestEntries.iterator();
+		while (iterator.hasNext()) {
+			NodeEntry entry = iterator.next();
+			if (entry.nearestNode == node) {
+				entry.nearestDistanceValid = false;
+				iterator.remove();
+				continue;
+			}
+			double distance = distance(entry.node, node);
+			if (distance < entry.nearestDistance) {
+				entry.nearestNode = node;
+				entry.nearestDistance = distance;
+			}
+		}
+	}
+
+	private void invalidateNearestDistance(NodeEntry entry) {
+		if (entry.nearestDistanceValid) {
+			entry.nearestDistanceValid = false;
+			nearestEntries.remove(entry);
+		}
+	}
+
+	/**
+	 * Computes the distance between the patterns of two nodes in the
+	 * summation order of the node index.
+	 */
+	private double distance(Node nodeA, Node nodeB) {
+		double sum = 0.0;
+		double difference;
+
+		for (int i = 0; i < inputDim; i++) {
+			difference = nodeA.getPatternValue(i) - nodeB.getPatternValue(i);
+			sum += difference * difference;
+		}
+
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Returns the node with the minimum number of signals (the first
+	 * registered one in case of ties).
+	 */
+	public Node getNodeNumSignalsMin() {
+		NodeEntry entry = numSignalsHeap.peek();
+		return (entry != null) ? entry.node : null;
+	}
+
+	/**
+	 * Returns the node with the maximum error (the first registered one in
+	 * case of ties).
+	 */
+	public Node getNodeErrorMax() {
+		NodeEntry entry = errorHeap.peek();
+		return (entry != null) ? entry.node : null;
+	}
+
+	/**
+	 * Returns all nodes with the given number of neighbours and a number of
+	 * signals below the given bound, in order of registration.
+	 */
+	public ArrayList<Node> getNodes(int degree, double numSignalsBound) {
+		IndexedHeap<NodeEntry> degreeHeap = degreeHeaps.get(degree);
+
+		// collect entries below bound (children can only be below bound if their parent is)
+		ArrayList<NodeEntry> entries = new ArrayList<NodeEntry>();
+		ArrayList<Integer> stack = new ArrayList<Integer>();
+		if (!degreeHeap.isEmpty()) {
+			stack.add(0);
+		}
+		while (!stack.isEmpty()) {
+			int index = stack.remove(stack.size() - 1);
+			NodeEntry entry = degreeHeap.get(index);
+			if (entry.node.getNumSignals() < numSignalsBound) {
+				entries.add(entry);
+				if (2 * index + 1 < degreeHeap.size()) {
+					stack.add(2 * index + 1);
+				}
+				if (2 * index + 2 < degreeHeap.size()) {
+					stack.add(2 * index + 2);
+				}
+			}
+		}
+
+		// sort by registration
+		Collections.sort(entries, SEQUENCE_COMPARATOR);
+		ArrayList<Node> nodes = new ArrayList<Node>(entries.size());
+		for (NodeEntry entry : entries) {
+			nodes.add(entry.node);
+		}
+		return nodes;
+	}
+
+	private void addInvalidEdge(EdgeEntry entry) {
+		if (entry.queued) {
+			return;
+		}
+		entry.queued = true;
+		invalidEdges.add(entry);
+
+		// drop removed and meanwhile validated edges if the longest edge is not requested for a long time
+		if (invalidEdges.size() > 2 * edgeEntries.size() + 64) {
+			ArrayList<EdgeEntry> invalidEdgesKept = new ArrayList<EdgeEntry>();
+			for (EdgeEntry invalidEdge : invalidEdges) {
+				if (!invalidEdge.removed && !invalidEdge.lengthValid) {
+					invalidEdgesKept.add(invalidEdge);
+				} else {
+					invalidEdge.queued = false;
+				}
+			}
+			invalidEdges = invalidEdgesKept;
+		}
+	}
+
+	private void validateEdge(EdgeEntry entry) {
+		entry.length = computeDistance(entry.edge.getNodeA(), entry.edge.getNodeB());
+		entry.lengthValid = true;
+		if (entry.index < 0) {
+			edgeHeap.add(entry);
+		} else {
+			edgeHeap.update(entry);
+		}
+	}
+
+	private void invalidateEdgeLengthMax(Node node) {
+		NodeEntry entry = nodeEntries.get(node);
+		if (entry != null) {
+			entry.edgeLengthMaxValid = false;
+		}
+	}
+
+	/**
+	 * Updates the degree and the maximum edge length of a node after an edge
+	 * has been added or removed.
+	 */
+	private void edgesChanged(Node node) {
+		NodeEntry entry = nodeEntries.get(node);
+		if (entry != null) {
+			updateDegree(entry);
+			entry.edgeLengthMaxValid = false;
+			invalidateNearestDistance(entry);
+		}
+	}
+
+	/**
+	 * Moves a node to the heap for its current number of neighbours.
+	 */
+	private void updateDegree(NodeEntry entry) {
+		int degree = entry.node.getNumNeighbours();
+		if (degree > DEGREE_MAX) {
+			degree = -1;
+		}
+		if (degree == entry.degree) {
+			return;
+		}
+		if (entry.degree >= 0) {
+			degreeHeaps.get(entry.degree).remove(entry);
+		}
+		entry.degree = degree;
+		if (degree >= 0) {
+			degreeHeaps.get(degree).add(entry);
+		}
+	}
+
+	private double computeDistance(Node A, Node B) {
+		double sum = 0.0;
+		double difference;
+
+		for (int i = 0; i < inputDim; i++) {
+			difference = A.getPatternValue(i) - B.getPatternValue(i);
+			sum += difference * difference;
+		}
+
+		return Math.sqrt(sum);
+	}
+
+}
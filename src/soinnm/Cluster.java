@@ -1,20 +1,30 @@
 package soinnm;
 
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 
 import soinnm.Node;
 
 /**
  * Class for a cluster in the topology.
  * <p>
- * A cluster stores an id to identify it, holds a list of nodes that belong to
+ * A cluster stores an id to identify it, holds a set of nodes that belong to
  * this clusters, a real-valued mean vector, a real-valued weighted mean vector
  * and a real-valued prototype vector.
  * <p>
  * Provides methods for computing the mean, weighted mean and prototype, and for
  * retrieving the prototype node by either lowest accummulated error or by the
- * highest number of signals.
+ * highest number of signals. Provides a method for computing the average
+ * distance between the nodes of this cluster, which is cached until it is
+ * unset.
+ * <p>
+ * The mean, weighted mean and variance are computed from running sums, which
+ * are updated by the topology whenever nodes are added, removed or changed.
+ * Minimum, maximum and prototype node are kept as well and only recomputed
+ * once the node holding an extreme value is removed or changed. The running
+ * sums are recomputed from all nodes after a number of updates to limit the
+ * accumulation of rounding errors.
  * <p>
  * Provides a method for retrieving the label by majority vote.
  * 
@@ -23,30 +33,73 @@ import soinnm.Node;
  */
 public class Cluster {
 
+	private static final int RECOMPUTE_DELTAS_MIN = 1024; // minimum number of deltas before statistics are recomputed
+
 	private long id;
 
-	private LinkedList<Node> nodes;
+	private LinkedHashSet<Node> nodes;
+
+	private int inputDim;
+
+	private double[] patternSum;
+
+	private double[] weightedPatternSum; // patterns weighted by number of signals
+
+	private double[] squaredPatternSum;
+
+	private long numSignalsSum;
+
+	private double[] min;
+
+	private double[] max;
+
+	private boolean minMaxSet;
+
+	private Node prototypeNode;
+
+	private boolean prototypeNodeSet;
+
+	private int numDeltas; // number of deltas since statistics have been recomputed
 
 	private double[] mean;
 
 	private double[] weightedMean;
 
-	private double[] prototype;
+	private double averageNodeDistance;
+
+	private boolean averageNodeDistanceSet;
 
 	private static enum PROTOTYPE_METHOD {
 		BY_NUM_SIGNALS, BY_ERROR
 	};
 
+	private long modificationCount; // incremented whenever nodes or their patterns change
+
 	private PROTOTYPE_METHOD prototypeMethod = PROTOTYPE_METHOD.BY_NUM_SIGNALS;
 
-	public Cluster(long id, LinkedList<Node> nodes) {
+	public Cluster(long id, Collection<Node> nodes) {
 
 		// set id
 		this.id = id;
 
 		// set nodes
-		this.nodes = nodes;
+		this.nodes = new LinkedHashSet<Node>(nodes);
+
+		// compute statistics
+		recomputeStatistics();
+
+	}
 
+	/**
+	 * Creates a copy of the given cluster with the given nodes (copies of its
+	 * nodes). The statistics are computed when they are needed.
+	 */
+	Cluster(Cluster cluster, Collection<Node> nodes) {
+		id = cluster.id;
+		this.nodes = new LinkedHashSet<Node>(nodes);
+		inputDim = cluster.inputDim;
+		prototypeMethod = cluster.prototypeMethod;
+		modificationCount = cluster.modificationCount;
 	}
 
 	public long getId() {
@@ -57,12 +110,208 @@ public class Cluster {
 		this.id = id;
 	}
 
-	public LinkedList<Node> getNodes() {
+	public LinkedHashSet<Node> getNodes() {
 		return nodes;
 	}
 
-	public void setNodes(LinkedList<Node> nodes) {
-		this.nodes = nodes;
+	public void setNodes(Collection<Node> nodes) {
+		this.nodes = new LinkedHashSet<Node>(nodes);
+		recomputeStatistics();
+	}
+
+	/**
+	 * Recomputes all running sums from the nodes of this cluster. Needs to be
+	 * called if the nodes have been changed without notifying this cluster.
+	 */
+	public void recomputeStatistics() {
+		inputDim = (nodes.size() > 0) ? nodes.iterator().next().getPatternLength() : 0;
+		patternSum = new double[inputDim];
+		weightedPatternSum = new double[inputDim];
+		squaredPatternSum = new double[inputDim];
+		numSignalsSum = 0;
+		double value;
+		long numSignals;
+		for (Node node : nodes) {
+			numSignals = node.getNumSignals();
+			for (int i = 0; i < inputDim; i++) {
+				value = node.getPatternValue(i);
+				patternSum[i] += value;
+				weightedPatternSum[i] += value * numSignals;
+				squaredPatternSum[i] += value * value;
+			}
+			numSignalsSum += numSignals;
+		}
+		numDeltas = 0;
+		minMaxSet = false;
+		prototypeNodeSet = false;
+		modificationCount++;
+		mean = null;
+		weightedMean = null;
+		averageNodeDistanceSet = false;
+	}
+
+	long getModificationCount() {
+		return modificationCount;
+	}
+
+	private void checkStatistics() {
+		if (patternSum == null) {
+			// copy of a cluster
+			recomputeStatistics();
+		} else if (numDeltas >= Math.max(RECOMPUTE_DELTAS_MIN, nodes.size())) {
+			// limit accumulation of rounding errors
+			recomputeStatistics();
+		}
+	}
+
+	void addNode(Node node) {
+		if (nodes.add(node)) {
+			modificationCount++;
+			if (nodes.size() == 1) {
+				recomputeStatistics();
+				return;
+			}
+			addPattern(node);
+			numSignalsSum += node.getNumSignals();
+			if (prototypeNodeSet && isBetterPrototype(node, prototypeNode)) {
+				prototypeNode = node;
+			}
+		}
+	}
+
+	void addNodes(Collection<Node> nodes) {
+		for (Node node : nodes) {
+			addNode(node);
+		}
+	}
+
+	void removeNode(Node node) {
+		if (nodes.remove(node)) {
+			modificationCount++;
+			if (nodes.isEmpty()) {
+				recomputeStatistics();
+				return;
+			}
+			removePattern(node);
+			numSignalsSum -= node.getNumSignals();
+			if (node == prototypeNode) {
+				prototypeNodeSet = false;
+			}
+		}
+	}
+
+	void removeNodes(Collection<Node> nodes) {
+		for (Node node : nodes) {
+			removeNode(node);
+		}
+	}
+
+	/**
+	 * Adds the pattern of a node to the running sums. Is called after the
+	 * pattern of a node of this cluster has been changed.
+	 */
+	void addPattern(Node node) {
+		double value;
+		long numSignals = node.getNumSignals();
+		for (int i = 0; i < inputDim; i++) {
+			value = node.getPatternValue(i);
+			patternSum[i] += value;
+			weightedPatternSum[i] += value * numSignals;
+			squaredPatternSum[i] += value * value;
+			if (minMaxSet) {
+				if (value < min[i]) {
+					min[i] = value;
+				}
+				if (value > max[i]) {
+					max[i] = value;
+				}
+			}
+		}
+		modificationCount++;
+		mean = null;
+		weightedMean = null;
+		averageNodeDistanceSet = false;
+	}
+
+	/**
+	 * Removes the pattern of a node from the running sums. Is called before the
+	 * pattern of a node of this cluster is changed.
+	 */
+	void removePattern(Node node) {
+		double value;
+		long numSignals = node.getNumSignals();
+		for (int i = 0; i < inputDim; i++) {
+			value = node.getPatternValue(i);
+			patternSum[i] -= value;
+			weightedPatternSum[i] -= value * numSignals;
+			squaredPatternSum[i] -= value * value;
+			// minimum and maximum are recomputed if an extreme value is removed
+			if (minMaxSet && (value <= min[i] || value >= max[i])) {
+				minMaxSet = false;
+			}
+		}
+		numDeltas++;
+		modificationCount++;
+		mean = null;
+		weightedMean = null;
+		averageNodeDistanceSet = false;
+	}
+
+	/**
+	 * Updates the running sums after the number of signals of a node of this
+	 * cluster has been changed.
+	 */
+	void numSignalsChanged(Node node, long numSignalsOld) {
+		long numSignals = node.getNumSignals();
+		long numSignalsDelta = numSignals - numSignalsOld;
+		for (int i = 0; i < inputDim; i++) {
+			weightedPatternSum[i] += node.getPatternValue(i) * numSignalsDelta;
+		}
+		numSignalsSum += numSignalsDelta;
+		numDeltas++;
+		weightedMean = null;
+		if (prototypeMethod == PROTOTYPE_METHOD.BY_NUM_SIGNALS) {
+			prototypeChanged(node, numSignals < numSignalsOld);
+		}
+	}
+
+	/**
+	 * Updates the prototype node after the error of a node of this cluster has
+	 * been changed.
+	 */
+	void errorChanged(Node node, double errorOld) {
+		if (prototypeMethod == PROTOTYPE_METHOD.BY_ERROR) {
+			prototypeChanged(node, node.getError() > errorOld);
+		}
+	}
+
+	private void prototypeChanged(Node node, boolean worse) {
+		if (!prototypeNodeSet) {
+			return;
+		}
+		if (node == prototypeNode) {
+			if (worse) {
+				prototypeNodeSet = false;
+			}
+		} else if (isBetterPrototype(node, prototypeNode)) {
+			prototypeNode = node;
+		} else if (!isBetterPrototype(prototypeNode, node)) {
+			// ties are resolved by the order of the nodes
+			prototypeNodeSet = false;
+		}
+	}
+
+	private boolean isBetterPrototype(Node node, Node nodeOther) {
+		if (nodeOther == null) {
+			return true;
+		}
+		switch (prototypeMethod) {
+		case BY_NUM_SIGNALS:
+			return node.getNumSignals() > nodeOther.getNumSignals();
+		case BY_ERROR:
+			return node.getError() < nodeOther.getError();
+		}
+		return false;
 	}
 
 	public double[] getMean() {
@@ -73,19 +322,11 @@ public class Cluster {
 	}
 
 	public void computeMean() {
+		checkStatistics();
 		if (nodes.size() > 0) {
-			int inputDim = nodes.getFirst().getPattern().length;
-			double[] sum = new double[inputDim];
-			double[] pattern;
-			for (Node node : nodes) {
-				pattern = node.getPattern();
-				for (int i = 0; i < inputDim; i++) {
-					sum[i] += pattern[i];
-				}
-			}
 			double[] mean = new double[inputDim];
 			for (int i = 0; i < inputDim; i++) {
-				mean[i] = sum[i] / nodes.size();
+				mean[i] = patternSum[i] / nodes.size();
 			}
 			this.mean = mean;
 		} else {
@@ -99,25 +340,12 @@ public class Cluster {
 
 	public double[] getVariance() {
 		if (nodes.size() > 0) {
-			// initialise
-			int inputDim = nodes.getFirst().getPattern().length;
-			double[] sum = new double[inputDim];
-			double[] pattern;
-			// calculate mean
-			double[] mean = getMean();
-			// calculate variance
-			for (int i = 0; i < inputDim; i++) {
-				sum[i] = 0;
-			}
-			for (Node node : nodes) {
-				pattern = node.getPattern();
-				for (int i = 0; i < inputDim; i++) {
-					sum[i] += (pattern[i] - mean[i]) * (pattern[i] - mean[i]);
-				}
-			}
+			checkStatistics();
 			double[] var = new double[inputDim];
+			double mean;
 			for (int i = 0; i < inputDim; i++) {
-				var[i] = sum[i] / nodes.size();
+				mean = patternSum[i] / nodes.size();
+				var[i] = Math.max(squaredPatternSum[i] / nodes.size() - mean * mean, 0.0);
 			}
 			return var;
 		}
@@ -126,44 +354,82 @@ public class Cluster {
 
 	public double[] getMin() {
 		if (nodes.size() > 0) {
-			int inputDim = nodes.getFirst().getPattern().length;
-			double[] min = new double[inputDim];
-			for (int i = 0; i < inputDim; i++) {
-				min[i] = Double.MAX_VALUE;
+			if (!minMaxSet) {
+				computeMinMax();
 			}
-			double[] pattern;
-			for (Node node : nodes) {
-				pattern = node.getPattern();
-				for (int i = 0; i < inputDim; i++) {
-					if (pattern[i] < min[i]) {
-						min[i] = pattern[i];
-					}
-				}
-			}
-			return min;
+			return min.clone();
 		}
 		return null;
 	}
 
 	public double[] getMax() {
 		if (nodes.size() > 0) {
-			int inputDim = nodes.getFirst().getPattern().length;
-			double[] max = new double[inputDim];
+			if (!minMaxSet) {
+				computeMinMax();
+			}
+			return max.clone();
+		}
+		return null;
+	}
+
+	private void computeMinMax() {
+		min = new double[inputDim];
+		max = new double[inputDim];
+		for (int i = 0; i < inputDim; i++) {
+			min[i] = Double.MAX_VALUE;
+			max[i] = Double.MIN_VALUE;
+		}
+		double value;
+		for (Node node : nodes) {
 			for (int i = 0; i < inputDim; i++) {
-				max[i] = Double.MIN_VALUE;
+				value = node.getPatternValue(i);
+				if (value < min[i]) {
+					min[i] = value;
+				}
+				if (value > max[i]) {
+					max[i] = value;
+				}
 			}
-			double[] pattern;
-			for (Node node : nodes) {
-				pattern = node.getPattern();
-				for (int i = 0; i < inputDim; i++) {
-					if (pattern[i] > max[i]) {
-						max[i] = pattern[i];
-					}
+		}
+		minMaxSet = true;
+	}
+
+	public double getAverageNodeDistance() {
+		if (!averageNodeDistanceSet) {
+			computeAverageNodeDistance();
+		}
+		return averageNodeDistance;
+	}
+
+	public void computeAverageNodeDistance() {
+		double distanceSum = 0.0;
+		int distanceCount = 0;
+		for (Node nodeA : nodes) {
+			for (Node nodeB : nodes) {
+				if (nodeA != nodeB) {
+					distanceSum += euclideanDistance(nodeA, nodeB);
+					distanceCount += 1;
 				}
 			}
-			return max;
 		}
-		return null;
+		averageNodeDistance = distanceSum / distanceCount;
+		averageNodeDistanceSet = true;
+	}
+
+	public void unsetAverageNodeDistance() {
+		averageNodeDistanceSet = false;
+	}
+
+	private double euclideanDistance(Node A, Node B) {
+		double sum = 0.0;
+		double difference;
+
+		for (int i = 0; i < inputDim; i++) {
+			difference = A.getPatternValue(i) - B.getPatternValue(i);
+			sum += difference * difference;
+		}
+
+		return Math.sqrt(sum);
 	}
 
 	public double[] getWeightedMean() {
@@ -174,23 +440,11 @@ public class Cluster {
 	}
 
 	public void computeWeightedMean() {
+		checkStatistics();
 		if (nodes.size() > 0) {
-			int inputDim = nodes.getFirst().getPattern().length;
-			double[] patternSum = new double[inputDim];
-			double[] pattern;
-			long numSignalsSum = 0;
-			long numSignals;
-			for (Node node : nodes) {
-				pattern = node.getPattern();
-				numSignals = node.getNumSignals();
-				for (int i = 0; i < inputDim; i++) {
-					patternSum[i] += pattern[i] * numSignals;
-				}
-				numSignalsSum += numSignals;
-			}
 			double[] mean = new double[inputDim];
 			for (int i = 0; i < inputDim; i++) {
-				mean[i] = patternSum[i] / numSignalsSum;
+				mean[i] = weightedPatternSum[i] / numSignalsSum;
 			}
 			this.weightedMean = mean;
 		} else {
@@ -203,33 +457,34 @@ public class Cluster {
 	}
 
 	public double[] getPrototype() {
-		if (prototype == null) {
-			computePrototype();
+		Node node = getPrototypeNode();
+		if (node != null) {
+			return node.getPattern();
 		}
-		return prototype;
+		return null;
 	}
 
 	public void computePrototype() {
-		Node node = getPrototypeNode();
-		if (node != null) {
-			prototype = node.getPattern();
-		} else {
-			prototype = null;
+		switch (prototypeMethod) {
+		case BY_NUM_SIGNALS:
+			prototypeNode = getPrototypeNodeByNumSignals();
+			break;
+		case BY_ERROR:
+			prototypeNode = getPrototypeNodeByError();
+			break;
 		}
+		prototypeNodeSet = true;
 	}
 
 	public void unsetPrototype() {
-		prototype = null;
+		prototypeNodeSet = false;
 	}
 
 	public Node getPrototypeNode() {
-		switch (prototypeMethod) {
-		case BY_NUM_SIGNALS:
-			return getPrototypeNodeByNumSignals();
-		case BY_ERROR:
-			return getPrototypeNodeByError();
+		if (!prototypeNodeSet) {
+			computePrototype();
 		}
-		return null;
+		return prototypeNode;
 	}
 
 	private Node getPrototypeNodeByNumSignals() {
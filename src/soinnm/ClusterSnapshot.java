@@ -0,0 +1,54 @@
+package soinnm;
+
+/**
+ * Class for an immutable copy of a cluster, as part of a topology snapshot.
+ * Holds the id, the mean and the ids of the nodes of the cluster.
+ * <p>
+ * The returned arrays must not be modified.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class ClusterSnapshot {
+
+	private final long id;
+
+	private final double[] mean;
+
+	private final long[] nodeIds;
+
+	private final long modificationCount; // of the cluster when the snapshot was taken
+
+	ClusterSnapshot(Cluster cluster) {
+		id = cluster.getId();
+		double[] mean = cluster.getMean();
+		this.mean = (mean != null) ? mean.clone() : null;
+		nodeIds = new long[cluster.getNodes().size()];
+		int n = 0;
+		for (Node node : cluster.getNodes()) {
+			nodeIds[n++] = node.getId();
+		}
+		modificationCount = cluster.getModificationCount();
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public double[] getMean() {
+		return mean;
+	}
+
+	public int getNumNodes() {
+		return nodeIds.length;
+	}
+
+	public long[] getNodeIds() {
+		return nodeIds;
+	}
+
+	long getModificationCount() {
+		return modificationCount;
+	}
+
+}
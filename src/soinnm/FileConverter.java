@@ -0,0 +1,58 @@
+package soinnm;
+
+/**
+ * Class for converting topology states of M-SOINN between the XML format and
+ * the binary format.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class FileConverter {
+
+	public void convertXMLToBinary(String filenameXML, String filenameBinary) {
+		XMLReader xmlReader = new XMLReader();
+		int inputDim = xmlReader.readInputDim(filenameXML);
+		if (inputDim < 0) {
+			System.err.println("Cannot read input dimensionality!");
+			return;
+		}
+		SOINNM soinnm = new SOINNM(inputDim);
+		if (!xmlReader.readFromFile(filenameXML, soinnm)) {
+			System.err.println("Cannot read XML file!");
+			return;
+		}
+		BinaryWriter binaryWriter = new BinaryWriter();
+		binaryWriter.writeToFile(soinnm, filenameBinary);
+	}
+
+	public void convertBinaryToXML(String filenameBinary, String filenameXML) {
+		BinaryTopologyFile topologyFile = BinaryTopologyFile.open(filenameBinary);
+		if (topologyFile == null) {
+			return;
+		}
+		int inputDim = topologyFile.getInputDim();
+		topologyFile.close();
+		SOINNM soinnm = new SOINNM(inputDim);
+		BinaryReader binaryReader = new BinaryReader();
+		if (!binaryReader.readFromFile(filenameBinary, soinnm)) {
+			System.err.println("Cannot read binary file!");
+			return;
+		}
+		XMLWriter xmlWriter = new XMLWriter();
+		xmlWriter.writeToFile(soinnm, filenameXML);
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 3 || !(args[0].equals("xml2bin") || args[0].equals("bin2xml"))) {
+			System.err.println("Usage: FileConverter xml2bin|bin2xml <input file> <output file>");
+			return;
+		}
+		FileConverter fileConverter = new FileConverter();
+		if (args[0].equals("xml2bin")) {
+			fileConverter.convertXMLToBinary(args[1], args[2]);
+		} else {
+			fileConverter.convertBinaryToXML(args[1], args[2]);
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+package soinnm;
+
+import java.util.ArrayList;
+
+/**
+ * Class for a binary heap that stores the position of each element, so that
+ * arbitrary elements can be removed or moved after their key has changed in
+ * logarithmic time.
+ * <p>
+ * Subclasses define the order of elements and where the position of an element
+ * is stored (-1 if the element is not contained).
+ *
+ * @author Matthias Keysermann
+ *
+ */
+abstract class IndexedHeap<T> {
+
+	private ArrayList<T> elements;
+
+	public IndexedHeap() {
+		elements = new ArrayList<T>();
+	}
+
+	/**
+	 * Returns true if element A has to be placed before element B.
+	 */
+	protected abstract boolean isBefore(T A, T B);
+
+	protected abstract int getIndex(T element);
+
+	protected abstract void setIndex(T element, int index);
+
+	public int size() {
+		return elements.size();
+	}
+
+	public boolean isEmpty() {
+		return elements.isEmpty();
+	}
+
+	public T peek() {
+		if (elements.isEmpty()) {
+			return null;
+		}
+		return elements.get(0);
+	}
+
+	/**
+	 * Returns the element at the given position. The children of position k
+	 * are at positions 2k+1 and 2k+2.
+	 */
+	public T get(int index) {
+		return elements.get(index);
+	}
+
+	public boolean contains(T element) {
+		return getIndex(element) >= 0;
+	}
+
+	public void add(T element) {
+		elements.add(element);
+		setIndex(element, elements.size() - 1);
+		moveUp(elements.size() - 1);
+	}
+
+	public void remove(T element) {
+		int index = getIndex(element);
+		if (index < 0) {
+			return;
+		}
+		setIndex(element, -1);
+		T last = elements.remove(elements.size() - 1);
+		if (index < elements.size()) {
+			elements.set(index, last);
+			setIndex(last, index);
+			update(last);
+		}
+	}
+
+	/**
+	 * Restores the order after the key of the given element has changed.
+	 */
+	public void update(T element) {
+		int index = getIndex(element);
+		if (index < 0) {
+			return;
+		}
+		if (index > 0 && isBefore(element, elements.get((index - 1) / 2))) {
+			moveUp(index);
+		} else {
+			moveDown(index);
+		}
+	}
+
+	public void clear() {
+		for (T element : elements) {
+			setIndex(element, -1);
+		}
+		elements.clear();
+	}
+
+	private void moveUp(int index) {
+		T element = elements.get(index);
+		while (index > 0) {
+			int parentIndex = (index - 1) / 2;
+			T parent = elements.get(parentIndex);
+			if (!isBefore(element, parent)) {
+				break;
+			}
+			elements.set(index, parent);
+			setIndex(parent, index);
+			index = parentIndex;
+		}
+		elements.set(index, element);
+		setIndex(element, index);
+	}
+
+	private void moveDown(int index) {
+		T element = elements.get(index);
+		int size = elements.size();
+		while (true) {
+			int childIndex = 2 * index + 1;
+			if (childIndex >= size) {
+				break;
+			}
+			if (childIndex + 1 < size && isBefore(elements.get(childIndex + 1), elements.get(childIndex))) {
+				childIndex++;
+			}
+			T child = elements.get(childIndex);
+			if (!isBefore(child, element)) {
+				break;
+			}
+			elements.set(index, child);
+			setIndex(child, index);
+			index = childIndex;
+		}
+		elements.set(index, element);
+		setIndex(element, index);
+	}
+
+}
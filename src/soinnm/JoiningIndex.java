@@ -0,0 +1,207 @@
+package soinnm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import soinnm.IndexedHeap;
+import soinnm.Node;
+import soinnm.NodeIndex;
+import soinnm.NodePair;
+
+/**
+ * Class for the nearest node of another cluster of each node, used by the
+ * cluster joining of M-SOINN, so that only nodes whose nearest node of another
+ * cluster may have changed are searched again.
+ * <p>
+ * A node is searched again after it has been added or moved, after its nearest
+ * node has been moved or removed, and after it has been split off into a new
+ * cluster. Every pair of nodes of different clusters that has come up since
+ * the last search of both nodes thus contains a node that is searched again.
+ * After clusters have been joined, the distance of a node to its former
+ * nearest node is a lower bound for the distance to its nearest node of
+ * another cluster, so such nodes are only searched again once they are
+ * returned as nearest pair.
+ * <p>
+ * The heap of pairs returns the pair with the minimum distance first. Ties are
+ * resolved by the lower id of the node, then by the lower id of its nearest
+ * node.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+class JoiningIndex {
+
+	private static class NodeEntry {
+		private Node node;
+		private Node nearestNode; // null if not searched or no node of another cluster
+		private double distance;
+		private HashSet<NodeEntry> referrers = new HashSet<NodeEntry>(); // entries having this node as nearest node
+		private boolean removed;
+		private boolean queued; // contained in the invalid entries
+		private int index = -1;
+	}
+
+	private HashMap<Node, NodeEntry> nodeEntries;
+
+	private IndexedHeap<NodeEntry> pairHeap; // minimum distance first
+
+	private ArrayList<NodeEntry> invalidEntries; // nodes to be searched again
+
+	private double[] patternBuffer; // for decoding patterns
+
+	private Node[] nearestNodes;
+
+	private double[] nearestDistances;
+
+	public JoiningIndex(int inputDim) {
+		nodeEntries = new HashMap<Node, NodeEntry>();
+		pairHeap = new IndexedHeap<NodeEntry>() {
+			@Override
+			protected boolean isBefore(NodeEntry A, NodeEntry B) {
+				if (A.distance != B.distance) {
+					return A.distance < B.distance;
+				}
+				if (A.node.getId() != B.node.getId()) {
+					return A.node.getId() < B.node.getId();
+				}
+				return A.nearestNode.getId() < B.nearestNode.getId();
+			}
+
+			@Override
+			protected int getIndex(NodeEntry entry) {
+				return entry.index;
+			}
+
+			@Override
+			protected void setIndex(NodeEntry entry, int index) {
+				entry.index = index;
+			}
+		};
+		invalidEntries = new ArrayList<NodeEntry>();
+		patternBuffer = new double[inputDim];
+		nearestNodes = new Node[1];
+		nearestDistances = new double[1];
+	}
+
+	public void clear() {
+		nodeEntries.clear();
+		pairHeap.clear();
+		invalidEntries.clear();
+	}
+
+	public void addNode(Node node) {
+		NodeEntry entry = new NodeEntry();
+		entry.node = node;
+		nodeEntries.put(node, entry);
+		addInvalidEntry(entry);
+	}
+
+	public void removeNode(Node node) {
+		NodeEntry entry = nodeEntries.remove(node);
+		if (entry == null) {
+			return;
+		}
+		entry.removed = true;
+		setNearestNode(entry, null, 0.0);
+		invalidateReferrers(entry);
+	}
+
+	/**
+	 * Marks a node and the nodes having it as nearest node for searching
+	 * again after its pattern has changed.
+	 */
+	public void patternChanged(Node node) {
+		NodeEntry entry = nodeEntries.get(node);
+		if (entry == null) {
+			return;
+		}
+		addInvalidEntry(entry);
+		invalidateReferrers(entry);
+	}
+
+	/**
+	 * Marks the nodes that have been split off into a new cluster for
+	 * searching again.
+	 */
+	public void clusterSplit(Collection<Node> nodes) {
+		for (Node node : nodes) {
+			NodeEntry entry = nodeEntries.get(node);
+			if (entry != null) {
+				addInvalidEntry(entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns the pair of nodes of different clusters with the minimum
+	 * distance (null if all nodes belong to the same cluster).
+	 */
+	public NodePair getNearestPair(NodeIndex nodeIndex) {
+
+		// search nodes again
+		for (NodeEntry entry : invalidEntries) {
+			entry.queued = false;
+			if (!entry.removed) {
+				search(entry, nodeIndex);
+			}
+		}
+		invalidEntries.clear();
+
+		while (!pairHeap.isEmpty()) {
+			NodeEntry entry = pairHeap.peek();
+			if (entry.node.getCluster() != entry.nearestNode.getCluster()) {
+				return new NodePair(entry.node, entry.nearestNode, entry.distance);
+			}
+			// clusters have been joined
+			search(entry, nodeIndex);
+		}
+
+		return null;
+	}
+
+	private void search(NodeEntry entry, NodeIndex nodeIndex) {
+		if (nodeIndex.findNearest(entry.node.getPattern(patternBuffer), entry.node.getCluster(), nearestNodes, nearestDistances) == 0) {
+			setNearestNode(entry, null, 0.0);
+		} else {
+			setNearestNode(entry, nearestNodes[0], nearestDistances[0]);
+		}
+		nearestNodes[0] = null;
+	}
+
+	private void setNearestNode(NodeEntry entry, Node nearestNode, double distance) {
+		if (entry.nearestNode != null) {
+			NodeEntry nearestEntry = nodeEntries.get(entry.nearestNode);
+			if (nearestEntry != null) {
+				nearestEntry.referrers.remove(entry);
+			}
+		}
+		entry.nearestNode = nearestNode;
+		entry.distance = distance;
+		if (nearestNode == null) {
+			pairHeap.remove(entry);
+			return;
+		}
+		nodeEntries.get(nearestNode).referrers.add(entry);
+		if (pairHeap.contains(entry)) {
+			pairHeap.update(entry);
+		} else {
+			pairHeap.add(entry);
+		}
+	}
+
+	private void invalidateReferrers(NodeEntry entry) {
+		for (NodeEntry referrer : entry.referrers) {
+			addInvalidEntry(referrer);
+		}
+	}
+
+	private void addInvalidEntry(NodeEntry entry) {
+		if (!entry.queued) {
+			entry.queued = true;
+			invalidEntries.add(entry);
+		}
+	}
+
+}
@@ -0,0 +1,1033 @@
+package soinnm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import soinnm.Edge;
+import soinnm.Node;
+import soinnm.SOINNM;
+
+/**
+ * Class for an append-only journal of the changes of a topology of M-SOINN.
+ * Together with a snapshot of the topology (see BinaryTopologyFile) the
+ * journal allows to recover the topology after a crash without saving the
+ * whole topology after each input.
+ * <p>
+ * Structural changes (nodes and edges added or removed, topology cleared) are
+ * recorded in order and replayed through the same operations of SOINNM, so
+ * clusters are recreated with the same ids. The state of changed nodes
+ * (pattern, threshold, error, number of signals, label), the age of changed
+ * edges and the variables are recorded once per group of inputs. A group is
+ * written with a checksum when commitInputs inputs have been processed or
+ * commitInterval milliseconds have passed (group commit), so a crash loses at
+ * most the last group. Parameters are only stored in snapshots.
+ * <p>
+ * When the journal grows larger than the snapshot (and at least
+ * compactionSizeMin bytes), it is compacted: a new, empty journal is started
+ * and a snapshot of a copy of the topology is written for it, in the
+ * background if an executor is given. Snapshot and journal of generation g
+ * are stored as "basename.g.bin" and "basename.g.journal". Recovery uses the
+ * latest complete snapshot together with the journal written after it and
+ * the journals continuing that journal, whose snapshots have not been written
+ * completely. Older generations are deleted once a snapshot has been moved
+ * into place and the directory has been forced to the storage device.
+ * <p>
+ * Journal layout (big endian): header (magic number, file version, input
+ * dimensionality, flags), followed by groups of records, each group
+ * terminated by a commit record with the variables, the length of the group
+ * and a checksum of the group and the commit record.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class Journal {
+
+	static final int MAGIC = 0x534F494A; // "SOIJ"
+
+	static final int FILE_VERSION = 2;
+
+	static final int HEADER_SIZE = 16;
+
+	private static final int FLAG_CONTINUED = 1; // journal continues the journal of the previous generation
+
+	private static final String FILE_EXTENSION_SNAPSHOT = ".bin";
+
+	private static final String FILE_EXTENSION_JOURNAL = ".journal";
+
+	private static final String FILE_EXTENSION_TEMPORARY = ".tmp";
+
+	// record types
+
+	private static final byte NODE_ADDED = 1; // id, pattern
+
+	private static final byte NODE_REMOVED = 2; // id
+
+	private static final byte EDGE_ADDED = 3; // id, node A id, node B id
+
+	private static final byte EDGE_REMOVED = 4; // id
+
+	private static final byte CLEARED = 5;
+
+	private static final byte NODE_STATE = 6; // id, threshold, error, number of signals, label length (-1 for no label), label
+
+	private static final byte NODE_PATTERN = 7; // id, pattern
+
+	private static final byte EDGE_AGE = 8; // id, age
+
+	private static final byte COMMIT = 9; // next node id, next edge id, next cluster id, number of inputs, group length, checksum
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private SOINNM soinnm;
+
+	private String basename;
+
+	private long generation;
+
+	private volatile long snapshotSize; // set when a snapshot has been written
+
+	private ExecutorService executor; // writes snapshots in the background (null to write them in the calling thread)
+
+	private Future<Boolean> snapshotWritten; // snapshot being written in the background (null if none)
+
+	private RandomAccessFile file;
+
+	private FileChannel channel;
+
+	private ByteBuffer buffer; // current group
+
+	private LinkedHashSet<Node> changedNodes; // nodes with changed state in current group
+
+	private LinkedHashSet<Node> movedNodes; // nodes with changed pattern in current group
+
+	private LinkedHashSet<Edge> changedEdges; // edges with changed age in current group
+
+	private int numInputsGroup; // inputs in current group
+
+	private long groupStart; // milliseconds
+
+	private CRC32 crc;
+
+	// parameters
+
+	private int commitInputs = 100; // commit after this number of inputs
+
+	private long commitInterval = 1000; // commit after this number of milliseconds
+
+	private boolean forceWrites = true; // force commits to the storage device
+
+	private long compactionSizeMin = 16 << 20; // minimum journal size for compaction (bytes)
+
+	/**
+	 * Recovers the topology from the latest snapshot and journal with the given
+	 * basename (if any) and starts journaling the changes of the topology.
+	 * Snapshots are written in the calling thread. Returns null if the journal
+	 * cannot be opened.
+	 */
+	public static Journal open(String basename, SOINNM soinnm) {
+		return open(basename, soinnm, null);
+	}
+
+	/**
+	 * Recovers the topology and starts journaling as open(basename, soinnm),
+	 * but writes snapshots with the given single-threaded executor, so the
+	 * topology can continue to learn meanwhile.
+	 */
+	public static Journal open(String basename, SOINNM soinnm, ExecutorService executor) {
+		Journal journal = new Journal(basename, soinnm);
+		journal.executor = executor;
+		try {
+			if (!journal.recover()) {
+				journal.closeFile();
+				return null;
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			journal.closeFile();
+			return null;
+		}
+		soinnm.setJournal(journal);
+		return journal;
+	}
+
+	private Journal(String basename, SOINNM soinnm) {
+		this.basename = new File(basename).getAbsolutePath();
+		this.soinnm = soinnm;
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		changedNodes = new LinkedHashSet<Node>();
+		movedNodes = new LinkedHashSet<Node>();
+		changedEdges = new LinkedHashSet<Edge>();
+		crc = new CRC32();
+	}
+
+	public String getBasename() {
+		return basename;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public int getCommitInputs() {
+		return commitInputs;
+	}
+
+	public void setCommitInputs(int commitInputs) {
+		this.commitInputs = commitInputs;
+	}
+
+	public long getCommitInterval() {
+		return commitInterval;
+	}
+
+	public void setCommitInterval(long commitInterval) {
+		this.commitInterval = commitInterval;
+	}
+
+	public boolean isForceWrites() {
+		return forceWrites;
+	}
+
+	public void setForceWrites(boolean forceWrites) {
+		this.forceWrites = forceWrites;
+	}
+
+	public long getCompactionSizeMin() {
+		return compactionSizeMin;
+	}
+
+	public void setCompactionSizeMin(long compactionSizeMin) {
+		this.compactionSizeMin = compactionSizeMin;
+	}
+
+	private File getSnapshotFile(long generation) {
+		return new File(basename + "." + generation + FILE_EXTENSION_SNAPSHOT);
+	}
+
+	private File getJournalFile(long generation) {
+		return new File(basename + "." + generation + FILE_EXTENSION_JOURNAL);
+	}
+
+	/**
+	 * Returns the generation of the latest snapshot (-1 if there is none)
+	 * and deletes older generations and temporary files if requested.
+	 */
+	private long findGeneration(boolean deleteOlder) {
+		File directory = new File(basename).getParentFile();
+		String prefix = new File(basename).getName() + ".";
+		long generationMax = -1;
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return generationMax;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(prefix) && name.endsWith(FILE_EXTENSION_SNAPSHOT)) {
+				try {
+					long generation = Long.parseLong(name.substring(prefix.length(), name.length() - FILE_EXTENSION_SNAPSHOT.length()));
+					generationMax = Math.max(generationMax, generation);
+				} catch (NumberFormatException e) {
+					// not a snapshot of this journal
+				}
+			}
+		}
+		if (deleteOlder) {
+			for (File file : files) {
+				String name = file.getName();
+				if (!name.startsWith(prefix)) {
+					continue;
+				}
+				if (name.endsWith(FILE_EXTENSION_TEMPORARY)) {
+					file.delete();
+					continue;
+				}
+				int end = name.lastIndexOf('.');
+				if (end <= prefix.length()) {
+					continue;
+				}
+				try {
+					long generation = Long.parseLong(name.substring(prefix.length(), end));
+					if (generation < generationMax) {
+						file.delete();
+					}
+				} catch (NumberFormatException e) {
+					// not a file of this journal
+				}
+			}
+		}
+		return generationMax;
+	}
+
+	// recovery
+
+	private boolean recover() throws Exception {
+
+		// find latest snapshot
+		generation = findGeneration(true);
+		if (generation < 0) {
+
+			// DEBUG
+			System.out.println("Starting journal \"" + basename + "\"...");
+
+			// start with current topology
+			generation = 0;
+			return startGeneration(false);
+		}
+
+		// DEBUG
+		System.out.println("Recovering from journal \"" + basename + "\" (generation " + generation + ")...");
+
+		// load snapshot
+		File snapshotFile = getSnapshotFile(generation);
+		BinaryTopologyFile topologyFile = BinaryTopologyFile.open(snapshotFile.getAbsolutePath());
+		if (topologyFile == null) {
+			return false;
+		}
+		int inputDim = topologyFile.getInputDim();
+		topologyFile.close();
+		if (inputDim != soinnm.getInputDim()) {
+			System.err.println("Wrong input dimensionality!");
+			return false;
+		}
+		BinaryReader binaryReader = new BinaryReader();
+		if (!binaryReader.readFromFile(snapshotFile.getAbsolutePath(), soinnm)) {
+			return false;
+		}
+		snapshotSize = snapshotFile.length();
+
+		// open journal
+		File journalFile = getJournalFile(generation);
+		if (!journalFile.exists()) {
+			return createJournalFile(journalFile, false);
+		}
+
+		// replay journal and the complete journals continuing it
+		long position;
+		while (true) {
+			file = new RandomAccessFile(journalFile, "rw");
+			channel = file.getChannel();
+			position = replay();
+			if (position < 0) {
+				return false;
+			}
+			File journalFileNext = getJournalFile(generation + 1);
+			if (position < channel.size() || !journalFileNext.exists() || !isContinued(journalFileNext)) {
+				break;
+			}
+			closeFile();
+			generation++;
+			journalFile = journalFileNext;
+		}
+
+		// delete later journals (not continuing the replayed journals)
+		for (long g = generation + 1; getJournalFile(g).exists(); g++) {
+			getJournalFile(g).delete();
+		}
+
+		// discard incomplete group
+		if (position < channel.size()) {
+
+			// DEBUG
+			System.out.println("Discarding " + (channel.size() - position) + " bytes of incomplete group...");
+
+			channel.truncate(position);
+		}
+		channel.position(position);
+
+		// rebuild auxiliary structures
+		soinnm.rebuild();
+		soinnm.replayFinished();
+
+		// DEBUG
+		System.out.println("Recovering from journal finished!");
+
+		return true;
+	}
+
+	/**
+	 * Replays all complete groups of the journal and returns the position
+	 * after the last complete group (-1 if the journal is not valid).
+	 */
+	private long replay() throws Exception {
+		long size = channel.size();
+		if (size < HEADER_SIZE) {
+			// journal has not been created completely
+			writeHeader(false);
+			return HEADER_SIZE;
+		}
+		if (size > Integer.MAX_VALUE) {
+			System.err.println("Journal is too large!");
+			return -1;
+		}
+		ByteBuffer journal = ByteBuffer.allocate((int) size);
+		channel.position(0);
+		while (journal.hasRemaining() && channel.read(journal) >= 0) {
+		}
+		journal.flip();
+		if (journal.getInt() != MAGIC) {
+			System.err.println("Wrong file format!");
+			return -1;
+		}
+		if (journal.getInt() != FILE_VERSION) {
+			System.err.println("Wrong file version!");
+			return -1;
+		}
+		if (journal.getInt() != soinnm.getInputDim()) {
+			System.err.println("Wrong input dimensionality!");
+			return -1;
+		}
+		journal.position(HEADER_SIZE);
+
+		// index nodes and edges by id
+		HashMap<Long, Node> nodeMap = new HashMap<Long, Node>();
+		for (Node node : soinnm.getNodeSet()) {
+			nodeMap.put(node.getId(), node);
+		}
+		HashMap<Long, Edge> edgeMap = new HashMap<Long, Edge>();
+		for (Edge edge : soinnm.getEdgeSet()) {
+			edgeMap.put(edge.getId(), edge);
+		}
+
+		// groups
+		long numGroups = 0;
+		int position = journal.position();
+		while (true) {
+			int end = scanGroup(journal, position);
+			if (end < 0) {
+				break;
+			}
+			if (!applyGroup(journal, position, end, nodeMap, edgeMap)) {
+				System.err.println("Journal does not match snapshot!");
+				return -1;
+			}
+			position = end;
+			numGroups++;
+		}
+
+		// DEBUG
+		System.out.println("Replayed " + numGroups + " groups of generation " + generation);
+
+		return position;
+	}
+
+	/**
+	 * Returns whether the given journal has a complete header and continues
+	 * the journal of the previous generation.
+	 */
+	private boolean isContinued(File journalFile) {
+		try {
+			RandomAccessFile journal = new RandomAccessFile(journalFile, "r");
+			try {
+				if (journal.length() < HEADER_SIZE) {
+					return false;
+				}
+				if (journal.readInt() != MAGIC || journal.readInt() != FILE_VERSION || journal.readInt() != soinnm.getInputDim()) {
+					return false;
+				}
+				return (journal.readInt() & FLAG_CONTINUED) != 0;
+			} finally {
+				journal.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Checks the group starting at the given position and returns the position
+	 * after its commit record (-1 if the group is incomplete or damaged).
+	 */
+	private int scanGroup(ByteBuffer journal, int start) {
+		int patternSize = soinnm.getInputDim() * 8;
+		journal.position(start);
+		try {
+			while (true) {
+				int position = journal.position();
+				byte type = journal.get();
+				switch (type) {
+				case NODE_ADDED:
+				case NODE_PATTERN:
+					skip(journal, 8 + patternSize);
+					break;
+				case NODE_REMOVED:
+				case EDGE_REMOVED:
+					skip(journal, 8);
+					break;
+				case EDGE_ADDED:
+					skip(journal, 24);
+					break;
+				case CLEARED:
+					break;
+				case NODE_STATE:
+					skip(journal, 32);
+					int labelLength = journal.getInt();
+					if (labelLength < -1) {
+						return -1;
+					}
+					skip(journal, Math.max(0, labelLength));
+					break;
+				case EDGE_AGE:
+					skip(journal, 16);
+					break;
+				case COMMIT:
+					skip(journal, 32);
+					int groupLength = journal.getInt();
+					int checksumPosition = journal.position();
+					int checksum = journal.getInt();
+					if (groupLength != position - start) {
+						return -1;
+					}
+
+					// checksum of records and commit record
+					crc.reset();
+					ByteBuffer group = journal.duplicate();
+					group.position(start);
+					group.limit(checksumPosition);
+					byte[] bytes = new byte[checksumPosition - start];
+					group.get(bytes);
+					crc.update(bytes, 0, bytes.length);
+					if ((int) crc.getValue() != checksum) {
+						return -1;
+					}
+					return journal.position();
+				default:
+					return -1;
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			return -1;
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	private void skip(ByteBuffer journal, int length) {
+		journal.position(journal.position() + length);
+	}
+
+	/**
+	 * Applies the records of a checked group to the topology. Returns false if
+	 * a record refers to an unknown node or edge.
+	 */
+	private boolean applyGroup(ByteBuffer journal, int start, int end, HashMap<Long, Node> nodeMap, HashMap<Long, Edge> edgeMap) {
+		journal.position(start);
+		while (journal.position() < end) {
+			byte type = journal.get();
+			switch (type) {
+			case NODE_ADDED: {
+				long id = journal.getLong();
+				Node node = soinnm.replayAddNode(id, readPattern(journal));
+				nodeMap.put(id, node);
+				break;
+			}
+			case NODE_REMOVED: {
+				Node node = nodeMap.remove(journal.getLong());
+				if (node == null) {
+					return false;
+				}
+				soinnm.replayRemoveNode(node);
+				break;
+			}
+			case EDGE_ADDED: {
+				long id = journal.getLong();
+				Node nodeA = nodeMap.get(journal.getLong());
+				Node nodeB = nodeMap.get(journal.getLong());
+				if (nodeA == null || nodeB == null) {
+					return false;
+				}
+				edgeMap.put(id, soinnm.replayAddEdge(id, nodeA, nodeB));
+				break;
+			}
+			case EDGE_REMOVED: {
+				Edge edge = edgeMap.remove(journal.getLong());
+				if (edge == null) {
+					return false;
+				}
+				soinnm.replayRemoveEdge(edge);
+				break;
+			}
+			case CLEARED: {
+				soinnm.clear();
+				nodeMap.clear();
+				edgeMap.clear();
+				break;
+			}
+			case NODE_STATE: {
+				Node node = nodeMap.get(journal.getLong());
+				if (node == null) {
+					return false;
+				}
+				node.setThreshold(journal.getDouble());
+				node.setError(journal.getDouble());
+				node.setNumSignals(journal.getLong());
+				int labelLength = journal.getInt();
+				if (labelLength < 0) {
+					node.setLabel(null);
+				} else {
+					byte[] bytes = new byte[labelLength];
+					journal.get(bytes);
+					node.setLabel(new String(bytes, BinaryTopologyFile.CHARSET));
+				}
+				break;
+			}
+			case NODE_PATTERN: {
+				Node node = nodeMap.get(journal.getLong());
+				if (node == null) {
+					return false;
+				}
+				soinnm.replayMoveNode(node, readPattern(journal));
+				break;
+			}
+			case EDGE_AGE: {
+				Edge edge = edgeMap.get(journal.getLong());
+				if (edge == null) {
+					return false;
+				}
+				edge.setAge(journal.getLong());
+				break;
+			}
+			case COMMIT: {
+				soinnm.setNextNodeId(journal.getLong());
+				soinnm.setNextEdgeId(journal.getLong());
+				soinnm.setNextClusterId(journal.getLong());
+				soinnm.setNumInputs(journal.getLong());
+				skip(journal, 8);
+				break;
+			}
+			}
+		}
+		return true;
+	}
+
+	private double[] readPattern(ByteBuffer journal) {
+		double[] pattern = new double[soinnm.getInputDim()];
+		journal.asDoubleBuffer().get(pattern);
+		skip(journal, pattern.length * 8);
+		return pattern;
+	}
+
+	// recording (called by SOINNM)
+
+	void nodeAdded(Node node) {
+		ensureRemaining(9 + soinnm.getInputDim() * 8);
+		buffer.put(NODE_ADDED);
+		buffer.putLong(node.getId());
+		writePattern(node.getPattern());
+		changedNodes.add(node);
+		movedNodes.remove(node);
+	}
+
+	void nodeRemoved(Node node) {
+		ensureRemaining(9);
+		buffer.put(NODE_REMOVED);
+		buffer.putLong(node.getId());
+		changedNodes.remove(node);
+		movedNodes.remove(node);
+	}
+
+	void nodeChanged(Node node) {
+		changedNodes.add(node);
+	}
+
+	void nodeMoved(Node node) {
+		changedNodes.add(node);
+		movedNodes.add(node);
+	}
+
+	void edgeAdded(Edge edge) {
+		ensureRemaining(25);
+		buffer.put(EDGE_ADDED);
+		buffer.putLong(edge.getId());
+		buffer.putLong(edge.getNodeA().getId());
+		buffer.putLong(edge.getNodeB().getId());
+	}
+
+	void edgeRemoved(Edge edge) {
+		ensureRemaining(9);
+		buffer.put(EDGE_REMOVED);
+		buffer.putLong(edge.getId());
+		changedEdges.remove(edge);
+	}
+
+	void edgeChanged(Edge edge) {
+		changedEdges.add(edge);
+	}
+
+	void cleared() {
+		ensureRemaining(1);
+		buffer.put(CLEARED);
+		changedNodes.clear();
+		movedNodes.clear();
+		changedEdges.clear();
+	}
+
+	/**
+	 * Called after the given number of inputs have been processed. Commits the
+	 * current group if it is large or old enough.
+	 */
+	void inputsProcessed(int numInputs) {
+		if (numInputsGroup == 0) {
+			groupStart = System.currentTimeMillis();
+		}
+		numInputsGroup += numInputs;
+		if (numInputsGroup >= commitInputs || System.currentTimeMillis() - groupStart >= commitInterval) {
+			commit();
+		}
+	}
+
+	/**
+	 * Called after the topology has been replaced as a whole (e.g. read from a
+	 * file), which cannot be expressed by records. The current group is
+	 * discarded and a new generation is started, which does not continue the
+	 * current journal.
+	 */
+	void topologyReplaced() {
+		startGeneration(false);
+	}
+
+	private void writePattern(double[] pattern) {
+		buffer.asDoubleBuffer().put(pattern);
+		buffer.position(buffer.position() + pattern.length * 8);
+	}
+
+	private void ensureRemaining(int size) {
+		if (buffer.remaining() < size) {
+			ByteBuffer bufferNew = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+			buffer.flip();
+			bufferNew.put(buffer);
+			buffer = bufferNew;
+		}
+	}
+
+	// commit
+
+	/**
+	 * Writes the current group to the journal and compacts the journal if it
+	 * has grown large enough. Returns false if writing failed.
+	 */
+	public boolean commit() {
+
+		// nothing to commit
+		if (isGroupEmpty()) {
+			return true;
+		}
+
+		if (!writeGroup()) {
+			return false;
+		}
+
+		// compact journal (unless a snapshot is still being written)
+		if (snapshotWritten == null || snapshotWritten.isDone()) {
+			try {
+				long size = channel.size();
+				if (size >= compactionSizeMin && size >= snapshotSize) {
+					return startGeneration(true);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes the current group to the journal. Returns false if writing
+	 * failed.
+	 */
+	private boolean writeGroup() {
+
+		// nothing to commit
+		if (isGroupEmpty()) {
+			return true;
+		}
+
+		// state of changed nodes
+		for (Node node : changedNodes) {
+			byte[] label = (node.getLabel() != null) ? node.getLabel().getBytes(BinaryTopologyFile.CHARSET) : null;
+			ensureRemaining(37 + ((label != null) ? label.length : 0));
+			buffer.put(NODE_STATE);
+			buffer.putLong(node.getId());
+			buffer.putDouble(node.getThreshold());
+			buffer.putDouble(node.getError());
+			buffer.putLong(node.getNumSignals());
+			if (label != null) {
+				buffer.putInt(label.length);
+				buffer.put(label);
+			} else {
+				buffer.putInt(-1);
+			}
+		}
+		for (Node node : movedNodes) {
+			ensureRemaining(9 + soinnm.getInputDim() * 8);
+			buffer.put(NODE_PATTERN);
+			buffer.putLong(node.getId());
+			writePattern(node.getPattern());
+		}
+
+		// age of changed edges
+		for (Edge edge : changedEdges) {
+			ensureRemaining(17);
+			buffer.put(EDGE_AGE);
+			buffer.putLong(edge.getId());
+			buffer.putLong(edge.getAge());
+		}
+
+		// commit record (checksum of records and commit record)
+		int groupLength = buffer.position();
+		ensureRemaining(41);
+		buffer.put(COMMIT);
+		buffer.putLong(soinnm.getNextNodeId());
+		buffer.putLong(soinnm.getNextEdgeId());
+		buffer.putLong(soinnm.getNextClusterId());
+		buffer.putLong(soinnm.getNumInputs());
+		buffer.putInt(groupLength);
+		crc.reset();
+		crc.update(buffer.array(), buffer.arrayOffset(), buffer.position());
+		buffer.putInt((int) crc.getValue());
+
+		// write group
+		boolean written = false;
+		try {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			if (forceWrites) {
+				channel.force(false);
+			}
+			written = true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		resetGroup();
+
+		return written;
+	}
+
+	private boolean isGroupEmpty() {
+		return buffer.position() == 0 && changedNodes.isEmpty() && changedEdges.isEmpty() && numInputsGroup == 0;
+	}
+
+	private void resetGroup() {
+		buffer.clear();
+		if (buffer.capacity() > BUFFER_SIZE) {
+			buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+		changedNodes.clear();
+		movedNodes.clear();
+		changedEdges.clear();
+		numInputsGroup = 0;
+	}
+
+	// compaction
+
+	/**
+	 * Commits the current group, starts a new, empty journal and writes a
+	 * snapshot of the topology for it (in the background if an executor has
+	 * been given). Returns false if the group cannot be committed, the new
+	 * journal cannot be started or the snapshot cannot be written in the
+	 * calling thread.
+	 */
+	public boolean compact() {
+		if (!writeGroup()) {
+			return false;
+		}
+		return startGeneration(true);
+	}
+
+	/**
+	 * Starts a new, empty journal and writes a snapshot of a copy of the
+	 * topology for it. Until the snapshot has been written, recovery replays
+	 * the new journal after the current one if it is continued, so the
+	 * current group must have been committed then. Returns false if the new
+	 * journal cannot be started or the snapshot cannot be written in the
+	 * calling thread.
+	 */
+	private boolean startGeneration(boolean continued) {
+		final long generationNew = generation + 1;
+		final SOINNM topology = soinnm.copy();
+
+		// DEBUG
+		System.out.println("Compacting journal \"" + basename + "\" (generation " + generationNew + ")...");
+
+		// start new journal (the current journal is complete)
+		try {
+			if (channel != null) {
+				channel.force(false);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		closeFile();
+		generation = generationNew;
+		resetGroup();
+		if (!createJournalFile(getJournalFile(generation), continued)) {
+			return false;
+		}
+
+		// write snapshot
+		if (executor == null) {
+			return writeSnapshot(topology, generationNew);
+		}
+		snapshotWritten = executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return writeSnapshot(topology, generationNew);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Writes the snapshot of the given generation and deletes older
+	 * generations. Only accesses the given copy of the topology and the files
+	 * of the journal, so it can be called in another thread. Returns false if
+	 * the snapshot cannot be written.
+	 */
+	private boolean writeSnapshot(SOINNM topology, long generation) {
+
+		File snapshotFile = getSnapshotFile(generation);
+		File temporaryFile = new File(snapshotFile.getAbsolutePath() + FILE_EXTENSION_TEMPORARY);
+
+		try {
+
+			// write snapshot
+			BinaryWriter binaryWriter = new BinaryWriter();
+			binaryWriter.writeToFile(topology, temporaryFile.getAbsolutePath());
+			BinaryTopologyFile topologyFile = BinaryTopologyFile.open(temporaryFile.getAbsolutePath());
+			if (topologyFile == null) {
+				System.err.println("Snapshot could not be written!");
+				temporaryFile.delete();
+				return false;
+			}
+			topologyFile.close();
+			RandomAccessFile snapshot = new RandomAccessFile(temporaryFile, "rw");
+			try {
+				snapshot.getChannel().force(true);
+			} finally {
+				snapshot.close();
+			}
+			Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			forceDirectory();
+			snapshotSize = snapshotFile.length();
+
+			// delete old generations
+			findGeneration(true);
+
+			// DEBUG
+			System.out.println("Compacting journal finished!");
+
+			return true;
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			temporaryFile.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Forces the entries of the directory of the journal to the storage
+	 * device, so a moved snapshot cannot be lost after older generations have
+	 * been deleted.
+	 */
+	private void forceDirectory() {
+		try {
+			FileChannel directory = FileChannel.open(new File(basename).getParentFile().toPath(), StandardOpenOption.READ);
+			try {
+				directory.force(true);
+			} finally {
+				directory.close();
+			}
+		} catch (IOException e) {
+			// directories cannot be opened on all platforms (e.g. Windows)
+		}
+	}
+
+	/**
+	 * Waits until the snapshot being written in the background (if any) has
+	 * been written. Returns false if it could not be written.
+	 */
+	public boolean waitForSnapshot() {
+		if (snapshotWritten == null) {
+			return true;
+		}
+		try {
+			return snapshotWritten.get();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			snapshotWritten = null;
+		}
+	}
+
+	private boolean createJournalFile(File journalFile, boolean continued) {
+		try {
+			file = new RandomAccessFile(journalFile, "rw");
+			channel = file.getChannel();
+			channel.truncate(0);
+			writeHeader(continued);
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private void writeHeader(boolean continued) throws Exception {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(FILE_VERSION);
+		header.putInt(soinnm.getInputDim());
+		header.putInt(continued ? FLAG_CONTINUED : 0);
+		header.flip();
+		channel.position(0);
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * Commits the current group, waits for the snapshot being written (if
+	 * any) and stops journaling.
+	 */
+	public void close() {
+		if (channel != null) {
+			commit();
+		}
+		waitForSnapshot();
+		soinnm.setJournal(null);
+		closeFile();
+	}
+
+	private void closeFile() {
+		try {
+			if (file != null) {
+				file.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		file = null;
+		channel = null;
+	}
+
+}
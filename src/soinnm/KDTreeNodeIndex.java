@@ -0,0 +1,270 @@
+package soinnm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import soinnm.Cluster;
+import soinnm.Node;
+
+/**
+ * Class for a k-d tree index over the nodes of a topology.
+ * <p>
+ * Nodes are kept in buckets at the leaves of the tree. Each inner tree node
+ * splits the space at the median of the dimension with the largest spread.
+ * Nodes whose pattern has moved out of their leaf are re-inserted, overflowing
+ * buckets are split locally, and the whole tree is rebuilt once the number of
+ * insertions and removals since the last rebuild exceeds the number of nodes.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class KDTreeNodeIndex extends NodeIndexAbstract {
+
+	private static final int BUCKET_SIZE = 8;
+
+	private static final int REBUILD_MIN = 64;
+
+	private TreeNode root;
+
+	private HashMap<Node, TreeNode> leaves;
+
+	private int numModifications;
+
+	private static class TreeNode {
+
+		private TreeNode parent;
+
+		private int splitDim;
+
+		private double splitValue;
+
+		private TreeNode left; // patterns below split value
+
+		private TreeNode right; // patterns equal to or above split value
+
+		private ArrayList<Node> bucket; // null for inner tree nodes
+
+	}
+
+	public KDTreeNodeIndex(int inputDim) {
+		super(inputDim);
+		leaves = new HashMap<Node, TreeNode>();
+		clear();
+	}
+
+	@Override
+	public void add(Node node) {
+		insert(node);
+		numModifications++;
+		checkRebuild();
+	}
+
+	@Override
+	public void remove(Node node) {
+		TreeNode leaf = leaves.remove(node);
+		if (leaf == null) {
+			return;
+		}
+		leaf.bucket.remove(node);
+		numModifications++;
+		checkRebuild();
+	}
+
+	@Override
+	public void update(Node node) {
+		TreeNode leaf = leaves.get(node);
+		if (leaf == null) {
+			return;
+		}
+
+		// check whether pattern still lies within leaf
+		TreeNode child = leaf;
+		TreeNode parent = leaf.parent;
+		while (parent != null) {
+			boolean below = node.getPatternValue(parent.splitDim) < parent.splitValue;
+			if (below != (parent.left == child)) {
+				break;
+			}
+			child = parent;
+			parent = parent.parent;
+		}
+
+		// re-insert node
+		if (parent != null) {
+			leaf.bucket.remove(node);
+			insert(node);
+		}
+	}
+
+	@Override
+	public void clear() {
+		root = createLeaf(null, new ArrayList<Node>());
+		leaves.clear();
+		numModifications = 0;
+	}
+
+	@Override
+	public int findNearest(double[] pattern, Cluster excludedCluster, Node[] nearestNodes, double[] nearestDistances) {
+		initNearest(nearestNodes, nearestDistances);
+		search(root, pattern, excludedCluster, nearestNodes, nearestDistances);
+		return finishNearest(nearestNodes, nearestDistances);
+	}
+
+	private void search(TreeNode treeNode, double[] pattern, Cluster excludedCluster, Node[] nearestNodes, double[] nearestDistances) {
+
+		// leaf
+		int last = nearestNodes.length - 1;
+		if (treeNode.bucket != null) {
+			for (Node node : treeNode.bucket) {
+				if (excludedCluster != null && node.getCluster() == excludedCluster) {
+					continue;
+				}
+				insertNearest(node, squaredDistance(pattern, node, nearestDistances[last]), nearestNodes, nearestDistances);
+			}
+			return;
+		}
+
+		// search near side first
+		double difference = pattern[treeNode.splitDim] - treeNode.splitValue;
+		if (difference < 0) {
+			search(treeNode.left, pattern, excludedCluster, nearestNodes, nearestDistances);
+		} else {
+			search(treeNode.right, pattern, excludedCluster, nearestNodes, nearestDistances);
+		}
+
+		// search far side only if it can contain nearer nodes
+		if (difference * difference <= nearestDistances[last]) {
+			if (difference < 0) {
+				search(treeNode.right, pattern, excludedCluster, nearestNodes, nearestDistances);
+			} else {
+				search(treeNode.left, pattern, excludedCluster, nearestNodes, nearestDistances);
+			}
+		}
+
+	}
+
+	private void insert(Node node) {
+
+		// descend to leaf
+		TreeNode treeNode = root;
+		while (treeNode.bucket == null) {
+			if (node.getPatternValue(treeNode.splitDim) < treeNode.splitValue) {
+				treeNode = treeNode.left;
+			} else {
+				treeNode = treeNode.right;
+			}
+		}
+
+		// add to bucket
+		treeNode.bucket.add(node);
+		leaves.put(node, treeNode);
+
+		// split overflowing bucket
+		if (treeNode.bucket.size() > 2 * BUCKET_SIZE) {
+			ArrayList<Node> bucket = treeNode.bucket;
+			TreeNode subtree = build(treeNode.parent, bucket);
+			replace(treeNode, subtree);
+		}
+
+	}
+
+	private void checkRebuild() {
+		if (numModifications > Math.max(leaves.size(), REBUILD_MIN)) {
+			ArrayList<Node> nodes = new ArrayList<Node>(leaves.keySet());
+			root = build(null, nodes);
+			numModifications = 0;
+		}
+	}
+
+	private void replace(TreeNode treeNode, TreeNode subtree) {
+		TreeNode parent = treeNode.parent;
+		if (parent == null) {
+			root = subtree;
+		} else if (parent.left == treeNode) {
+			parent.left = subtree;
+		} else {
+			parent.right = subtree;
+		}
+	}
+
+	private TreeNode createLeaf(TreeNode parent, ArrayList<Node> nodes) {
+		TreeNode leaf = new TreeNode();
+		leaf.parent = parent;
+		leaf.bucket = nodes;
+		for (Node node : nodes) {
+			leaves.put(node, leaf);
+		}
+		return leaf;
+	}
+
+	private TreeNode build(TreeNode parent, ArrayList<Node> nodes) {
+
+		if (nodes.size() <= BUCKET_SIZE) {
+			return createLeaf(parent, nodes);
+		}
+
+		// determine dimension with largest spread
+		int splitDim = 0;
+		double spreadMax = 0.0;
+		for (int i = 0; i < inputDim; i++) {
+			double min = Double.MAX_VALUE;
+			double max = -Double.MAX_VALUE;
+			for (Node node : nodes) {
+				double value = node.getPatternValue(i);
+				if (value < min) {
+					min = value;
+				}
+				if (value > max) {
+					max = value;
+				}
+			}
+			if (max - min > spreadMax) {
+				spreadMax = max - min;
+				splitDim = i;
+			}
+		}
+
+		// identical patterns cannot be split
+		if (spreadMax == 0.0) {
+			return createLeaf(parent, nodes);
+		}
+
+		// determine split value at median (lower side must not be empty)
+		double[] values = new double[nodes.size()];
+		for (int n = 0; n < values.length; n++) {
+			values[n] = nodes.get(n).getPatternValue(splitDim);
+		}
+		Arrays.sort(values);
+		double splitValue = values[values.length / 2];
+		if (splitValue == values[0]) {
+			int n = 1;
+			while (values[n] == values[0]) {
+				n++;
+			}
+			splitValue = values[n];
+		}
+
+		// split nodes
+		ArrayList<Node> nodesLeft = new ArrayList<Node>();
+		ArrayList<Node> nodesRight = new ArrayList<Node>();
+		for (Node node : nodes) {
+			if (node.getPatternValue(splitDim) < splitValue) {
+				nodesLeft.add(node);
+			} else {
+				nodesRight.add(node);
+			}
+		}
+
+		// create inner tree node
+		TreeNode treeNode = new TreeNode();
+		treeNode.parent = parent;
+		treeNode.splitDim = splitDim;
+		treeNode.splitValue = splitValue;
+		treeNode.left = build(treeNode, nodesLeft);
+		treeNode.right = build(treeNode, nodesRight);
+
+		return treeNode;
+	}
+
+}
@@ -0,0 +1,314 @@
+package soinnm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import soinnm.Cluster;
+import soinnm.LinearNodeIndex;
+import soinnm.Node;
+
+/**
+ * Class for an approximate index based on locality-sensitive hashing.
+ * <p>
+ * Each of several hash tables projects a pattern onto a number of random
+ * gaussian directions and divides each projection into buckets of a given
+ * width. Nodes with the same bucket in all projections of a table share a key,
+ * so nearby patterns are likely to share a key in at least one table. Besides
+ * the bucket of the pattern itself (home bucket), a number of neighbouring
+ * buckets is probed in each table: those that differ in one projection whose
+ * bucket boundary is closest to the pattern (multi-probe). The number of probes
+ * trades recall against speed.
+ * <p>
+ * The exact distances to all candidates found are computed, so the returned
+ * distances are always correct, only a nearer node may be missed. If fewer
+ * candidates than requested are found, all nodes are searched.
+ * <p>
+ * The random projections are determined by the given seed, so results can be
+ * reproduced.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class LSHNodeIndex extends NodeIndexAbstract {
+
+	private int numTables;
+
+	private int numProjections; // per table
+
+	private double bucketWidth;
+
+	private int numProbes; // additional buckets probed per table
+
+	private long seed; // for the random projections
+
+	private double[][] projections; // projection p of table t at index t * numProjections + p
+
+	private double[] offsets;
+
+	private ArrayList<HashMap<Long, ArrayList<Node>>> tables;
+
+	private HashMap<Node, long[]> keys; // key of each node per table
+
+	private LinearNodeIndex linearIndex; // for searching all nodes
+
+	public LSHNodeIndex(int inputDim, int numTables, int numProjections, double bucketWidth, int numProbes, long seed) {
+		super(inputDim);
+		this.numTables = numTables;
+		this.numProjections = numProjections;
+		this.bucketWidth = bucketWidth;
+		this.numProbes = numProbes;
+		this.seed = seed;
+
+		// create random projections
+		Random random = new Random(seed);
+		projections = new double[numTables * numProjections][inputDim];
+		offsets = new double[numTables * numProjections];
+		for (int p = 0; p < projections.length; p++) {
+			for (int i = 0; i < inputDim; i++) {
+				projections[p][i] = random.nextGaussian();
+			}
+			offsets[p] = random.nextDouble() * bucketWidth;
+		}
+
+		// create tables
+		tables = new ArrayList<HashMap<Long, ArrayList<Node>>>();
+		for (int t = 0; t < numTables; t++) {
+			tables.add(new HashMap<Long, ArrayList<Node>>());
+		}
+		keys = new HashMap<Node, long[]>();
+		linearIndex = new LinearNodeIndex(inputDim);
+	}
+
+	public int getNumTables() {
+		return numTables;
+	}
+
+	public int getNumProjections() {
+		return numProjections;
+	}
+
+	public double getBucketWidth() {
+		return bucketWidth;
+	}
+
+	public int getNumProbes() {
+		return numProbes;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Sets the number of additional buckets probed per table (at most twice
+	 * the number of projections). More probes increase the recall.
+	 */
+	public void setNumProbes(int numProbes) {
+		this.numProbes = numProbes;
+	}
+
+	@Override
+	public void setEarlyAbandon(boolean earlyAbandon) {
+		super.setEarlyAbandon(earlyAbandon);
+		linearIndex.setEarlyAbandon(earlyAbandon);
+	}
+
+	@Override
+	public void add(Node node) {
+		long[] nodeKeys = computeKeys(node.getPattern());
+		for (int t = 0; t < numTables; t++) {
+			addToBucket(t, nodeKeys[t], node);
+		}
+		keys.put(node, nodeKeys);
+		linearIndex.add(node);
+	}
+
+	@Override
+	public void remove(Node node) {
+		long[] nodeKeys = keys.remove(node);
+		if (nodeKeys == null) {
+			return;
+		}
+		for (int t = 0; t < numTables; t++) {
+			removeFromBucket(t, nodeKeys[t], node);
+		}
+		linearIndex.remove(node);
+	}
+
+	@Override
+	public void update(Node node) {
+		long[] nodeKeys = keys.get(node);
+		if (nodeKeys == null) {
+			return;
+		}
+
+		// move node to new buckets
+		long[] nodeKeysNew = computeKeys(node.getPattern());
+		for (int t = 0; t < numTables; t++) {
+			if (nodeKeysNew[t] != nodeKeys[t]) {
+				removeFromBucket(t, nodeKeys[t], node);
+				addToBucket(t, nodeKeysNew[t], node);
+			}
+		}
+		keys.put(node, nodeKeysNew);
+	}
+
+	@Override
+	public void clear() {
+		for (HashMap<Long, ArrayList<Node>> table : tables) {
+			table.clear();
+		}
+		keys.clear();
+		linearIndex.clear();
+	}
+
+	@Override
+	public int findNearest(double[] pattern, Cluster excludedCluster, Node[] nearestNodes, double[] nearestDistances) {
+		initNearest(nearestNodes, nearestDistances);
+
+		// collect candidates from home and neighbouring buckets
+		HashSet<Node> candidates = new HashSet<Node>();
+		double[] values = new double[numProjections];
+		long[] buckets = new long[numProjections];
+		int[] probeProjections = new int[numProbes];
+		int[] probeDirections = new int[numProbes];
+		double[] probeScores = new double[numProbes];
+		for (int t = 0; t < numTables; t++) {
+
+			// home bucket
+			project(pattern, t, values, buckets);
+			addCandidates(t, computeKey(buckets), candidates);
+
+			// neighbouring buckets with closest boundaries
+			int numProbesFound = findProbes(values, buckets, probeProjections, probeDirections, probeScores);
+			for (int n = 0; n < numProbesFound; n++) {
+				int p = probeProjections[n];
+				buckets[p] += probeDirections[n];
+				addCandidates(t, computeKey(buckets), candidates);
+				buckets[p] -= probeDirections[n];
+			}
+
+		}
+
+		// compute exact distances of candidates
+		int last = nearestNodes.length - 1;
+		int numFound = 0;
+		for (Node node : candidates) {
+			if (excludedCluster != null && node.getCluster() == excludedCluster) {
+				continue;
+			}
+			insertNearest(node, squaredDistance(pattern, node, nearestDistances[last]), nearestNodes, nearestDistances);
+			numFound++;
+		}
+
+		// search all nodes if not enough candidates have been found
+		if (numFound < nearestNodes.length && keys.size() > numFound) {
+			return linearIndex.findNearest(pattern, excludedCluster, nearestNodes, nearestDistances);
+		}
+
+		return finishNearest(nearestNodes, nearestDistances);
+	}
+
+	/**
+	 * Determines the neighbouring buckets to probe, i.e. the projections and
+	 * directions (-1 or +1) with the smallest distance of the projected value
+	 * to the bucket boundary, ordered by this distance.
+	 *
+	 * @return number of probes found
+	 */
+	private int findProbes(double[] values, long[] buckets, int[] probeProjections, int[] probeDirections, double[] probeScores) {
+		int numProbesFound = 0;
+		double score;
+		int k;
+		for (int p = 0; p < numProjections; p++) {
+			for (int direction = -1; direction <= 1; direction += 2) {
+				score = (direction < 0) ? values[p] - buckets[p] : buckets[p] + 1 - values[p];
+				if (numProbesFound == probeScores.length && (numProbesFound == 0 || score >= probeScores[numProbesFound - 1])) {
+					continue;
+				}
+				if (numProbesFound < probeScores.length) {
+					numProbesFound++;
+				}
+				k = numProbesFound - 1;
+				while (k > 0 && score < probeScores[k - 1]) {
+					probeProjections[k] = probeProjections[k - 1];
+					probeDirections[k] = probeDirections[k - 1];
+					probeScores[k] = probeScores[k - 1];
+					k--;
+				}
+				probeProjections[k] = p;
+				probeDirections[k] = direction;
+				probeScores[k] = score;
+			}
+		}
+		return numProbesFound;
+	}
+
+	/**
+	 * Projects a pattern for the given table. Stores the projected values in
+	 * units of the bucket width and the buckets.
+	 */
+	private void project(double[] pattern, int table, double[] values, long[] buckets) {
+		double[] projection;
+		double sum;
+		for (int p = 0; p < numProjections; p++) {
+			projection = projections[table * numProjections + p];
+			sum = offsets[table * numProjections + p];
+			for (int i = 0; i < inputDim; i++) {
+				sum += projection[i] * pattern[i];
+			}
+			values[p] = sum / bucketWidth;
+			buckets[p] = (long) Math.floor(values[p]);
+		}
+	}
+
+	private long[] computeKeys(double[] pattern) {
+		long[] nodeKeys = new long[numTables];
+		double[] values = new double[numProjections];
+		long[] buckets = new long[numProjections];
+		for (int t = 0; t < numTables; t++) {
+			project(pattern, t, values, buckets);
+			nodeKeys[t] = computeKey(buckets);
+		}
+		return nodeKeys;
+	}
+
+	private long computeKey(long[] buckets) {
+		long key = 17;
+		for (int p = 0; p < numProjections; p++) {
+			key = key * 1000003 + buckets[p];
+		}
+		return key;
+	}
+
+	private void addCandidates(int table, long key, HashSet<Node> candidates) {
+		ArrayList<Node> bucket = tables.get(table).get(key);
+		if (bucket != null) {
+			candidates.addAll(bucket);
+		}
+	}
+
+	private void addToBucket(int table, long key, Node node) {
+		HashMap<Long, ArrayList<Node>> buckets = tables.get(table);
+		ArrayList<Node> bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new ArrayList<Node>();
+			buckets.put(key, bucket);
+		}
+		bucket.add(node);
+	}
+
+	private void removeFromBucket(int table, long key, Node node) {
+		HashMap<Long, ArrayList<Node>> buckets = tables.get(table);
+		ArrayList<Node> bucket = buckets.get(key);
+		if (bucket != null) {
+			bucket.remove(node);
+			if (bucket.isEmpty()) {
+				buckets.remove(key);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package soinnm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import soinnm.Cluster;
+import soinnm.Node;
+
+/**
+ * Class for an index that finds nearest nodes by a linear scan over all nodes.
+ * <p>
+ * Does not require any maintenance when patterns change and is therefore
+ * suitable for topologies with a small number of nodes or a very high
+ * dimensionality.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class LinearNodeIndex extends NodeIndexAbstract {
+
+	private ArrayList<Node> nodes;
+
+	private HashMap<Node, Integer> positions;
+
+	public LinearNodeIndex(int inputDim) {
+		super(inputDim);
+		nodes = new ArrayList<Node>();
+		positions = new HashMap<Node, Integer>();
+	}
+
+	@Override
+	public void add(Node node) {
+		positions.put(node, nodes.size());
+		nodes.add(node);
+	}
+
+	@Override
+	public void remove(Node node) {
+		Integer position = positions.remove(node);
+		if (position == null) {
+			return;
+		}
+
+		// move last node to free position
+		Node nodeLast = nodes.remove(nodes.size() - 1);
+		if (nodeLast != node) {
+			nodes.set(position, nodeLast);
+			positions.put(nodeLast, position);
+		}
+	}
+
+	@Override
+	public void update(Node node) {
+		// nothing to do
+	}
+
+	@Override
+	public void clear() {
+		nodes.clear();
+		positions.clear();
+	}
+
+	@Override
+	public int findNearest(double[] pattern, Cluster excludedCluster, Node[] nearestNodes, double[] nearestDistances) {
+		initNearest(nearestNodes, nearestDistances);
+		int last = nearestNodes.length - 1;
+		for (Node node : nodes) {
+			if (excludedCluster != null && node.getCluster() == excludedCluster) {
+				continue;
+			}
+			insertNearest(node, squaredDistance(pattern, node, nearestDistances[last]), nearestNodes, nearestDistances);
+		}
+		return finishNearest(nearestNodes, nearestDistances);
+	}
+
+}
@@ -1,20 +1,57 @@
 package soinnm;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import soinnm.CleanupIndex;
+import soinnm.Cluster;
+import soinnm.Edge;
+import soinnm.Quantization;
+
 /**
  * Class for a node in the topology.
  * <p>
  * A node stores an id to identify it, holds a real-valued pattern (vector), has
  * a similarity threshold, an accummulated error, a number of signals, and an
  * optional text label (for testing purposes).
+ * <p>
+ * A node also stores its adjacency, i.e. the edges to its neighbours, so that
+ * neighbours and edges can be retrieved without scanning all edges, and a
+ * reference to the cluster it belongs to. Changes of the pattern, error and
+ * number of signals are passed on to this cluster, changes of the error and
+ * number of signals also to the cleanup index of the topology.
+ * <p>
+ * The pattern is stored with double precision by default. To save memory, it
+ * can also be stored with single precision or as 8-bit codes of a
+ * quantization. In this case, the pattern is returned as a decoded copy (or
+ * decoded into a given array, or component-wise) and changes have to be made
+ * through the setter.
+ * <p>
+ * A copy of a node shares the stored pattern with the node until either of
+ * them changes it (copy on write).
  * 
  * @author Matthias Keysermann
  *
  */
 public class Node {
 
+	public static enum PRECISION {
+		DOUBLE, FLOAT, BYTE
+	};
+
 	private long id;
 
-	private double[] pattern;
+	private double[] pattern; // null unless precision is double
+
+	private float[] patternFloat; // null unless precision is float
+
+	private byte[] patternByte; // null unless precision is byte
+
+	private Quantization quantization; // for byte precision
+
+	private boolean patternShared; // stored pattern is shared with a copy and needs to be copied before it is changed
 
 	private double threshold;
 
@@ -24,6 +61,12 @@ public class Node {
 
 	private String label; // for evaluation of classification
 
+	private LinkedHashMap<Node, Edge> edgeMap; // edges by neighbour (in order of creation)
+
+	private Cluster cluster; // cluster this node belongs to
+
+	private CleanupIndex cleanupIndex; // cleanup index of the topology
+
 	public Node(long id, double[] pattern) {
 
 		// set id
@@ -41,6 +84,28 @@ public class Node {
 		// initialise number of signals
 		numSignals = 0;
 
+		// initialise adjacency
+		edgeMap = new LinkedHashMap<Node, Edge>();
+
+	}
+
+	/**
+	 * Creates a copy of the given node without edges and cluster. The stored
+	 * pattern is shared until it is changed.
+	 */
+	Node(Node node) {
+		id = node.id;
+		pattern = node.pattern;
+		patternFloat = node.patternFloat;
+		patternByte = node.patternByte;
+		quantization = node.quantization;
+		patternShared = true;
+		node.patternShared = true;
+		threshold = node.threshold;
+		error = node.error;
+		numSignals = node.numSignals;
+		label = node.label;
+		edgeMap = new LinkedHashMap<Node, Edge>();
 	}
 
 	public long getId() {
@@ -51,12 +116,214 @@ public class Node {
 		this.id = id;
 	}
 
+	/**
+	 * Returns the pattern. For double precision, this is the stored array,
+	 * otherwise a decoded copy.
+	 */
 	public double[] getPattern() {
+		if (pattern != null) {
+			return pattern;
+		}
+		double[] pattern;
+		if (patternFloat != null) {
+			pattern = new double[patternFloat.length];
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] = patternFloat[i];
+			}
+		} else {
+			pattern = new double[patternByte.length];
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] = quantization.decode(i, patternByte[i]);
+			}
+		}
 		return pattern;
 	}
 
+	/**
+	 * Returns the pattern like getPattern(), but decodes it into the given
+	 * array instead of a new one if the precision is not double.
+	 */
+	public double[] getPattern(double[] buffer) {
+		if (pattern != null) {
+			return pattern;
+		}
+		copyPattern(buffer, 0);
+		return buffer;
+	}
+
+	/**
+	 * Returns a single component of the pattern (decoded if the precision is
+	 * not double).
+	 */
+	public double getPatternValue(int i) {
+		if (pattern != null) {
+			return pattern[i];
+		}
+		if (patternFloat != null) {
+			return patternFloat[i];
+		}
+		return quantization.decode(i, patternByte[i]);
+	}
+
+	public int getPatternLength() {
+		if (pattern != null) {
+			return pattern.length;
+		}
+		if (patternFloat != null) {
+			return patternFloat.length;
+		}
+		return patternByte.length;
+	}
+
 	public void setPattern(double[] pattern) {
-		this.pattern = pattern.clone();
+		if (cluster != null) {
+			cluster.removePattern(this);
+		}
+		storePattern(pattern);
+		if (cluster != null) {
+			cluster.addPattern(this);
+		}
+	}
+
+	public PRECISION getPrecision() {
+		if (patternFloat != null) {
+			return PRECISION.FLOAT;
+		}
+		if (patternByte != null) {
+			return PRECISION.BYTE;
+		}
+		return PRECISION.DOUBLE;
+	}
+
+	public Quantization getQuantization() {
+		return quantization;
+	}
+
+	/**
+	 * Converts the pattern to the given precision (the quantization is only
+	 * used for byte precision).
+	 */
+	void setPrecision(PRECISION precision, Quantization quantization) {
+		double[] pattern = getPattern();
+		this.pattern = null;
+		this.patternFloat = null;
+		this.patternByte = null;
+		this.quantization = null;
+		switch (precision) {
+		case DOUBLE:
+			break;
+		case FLOAT:
+			this.patternFloat = new float[pattern.length];
+			break;
+		case BYTE:
+			this.patternByte = new byte[pattern.length];
+			this.quantization = quantization;
+			break;
+		}
+		patternShared = false;
+		storePattern(pattern);
+	}
+
+	private void storePattern(double[] pattern) {
+		unsharePattern();
+		if (patternFloat != null) {
+			for (int i = 0; i < patternFloat.length; i++) {
+				patternFloat[i] = (float) pattern[i];
+			}
+		} else if (patternByte != null) {
+			for (int i = 0; i < patternByte.length; i++) {
+				patternByte[i] = quantization.encode(i, pattern[i]);
+			}
+		} else {
+			this.pattern = pattern.clone();
+		}
+	}
+
+	/**
+	 * Moves the pattern towards the target pattern by the given rate. For byte
+	 * precision, the result is rounded stochastically using the given random
+	 * number generator. The cluster is not notified.
+	 */
+	void adaptPattern(double[] target, double rate, Random random) {
+		unsharePattern();
+		if (pattern != null) {
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] += rate * (target[i] - pattern[i]);
+			}
+		} else if (patternFloat != null) {
+			for (int i = 0; i < patternFloat.length; i++) {
+				patternFloat[i] = (float) (patternFloat[i] + rate * (target[i] - patternFloat[i]));
+			}
+		} else {
+			double value;
+			for (int i = 0; i < patternByte.length; i++) {
+				value = quantization.decode(i, patternByte[i]);
+				patternByte[i] = quantization.encode(i, value + rate * (target[i] - value), random);
+			}
+		}
+	}
+
+	/**
+	 * Copies the stored pattern if it is shared with a copy of this node.
+	 */
+	private void unsharePattern() {
+		if (patternShared) {
+			if (pattern != null) {
+				pattern = pattern.clone();
+			} else if (patternFloat != null) {
+				patternFloat = patternFloat.clone();
+			} else {
+				patternByte = patternByte.clone();
+			}
+			patternShared = false;
+		}
+	}
+
+	/**
+	 * Copies the pattern into the given array at the given offset.
+	 */
+	void copyPattern(double[] values, int offset) {
+		if (pattern != null) {
+			System.arraycopy(pattern, 0, values, offset, pattern.length);
+		} else if (patternFloat != null) {
+			for (int i = 0; i < patternFloat.length; i++) {
+				values[offset + i] = patternFloat[i];
+			}
+		} else {
+			for (int i = 0; i < patternByte.length; i++) {
+				values[offset + i] = quantization.decode(i, patternByte[i]);
+			}
+		}
+	}
+
+	/**
+	 * Copies the pattern into the given array at the given offset (with
+	 * rounding to single precision).
+	 */
+	void copyPattern(float[] values, int offset) {
+		if (patternFloat != null) {
+			System.arraycopy(patternFloat, 0, values, offset, patternFloat.length);
+		} else {
+			double[] pattern = getPattern();
+			for (int i = 0; i < pattern.length; i++) {
+				values[offset + i] = (float) pattern[i];
+			}
+		}
+	}
+
+	/**
+	 * Copies the pattern into the given array at the given offset (encoded by
+	 * the given quantization).
+	 */
+	void copyPattern(byte[] values, int offset, Quantization quantization) {
+		if (patternByte != null && this.quantization == quantization) {
+			System.arraycopy(patternByte, 0, values, offset, patternByte.length);
+		} else {
+			double[] pattern = getPattern();
+			for (int i = 0; i < pattern.length; i++) {
+				values[offset + i] = quantization.encode(i, pattern[i]);
+			}
+		}
 	}
 
 	public double getThreshold() {
@@ -72,7 +339,14 @@ public class Node {
 	}
 
 	public void setError(double error) {
+		double errorOld = this.error;
 		this.error = error;
+		if (cluster != null) {
+			cluster.errorChanged(this, errorOld);
+		}
+		if (cleanupIndex != null) {
+			cleanupIndex.errorChanged(this);
+		}
 	}
 
 	public long getNumSignals() {
@@ -80,7 +354,14 @@ public class Node {
 	}
 
 	public void setNumSignals(long numSignals) {
+		long numSignalsOld = this.numSignals;
 		this.numSignals = numSignals;
+		if (cluster != null) {
+			cluster.numSignalsChanged(this, numSignalsOld);
+		}
+		if (cleanupIndex != null) {
+			cleanupIndex.numSignalsChanged(this, numSignalsOld);
+		}
 	}
 
 	public String getLabel() {
@@ -91,4 +372,48 @@ public class Node {
 		this.label = label;
 	}
 
+	public Cluster getCluster() {
+		return cluster;
+	}
+
+	void setCluster(Cluster cluster) {
+		this.cluster = cluster;
+	}
+
+	void setCleanupIndex(CleanupIndex cleanupIndex) {
+		this.cleanupIndex = cleanupIndex;
+	}
+
+	public Collection<Edge> getEdges() {
+		return edgeMap.values();
+	}
+
+	public Set<Node> getNeighbours() {
+		return edgeMap.keySet();
+	}
+
+	public int getNumNeighbours() {
+		return edgeMap.size();
+	}
+
+	public Edge getEdge(Node neighbour) {
+		return edgeMap.get(neighbour);
+	}
+
+	void addEdge(Edge edge) {
+		Node neighbour = (edge.getNodeA() == this) ? edge.getNodeB() : edge.getNodeA();
+		edgeMap.put(neighbour, edge);
+	}
+
+	void removeEdge(Edge edge) {
+		Node neighbour = (edge.getNodeA() == this) ? edge.getNodeB() : edge.getNodeA();
+		if (edgeMap.get(neighbour) == edge) {
+			edgeMap.remove(neighbour);
+		}
+	}
+
+	void clearEdges() {
+		edgeMap.clear();
+	}
+
 }
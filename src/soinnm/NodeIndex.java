@@ -0,0 +1,51 @@
+package soinnm;
+
+import soinnm.Cluster;
+import soinnm.Node;
+
+/**
+ * Interface for a nearest-neighbour index over the nodes of a topology.
+ * <p>
+ * The index has to be notified whenever a node is added or removed, and
+ * whenever the pattern of a node has been changed in place. Allows to retrieve
+ * the nodes with the smallest euclidean distance to a given pattern.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public interface NodeIndex {
+
+	public void add(Node node);
+
+	public void remove(Node node);
+
+	public void update(Node node);
+
+	public void clear();
+
+	/**
+	 * Finds the nodes nearest to the given pattern. The number of nodes to find
+	 * is given by the length of the passed arrays, which are filled in order of
+	 * increasing distance (ties are resolved by lower node id). Unused entries
+	 * are set to null and Double.MAX_VALUE respectively.
+	 *
+	 * @return number of nodes found
+	 */
+	public int findNearest(double[] pattern, Node[] nearestNodes, double[] nearestDistances);
+
+	/**
+	 * Finds the nodes nearest to the given pattern that do not belong to the
+	 * given cluster (see {@link #findNearest(double[], Node[], double[])}).
+	 *
+	 * @return number of nodes found
+	 */
+	public int findNearest(double[] pattern, Cluster excludedCluster, Node[] nearestNodes, double[] nearestDistances);
+
+	/**
+	 * Finds the nodes nearest to each of the given patterns (see
+	 * {@link #findNearest(double[], Node[], double[])}). The patterns may be
+	 * processed in parallel, so the index must not be modified meanwhile.
+	 */
+	public void findNearest(double[][] patterns, Node[][] nearestNodes, double[][] nearestDistances);
+
+}
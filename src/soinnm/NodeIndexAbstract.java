@@ -0,0 +1,264 @@
+package soinnm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import soinnm.Node;
+
+/**
+ * Abstract class for a nearest-neighbour index. Provides the distance
+ * computation and the bookkeeping of the nearest nodes found so far.
+ * <p>
+ * Distances are compared in squared form and only converted to euclidean
+ * distances once the search has finished. The summation order equals the one
+ * used by M-SOINN, so returned distances are identical to the ones computed
+ * there.
+ * <p>
+ * With early abandoning, the computation of a distance is stopped as soon as
+ * the partial sum exceeds the distance of the last of the nearest nodes found
+ * so far. Such a node cannot be among the nearest nodes, so the result is the
+ * same as without early abandoning.
+ * <p>
+ * Nearest nodes for a batch of patterns are found in parallel on a shared
+ * fork/join pool, each task processing a range of patterns.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public abstract class NodeIndexAbstract implements NodeIndex {
+
+	protected static final int ABANDON_BLOCK_SIZE = 16; // number of dimensions between checks for early abandoning
+
+	protected static final int BATCH_TASK_SIZE = 16; // maximum number of patterns processed by one task
+
+	private static ForkJoinPool pool;
+
+	protected int inputDim;
+
+	protected boolean earlyAbandon;
+
+	public NodeIndexAbstract(int inputDim) {
+		this.inputDim = inputDim;
+		earlyAbandon = true;
+	}
+
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	public boolean isEarlyAbandon() {
+		return earlyAbandon;
+	}
+
+	public void setEarlyAbandon(boolean earlyAbandon) {
+		this.earlyAbandon = earlyAbandon;
+	}
+
+	@Override
+	public int findNearest(double[] pattern, Node[] nearestNodes, double[] nearestDistances) {
+		return findNearest(pattern, null, nearestNodes, nearestDistances);
+	}
+
+	@Override
+	public void findNearest(double[][] patterns, Node[][] nearestNodes, double[][] nearestDistances) {
+		if (patterns.length <= BATCH_TASK_SIZE) {
+			findNearest(patterns, 0, patterns.length, nearestNodes, nearestDistances);
+		} else {
+			getPool().invoke(new BatchTask(patterns, 0, patterns.length, nearestNodes, nearestDistances));
+		}
+	}
+
+	/**
+	 * Finds the nodes nearest to the patterns from index from (inclusive) to
+	 * index to (exclusive) on the calling thread.
+	 */
+	protected void findNearest(double[][] patterns, int from, int to, Node[][] nearestNodes, double[][] nearestDistances) {
+		for (int p = from; p < to; p++) {
+			findNearest(patterns[p], nearestNodes[p], nearestDistances[p]);
+		}
+	}
+
+	protected static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	/**
+	 * Returns the parallelism of the shared fork/join pool (the number of
+	 * available processors unless set).
+	 */
+	public static int getPoolParallelism() {
+		return getPool().getParallelism();
+	}
+
+	/**
+	 * Replaces the shared fork/join pool by one with the given parallelism,
+	 * e.g. in order to run the parallel search on a single processor. Running
+	 * searches finish on the previous pool.
+	 */
+	public static synchronized void setPoolParallelism(int parallelism) {
+		if (pool != null) {
+			pool.shutdown();
+		}
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	private class BatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private double[][] patterns;
+
+		private int from;
+
+		private int to;
+
+		private Node[][] nearestNodes;
+
+		private double[][] nearestDistances;
+
+		public BatchTask(double[][] patterns, int from, int to, Node[][] nearestNodes, double[][] nearestDistances) {
+			this.patterns = patterns;
+			this.from = from;
+			this.to = to;
+			this.nearestNodes = nearestNodes;
+			this.nearestDistances = nearestDistances;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH_TASK_SIZE) {
+				findNearest(patterns, from, to, nearestNodes, nearestDistances);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BatchTask(patterns, from, middle, nearestNodes, nearestDistances), new BatchTask(patterns, middle, to, nearestNodes, nearestDistances));
+			}
+		}
+
+	}
+
+	protected double squaredDistance(double[] A, double[] B) {
+		double sum = 0.0;
+		double difference;
+
+		for (int i = 0; i < inputDim; i++) {
+			difference = A[i] - B[i];
+			sum += difference * difference;
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Computes the squared distance, but stops once the partial sum exceeds the
+	 * given bound (if early abandoning is enabled). In this case, the returned
+	 * partial sum is greater than the bound but smaller than the actual squared
+	 * distance.
+	 */
+	protected double squaredDistance(double[] A, double[] B, double bound) {
+		if (!earlyAbandon) {
+			return squaredDistance(A, B);
+		}
+
+		double sum = 0.0;
+		double difference;
+
+		int i = 0;
+		int iBlockEnd;
+		while (i < inputDim) {
+			iBlockEnd = Math.min(i + ABANDON_BLOCK_SIZE, inputDim);
+			for (; i < iBlockEnd; i++) {
+				difference = A[i] - B[i];
+				sum += difference * difference;
+			}
+			if (sum > bound) {
+				break;
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Computes the squared distance to the pattern of a node as above, without
+	 * decoding a copy of the pattern if its precision is not double.
+	 */
+	protected double squaredDistance(double[] A, Node node, double bound) {
+		if (node.getPrecision() == Node.PRECISION.DOUBLE) {
+			return squaredDistance(A, node.getPattern(), bound);
+		}
+
+		double sum = 0.0;
+		double difference;
+
+		int blockSize = earlyAbandon ? ABANDON_BLOCK_SIZE : inputDim;
+		int i = 0;
+		int iBlockEnd;
+		while (i < inputDim) {
+			iBlockEnd = Math.min(i + blockSize, inputDim);
+			for (; i < iBlockEnd; i++) {
+				difference = A[i] - node.getPatternValue(i);
+				sum += difference * difference;
+			}
+			if (sum > bound) {
+				break;
+			}
+		}
+
+		return sum;
+	}
+
+	protected static void initNearest(Node[] nearestNodes, double[] nearestDistances) {
+		for (int k = 0; k < nearestNodes.length; k++) {
+			nearestNodes[k] = null;
+			nearestDistances[k] = Double.MAX_VALUE;
+		}
+	}
+
+	protected static boolean isNearer(Node node, double distance, Node nodeOther, double distanceOther) {
+		if (nodeOther == null) {
+			return true;
+		}
+		if (distance < distanceOther) {
+			return true;
+		}
+		return distance == distanceOther && node.getId() < nodeOther.getId();
+	}
+
+	/**
+	 * Inserts a node into the sorted arrays of nearest nodes if it is nearer
+	 * than the last entry.
+	 */
+	protected static void insertNearest(Node node, double distance, Node[] nearestNodes, double[] nearestDistances) {
+		int last = nearestNodes.length - 1;
+		if (!isNearer(node, distance, nearestNodes[last], nearestDistances[last])) {
+			return;
+		}
+		int k = last;
+		while (k > 0 && isNearer(node, distance, nearestNodes[k - 1], nearestDistances[k - 1])) {
+			nearestNodes[k] = nearestNodes[k - 1];
+			nearestDistances[k] = nearestDistances[k - 1];
+			k--;
+		}
+		nearestNodes[k] = node;
+		nearestDistances[k] = distance;
+	}
+
+	/**
+	 * Converts squared distances to euclidean distances and counts the nodes
+	 * found.
+	 */
+	protected static int finishNearest(Node[] nearestNodes, double[] nearestDistances) {
+		int numFound = 0;
+		for (int k = 0; k < nearestNodes.length; k++) {
+			if (nearestNodes[k] != null) {
+				nearestDistances[k] = Math.sqrt(nearestDistances[k]);
+				numFound++;
+			}
+		}
+		return numFound;
+	}
+
+}
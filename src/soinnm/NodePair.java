@@ -0,0 +1,38 @@
+package soinnm;
+
+import soinnm.Node;
+
+/**
+ * Class for a pair of a node and its nearest node (with respect to some
+ * criterion), together with the distance between both nodes.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class NodePair {
+
+	private Node node;
+
+	private Node nearestNode;
+
+	private double distance;
+
+	public NodePair(Node node, Node nearestNode, double distance) {
+		this.node = node;
+		this.nearestNode = nearestNode;
+		this.distance = distance;
+	}
+
+	public Node getNode() {
+		return node;
+	}
+
+	public Node getNearestNode() {
+		return nearestNode;
+	}
+
+	public double getDistance() {
+		return distance;
+	}
+
+}
@@ -0,0 +1,30 @@
+package soinnm;
+
+/**
+ * Class for an immutable copy of a node, as part of a topology snapshot.
+ * <p>
+ * The returned pattern must not be modified.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class NodeSnapshot {
+
+	private final long id;
+
+	private final double[] pattern;
+
+	NodeSnapshot(Node node) {
+		id = node.getId();
+		pattern = node.getPattern().clone();
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public double[] getPattern() {
+		return pattern;
+	}
+
+}
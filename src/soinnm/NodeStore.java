@@ -0,0 +1,544 @@
+package soinnm;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import soinnm.Cluster;
+import soinnm.Node;
+
+/**
+ * Class for a contiguous store of node patterns.
+ * <p>
+ * The patterns of all nodes are copied into a single growable array, in which
+ * each node occupies a slot of inputDim values. Slots of removed nodes are
+ * reused for new nodes. Nearest nodes are found by a linear scan over this
+ * array, which avoids following references to the pattern of each node and is
+ * therefore suitable for high-dimensional topologies.
+ * <p>
+ * The distance kernel accumulates four partial sums to allow the processor to
+ * overlap independent additions, and supports early abandoning in blocks of
+ * dimensions. The distances of the nodes found are recomputed in the order
+ * used by M-SOINN, so returned distances are identical to the ones computed
+ * there.
+ * <p>
+ * The patterns can be stored with reduced precision (single precision or 8-bit
+ * codes of a quantization), which saves memory and allows more patterns to be
+ * held in the processor cache. The precision should equal the one of the nodes,
+ * so that the distances used for ranking equal the ones to the node patterns.
+ * <p>
+ * For a batch of patterns, the store is scanned in blocks of slots that fit
+ * into the processor cache, and each block is compared with all patterns of a
+ * task before moving on to the next block.
+ * <p>
+ * Optionally, the winner search for a single pattern is split into partitions
+ * of slots that are scanned in parallel on a fork/join pool. The nearest nodes
+ * of all partitions are then merged. This is only done if the number of nodes
+ * and the number of stored values exceed the given thresholds, as the
+ * overhead of forking outweighs the gain for small topologies.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class NodeStore extends NodeIndexAbstract {
+
+	private static final int CAPACITY_INITIAL = 64;
+
+	private static final int BLOCK_VALUES = 4096; // number of stored values scanned per block in batch searches
+
+	static final int PARALLEL_NODES_MIN = 4096; // default minimum number of nodes for parallel search
+
+	static final long PARALLEL_VALUES_MIN = 1 << 20; // default minimum number of stored values for parallel search
+
+	private Node.PRECISION precision;
+
+	private double[] patterns; // pattern of slot s starts at s * inputDim (double precision)
+
+	private float[] patternsFloat; // (single precision)
+
+	private byte[] patternsByte; // (byte precision)
+
+	private Quantization quantization; // for byte precision
+
+	private Node[] slotNodes; // null for free slots
+
+	private int numSlots; // number of slots used so far (including free slots)
+
+	private int[] freeSlots;
+
+	private int numFreeSlots;
+
+	private HashMap<Node, Integer> slots;
+
+	private boolean parallel; // search partitions in parallel
+
+	private int parallelNodesMin; // minimum number of nodes for parallel search
+
+	private long parallelValuesMin; // minimum number of stored values (nodes times dimensionality) for parallel search
+
+	public NodeStore(int inputDim) {
+		super(inputDim);
+		slots = new HashMap<Node, Integer>();
+		precision = Node.PRECISION.DOUBLE;
+		parallel = false;
+		parallelNodesMin = PARALLEL_NODES_MIN;
+		parallelValuesMin = PARALLEL_VALUES_MIN;
+		clear();
+	}
+
+	public int getNumSlots() {
+		return numSlots;
+	}
+
+	public int getNumNodes() {
+		return slots.size();
+	}
+
+	public int getCapacity() {
+		return slotNodes.length;
+	}
+
+	public Node.PRECISION getPrecision() {
+		return precision;
+	}
+
+	public Quantization getQuantization() {
+		return quantization;
+	}
+
+	/**
+	 * Sets the precision of the stored patterns (the quantization is only used
+	 * for byte precision). Clears the store.
+	 */
+	public void setPrecision(Node.PRECISION precision, Quantization quantization) {
+		this.precision = precision;
+		this.quantization = quantization;
+		clear();
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public int getParallelNodesMin() {
+		return parallelNodesMin;
+	}
+
+	public void setParallelNodesMin(int parallelNodesMin) {
+		this.parallelNodesMin = parallelNodesMin;
+	}
+
+	public long getParallelValuesMin() {
+		return parallelValuesMin;
+	}
+
+	public void setParallelValuesMin(long parallelValuesMin) {
+		this.parallelValuesMin = parallelValuesMin;
+	}
+
+	@Override
+	public void add(Node node) {
+
+		// get free slot
+		int slot;
+		if (numFreeSlots > 0) {
+			numFreeSlots--;
+			slot = freeSlots[numFreeSlots];
+		} else {
+			if (numSlots == slotNodes.length) {
+				grow();
+			}
+			slot = numSlots;
+			numSlots++;
+		}
+
+		// store pattern
+		slots.put(node, slot);
+		slotNodes[slot] = node;
+		copyPattern(node, slot);
+
+	}
+
+	@Override
+	public void remove(Node node) {
+		Integer slot = slots.remove(node);
+		if (slot == null) {
+			return;
+		}
+
+		// free slot
+		slotNodes[slot] = null;
+		freeSlots[numFreeSlots] = slot;
+		numFreeSlots++;
+	}
+
+	@Override
+	public void update(Node node) {
+		Integer slot = slots.get(node);
+		if (slot == null) {
+			return;
+		}
+
+		// copy pattern
+		copyPattern(node, slot);
+	}
+
+	@Override
+	public void clear() {
+		patterns = null;
+		patternsFloat = null;
+		patternsByte = null;
+		switch (precision) {
+		case DOUBLE:
+			patterns = new double[CAPACITY_INITIAL * inputDim];
+			break;
+		case FLOAT:
+			patternsFloat = new float[CAPACITY_INITIAL * inputDim];
+			break;
+		case BYTE:
+			patternsByte = new byte[CAPACITY_INITIAL * inputDim];
+			break;
+		}
+		slotNodes = new Node[CAPACITY_INITIAL];
+		freeSlots = new int[CAPACITY_INITIAL];
+		numSlots = 0;
+		numFreeSlots = 0;
+		slots.clear();
+	}
+
+	@Override
+	public int findNearest(double[] pattern, Cluster excludedCluster, Node[] nearestNodes, double[] nearestDistances) {
+		initNearest(nearestNodes, nearestDistances);
+
+		// scan all slots
+		if (isParallelSearch()) {
+			ForkJoinPool pool = getPool();
+			int partitionSize = (numSlots + pool.getParallelism() - 1) / pool.getParallelism();
+			pool.invoke(new SearchTask(pattern, excludedCluster, 0, numSlots, partitionSize, nearestNodes, nearestDistances));
+		} else {
+			scan(pattern, excludedCluster, 0, numSlots, nearestNodes, nearestDistances);
+		}
+
+		return finishNearestExact(pattern, nearestNodes, nearestDistances);
+	}
+
+	private boolean isParallelSearch() {
+		if (!parallel || slots.size() < parallelNodesMin || (long) slots.size() * inputDim < parallelValuesMin) {
+			return false;
+		}
+		// do not fork again within tasks of a batch search
+		return !ForkJoinTask.inForkJoinPool() && getPool().getParallelism() > 1;
+	}
+
+	/**
+	 * Scans the slots from slotFrom (inclusive) to slotTo (exclusive). Keeps
+	 * squared distances in the arrays of nearest nodes.
+	 */
+	private void scan(double[] pattern, Cluster excludedCluster, int slotFrom, int slotTo, Node[] nearestNodes, double[] nearestDistances) {
+		int last = nearestNodes.length - 1;
+		Node node;
+		for (int slot = slotFrom; slot < slotTo; slot++) {
+			node = slotNodes[slot];
+			if (node != null && (excludedCluster == null || node.getCluster() != excludedCluster)) {
+				insertNearest(node, squaredDistance(pattern, slot, nearestDistances[last]), nearestNodes, nearestDistances);
+			}
+		}
+	}
+
+	@Override
+	protected void findNearest(double[][] inputs, int from, int to, Node[][] nearestNodes, double[][] nearestDistances) {
+		for (int p = from; p < to; p++) {
+			initNearest(nearestNodes[p], nearestDistances[p]);
+		}
+
+		// scan slots block-wise
+		int blockSize = Math.max(1, BLOCK_VALUES / Math.max(1, inputDim));
+		int slotBlockEnd;
+		int last;
+		Node node;
+		for (int slotBlock = 0; slotBlock < numSlots; slotBlock += blockSize) {
+			slotBlockEnd = Math.min(slotBlock + blockSize, numSlots);
+			for (int p = from; p < to; p++) {
+				last = nearestNodes[p].length - 1;
+				for (int slot = slotBlock; slot < slotBlockEnd; slot++) {
+					node = slotNodes[slot];
+					if (node != null) {
+						insertNearest(node, squaredDistance(inputs[p], slot, nearestDistances[p][last]), nearestNodes[p], nearestDistances[p]);
+					}
+				}
+			}
+		}
+
+		for (int p = from; p < to; p++) {
+			finishNearestExact(inputs[p], nearestNodes[p], nearestDistances[p]);
+		}
+	}
+
+	private void copyPattern(Node node, int slot) {
+		switch (precision) {
+		case DOUBLE:
+			node.copyPattern(patterns, slot * inputDim);
+			break;
+		case FLOAT:
+			node.copyPattern(patternsFloat, slot * inputDim);
+			break;
+		case BYTE:
+			node.copyPattern(patternsByte, slot * inputDim, quantization);
+			break;
+		}
+	}
+
+	/**
+	 * Computes the squared distance between a pattern and the pattern stored
+	 * in the given slot (see below).
+	 */
+	private double squaredDistance(double[] pattern, int slot, double bound) {
+		if (patterns != null) {
+			return squaredDistance(pattern, patterns, slot * inputDim, bound);
+		}
+		if (patternsFloat != null) {
+			return squaredDistance(pattern, patternsFloat, slot * inputDim, bound);
+		}
+		return squaredDistance(pattern, patternsByte, slot * inputDim, bound);
+	}
+
+	/**
+	 * Computes the squared distance between a pattern and the pattern stored
+	 * at the given offset. Stops once the partial sum exceeds the given bound
+	 * (if early abandoning is enabled).
+	 */
+	protected double squaredDistance(double[] pattern, double[] patterns, int offset, double bound) {
+		double sum0 = 0.0;
+		double sum1 = 0.0;
+		double sum2 = 0.0;
+		double sum3 = 0.0;
+		double difference0;
+		double difference1;
+		double difference2;
+		double difference3;
+
+		int blockSize = earlyAbandon ? ABANDON_BLOCK_SIZE : inputDim;
+		int i = 0;
+		int iBlockEnd;
+		int iMax;
+		while (i < inputDim) {
+			iBlockEnd = Math.min(i + blockSize, inputDim);
+			iMax = iBlockEnd - 3;
+			for (; i < iMax; i += 4) {
+				difference0 = pattern[i] - patterns[offset + i];
+				difference1 = pattern[i + 1] - patterns[offset + i + 1];
+				difference2 = pattern[i + 2] - patterns[offset + i + 2];
+				difference3 = pattern[i + 3] - patterns[offset + i + 3];
+				sum0 += difference0 * difference0;
+				sum1 += difference1 * difference1;
+				sum2 += difference2 * difference2;
+				sum3 += difference3 * difference3;
+			}
+			for (; i < iBlockEnd; i++) {
+				difference0 = pattern[i] - patterns[offset + i];
+				sum0 += difference0 * difference0;
+			}
+			if ((sum0 + sum1) + (sum2 + sum3) > bound) {
+				break;
+			}
+		}
+
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Computes the squared distance to a pattern stored with single precision
+	 * (see above).
+	 */
+	protected double squaredDistance(double[] pattern, float[] patterns, int offset, double bound) {
+		double sum0 = 0.0;
+		double sum1 = 0.0;
+		double sum2 = 0.0;
+		double sum3 = 0.0;
+		double difference0;
+		double difference1;
+		double difference2;
+		double difference3;
+
+		int blockSize = earlyAbandon ? ABANDON_BLOCK_SIZE : inputDim;
+		int i = 0;
+		int iBlockEnd;
+		int iMax;
+		while (i < inputDim) {
+			iBlockEnd = Math.min(i + blockSize, inputDim);
+			iMax = iBlockEnd - 3;
+			for (; i < iMax; i += 4) {
+				difference0 = pattern[i] - patterns[offset + i];
+				difference1 = pattern[i + 1] - patterns[offset + i + 1];
+				difference2 = pattern[i + 2] - patterns[offset + i + 2];
+				difference3 = pattern[i + 3] - patterns[offset + i + 3];
+				sum0 += difference0 * difference0;
+				sum1 += difference1 * difference1;
+				sum2 += difference2 * difference2;
+				sum3 += difference3 * difference3;
+			}
+			for (; i < iBlockEnd; i++) {
+				difference0 = pattern[i] - patterns[offset + i];
+				sum0 += difference0 * difference0;
+			}
+			if ((sum0 + sum1) + (sum2 + sum3) > bound) {
+				break;
+			}
+		}
+
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Computes the squared distance to a pattern stored as 8-bit codes of the
+	 * quantization (see above).
+	 */
+	protected double squaredDistance(double[] pattern, byte[] patterns, int offset, double bound) {
+		double[] min = quantization.getMin();
+		double[] scale = quantization.getScale();
+		double sum0 = 0.0;
+		double sum1 = 0.0;
+		double sum2 = 0.0;
+		double sum3 = 0.0;
+		double difference0;
+		double difference1;
+		double difference2;
+		double difference3;
+
+		int blockSize = earlyAbandon ? ABANDON_BLOCK_SIZE : inputDim;
+		int i = 0;
+		int iBlockEnd;
+		int iMax;
+		while (i < inputDim) {
+			iBlockEnd = Math.min(i + blockSize, inputDim);
+			iMax = iBlockEnd - 3;
+			for (; i < iMax; i += 4) {
+				difference0 = pattern[i] - (min[i] + scale[i] * (patterns[offset + i] & 0xFF));
+				difference1 = pattern[i + 1] - (min[i + 1] + scale[i + 1] * (patterns[offset + i + 1] & 0xFF));
+				difference2 = pattern[i + 2] - (min[i + 2] + scale[i + 2] * (patterns[offset + i + 2] & 0xFF));
+				difference3 = pattern[i + 3] - (min[i + 3] + scale[i + 3] * (patterns[offset + i + 3] & 0xFF));
+				sum0 += difference0 * difference0;
+				sum1 += difference1 * difference1;
+				sum2 += difference2 * difference2;
+				sum3 += difference3 * difference3;
+			}
+			for (; i < iBlockEnd; i++) {
+				difference0 = pattern[i] - (min[i] + scale[i] * (patterns[offset + i] & 0xFF));
+				sum0 += difference0 * difference0;
+			}
+			if ((sum0 + sum1) + (sum2 + sum3) > bound) {
+				break;
+			}
+		}
+
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Recomputes the distances of the nodes found in the order used by M-SOINN
+	 * and sorts the nodes accordingly.
+	 */
+	protected int finishNearestExact(double[] pattern, Node[] nearestNodes, double[] nearestDistances) {
+		int numFound = 0;
+		for (int k = 0; k < nearestNodes.length; k++) {
+			if (nearestNodes[k] != null) {
+				numFound++;
+			}
+		}
+		Node[] nodesFound = new Node[numFound];
+		System.arraycopy(nearestNodes, 0, nodesFound, 0, numFound);
+		initNearest(nearestNodes, nearestDistances);
+		for (Node node : nodesFound) {
+			insertNearest(node, squaredDistance(pattern, node.getPattern()), nearestNodes, nearestDistances);
+		}
+		return finishNearest(nearestNodes, nearestDistances);
+	}
+
+	private class SearchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private double[] pattern;
+
+		private Cluster excludedCluster;
+
+		private int slotFrom;
+
+		private int slotTo;
+
+		private int partitionSize;
+
+		private Node[] nearestNodes;
+
+		private double[] nearestDistances;
+
+		public SearchTask(double[] pattern, Cluster excludedCluster, int slotFrom, int slotTo, int partitionSize, Node[] nearestNodes, double[] nearestDistances) {
+			this.pattern = pattern;
+			this.excludedCluster = excludedCluster;
+			this.slotFrom = slotFrom;
+			this.slotTo = slotTo;
+			this.partitionSize = partitionSize;
+			this.nearestNodes = nearestNodes;
+			this.nearestDistances = nearestDistances;
+		}
+
+		@Override
+		protected void compute() {
+			if (slotTo - slotFrom <= partitionSize) {
+				scan(pattern, excludedCluster, slotFrom, slotTo, nearestNodes, nearestDistances);
+				return;
+			}
+
+			// search both halves with separate nearest nodes
+			int k = nearestNodes.length;
+			int slotMiddle = (slotFrom + slotTo) >>> 1;
+			SearchTask taskLeft = new SearchTask(pattern, excludedCluster, slotFrom, slotMiddle, partitionSize, new Node[k], new double[k]);
+			SearchTask taskRight = new SearchTask(pattern, excludedCluster, slotMiddle, slotTo, partitionSize, new Node[k], new double[k]);
+			initNearest(taskLeft.nearestNodes, taskLeft.nearestDistances);
+			initNearest(taskRight.nearestNodes, taskRight.nearestDistances);
+			invokeAll(taskLeft, taskRight);
+
+			// merge (ties are resolved by node id, so the result does not depend on the partitions)
+			for (SearchTask task : new SearchTask[] { taskLeft, taskRight }) {
+				for (int n = 0; n < k && task.nearestNodes[n] != null; n++) {
+					insertNearest(task.nearestNodes[n], task.nearestDistances[n], nearestNodes, nearestDistances);
+				}
+			}
+		}
+
+	}
+
+	private void grow() {
+		int capacity = slotNodes.length * 2;
+
+		if (patterns != null) {
+			double[] patternsNew = new double[capacity * inputDim];
+			System.arraycopy(patterns, 0, patternsNew, 0, numSlots * inputDim);
+			patterns = patternsNew;
+		}
+		if (patternsFloat != null) {
+			float[] patternsNew = new float[capacity * inputDim];
+			System.arraycopy(patternsFloat, 0, patternsNew, 0, numSlots * inputDim);
+			patternsFloat = patternsNew;
+		}
+		if (patternsByte != null) {
+			byte[] patternsNew = new byte[capacity * inputDim];
+			System.arraycopy(patternsByte, 0, patternsNew, 0, numSlots * inputDim);
+			patternsByte = patternsNew;
+		}
+
+		Node[] slotNodesNew = new Node[capacity];
+		System.arraycopy(slotNodes, 0, slotNodesNew, 0, numSlots);
+		slotNodes = slotNodesNew;
+
+		int[] freeSlotsNew = new int[capacity];
+		System.arraycopy(freeSlots, 0, freeSlotsNew, 0, numFreeSlots);
+		freeSlots = freeSlotsNew;
+	}
+
+}
@@ -0,0 +1,100 @@
+package soinnm;
+
+import java.util.Random;
+
+/**
+ * Class for the quantization of patterns to 8-bit codes.
+ * <p>
+ * Each dimension has a range given by a minimum and a maximum value, which is
+ * divided into 255 equal steps. Values outside of the range are clamped. The
+ * range can be the same for all dimensions or be given per dimension.
+ * <p>
+ * Besides rounding to the nearest code, values can be rounded stochastically
+ * to one of the two neighbouring codes, with probabilities such that the
+ * expected code equals the value. Small learning updates would otherwise be
+ * rounded away.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class Quantization {
+
+	private static final int CODE_MAX = 255;
+
+	private double[] min;
+
+	private double[] max;
+
+	private double[] scale; // value per code step
+
+	public Quantization(int inputDim, double min, double max) {
+		this.min = new double[inputDim];
+		this.max = new double[inputDim];
+		for (int i = 0; i < inputDim; i++) {
+			this.min[i] = min;
+			this.max[i] = max;
+		}
+		computeScale();
+	}
+
+	public Quantization(double[] min, double[] max) {
+		this.min = min.clone();
+		this.max = max.clone();
+		computeScale();
+	}
+
+	private void computeScale() {
+		scale = new double[min.length];
+		for (int i = 0; i < min.length; i++) {
+			if (max[i] > min[i]) {
+				scale[i] = (max[i] - min[i]) / CODE_MAX;
+			} else {
+				scale[i] = 1.0;
+			}
+		}
+	}
+
+	public int getInputDim() {
+		return min.length;
+	}
+
+	public double[] getMin() {
+		return min;
+	}
+
+	public double[] getMax() {
+		return max;
+	}
+
+	double[] getScale() {
+		return scale;
+	}
+
+	public double decode(int i, byte code) {
+		return min[i] + scale[i] * (code & 0xFF);
+	}
+
+	public byte encode(int i, double value) {
+		return clamp(Math.round((value - min[i]) / scale[i]));
+	}
+
+	public byte encode(int i, double value, Random random) {
+		double code = (value - min[i]) / scale[i];
+		double codeFloor = Math.floor(code);
+		if (random.nextDouble() < code - codeFloor) {
+			return clamp((long) codeFloor + 1);
+		}
+		return clamp((long) codeFloor);
+	}
+
+	private byte clamp(long code) {
+		if (code < 0) {
+			return 0;
+		}
+		if (code > CODE_MAX) {
+			return (byte) CODE_MAX;
+		}
+		return (byte) code;
+	}
+
+}
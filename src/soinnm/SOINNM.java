@@ -2,14 +2,25 @@ package soinnm;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.Set;
 import java.util.Random;
 
+import soinnm.CleanupIndex;
 import soinnm.Cluster;
+import soinnm.ClusterSnapshot;
 import soinnm.Edge;
+import soinnm.JoiningIndex;
 import soinnm.Node;
+import soinnm.NodeSnapshot;
 import soinnm.SOINNM;
+import soinnm.TopologySnapshot;
 import soinnm.XMLReader;
 import soinnm.XMLWriter;
 
@@ -30,31 +41,71 @@ public class SOINNM {
 
 	private boolean printDebugInfo = false;
 
+	private static final int KD_TREE_DIM_MAX = 16; // maximum dimensionality for using a k-d tree as node index
+
+	private static final int BATCH_CANDIDATES = 8; // number of nearest nodes determined in advance for each pattern of a batch
+
+	private static final int BATCH_CHUNK_MIN = 16; // minimum number of patterns for which nearest nodes are determined in advance
+
 	private Random random;
 
+	private Random roundingRandom; // for stochastic rounding of patterns with byte precision
+
 	private int inputDim;
 
-	private LinkedList<Node> nodeSet;
+	private LinkedHashSet<Node> nodeSet;
+
+	private NodeIndex nodeIndex; // index for nearest node search
+
+	private Node.PRECISION patternPrecision = Node.PRECISION.DOUBLE; // precision for storing node patterns
+
+	private Quantization quantization = null; // quantization for byte precision
+
+	private boolean parallelSearch = false; // search nearest nodes in parallel (node store only)
+
+	private int parallelSearchNodesMin = NodeStore.PARALLEL_NODES_MIN; // minimum number of nodes for parallel search
+
+	private long parallelSearchValuesMin = NodeStore.PARALLEL_VALUES_MIN; // minimum number of nodes times dimensionality for parallel search
+
+	private HashSet<Node> touchedNodes; // nodes added, removed or moved while processing a batch (null otherwise)
 
 	private long nextNodeId;
 
-	private LinkedList<Edge> edgeSet;
+	private CleanupIndex cleanupIndex; // heaps for finding nodes and edges during clean up
+
+	private JoiningIndex joiningIndex; // nearest nodes of other clusters for cluster joining
+
+	private LinkedHashSet<Edge> edgeSet; // index of all edges (adjacency is stored in nodes)
 
 	private long nextEdgeId;
 
-	private LinkedList<Cluster> clusterSet;
+	private LinkedHashSet<Cluster> clusterSet;
 
 	private long nextClusterId;
 
 	private long numInputs; // number of inputs since last clean up
 
+	private boolean publishSnapshots = false; // track changes for snapshots
+
+	private boolean publishSnapshotsOnInput = true; // publish a snapshot after each input
+
+	private volatile TopologySnapshot snapshot; // last published snapshot
+
+	private long snapshotVersion;
+
+	private HashMap<Node, NodeSnapshot> nodeSnapshots; // snapshots of unchanged nodes (null unless publishing)
+
+	private HashMap<Cluster, ClusterSnapshot> clusterSnapshots; // last snapshots of clusters
+
+	private long[][] edgeSnapshot; // node ids of all edges (null if edges have changed)
+
 	private Cluster activatedCluster; // MK: cluster of current input
 
-	private LinkedList<Cluster> splitClusters; // MK: split clusters (first old cluster, second new cluster)
+	private ArrayList<TopologyListener> topologyListeners;
 
-	private LinkedList<Cluster> joinedClusters; // MK: joined clusters (first kept cluster, second removed cluster)
+	private TopologyEvents topologyEvents; // changes of current input (only recorded if there are listeners)
 
-	private LinkedList<Cluster> removedClusters; // MK: removed clusters
+	private Journal journal; // journal of changes (null if not journaling)
 
 	// parameters
 
@@ -68,6 +119,8 @@ public class SOINNM {
 
 	private int ageDead = 100;
 
+	private boolean checkAgeAllEdges = false; // check age of all edges (not only those of node s1) at next input
+
 	private boolean connectNewNodes = false; // MK: allow connections from newly created nodes to existing nodes
 
 	private int lambda = 25;
@@ -101,17 +154,26 @@ public class SOINNM {
 
 		// initialise
 		random = new Random();
+		roundingRandom = new Random();
 
 		// initialise node set
-		nodeSet = new LinkedList<Node>();
+		nodeSet = new LinkedHashSet<Node>();
+		if (inputDim <= KD_TREE_DIM_MAX) {
+			nodeIndex = new KDTreeNodeIndex(inputDim);
+		} else {
+			nodeIndex = new NodeStore(inputDim);
+		}
+		configureNodeIndex();
 		nextNodeId = 1;
+		cleanupIndex = new CleanupIndex(inputDim);
+		joiningIndex = new JoiningIndex(inputDim);
 
 		// initialise edge set
-		edgeSet = new LinkedList<Edge>();
+		edgeSet = new LinkedHashSet<Edge>();
 		nextEdgeId = 1;
 
 		// initialise cluster set
-		clusterSet = new LinkedList<Cluster>();
+		clusterSet = new LinkedHashSet<Cluster>();
 		nextClusterId = 1;
 
 		// initialise number of inputs
@@ -120,14 +182,9 @@ public class SOINNM {
 		// MK: initialise activated cluster
 		activatedCluster = null;
 
-		// MK: initialise split clusters;
-		splitClusters = new LinkedList<Cluster>();
-
-		// MK: initialise joined clusters;
-		joinedClusters = new LinkedList<Cluster>();
-
-		// MK: initialise removed clusters
-		removedClusters = new LinkedList<Cluster>();
+		// initialise topology listeners
+		topologyListeners = new ArrayList<TopologyListener>();
+		topologyEvents = new TopologyEvents();
 
 	}
 
@@ -145,10 +202,88 @@ public class SOINNM {
 		return inputDim;
 	}
 
-	public LinkedList<Node> getNodeSet() {
+	public LinkedHashSet<Node> getNodeSet() {
 		return nodeSet;
 	}
 
+	public NodeIndex getNodeIndex() {
+		return nodeIndex;
+	}
+
+	public void setNodeIndex(NodeIndex nodeIndex) {
+		this.nodeIndex = nodeIndex;
+		configureNodeIndex();
+		rebuild();
+	}
+
+	public Node.PRECISION getPatternPrecision() {
+		return patternPrecision;
+	}
+
+	public Quantization getQuantization() {
+		return quantization;
+	}
+
+	/**
+	 * Sets the precision for storing the patterns of nodes (and of the node
+	 * store). Byte precision requires a quantization for the range of the input
+	 * patterns. Existing nodes are converted.
+	 */
+	public void setPatternPrecision(Node.PRECISION patternPrecision, Quantization quantization) {
+		if (patternPrecision == Node.PRECISION.BYTE && (quantization == null || quantization.getInputDim() != inputDim)) {
+			System.err.println("Byte precision requires a quantization of matching dimensionality!");
+			return;
+		}
+		this.patternPrecision = patternPrecision;
+		this.quantization = (patternPrecision == Node.PRECISION.BYTE) ? quantization : null;
+		configureNodeIndex();
+		rebuild();
+	}
+
+	public boolean isParallelSearch() {
+		return parallelSearch;
+	}
+
+	/**
+	 * Enables searching the nearest nodes in parallel. Only applies to a node
+	 * store with at least parallelSearchNodesMin nodes and at least
+	 * parallelSearchValuesMin stored values (nodes times dimensionality).
+	 */
+	public void setParallelSearch(boolean parallelSearch) {
+		this.parallelSearch = parallelSearch;
+		configureNodeIndex();
+	}
+
+	public int getParallelSearchNodesMin() {
+		return parallelSearchNodesMin;
+	}
+
+	public void setParallelSearchNodesMin(int parallelSearchNodesMin) {
+		this.parallelSearchNodesMin = parallelSearchNodesMin;
+		configureNodeIndex();
+	}
+
+	public long getParallelSearchValuesMin() {
+		return parallelSearchValuesMin;
+	}
+
+	public void setParallelSearchValuesMin(long parallelSearchValuesMin) {
+		this.parallelSearchValuesMin = parallelSearchValuesMin;
+		configureNodeIndex();
+	}
+
+	private void configureNodeIndex() {
+		if (nodeIndex instanceof NodeStore) {
+			NodeStore nodeStore = (NodeStore) nodeIndex;
+			if (nodeStore.getPrecision() != patternPrecision || nodeStore.getQuantization() != quantization) {
+				nodeStore.setPrecision(patternPrecision, quantization);
+			}
+			nodeStore.setParallel(parallelSearch);
+			nodeStore.setParallelNodesMin(parallelSearchNodesMin);
+			nodeStore.setParallelValuesMin(parallelSearchValuesMin);
+		}
+	}
+
 	public long getNextNodeId() {
 		return nextNodeId;
 	}
@@ -157,7 +292,7 @@ public class SOINNM {
 		this.nextNodeId = nextNodeId;
 	}
 
-	public LinkedList<Edge> getEdgeSet() {
+	public LinkedHashSet<Edge> getEdgeSet() {
 		return edgeSet;
 	}
 
@@ -169,7 +304,7 @@ public class SOINNM {
 		this.nextEdgeId = nextEdgeId;
 	}
 
-	public LinkedList<Cluster> getClusterSet() {
+	public LinkedHashSet<Cluster> getClusterSet() {
 		return clusterSet;
 	}
 
@@ -189,20 +324,141 @@ public class SOINNM {
 		this.numInputs = numInputs;
 	}
 
+	public boolean isPublishSnapshots() {
+		return publishSnapshots;
+	}
+
+	/**
+	 * Enables publishing an immutable snapshot of the topology after each
+	 * input (after each batch for batch input), which other threads can read
+	 * with getSnapshot() without locking.
+	 */
+	public void setPublishSnapshots(boolean publishSnapshots) {
+		this.publishSnapshots = publishSnapshots;
+		if (publishSnapshots) {
+			nodeSnapshots = new HashMap<Node, NodeSnapshot>();
+			clusterSnapshots = new HashMap<Cluster, ClusterSnapshot>();
+			edgeSnapshot = null;
+			publishSnapshot();
+		} else {
+			nodeSnapshots = null;
+			clusterSnapshots = null;
+			edgeSnapshot = null;
+		}
+	}
+
+	public boolean isPublishSnapshotsOnInput() {
+		return publishSnapshotsOnInput;
+	}
+
+	/**
+	 * Sets whether a snapshot is published after each input (default). If
+	 * not, snapshots are only published by calling publishSnapshot(), e.g.
+	 * once per refresh of a user interface, since each publication iterates
+	 * over all nodes and clusters.
+	 */
+	public void setPublishSnapshotsOnInput(boolean publishSnapshotsOnInput) {
+		this.publishSnapshotsOnInput = publishSnapshotsOnInput;
+	}
+
+	/**
+	 * Returns the last published snapshot (null if none has been published).
+	 */
+	public TopologySnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Publishes a snapshot of the topology if publishing is enabled. Is called
+	 * after each input (unless disabled by setPublishSnapshotsOnInput()),
+	 * after clearing and after rebuilding; needs to be called by the learning
+	 * thread after other modifications. Copies of
+	 * nodes and clusters that have not changed are taken from the previous
+	 * snapshot.
+	 */
+	public void publishSnapshot() {
+		if (!publishSnapshots) {
+			return;
+		}
+
+		// nodes
+		ArrayList<NodeSnapshot> nodes = new ArrayList<NodeSnapshot>(nodeSet.size());
+		for (Node node : nodeSet) {
+			NodeSnapshot nodeSnapshot = nodeSnapshots.get(node);
+			if (nodeSnapshot == null || nodeSnapshot.getId() != node.getId()) {
+				nodeSnapshot = new NodeSnapshot(node);
+				nodeSnapshots.put(node, nodeSnapshot);
+			}
+			nodes.add(nodeSnapshot);
+		}
+
+		// clusters
+		ArrayList<ClusterSnapshot> clusters = new ArrayList<ClusterSnapshot>(clusterSet.size());
+		HashMap<Cluster, ClusterSnapshot> clusterSnapshotsNew = new HashMap<Cluster, ClusterSnapshot>();
+		for (Cluster cluster : clusterSet) {
+			ClusterSnapshot clusterSnapshot = clusterSnapshots.get(cluster);
+			if (clusterSnapshot == null || clusterSnapshot.getId() != cluster.getId() || clusterSnapshot.getModificationCount() != cluster.getModificationCount()) {
+				clusterSnapshot = new ClusterSnapshot(cluster);
+			}
+			clusters.add(clusterSnapshot);
+			clusterSnapshotsNew.put(cluster, clusterSnapshot);
+		}
+		clusterSnapshots = clusterSnapshotsNew;
+
+		// edges
+		if (edgeSnapshot == null) {
+			edgeSnapshot = new long[2][edgeSet.size()];
+			int e = 0;
+			for (Edge edge : edgeSet) {
+				edgeSnapshot[0][e] = edge.getNodeA().getId();
+				edgeSnapshot[1][e] = edge.getNodeB().getId();
+				e++;
+			}
+		}
+
+		long activatedClusterId = (activatedCluster != null) ? activatedCluster.getId() : -1;
+		snapshot = new TopologySnapshot(++snapshotVersion, inputDim, nodes, clusters, edgeSnapshot[0], edgeSnapshot[1], activatedClusterId);
+	}
+
 	public Cluster getActivatedCluster() {
 		return activatedCluster;
 	}
 
-	public LinkedList<Cluster> getSplitClusters() {
-		return splitClusters;
+	public void addTopologyListener(TopologyListener topologyListener) {
+		topologyListeners.add(topologyListener);
+	}
+
+	public void removeTopologyListener(TopologyListener topologyListener) {
+		topologyListeners.remove(topologyListener);
+	}
+
+	public Journal getJournal() {
+		return journal;
 	}
 
-	public LinkedList<Cluster> getJoinedClusters() {
-		return joinedClusters;
+	/**
+	 * Sets the journal recording the changes (see Journal.open).
+	 */
+	void setJournal(Journal journal) {
+		this.journal = journal;
 	}
 
-	public LinkedList<Cluster> getRemovedClusters() {
-		return removedClusters;
+	private void addTopologyEvent(TopologyEvents.TYPE type, long idA, long idB) {
+		if (!topologyListeners.isEmpty()) {
+			topologyEvents.add(type, idA, idB);
+		}
+	}
+
+	/**
+	 * Delivers the recorded changes to all listeners, if there are any.
+	 */
+	private void fireTopologyChanged() {
+		if (!topologyEvents.isEmpty()) {
+			for (TopologyListener topologyListener : new ArrayList<TopologyListener>(topologyListeners)) {
+				topologyListener.topologyChanged(this, topologyEvents);
+			}
+			topologyEvents.clear();
+		}
 	}
 
 	// parameter getters/setters
@@ -245,6 +501,7 @@ public class SOINNM {
 
 	public void setAgeDead(int ageDead) {
 		this.ageDead = ageDead;
+		checkAgeAllEdges = true;
 	}
 
 	public boolean isConnectNewNodes() {
@@ -353,13 +610,264 @@ public class SOINNM {
 
 	public void clear() {
 		nodeSet.clear();
+		nodeIndex.clear();
+		cleanupIndex.clear();
+		joiningIndex.clear();
 		edgeSet.clear();
 		clusterSet.clear();
 		numInputs = 0;
 		activatedCluster = null;
-		removedClusters.clear();
-		joinedClusters.clear();
-		splitClusters.clear();
+		topologyEvents.clear();
+		if (journal != null) {
+			journal.cleared();
+		}
+		if (publishSnapshots) {
+			nodeSnapshots.clear();
+			clusterSnapshots.clear();
+			edgeSnapshot = null;
+			publishSnapshot();
+		}
+	}
+
+	/**
+	 * Rebuilds the auxiliary structures of the topology (node index, node
+	 * adjacency, node clusters, cluster statistics, cleanup index) from the node, edge and
+	 * cluster sets, and converts the patterns of nodes to the pattern
+	 * precision. Needs to be called after these sets have been modified
+	 * directly, e.g. when reading from a file.
+	 */
+	public void rebuild() {
+		nodeIndex.clear();
+		for (Node node : nodeSet) {
+			if (node.getPrecision() != patternPrecision || node.getQuantization() != quantization) {
+				node.setPrecision(patternPrecision, quantization);
+			}
+			nodeIndex.add(node);
+			node.clearEdges();
+		}
+		for (Edge edge : edgeSet) {
+			edge.getNodeA().addEdge(edge);
+			edge.getNodeB().addEdge(edge);
+		}
+		for (Cluster cluster : clusterSet) {
+			for (Node node : cluster.getNodes()) {
+				node.setCluster(cluster);
+			}
+			cluster.recomputeStatistics();
+		}
+		cleanupIndex.clear();
+		joiningIndex.clear();
+		for (Node node : nodeSet) {
+			cleanupIndex.addNode(node);
+			joiningIndex.addNode(node);
+		}
+		for (Edge edge : edgeSet) {
+			cleanupIndex.addEdge(edge);
+		}
+		checkAgeAllEdges = true;
+		if (publishSnapshots) {
+			nodeSnapshots.clear();
+			clusterSnapshots.clear();
+			edgeSnapshot = null;
+			publishSnapshot();
+		}
+		if (journal != null) {
+			journal.topologyReplaced();
+		}
+	}
+
+	/**
+	 * Returns a copy of the nodes, edges, clusters, parameters and variables of
+	 * this topology, e.g. for saving it in another thread while this topology
+	 * continues to learn. Patterns are shared between nodes and their copies
+	 * until they are changed (copy on write), so copying is fast even for
+	 * large topologies. The auxiliary structures of the copy are not built,
+	 * so rebuild() needs to be called before the copy is used for learning.
+	 */
+	public SOINNM copy() {
+		SOINNM topology = createEmpty();
+		topology.copyParameters(this);
+
+		// nodes
+		HashMap<Node, Node> nodeMap = new HashMap<Node, Node>();
+		for (Node node : nodeSet) {
+			Node nodeCopy = new Node(node);
+			topology.nodeSet.add(nodeCopy);
+			nodeMap.put(node, nodeCopy);
+		}
+
+		// edges
+		for (Edge edge : edgeSet) {
+			Edge edgeCopy = new Edge(edge.getId(), nodeMap.get(edge.getNodeA()), nodeMap.get(edge.getNodeB()));
+			edgeCopy.setAge(edge.getAge());
+			topology.edgeSet.add(edgeCopy);
+		}
+
+		// clusters
+		for (Cluster cluster : clusterSet) {
+			ArrayList<Node> nodesCopy = new ArrayList<Node>(cluster.getNodes().size());
+			for (Node node : cluster.getNodes()) {
+				nodesCopy.add(nodeMap.get(node));
+			}
+			topology.clusterSet.add(new Cluster(cluster, nodesCopy));
+		}
+
+		// variables
+		topology.nextNodeId = nextNodeId;
+		topology.nextEdgeId = nextEdgeId;
+		topology.nextClusterId = nextClusterId;
+		topology.numInputs = numInputs;
+
+		return topology;
+	}
+
+	/**
+	 * Returns a new empty topology with the input dimensionality, pattern
+	 * precision and search settings of this topology, e.g. for loading a file
+	 * in another thread before replacing or inserting into this topology.
+	 */
+	public SOINNM createEmpty() {
+		SOINNM topology = new SOINNM(inputDim);
+		topology.patternPrecision = patternPrecision;
+		topology.quantization = quantization;
+		topology.parallelSearch = parallelSearch;
+		topology.parallelSearchNodesMin = parallelSearchNodesMin;
+		topology.parallelSearchValuesMin = parallelSearchValuesMin;
+		topology.configureNodeIndex();
+		return topology;
+	}
+
+	private void copyParameters(SOINNM topology) {
+		noiseLevel = topology.noiseLevel;
+		useFixedThreshold = topology.useFixedThreshold;
+		fixedThreshold = topology.fixedThreshold;
+		minimumThreshold = topology.minimumThreshold;
+		ageDead = topology.ageDead;
+		connectNewNodes = topology.connectNewNodes;
+		lambda = topology.lambda;
+		edgeMaxRemoval = topology.edgeMaxRemoval;
+		nodeNumSignalsMinRemoval = topology.nodeNumSignalsMinRemoval;
+		reduceErrorInsertion = topology.reduceErrorInsertion;
+		smallClusterRemoval = topology.smallClusterRemoval;
+		c2Param = topology.c2Param;
+		c1Param = topology.c1Param;
+		clusterJoining = topology.clusterJoining;
+		joinTolerance = topology.joinTolerance;
+		useAbsoluteJoinTolerance = topology.useAbsoluteJoinTolerance;
+		joinToleranceAbsolute = topology.joinToleranceAbsolute;
+		joiningIterationsMax = topology.joiningIterationsMax;
+	}
+
+	/**
+	 * Replaces the nodes, edges, clusters, parameters and variables of this
+	 * topology with those of the given topology, e.g. of a topology that has
+	 * been loaded from a file in another thread (see createEmpty). The
+	 * auxiliary structures of the given topology are taken over, so replacing
+	 * is fast (a copy needs to be rebuilt first). The given topology must not
+	 * be used afterwards.
+	 */
+	public void replaceWith(SOINNM topology) {
+
+		// check input dimensionality
+		if (topology.inputDim != inputDim) {
+			System.err.println("Wrong input dimensionality!");
+			return;
+		}
+
+		// nodes, edges, clusters
+		nodeSet.clear();
+		nodeSet.addAll(topology.nodeSet);
+		edgeSet.clear();
+		edgeSet.addAll(topology.edgeSet);
+		clusterSet.clear();
+		clusterSet.addAll(topology.clusterSet);
+
+		// parameters and variables
+		copyParameters(topology);
+		nextNodeId = topology.nextNodeId;
+		nextEdgeId = topology.nextEdgeId;
+		nextClusterId = topology.nextClusterId;
+		numInputs = topology.numInputs;
+		activatedCluster = null;
+		topologyEvents.clear();
+
+		// auxiliary structures
+		if (topology.nodeIndex.getClass() != nodeIndex.getClass() || topology.patternPrecision != patternPrecision || topology.quantization != quantization) {
+			// cannot be taken over
+			rebuild();
+			return;
+		}
+		nodeIndex = topology.nodeIndex;
+		configureNodeIndex();
+		cleanupIndex = topology.cleanupIndex;
+		joiningIndex = topology.joiningIndex;
+		checkAgeAllEdges = true;
+		if (publishSnapshots) {
+			nodeSnapshots.clear();
+			clusterSnapshots.clear();
+			edgeSnapshot = null;
+			publishSnapshot();
+		}
+		if (journal != null) {
+			journal.topologyReplaced();
+		}
+	}
+
+	/**
+	 * Inserts the nodes, edges and clusters of the given topology with new
+	 * ids, e.g. of a topology that has been loaded from a file in another
+	 * thread (see createEmpty). As when inserting from a file, labels,
+	 * parameters and variables are not inserted. The given topology needs to
+	 * be built (a copy needs to be rebuilt first) and must not be used
+	 * afterwards.
+	 */
+	public void insert(SOINNM topology) {
+
+		// check input dimensionality
+		if (topology.inputDim != inputDim) {
+			System.err.println("Wrong input dimensionality!");
+			return;
+		}
+
+		// nodes (with new ids)
+		boolean converted = false;
+		for (Node node : topology.nodeSet) {
+			node.setId(nextNodeId++);
+			node.setLabel(null);
+			if (node.getPrecision() != patternPrecision || node.getQuantization() != quantization) {
+				node.setPrecision(patternPrecision, quantization);
+				converted = true;
+			}
+			nodeSet.add(node);
+			nodeIndex.add(node);
+			cleanupIndex.addNode(node);
+			joiningIndex.addNode(node);
+		}
+
+		// edges (with new ids)
+		for (Edge edge : topology.edgeSet) {
+			edge.setId(nextEdgeId++);
+			edgeSet.add(edge);
+			cleanupIndex.addEdge(edge);
+		}
+
+		// clusters (with new ids)
+		for (Cluster cluster : topology.clusterSet) {
+			cluster.setId(nextClusterId++);
+			clusterSet.add(cluster);
+			if (converted) {
+				cluster.recomputeStatistics();
+			}
+		}
+
+		checkAgeAllEdges = true;
+		if (publishSnapshots) {
+			edgeSnapshot = null;
+			publishSnapshot();
+		}
+		if (journal != null) {
+			journal.topologyReplaced();
+		}
 	}
 
 	public void createRandomNodes(int number) {
@@ -371,6 +879,13 @@ public class SOINNM {
 			Node node = addNode(pattern);
 			node.setNumSignals(1);
 		}
+		if (publishSnapshotsOnInput) {
+			publishSnapshot();
+		}
+		fireTopologyChanged();
+		if (journal != null) {
+			journal.inputsProcessed(0);
+		}
 	}
 
 	public void input(double[] pattern) {
@@ -392,24 +907,163 @@ public class SOINNM {
 			}
 		}
 
-		// MK: unset cluster means and prototypes
-		for (Cluster cluster : clusterSet) {
-			cluster.unsetMean();
-			cluster.unsetWeightedMean();
-			cluster.unsetPrototype();
+		// find nearest node s1 and second nearest node s2
+		Node[] nearestNodes = new Node[2];
+		double[] nearestDistances = new double[2];
+		nodeIndex.findNearest(pattern, nearestNodes, nearestDistances);
+
+		// process input
+		input(pattern, label, nearestNodes, nearestDistances);
+
+		// publish snapshot
+		if (publishSnapshotsOnInput) {
+			publishSnapshot();
 		}
 
-		// MK: reset activated cluster
-		activatedCluster = null;
+		// notify listeners
+		fireTopologyChanged();
 
-		// MK: reset split clusters
-		splitClusters.clear();
+		// record changes
+		if (journal != null) {
+			journal.inputsProcessed(1);
+		}
 
-		// MK: reset joined clusters
-		joinedClusters.clear();
+	}
 
-		// MK: reset removed clusters
-		removedClusters.clear();
+	/**
+	 * Inputs a batch of patterns with the given labels (labels may be null).
+	 * The result is the same as inputting the patterns one after another.
+	 * <p>
+	 * The nearest nodes of a chunk of patterns are determined in advance, in
+	 * parallel against the current nodes. While the inputs of the chunk are
+	 * processed, nodes that are added, removed or moved are tracked. The nodes
+	 * s1 and s2 for an input are then taken from the untouched nodes determined
+	 * in advance and from the touched nodes. All nodes are only searched if
+	 * too few untouched nodes are left. The size of the chunks grows with the
+	 * square root of the number of nodes, which balances the search in advance
+	 * against the number of touched nodes.
+	 * <p>
+	 * Topology listeners are notified once per chunk, with the events of all
+	 * inputs of the chunk. The activated cluster refers to the last input of
+	 * the batch.
+	 */
+	public void inputBatch(double[][] patterns, String[] labels) {
+
+		// check dimensionality of input patterns and add noise (in order of input)
+		ArrayList<double[]> inputPatterns = new ArrayList<double[]>(patterns.length);
+		ArrayList<String> inputLabels = new ArrayList<String>(patterns.length);
+		for (int p = 0; p < patterns.length; p++) {
+			double[] pattern = patterns[p];
+			if (pattern.length != inputDim) {
+				System.err.println("Input pattern has wrong dimensionality!");
+				continue;
+			}
+			if (noiseLevel > 0) {
+				for (int i = 0; i < inputDim; i++) {
+					pattern[i] += random.nextGaussian() * noiseLevel;
+				}
+				// keep noise of this input in case the same pattern is input again
+				pattern = pattern.clone();
+			}
+			inputPatterns.add(pattern);
+			inputLabels.add((labels != null) ? labels[p] : "");
+		}
+
+		Node[] nearestNodes = new Node[2];
+		double[] nearestDistances = new double[2];
+		int chunkStart = 0;
+		while (chunkStart < inputPatterns.size()) {
+			int chunkSize = Math.max(BATCH_CHUNK_MIN, (int) Math.sqrt(nodeSet.size()));
+			int chunkEnd = Math.min(chunkStart + chunkSize, inputPatterns.size());
+
+			// find nearest nodes in advance
+			double[][] chunkPatterns = inputPatterns.subList(chunkStart, chunkEnd).toArray(new double[chunkEnd - chunkStart][]);
+			Node[][] candidateNodes = new Node[chunkPatterns.length][BATCH_CANDIDATES];
+			double[][] candidateDistances = new double[chunkPatterns.length][BATCH_CANDIDATES];
+			nodeIndex.findNearest(chunkPatterns, candidateNodes, candidateDistances);
+
+			// process inputs
+			touchedNodes = new HashSet<Node>();
+			try {
+				for (int p = 0; p < chunkPatterns.length; p++) {
+					findNearest(chunkPatterns[p], candidateNodes[p], nearestNodes, nearestDistances);
+					input(chunkPatterns[p], inputLabels.get(chunkStart + p), nearestNodes, nearestDistances);
+				}
+			} finally {
+				touchedNodes = null;
+			}
+
+			// notify listeners
+			fireTopologyChanged();
+
+			chunkStart = chunkEnd;
+		}
+
+		// publish snapshot
+		if (publishSnapshotsOnInput) {
+			publishSnapshot();
+		}
+
+		// record changes
+		if (journal != null) {
+			journal.inputsProcessed(inputPatterns.size());
+		}
+
+	}
+
+	/**
+	 * Finds the nearest nodes from the candidates determined in advance and the
+	 * nodes touched since then. Candidates are in order of increasing distance
+	 * and have not moved unless touched, so untouched nodes beyond the
+	 * candidates cannot be nearer than the first untouched candidates.
+	 */
+	private void findNearest(double[] pattern, Node[] candidateNodes, Node[] nearestNodes, double[] nearestDistances) {
+		NodeIndexAbstract.initNearest(nearestNodes, nearestDistances);
+
+		// untouched candidates
+		int numUntouched = 0;
+		for (Node node : candidateNodes) {
+			if (node == null || numUntouched == nearestNodes.length) {
+				break;
+			}
+			if (!touchedNodes.contains(node)) {
+				NodeIndexAbstract.insertNearest(node, squaredDistance(pattern, node), nearestNodes, nearestDistances);
+				numUntouched++;
+			}
+		}
+
+		// search all nodes if untouched nodes beyond the candidates might be nearer
+		if (numUntouched < nearestNodes.length && candidateNodes[candidateNodes.length - 1] != null) {
+			nodeIndex.findNearest(pattern, nearestNodes, nearestDistances);
+			return;
+		}
+
+		// touched nodes
+		for (Node node : touchedNodes) {
+			if (nodeSet.contains(node)) {
+				NodeIndexAbstract.insertNearest(node, squaredDistance(pattern, node), nearestNodes, nearestDistances);
+			}
+		}
+
+		NodeIndexAbstract.finishNearest(nearestNodes, nearestDistances);
+	}
+
+	private void touchNode(Node node) {
+		if (touchedNodes != null) {
+			touchedNodes.add(node);
+		}
+		if (nodeSnapshots != null) {
+			nodeSnapshots.remove(node);
+		}
+		if (journal != null) {
+			journal.nodeMoved(node);
+		}
+	}
+
+	private void input(double[] pattern, String label, Node[] nearestNodes, double[] nearestDistances) {
+
+		// MK: reset activated cluster
+		activatedCluster = null;
 
 		// increase number of inputs
 		numInputs += 1;
@@ -433,32 +1087,11 @@ public class SOINNM {
 
 		}
 
-		// initialise distance
-		double distance;
-
-		// find nearest node s1
-		Node nodeS1 = null;
-		double distanceS1 = Double.MAX_VALUE;
-		for (Node node : nodeSet) {
-			distance = computeDistance(pattern, node.getPattern());
-			if (distance < distanceS1) {
-				nodeS1 = node;
-				distanceS1 = distance;
-			}
-		}
-
-		// find second nearest node s2
-		Node nodeS2 = null;
-		double distanceS2 = Double.MAX_VALUE;
-		for (Node node : nodeSet) {
-			if (node != nodeS1) {
-				distance = computeDistance(pattern, node.getPattern());
-				if (distance < distanceS2) {
-					nodeS2 = node;
-					distanceS2 = distance;
-				}
-			}
-		}
+		// nearest node s1 and second nearest node s2
+		Node nodeS1 = nearestNodes[0];
+		double distanceS1 = nearestDistances[0];
+		Node nodeS2 = nearestNodes[1];
+		double distanceS2 = nearestDistances[1];
 
 		// update threshold of node s1
 		updateThreshold(nodeS1);
@@ -493,18 +1126,7 @@ public class SOINNM {
 					}
 
 					// connect only if the distance between node and S1 is greater than average distance
-					double distanceSum = 0.0;
-					int distanceSumCount = 0;
-					LinkedList<Node> nodesClusterS1 = clusterS1.getNodes();
-					for (Node nodeA : nodesClusterS1) {
-						for (Node nodeB : nodesClusterS1) {
-							if (nodeA != nodeB) {
-								distanceSum += computeDistance(nodeA.getPattern(), nodeB.getPattern());
-								distanceSumCount += 1;
-							}
-						}
-					}
-					double distanceAvg = distanceSum / distanceSumCount;
+					double distanceAvg = clusterS1.getAverageNodeDistance();
 					if (distanceS1 < distanceAvg) {
 						connectNewNode = false;
 					}
@@ -531,24 +1153,15 @@ public class SOINNM {
 		else {
 
 			// increment age of edges with node s1
-			for (Edge edge : edgeSet) {
-				if (edge.getNodeA() == nodeS1 || edge.getNodeB() == nodeS1) {
-					edge.setAge(edge.getAge() + 1);
+			for (Edge edge : nodeS1.getEdges()) {
+				edge.setAge(edge.getAge() + 1);
+				if (journal != null) {
+					journal.edgeChanged(edge);
 				}
 			}
 
 			// check whether no edge between nodes s1 and s2 exists
-			Edge edgeS1S2 = null;
-			Node nodeA;
-			Node nodeB;
-			for (Edge edge : edgeSet) {
-				nodeA = edge.getNodeA();
-				nodeB = edge.getNodeB();
-				if ((nodeA == nodeS1 && nodeB == nodeS2) || (nodeA == nodeS2 && nodeB == nodeS1)) {
-					edgeS1S2 = edge;
-					break;
-				}
-			}
+			Edge edgeS1S2 = nodeS1.getEdge(nodeS2);
 
 			// create edge between nodes s1 and s2
 			if (edgeS1S2 == null) {
@@ -557,6 +1170,9 @@ public class SOINNM {
 
 			// reset age of edge between nodes s1 and s2
 			edgeS1S2.setAge(0);
+			if (journal != null) {
+				journal.edgeChanged(edgeS1S2);
+			}
 
 			// MK: increase error of node s1
 			nodeS1.setError(nodeS1.getError() + distanceS1);
@@ -564,28 +1180,42 @@ public class SOINNM {
 			// increment number of signals of node s1
 			nodeS1.setNumSignals(nodeS1.getNumSignals() + 1);
 
+			// cluster of node s1 (includes neighbours)
+			Cluster clusterS1 = getCluster(nodeS1);
+
 			// adjust pattern of node s1
 			double epsilon1 = 1.0 / nodeS1.getNumSignals();
-			double[] patternS1 = nodeS1.getPattern();
-			for (int i = 0; i < inputDim; i++) {
-				patternS1[i] += epsilon1 * (pattern[i] - patternS1[i]);
-			}
+			clusterS1.removePattern(nodeS1);
+			nodeS1.adaptPattern(pattern, epsilon1, roundingRandom);
+			clusterS1.addPattern(nodeS1);
+			nodeIndex.update(nodeS1);
+			cleanupIndex.patternChanged(nodeS1);
+			joiningIndex.patternChanged(nodeS1);
+			touchNode(nodeS1);
 
 			// adjust pattern of direct neighbours of node s1		
 			double epsilon2 = 0.01 / nodeS1.getNumSignals();
 			for (Node neighbour : getNeighbours(nodeS1)) {
-				double[] patternNeighbour = neighbour.getPattern();
-				for (int i = 0; i < inputDim; i++) {
-					patternNeighbour[i] += epsilon2 * (pattern[i] - patternNeighbour[i]);
-				}
+				clusterS1.removePattern(neighbour);
+				neighbour.adaptPattern(pattern, epsilon2, roundingRandom);
+				clusterS1.addPattern(neighbour);
+				nodeIndex.update(neighbour);
+				cleanupIndex.patternChanged(neighbour);
+				joiningIndex.patternChanged(neighbour);
+				touchNode(neighbour);
 			}
 
 			// remove edges with age greater than ageDead
-			Iterator<Edge> itEdgeSet = edgeSet.iterator();
-			while (itEdgeSet.hasNext()) {
-				Edge edge = itEdgeSet.next();
+			// (only edges of node s1 have aged unless parameters or topology have been changed)
+			Collection<Edge> edgesAged;
+			if (checkAgeAllEdges) {
+				edgesAged = new ArrayList<Edge>(edgeSet);
+				checkAgeAllEdges = false;
+			} else {
+				edgesAged = new ArrayList<Edge>(nodeS1.getEdges());
+			}
+			for (Edge edge : edgesAged) {
 				if (edge.getAge() > ageDead) {
-					itEdgeSet.remove();
 					removeEdge(edge);
 					// DEBUG
 					if (printDebugInfo) {
@@ -611,19 +1241,10 @@ public class SOINNM {
 
 			if (edgeMaxRemoval) {
 
-				// initialise
-				double edgeLength;
-				double edgeLengthMax = Double.MIN_VALUE;
-				Edge edgeMax = null;
-
 				// find edge with maximum length
-				for (Edge edge : edgeSet) {
-					edgeLength = computeDistance(edge.getNodeA().getPattern(), edge.getNodeB().getPattern());
-					if (edgeLength > edgeLengthMax) {
-						edgeMax = edge;
-						edgeLengthMax = edgeLength;
-					}
-
+				Edge edgeMax = cleanupIndex.getLongestEdge();
+				if (edgeMax != null && !(cleanupIndex.getLength(edgeMax) > Double.MIN_VALUE)) {
+					edgeMax = null;
 				}
 
 				// remove edge with maximum length
@@ -639,18 +1260,10 @@ public class SOINNM {
 
 			if (nodeNumSignalsMinRemoval) {
 
-				// initialise
-				long numSignals;
-				long numSignalsMin = Long.MAX_VALUE;
-				Node nodeNumSignalsMin = null;
-
 				// find node with minimum number of signals
-				for (Node node : nodeSet) {
-					numSignals = node.getNumSignals();
-					if (numSignals < numSignalsMin) {
-						nodeNumSignalsMin = node;
-						numSignalsMin = numSignals;
-					}
+				Node nodeNumSignalsMin = cleanupIndex.getNodeNumSignalsMin();
+				if (nodeNumSignalsMin != null && nodeNumSignalsMin.getNumSignals() == Long.MAX_VALUE) {
+					nodeNumSignalsMin = null;
 				}
 
 				// remove node with minimum number of signals
@@ -671,24 +1284,21 @@ public class SOINNM {
 				double errorMax;
 
 				// find node q with maximum error
-				Node nodeQ = null;
-				errorMax = 0.0;
-				for (Node node : nodeSet) {
-					error = node.getError();
-					if (error > errorMax) {
-						nodeQ = node;
-						errorMax = error;
-					}
+				Node nodeQ = cleanupIndex.getNodeErrorMax();
+				if (nodeQ != null && !(nodeQ.getError() > 0.0)) {
+					nodeQ = null;
 				}
 
 				// find neighbour f of node q with maximum error
 				Node nodeF = null;
 				errorMax = 0.0;
-				for (Node node : getNeighbours(nodeQ)) {
-					error = node.getError();
-					if (error > errorMax) {
-						nodeF = node;
-						errorMax = error;
+				if (nodeQ != null) {
+					for (Node node : getNeighbours(nodeQ)) {
+						error = node.getError();
+						if (error > errorMax) {
+							nodeF = node;
+							errorMax = error;
+						}
 					}
 				}
 
@@ -713,16 +1323,15 @@ public class SOINNM {
 					addEdge(nodeR, nodeF);
 
 					// remove edge between nodes q and f
-					for (Edge edge : edgeSet) {
-						if ((edge.getNodeA() == nodeQ && edge.getNodeB() == nodeF) || (edge.getNodeA() == nodeF && edge.getNodeB() == nodeQ)) {
-							removeEdge(edge);
-							break;
-						}
-					}
+					removeEdge(nodeQ.getEdge(nodeF));
 
 					// decrease error of q and f					
 					nodeQ.setError(nodeQ.getError() * 0.5);
 					nodeF.setError(nodeF.getError() * 0.5);
+					if (journal != null) {
+						journal.nodeChanged(nodeQ);
+						journal.nodeChanged(nodeF);
+					}
 
 					// set error of r
 					nodeR.setError(nodeQ.getError());
@@ -742,25 +1351,13 @@ public class SOINNM {
 			if (smallClusterRemoval) {
 
 				// compute average number of signals
-				long numSignalsSum = 0;
-				for (Node node : nodeSet) {
-					numSignalsSum += node.getNumSignals();
-				}
-				double numSignalsAvg = (double) numSignalsSum / nodeSet.size();
+				double numSignalsAvg = (double) cleanupIndex.getNumSignalsSum() / nodeSet.size();
 
 				// initialise
-				LinkedList<Node> nodesToRemove;
+				ArrayList<Node> nodesToRemove;
 
 				// search for nodes with two neighbours
-				nodesToRemove = new LinkedList<Node>();
-				for (Node node : nodeSet) {
-					int numNeighbours = getNeighbours(node).size();
-					if (numNeighbours == 2) {
-						if (node.getNumSignals() < c2Param * numSignalsAvg) {
-							nodesToRemove.add(node);
-						}
-					}
-				}
+				nodesToRemove = cleanupIndex.getNodes(2, c2Param * numSignalsAvg);
 
 				// remove nodes with two neighbours
 				for (Node node : nodesToRemove) {
@@ -772,15 +1369,7 @@ public class SOINNM {
 				}
 
 				// search for nodes with one neighbour
-				nodesToRemove = new LinkedList<Node>();
-				for (Node node : nodeSet) {
-					int numNeighbours = getNeighbours(node).size();
-					if (numNeighbours == 1) {
-						if (node.getNumSignals() < c1Param * numSignalsAvg) {
-							nodesToRemove.add(node);
-						}
-					}
-				}
+				nodesToRemove = cleanupIndex.getNodes(1, c1Param * numSignalsAvg);
 
 				// remove nodes with one neighbour
 				for (Node node : nodesToRemove) {
@@ -792,13 +1381,7 @@ public class SOINNM {
 				}
 
 				// search for isolated nodes
-				nodesToRemove = new LinkedList<Node>();
-				for (Node node : nodeSet) {
-					int numNeighbours = getNeighbours(node).size();
-					if (numNeighbours == 0) {
-						nodesToRemove.add(node);
-					}
-				}
+				nodesToRemove = cleanupIndex.getNodes(0, Double.POSITIVE_INFINITY);
 
 				// remove isolated nodes
 				for (Node node : nodesToRemove) {
@@ -818,33 +1401,24 @@ public class SOINNM {
 
 				while (clusterSet.size() > 1 && continueJoining && joiningIterations < joiningIterationsMax) {
 
-					// initialise
-					double distanceMin = Double.MAX_VALUE;
-					Cluster clusterMinA = null;
-					Cluster clusterMinB = null;
-					Node nodeMinA = null;
-					Node nodeMinB = null;
-
 					// determine minimum node distance between clusters
-					for (Cluster clusterA : clusterSet) {
-						for (Cluster clusterB : clusterSet) {
-							if (clusterA != clusterB) {
-								for (Node nodeA : clusterA.getNodes()) {
-									for (Node nodeB : clusterB.getNodes()) {
-										distance = computeDistance(nodeA.getPattern(), nodeB.getPattern());
-										if (distance < distanceMin) {
-											clusterMinA = clusterA;
-											clusterMinB = clusterB;
-											nodeMinA = nodeA;
-											nodeMinB = nodeB;
-											distanceMin = distance;
-										}
-									}
-								}
-							}
-						}
+					// (only nodes whose nearest node of another cluster may have changed are searched again)
+					NodePair pairMin = joiningIndex.getNearestPair(nodeIndex);
+					if (pairMin == null) {
+						break;
 					}
 
+					// order clusters by id (equals order within cluster set)
+					Node nodeMinA = pairMin.getNode();
+					Node nodeMinB = pairMin.getNearestNode();
+					if (getCluster(nodeMinA).getId() > getCluster(nodeMinB).getId()) {
+						nodeMinA = pairMin.getNearestNode();
+						nodeMinB = pairMin.getNode();
+					}
+					Cluster clusterMinA = getCluster(nodeMinA);
+					Cluster clusterMinB = getCluster(nodeMinB);
+					double distanceMin = pairMin.getDistance();
+
 					// check whether the clusters should be joined
 					boolean joinClusters = false;
 
@@ -857,31 +1431,11 @@ public class SOINNM {
 
 					} else {
 
-						// calculate average node distance for cluster A
-						double distanceSumA = 0.0;
-						int distanceCountA = 0;
-						for (Node nodeA : clusterMinA.getNodes()) {
-							for (Node nodeB : clusterMinA.getNodes()) {
-								if (nodeA != nodeB) {
-									distanceSumA += computeDistance(nodeA.getPattern(), nodeB.getPattern());
-									distanceCountA += 1;
-								}
-							}
-						}
-						double distanceAvgA = distanceSumA / distanceCountA;
-
-						// calculate average node distance for cluster B
-						double distanceSumB = 0.0;
-						int distanceCountB = 0;
-						for (Node nodeA : clusterMinB.getNodes()) {
-							for (Node nodeB : clusterMinB.getNodes()) {
-								if (nodeA != nodeB) {
-									distanceSumB += computeDistance(nodeA.getPattern(), nodeB.getPattern());
-									distanceCountB += 1;
-								}
-							}
-						}
-						double distanceAvgB = distanceSumB / distanceCountB;
+						// get average node distance for cluster A
+						double distanceAvgA = clusterMinA.getAverageNodeDistance();
+
+						// get average node distance for cluster B
+						double distanceAvgB = clusterMinB.getAverageNodeDistance();
 
 						// depending on average node distance
 						if (distanceMin < distanceAvgA * joinTolerance && distanceMin < distanceAvgB * joinTolerance) {
@@ -920,12 +1474,27 @@ public class SOINNM {
 
 		// create node
 		Node node = new Node(nextNodeId++, pattern);
+		if (patternPrecision != Node.PRECISION.DOUBLE) {
+			node.setPrecision(patternPrecision, quantization);
+		}
 		nodeSet.add(node);
+		nodeIndex.add(node);
+		cleanupIndex.addNode(node);
+		joiningIndex.addNode(node);
+		touchNode(node);
 
 		// create cluster
 		LinkedList<Node> nodes = new LinkedList<Node>();
 		nodes.add(node);
-		addCluster(nodes);
+		Cluster cluster = addCluster(nodes);
+
+		// add added node to events
+		addTopologyEvent(TopologyEvents.TYPE.NODE_ADDED, node.getId(), cluster.getId());
+
+		// record added node
+		if (journal != null) {
+			journal.nodeAdded(node);
+		}
 
 		return node;
 	}
@@ -934,26 +1503,31 @@ public class SOINNM {
 
 		// remove node
 		nodeSet.remove(node);
+		nodeIndex.remove(node);
+		touchNode(node);
 
 		// remove edges
-		Iterator<Edge> itEdgeSet = edgeSet.iterator();
-		while (itEdgeSet.hasNext()) {
-			Edge edge = itEdgeSet.next();
-			if (edge.getNodeA() == node || edge.getNodeB() == node) {
-				itEdgeSet.remove();
-				removeEdge(edge);
-			}
+		for (Edge edge : new ArrayList<Edge>(node.getEdges())) {
+			removeEdge(edge);
 		}
+		cleanupIndex.removeNode(node);
+		joiningIndex.removeNode(node);
 
 		// remove node from cluster
 		Cluster cluster = getCluster(node);
-		cluster.getNodes().remove(node);
+		cluster.removeNode(node);
+		node.setCluster(null);
 
 		// remove empty clusters
 		if (cluster.getNodes().isEmpty()) {
 			removeCluster(cluster);
 		}
 
+		// record removed node (after its edges)
+		if (journal != null) {
+			journal.nodeRemoved(node);
+		}
+
 		return true;
 	}
 
@@ -962,39 +1536,44 @@ public class SOINNM {
 		// create edge
 		Edge edge = new Edge(nextEdgeId++, nodeA, nodeB);
 		edgeSet.add(edge);
+		nodeA.addEdge(edge);
+		nodeB.addEdge(edge);
+		cleanupIndex.addEdge(edge);
+		edgeSnapshot = null;
+		if (journal != null) {
+			journal.edgeAdded(edge);
+		}
 
 		// check whether clusters are different
 		Cluster clusterA = getCluster(nodeA);
 		Cluster clusterB = getCluster(nodeB);
 		if (clusterA != clusterB) {
 
-			// join clusters	
-			LinkedList<Node> nodesA = clusterA.getNodes();
-			LinkedList<Node> nodesB = clusterB.getNodes();
+			// join clusters (by size)
+			LinkedHashSet<Node> nodesA = clusterA.getNodes();
+			LinkedHashSet<Node> nodesB = clusterB.getNodes();
 			if (nodesA.size() > nodesB.size()) {
 
 				// move nodes of cluster B to cluster A
-				nodesA.addAll(nodesB);
+				moveNodes(nodesB, clusterA);
+
+				// add joined clusters to events
+				addTopologyEvent(TopologyEvents.TYPE.CLUSTER_JOINED, clusterA.getId(), clusterB.getId());
 
 				// remove cluster B
 				removeCluster(clusterB);
 
-				// add to joined clusters
-				joinedClusters.add(clusterA); // first kept cluster
-				joinedClusters.add(clusterB); // second removed cluster
-
 			} else {
 
 				// move nodes of cluster A to cluster B
-				nodesB.addAll(nodesA);
+				moveNodes(nodesA, clusterB);
+
+				// add joined clusters to events
+				addTopologyEvent(TopologyEvents.TYPE.CLUSTER_JOINED, clusterB.getId(), clusterA.getId());
 
 				// remove cluster A
 				removeCluster(clusterA);
 
-				// add to joined clusters
-				joinedClusters.add(clusterB); // first kept cluster
-				joinedClusters.add(clusterA); // second removed cluster
-
 			}
 
 		}
@@ -1006,40 +1585,48 @@ public class SOINNM {
 
 		// remove edge
 		edgeSet.remove(edge);
-
-		// check whether no other connection exists
 		Node nodeA = edge.getNodeA();
 		Node nodeB = edge.getNodeB();
-		LinkedList<Node> connectedNodesA = getConnectedNodes(nodeA);
-		LinkedList<Node> connectedNodesB = getConnectedNodes(nodeB);
-		if (!connectedNodesA.contains(nodeB)) {
+		nodeA.removeEdge(edge);
+		nodeB.removeEdge(edge);
+		cleanupIndex.removeEdge(edge);
+		edgeSnapshot = null;
+		addTopologyEvent(TopologyEvents.TYPE.EDGE_REMOVED, nodeA.getId(), nodeB.getId());
+		if (journal != null) {
+			journal.edgeRemoved(edge);
+		}
+
+		// check whether no other connection exists
+		LinkedHashSet<Node> connectedNodesA = new LinkedHashSet<Node>();
+		LinkedHashSet<Node> connectedNodesB = new LinkedHashSet<Node>();
+		if (!isConnected(nodeA, nodeB, connectedNodesA, connectedNodesB)) {
 
 			// split cluster			
 			if (connectedNodesA.size() > connectedNodesB.size()) {
 
 				// keep cluster of node A
 				Cluster clusterA = getCluster(nodeA);
-				clusterA.getNodes().removeAll(connectedNodesB);
+				clusterA.removeNodes(connectedNodesB);
 
 				// create cluster for connected nodes of node B
 				Cluster clusterB = addCluster(connectedNodesB);
+				joiningIndex.clusterSplit(connectedNodesB);
 
-				// add to split clusters
-				splitClusters.add(clusterA);
-				splitClusters.add(clusterB);
+				// add split clusters to events
+				addTopologyEvent(TopologyEvents.TYPE.CLUSTER_SPLIT, clusterA.getId(), clusterB.getId());
 
 			} else {
 
 				// keep cluster of node B
 				Cluster clusterB = getCluster(nodeB);
-				clusterB.getNodes().removeAll(connectedNodesA);
+				clusterB.removeNodes(connectedNodesA);
 
 				// create cluster for connected nodes of node A
 				Cluster clusterA = addCluster(connectedNodesA);
+				joiningIndex.clusterSplit(connectedNodesA);
 
-				// add to split clusters
-				splitClusters.add(clusterB);
-				splitClusters.add(clusterA);
+				// add split clusters to events
+				addTopologyEvent(TopologyEvents.TYPE.CLUSTER_SPLIT, clusterB.getId(), clusterA.getId());
 
 			}
 		}
@@ -1047,30 +1634,90 @@ public class SOINNM {
 		return true;
 	}
 
-	private Cluster addCluster(LinkedList<Node> nodes) {
+	private Cluster addCluster(Collection<Node> nodes) {
 
 		// create cluster
 		Cluster cluster = new Cluster(nextClusterId++, nodes);
 		clusterSet.add(cluster);
 
+		// set cluster of nodes
+		for (Node node : nodes) {
+			node.setCluster(cluster);
+		}
+
 		return cluster;
 	}
 
+	private void moveNodes(Collection<Node> nodes, Cluster cluster) {
+		cluster.addNodes(nodes);
+		for (Node node : nodes) {
+			node.setCluster(cluster);
+		}
+	}
+
 	private boolean removeCluster(Cluster cluster) {
 
 		// remove cluster
 		clusterSet.remove(cluster);
 
-		// add cluster to removed clusters
-		removedClusters.add(cluster);
+		// add removed cluster to events
+		addTopologyEvent(TopologyEvents.TYPE.CLUSTER_REMOVED, cluster.getId(), -1);
 
 		return true;
 	}
 
+	// journal replay (same operations as for inputs, with recorded ids)
+
+	Node replayAddNode(long id, double[] pattern) {
+		nextNodeId = id;
+		return addNode(pattern);
+	}
+
+	void replayRemoveNode(Node node) {
+		removeNode(node);
+	}
+
+	Edge replayAddEdge(long id, Node nodeA, Node nodeB) {
+		nextEdgeId = id;
+		return addEdge(nodeA, nodeB);
+	}
+
+	void replayRemoveEdge(Edge edge) {
+		removeEdge(edge);
+	}
+
+	void replayMoveNode(Node node, double[] pattern) {
+		node.setPattern(pattern);
+		nodeIndex.update(node);
+		cleanupIndex.patternChanged(node);
+		joiningIndex.patternChanged(node);
+		touchNode(node);
+	}
+
+	/**
+	 * Discards the changes recorded while replaying, since listeners have
+	 * been notified of them before.
+	 */
+	void replayFinished() {
+		topologyEvents.clear();
+	}
+
 	private double computeDistance(double[] A, double[] B) {
 		return euclideanDistance(A, B);
 	}
 
+	private double squaredDistance(double[] A, Node node) {
+		double sum = 0.0;
+		double difference;
+
+		for (int i = 0; i < inputDim; i++) {
+			difference = A[i] - node.getPatternValue(i);
+			sum += difference * difference;
+		}
+
+		return sum;
+	}
+
 	private double euclideanDistance(double[] A, double[] B) {
 		double sum = 0.0;
 		double difference;
@@ -1111,35 +1758,29 @@ public class SOINNM {
 
 		} else {
 
-			LinkedList<Node> neighbours = getNeighbours(node);
-			double[] pattern = node.getPattern();
-			double distance;
-
-			if (neighbours.size() > 0) {
+			if (node.getNumNeighbours() > 0) {
 
-				// determine maximum distance to all neighbours
-				double distanceMax = Double.MIN_VALUE;
-				for (Node neighbour : neighbours) {
-					distance = computeDistance(pattern, neighbour.getPattern());
-					if (distance > distanceMax) {
-						distanceMax = distance;
-					}
-				}
-
-				// set threshold
-				node.setThreshold(distanceMax);
+				// determine maximum distance to all neighbours (cached edge lengths)
+				node.setThreshold(cleanupIndex.getEdgeLengthMax(node));
 
 			} else {
 
 				// determine minimum distance to all other nodes
-				double distanceMin = Double.MAX_VALUE;
-				for (Node nodeCurrent : nodeSet) {
-					if (nodeCurrent != node) {
-						distance = computeDistance(pattern, nodeCurrent.getPattern());
-						if (distance < distanceMin) {
-							distanceMin = distance;
+				double distanceMin = cleanupIndex.getNearestDistance(node);
+				if (Double.isNaN(distanceMin)) {
+					distanceMin = Double.MAX_VALUE;
+					Node nodeMin = null;
+					Node[] nearestNodes = new Node[2];
+					double[] nearestDistances = new double[2];
+					int numFound = nodeIndex.findNearest(node.getPattern(), nearestNodes, nearestDistances);
+					for (int k = 0; k < numFound; k++) {
+						if (nearestNodes[k] != node) {
+							distanceMin = nearestDistances[k];
+							nodeMin = nearestNodes[k];
+							break;
 						}
 					}
+					cleanupIndex.setNearestDistance(node, nodeMin, distanceMin);
 				}
 
 				// set threshold
@@ -1153,50 +1794,83 @@ public class SOINNM {
 			}
 		}
 
-	}
-
-	private LinkedList<Node> getNeighbours(Node node) {
-		LinkedList<Node> neighbours = new LinkedList<Node>();
-
-		for (Edge edge : edgeSet) {
-			if (edge.getNodeA() == node) {
-				neighbours.add(edge.getNodeB());
-			} else if (edge.getNodeB() == node) {
-				neighbours.add(edge.getNodeA());
-			}
+		// record changed threshold
+		if (journal != null) {
+			journal.nodeChanged(node);
 		}
 
-		return neighbours;
 	}
 
-	public Cluster getCluster(Node node) {
+	private Set<Node> getNeighbours(Node node) {
+		return node.getNeighbours();
+	}
 
-		for (Cluster cluster : clusterSet) {
-			for (Node clusterNode : cluster.getNodes()) {
-				if (clusterNode == node) {
-					return cluster;
-				}
+	public Cluster getCluster(Node node) {
+		return node.getCluster();
+	}
+
+	/**
+	 * Checks whether two nodes are connected by following edges from both
+	 * nodes alternately (depth-first). Stops as soon as both searches meet.
+	 * Otherwise, the search of the smaller part is complete and the search of
+	 * the other part is continued only until it is known to be larger, so the
+	 * costs are bounded by the size of the smaller part.
+	 * <p>
+	 * The visited nodes are collected in the given sets in depth-first order.
+	 */
+	private boolean isConnected(Node nodeA, Node nodeB, LinkedHashSet<Node> connectedNodesA, LinkedHashSet<Node> connectedNodesB) {
+
+		// initialise searches
+		ArrayDeque<Iterator<Node>> stackA = new ArrayDeque<Iterator<Node>>();
+		ArrayDeque<Iterator<Node>> stackB = new ArrayDeque<Iterator<Node>>();
+		connectedNodesA.add(nodeA);
+		connectedNodesB.add(nodeB);
+		stackA.push(getNeighbours(nodeA).iterator());
+		stackB.push(getNeighbours(nodeB).iterator());
+
+		// search alternately until one part is complete
+		while (!stackA.isEmpty() && !stackB.isEmpty()) {
+			if (followConnectedNodes(stackA, connectedNodesA, connectedNodesB)) {
+				return true;
+			}
+			if (followConnectedNodes(stackB, connectedNodesB, connectedNodesA)) {
+				return true;
 			}
 		}
 
-		return null;
-	}
+		// continue other search until it is complete or larger
+		if (stackA.isEmpty()) {
+			while (!stackB.isEmpty() && connectedNodesB.size() <= connectedNodesA.size()) {
+				followConnectedNodes(stackB, connectedNodesB, null);
+			}
+		} else {
+			while (!stackA.isEmpty() && connectedNodesA.size() <= connectedNodesB.size()) {
+				followConnectedNodes(stackA, connectedNodesA, null);
+			}
+		}
 
-	private LinkedList<Node> getConnectedNodes(Node node) {
-		LinkedList<Node> connectedNodes = new LinkedList<Node>();
-		connectedNodes.add(node);
-		followConnectedNodes(node, connectedNodes);
-		return connectedNodes;
+		return false;
 	}
 
-	private void followConnectedNodes(Node node, LinkedList<Node> connectedNodes) {
-		LinkedList<Node> neighbours = getNeighbours(node);
-		for (Node neighbour : neighbours) {
-			if (!connectedNodes.contains(neighbour)) {
-				connectedNodes.add(neighbour);
-				followConnectedNodes(neighbour, connectedNodes);
-			}
+	/**
+	 * Performs a single step of a depth-first search.
+	 *
+	 * @return whether a node visited by the other search has been reached
+	 */
+	private boolean followConnectedNodes(ArrayDeque<Iterator<Node>> stack, LinkedHashSet<Node> connectedNodes, LinkedHashSet<Node> connectedNodesOther) {
+		Iterator<Node> itNeighbours = stack.peek();
+		if (!itNeighbours.hasNext()) {
+			stack.pop();
+			return false;
+		}
+		Node neighbour = itNeighbours.next();
+		if (connectedNodesOther != null && connectedNodesOther.contains(neighbour)) {
+			return true;
+		}
+		if (connectedNodes.add(neighbour)) {
+			stack.push(getNeighbours(neighbour).iterator());
 		}
+		return false;
 	}
 
 	public String getInfoParameters() {
@@ -1229,7 +1903,7 @@ public class SOINNM {
 		// count nodes with different number of edges
 		HashMap<Integer, Integer> nodesCounts = new HashMap<Integer, Integer>();
 		for (Node node : nodeSet) {
-			int edgesCount = getNeighbours(node).size();
+			int edgesCount = node.getNumNeighbours();
 			Integer nodesCount = nodesCounts.get(edgesCount);
 			if (nodesCount == null) {
 				nodesCounts.put(edgesCount, 1);
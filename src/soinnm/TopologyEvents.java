@@ -0,0 +1,97 @@
+package soinnm;
+
+/**
+ * Class for the changes of a topology caused by an input (or a batch of
+ * inputs), in the order in which they occurred. Each event is stored as a
+ * primitive record of a type and two ids in arrays which are reused for all
+ * inputs, so no objects are created per event.
+ * <p>
+ * Ids by type:
+ * <ul>
+ * <li>CLUSTER_SPLIT: kept cluster, new cluster</li>
+ * <li>CLUSTER_JOINED: kept cluster, removed cluster (followed by CLUSTER_REMOVED)</li>
+ * <li>CLUSTER_REMOVED: removed cluster, -1</li>
+ * <li>NODE_ADDED: added node, cluster of node</li>
+ * <li>EDGE_REMOVED: first node, second node of the edge</li>
+ * </ul>
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class TopologyEvents {
+
+	public enum TYPE {
+		CLUSTER_SPLIT, CLUSTER_JOINED, CLUSTER_REMOVED, NODE_ADDED, EDGE_REMOVED
+	};
+
+	private static final TYPE[] TYPES = TYPE.values();
+
+	private byte[] types;
+
+	private long[] idsA;
+
+	private long[] idsB;
+
+	private int numEvents;
+
+	public TopologyEvents() {
+		types = new byte[16];
+		idsA = new long[16];
+		idsB = new long[16];
+		numEvents = 0;
+	}
+
+	public int getNumEvents() {
+		return numEvents;
+	}
+
+	public boolean isEmpty() {
+		return numEvents == 0;
+	}
+
+	public TYPE getType(int index) {
+		return TYPES[types[index]];
+	}
+
+	public long getIdA(int index) {
+		return idsA[index];
+	}
+
+	public long getIdB(int index) {
+		return idsB[index];
+	}
+
+	public void add(TYPE type, long idA, long idB) {
+		if (numEvents == types.length) {
+			int capacity = 2 * types.length;
+			byte[] typesNew = new byte[capacity];
+			long[] idsANew = new long[capacity];
+			long[] idsBNew = new long[capacity];
+			System.arraycopy(types, 0, typesNew, 0, numEvents);
+			System.arraycopy(idsA, 0, idsANew, 0, numEvents);
+			System.arraycopy(idsB, 0, idsBNew, 0, numEvents);
+			types = typesNew;
+			idsA = idsANew;
+			idsB = idsBNew;
+		}
+		types[numEvents] = (byte) type.ordinal();
+		idsA[numEvents] = idA;
+		idsB[numEvents] = idB;
+		numEvents++;
+	}
+
+	/**
+	 * Appends all events of the given batch, e.g. to keep them after a
+	 * listener has returned.
+	 */
+	public void addAll(TopologyEvents events) {
+		for (int e = 0; e < events.numEvents; e++) {
+			add(TYPES[events.types[e]], events.idsA[e], events.idsB[e]);
+		}
+	}
+
+	public void clear() {
+		numEvents = 0;
+	}
+
+}
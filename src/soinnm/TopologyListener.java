@@ -0,0 +1,18 @@
+package soinnm;
+
+/**
+ * Interface for receiving the changes of a topology.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public interface TopologyListener {
+
+	/**
+	 * Is called by the learning thread after an input (or a chunk of a batch
+	 * of inputs) has changed the topology. The events are reused afterwards
+	 * and have to be copied in order to be kept.
+	 */
+	public void topologyChanged(SOINNM soinnm, TopologyEvents events);
+
+}
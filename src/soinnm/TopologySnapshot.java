@@ -0,0 +1,106 @@
+package soinnm;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Class for an immutable snapshot of the topology, which can be read by other
+ * threads while the topology continues to learn.
+ * <p>
+ * A snapshot holds copies of the nodes (ids and patterns), the clusters (ids,
+ * means and node ids), the edges (ids of the connected nodes) and the id of
+ * the activated cluster. Snapshots are numbered by increasing versions.
+ * Copies of nodes and clusters that have not changed are shared between
+ * snapshots.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+public class TopologySnapshot {
+
+	private final long version;
+
+	private final int inputDim;
+
+	private final List<NodeSnapshot> nodes;
+
+	private final List<ClusterSnapshot> clusters;
+
+	private final HashMap<Long, ClusterSnapshot> clusterMap; // clusters by id
+
+	private final long[] edgeNodeIdsA;
+
+	private final long[] edgeNodeIdsB;
+
+	private final long activatedClusterId; // -1 if no cluster has been activated
+
+	TopologySnapshot(long version, int inputDim, List<NodeSnapshot> nodes, List<ClusterSnapshot> clusters, long[] edgeNodeIdsA, long[] edgeNodeIdsB, long activatedClusterId) {
+		this.version = version;
+		this.inputDim = inputDim;
+		this.nodes = Collections.unmodifiableList(nodes);
+		this.clusters = Collections.unmodifiableList(clusters);
+		clusterMap = new HashMap<Long, ClusterSnapshot>();
+		for (ClusterSnapshot cluster : clusters) {
+			clusterMap.put(cluster.getId(), cluster);
+		}
+		this.edgeNodeIdsA = edgeNodeIdsA;
+		this.edgeNodeIdsB = edgeNodeIdsB;
+		this.activatedClusterId = activatedClusterId;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	public List<NodeSnapshot> getNodes() {
+		return nodes;
+	}
+
+	public List<ClusterSnapshot> getClusters() {
+		return clusters;
+	}
+
+	/**
+	 * Returns the cluster with the given id, or null if there is none.
+	 */
+	public ClusterSnapshot getCluster(long id) {
+		return clusterMap.get(id);
+	}
+
+	public int getNumEdges() {
+		return edgeNodeIdsA.length;
+	}
+
+	/**
+	 * Returns the ids of the first nodes of all edges. The array must not be
+	 * modified.
+	 */
+	public long[] getEdgeNodeIdsA() {
+		return edgeNodeIdsA;
+	}
+
+	/**
+	 * Returns the ids of the second nodes of all edges. The array must not be
+	 * modified.
+	 */
+	public long[] getEdgeNodeIdsB() {
+		return edgeNodeIdsB;
+	}
+
+	public long getActivatedClusterId() {
+		return activatedClusterId;
+	}
+
+	/**
+	 * Returns the activated cluster, or null if there is none.
+	 */
+	public ClusterSnapshot getActivatedCluster() {
+		return clusterMap.get(activatedClusterId);
+	}
+
+}
@@ -1,15 +1,15 @@
 package soinnm;
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.StringTokenizer;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import soinnm.Cluster;
 import soinnm.Edge;
@@ -18,7 +18,11 @@ import soinnm.SOINNM;
 
 /**
  * Class for reading a topology state of M-SOINN from an XML file.
- * 
+ * <p>
+ * The file is read as a stream. Nodes referred to by edges and clusters are
+ * looked up by id in a hash map. The topology is only changed after the whole
+ * file has been read successfully.
+ *
  * @author Matthias Keysermann
  *
  */
@@ -26,360 +30,422 @@ public class XMLReader {
 
 	private static final String FILE_VERSION = "1.6";
 
-	public void readFromFile(String filename, SOINNM soinnm) {
-		try {
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
 
-			// DEBUG
-			System.out.println("Loading from XML...");
+	private XMLStreamReader xmlStreamReader;
 
-			// DEBUG
-			System.out.println("Reading from file \"" + filename + "\"...");
+	private char[] token; // characters of a value in a pattern
 
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document doc = db.parse(filename);
+	// topology read from file
 
-			// SOINNM
-			Element elemSOINNM = (Element) doc.getElementsByTagName("SOINNM").item(0);
-
-			// check file version
-			String fileVersion = elemSOINNM.getAttribute("fileVersion");
-			if (!fileVersion.equals(FILE_VERSION)) {
-				System.err.println("Wrong file version!");
-				return;
-			}
+	private HashMap<String, String> parameters;
 
-			// check input dimensionality
-			int inputDim = Integer.parseInt(elemSOINNM.getAttribute("inputDim"));
-			if (inputDim != soinnm.getInputDim()) {
-				System.err.println("Wrong input dimensionality!");
-				return;
-			}
+	private HashMap<String, String> variables;
 
-			// DEBUG
-			System.out.println("Setting parameters...");
-
-			// Parameters
-			Element elemParameters = (Element) elemSOINNM.getElementsByTagName("Parameters").item(0);
-			soinnm.setNoiseLevel(Double.parseDouble(elemParameters.getAttribute("noiseLevel")));
-			soinnm.setUseFixedThreshold(Boolean.parseBoolean(elemParameters.getAttribute("useFixedThreshold")));
-			soinnm.setFixedThreshold(Double.parseDouble(elemParameters.getAttribute("fixedThreshold")));
-			soinnm.setMinimumThreshold(Double.parseDouble(elemParameters.getAttribute("minimumThreshold")));
-			soinnm.setAgeDead(Integer.parseInt(elemParameters.getAttribute("ageDead")));
-			soinnm.setConnectNewNodes(Boolean.parseBoolean(elemParameters.getAttribute("connectNewNodes")));
-			soinnm.setLambda(Integer.parseInt(elemParameters.getAttribute("lambda")));
-			soinnm.setEdgeMaxRemoval(Boolean.parseBoolean(elemParameters.getAttribute("edgeMaxRemoval")));
-			soinnm.setNodeNumSignalsMinRemoval(Boolean.parseBoolean(elemParameters.getAttribute("nodeNumSignalsMinRemoval")));
-			soinnm.setReduceErrorInsertion(Boolean.parseBoolean(elemParameters.getAttribute("reduceErrorInsertion")));
-			soinnm.setSmallClusterRemoval(Boolean.parseBoolean(elemParameters.getAttribute("smallClusterRemoval")));
-			soinnm.setC2Param(Double.parseDouble(elemParameters.getAttribute("c2Param")));
-			soinnm.setC1Param(Double.parseDouble(elemParameters.getAttribute("c1Param")));
-			soinnm.setClusterJoining(Boolean.parseBoolean(elemParameters.getAttribute("clusterJoining")));
-			soinnm.setJoinTolerance(Double.parseDouble(elemParameters.getAttribute("joinTolerance")));
-			soinnm.setUseAbsoluteJoinTolerance(Boolean.parseBoolean(elemParameters.getAttribute("useAbsoluteJoinTolerance")));
-			soinnm.setJoinToleranceAbsolute(Double.parseDouble(elemParameters.getAttribute("joinToleranceAbsolute")));
-			soinnm.setJoiningIterationsMax(Integer.parseInt(elemParameters.getAttribute("joiningIterationsMax")));
-
-			// DEBUG
-			System.out.println("Recreating nodes...");
-
-			// clear old nodes
-			soinnm.getNodeSet().clear();
-
-			// Nodes			
-			Element elemNodes = (Element) elemSOINNM.getElementsByTagName("Nodes").item(0);
-			NodeList nlNodes = elemNodes.getElementsByTagName("Node");
-			for (int i = 0; i < nlNodes.getLength(); i++) {
-				Element elemNode = (Element) nlNodes.item(i);
-				long id = Long.parseLong(elemNode.getAttribute("id"));
-				Element elemPattern = (Element) elemNode.getElementsByTagName("Pattern").item(0);
-				StringTokenizer strTokenizer = new StringTokenizer(elemPattern.getTextContent());
-				double[] pattern = new double[inputDim];
-				for (int j = 0; j < pattern.length; j++) {
-					pattern[j] = Double.parseDouble((String) strTokenizer.nextElement());
-				}
-				double threshold = Double.parseDouble(elemNode.getAttribute("threshold"));
-				double error = Double.parseDouble(elemNode.getAttribute("error"));
-				long numSignals = Long.parseLong(elemNode.getAttribute("numSignals"));
-				String label = elemNode.getAttribute("label");
-
-				// create node
-				Node node = new Node(id, pattern);
-				node.setThreshold(threshold);
-				node.setError(error);
-				node.setNumSignals(numSignals);
-				node.setLabel(label);
-
-				// add node
-				soinnm.getNodeSet().add(node);
-			}
+	private ArrayList<Node> nodes;
 
-			// DEBUG
-			System.out.println("Recreating edges...");
-
-			// clear old edges
-			soinnm.getEdgeSet().clear();
-
-			// Edges
-			Element elemEdges = (Element) elemSOINNM.getElementsByTagName("Edges").item(0);
-			NodeList nlEdges = elemEdges.getElementsByTagName("Edge");
-			for (int i = 0; i < nlEdges.getLength(); i++) {
-				Element elemEdge = (Element) nlEdges.item(i);
-				long id = Long.parseLong(elemEdge.getAttribute("id"));
-				long age = Long.parseLong(elemEdge.getAttribute("age"));
-				long nodeAId = Long.parseLong(elemEdge.getAttribute("nodeAId"));
-				long nodeBId = Long.parseLong(elemEdge.getAttribute("nodeBId"));
-
-				// find nodes
-				Node nodeA = null;
-				Node nodeB = null;
-				for (Node node : soinnm.getNodeSet()) {
-					if (node.getId() == nodeAId) {
-						nodeA = node;
-					}
-					if (node.getId() == nodeBId) {
-						nodeB = node;
-					}
-				}
+	private HashMap<Long, Node> nodeMap; // nodes by id in file
 
-				// create edge
-				Edge edge = new Edge(id, nodeA, nodeB);
-				edge.setAge(age);
+	private ArrayList<Edge> edges;
 
-				// add edge
-				soinnm.getEdgeSet().add(edge);
-			}
+	private ArrayList<Cluster> clusters;
 
-			// DEBUG
-			System.out.println("Recreating clusters...");
-
-			// clear old clusters
-			soinnm.getClusterSet().clear();
-
-			// Clusters
-			Element elemClusters = (Element) elemSOINNM.getElementsByTagName("Clusters").item(0);
-			NodeList nlClusters = elemClusters.getElementsByTagName("Cluster");
-			for (int i = 0; i < nlClusters.getLength(); i++) {
-				Element elemCluster = (Element) nlClusters.item(i);
-				long id = Long.parseLong(elemCluster.getAttribute("id"));
-
-				// create cluster
-				LinkedList<Node> nodes = new LinkedList<Node>();
-				Cluster cluster = new Cluster(id, nodes);
-
-				// add nodes
-				NodeList nlNodeRefs = elemCluster.getElementsByTagName("NodeRef");
-				for (int j = 0; j < nlNodeRefs.getLength(); j++) {
-					Element elemNodeRef = (Element) nlNodeRefs.item(j);
-					long nodeId = Long.parseLong(elemNodeRef.getAttribute("nodeId"));
-
-					// find node
-					for (Node node : soinnm.getNodeSet()) {
-						if (node.getId() == nodeId) {
-							nodes.add(node);
-							break;
-						}
+	/**
+	 * Returns the input dimensionality stored in the given file (or -1 if it
+	 * cannot be read), without reading the rest of the file.
+	 */
+	public int readInputDim(String filename) {
+		try {
+			InputStream inputStream = new FileInputStream(filename);
+			try {
+				XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+				while (xmlStreamReader.hasNext()) {
+					if (xmlStreamReader.next() == XMLStreamConstants.START_ELEMENT && xmlStreamReader.getLocalName().equals("SOINNM")) {
+						return Integer.parseInt(xmlStreamReader.getAttributeValue(null, "inputDim"));
 					}
 				}
-
-				// add cluster
-				soinnm.getClusterSet().add(cluster);
+			} finally {
+				inputStream.close();
 			}
-
-			// DEBUG
-			System.out.println("Setting variables...");
-
-			// Variables
-			Element elemVariables = (Element) elemSOINNM.getElementsByTagName("Variables").item(0);
-			soinnm.setNextNodeId(Long.parseLong(elemVariables.getAttribute("nextNodeId")));
-			soinnm.setNextEdgeId(Long.parseLong(elemVariables.getAttribute("nextEdgeId")));
-			soinnm.setNextClusterId(Long.parseLong(elemVariables.getAttribute("nextClusterId")));
-			soinnm.setNumInputs(Long.parseLong(elemVariables.getAttribute("numInputs")));
-			/* not included:
-			activatedCluster
-			splitClusters
-			joinedClusters
-			removedClusters
-			*/
-
-			// DEBUG
-			System.out.println("Loading from XML finished!");
-
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		return -1;
 	}
 
-	public void insertFromFile(String filename, SOINNM soinnm) {
-		try {
+	/**
+	 * Reads the topology from the given file. Returns false if the file cannot
+	 * be read, in which case the topology is not changed.
+	 */
+	public boolean readFromFile(String filename, SOINNM soinnm) {
+
+		// DEBUG
+		System.out.println("Loading from XML...");
+
+		// DEBUG
+		System.out.println("Reading from file \"" + filename + "\"...");
 
-			// DEBUG
-			System.out.println("Inserting from XML...");
+		// read file (with original ids)
+		if (!readFile(filename, soinnm, false)) {
+			return false;
+		}
 
-			// DEBUG
-			System.out.println("Reading from file \"" + filename + "\"...");
+		// DEBUG
+		System.out.println("Setting parameters...");
+
+		// Parameters
+		soinnm.setNoiseLevel(Double.parseDouble(parameters.get("noiseLevel")));
+		soinnm.setUseFixedThreshold(Boolean.parseBoolean(parameters.get("useFixedThreshold")));
+		soinnm.setFixedThreshold(Double.parseDouble(parameters.get("fixedThreshold")));
+		soinnm.setMinimumThreshold(Double.parseDouble(parameters.get("minimumThreshold")));
+		soinnm.setAgeDead(Integer.parseInt(parameters.get("ageDead")));
+		soinnm.setConnectNewNodes(Boolean.parseBoolean(parameters.get("connectNewNodes")));
+		soinnm.setLambda(Integer.parseInt(parameters.get("lambda")));
+		soinnm.setEdgeMaxRemoval(Boolean.parseBoolean(parameters.get("edgeMaxRemoval")));
+		soinnm.setNodeNumSignalsMinRemoval(Boolean.parseBoolean(parameters.get("nodeNumSignalsMinRemoval")));
+		soinnm.setReduceErrorInsertion(Boolean.parseBoolean(parameters.get("reduceErrorInsertion")));
+		soinnm.setSmallClusterRemoval(Boolean.parseBoolean(parameters.get("smallClusterRemoval")));
+		soinnm.setC2Param(Double.parseDouble(parameters.get("c2Param")));
+		soinnm.setC1Param(Double.parseDouble(parameters.get("c1Param")));
+		soinnm.setClusterJoining(Boolean.parseBoolean(parameters.get("clusterJoining")));
+		soinnm.setJoinTolerance(Double.parseDouble(parameters.get("joinTolerance")));
+		soinnm.setUseAbsoluteJoinTolerance(Boolean.parseBoolean(parameters.get("useAbsoluteJoinTolerance")));
+		soinnm.setJoinToleranceAbsolute(Double.parseDouble(parameters.get("joinToleranceAbsolute")));
+		soinnm.setJoiningIterationsMax(Integer.parseInt(parameters.get("joiningIterationsMax")));
+
+		// DEBUG
+		System.out.println("Recreating nodes, edges and clusters...");
+
+		// Nodes, Edges, Clusters
+		soinnm.getNodeSet().clear();
+		soinnm.getNodeSet().addAll(nodes);
+		soinnm.getEdgeSet().clear();
+		soinnm.getEdgeSet().addAll(edges);
+		soinnm.getClusterSet().clear();
+		soinnm.getClusterSet().addAll(clusters);
+
+		// DEBUG
+		System.out.println("Setting variables...");
+
+		// Variables
+		soinnm.setNextNodeId(Long.parseLong(variables.get("nextNodeId")));
+		soinnm.setNextEdgeId(Long.parseLong(variables.get("nextEdgeId")));
+		soinnm.setNextClusterId(Long.parseLong(variables.get("nextClusterId")));
+		soinnm.setNumInputs(Long.parseLong(variables.get("numInputs")));
+
+		// rebuild auxiliary structures
+		soinnm.rebuild();
+		/* not included:
+		activatedCluster
+		topologyEvents
+		*/
+
+		clear();
+
+		// DEBUG
+		System.out.println("Loading from XML finished!");
+
+		return true;
+	}
 
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document doc = db.parse(filename);
+	/**
+	 * Inserts the nodes, edges and clusters of the given file into the
+	 * topology with new ids. Returns false if the file cannot be read, in
+	 * which case the topology is not changed.
+	 */
+	public boolean insertFromFile(String filename, SOINNM soinnm) {
 
-			// SOINNM
-			Element elemSOINNM = (Element) doc.getElementsByTagName("SOINNM").item(0);
+		// DEBUG
+		System.out.println("Inserting from XML...");
 
-			// check file version
-			String fileVersion = elemSOINNM.getAttribute("fileVersion");
-			if (!fileVersion.equals(FILE_VERSION)) {
-				System.err.println("Wrong file version!");
-				return;
-			}
+		// DEBUG
+		System.out.println("Reading from file \"" + filename + "\"...");
 
-			// check input dimensionality
-			int inputDim = Integer.parseInt(elemSOINNM.getAttribute("inputDim"));
-			if (inputDim != soinnm.getInputDim()) {
-				System.err.println("Wrong input dimensionality!");
-				return;
-			}
+		// read file (with new ids)
+		if (!readFile(filename, soinnm, true)) {
+			return false;
+		}
 
-			// DEBUG
-			System.out.println("Skipping parameters...");
-
-			// DEBUG
-			System.out.println("Inserting nodes...");
-
-			// create id mapping
-			HashMap<Long, Long> nodeIdMap = new HashMap<Long, Long>();
-
-			// Nodes
-			Element elemNodes = (Element) elemSOINNM.getElementsByTagName("Nodes").item(0);
-			NodeList nlNodes = elemNodes.getElementsByTagName("Node");
-			for (int i = 0; i < nlNodes.getLength(); i++) {
-				Element elemNode = (Element) nlNodes.item(i);
-				long id = Long.parseLong(elemNode.getAttribute("id"));
-				Element elemPattern = (Element) elemNode.getElementsByTagName("Pattern").item(0);
-				StringTokenizer strTokenizer = new StringTokenizer(elemPattern.getTextContent());
-				double[] pattern = new double[inputDim];
-				for (int j = 0; j < pattern.length; j++) {
-					pattern[j] = Double.parseDouble((String) strTokenizer.nextElement());
-				}
-				double threshold = Double.parseDouble(elemNode.getAttribute("threshold"));
-				double error = Double.parseDouble(elemNode.getAttribute("error"));
-				long numSignals = Long.parseLong(elemNode.getAttribute("numSignals"));
+		// DEBUG
+		System.out.println("Skipping parameters...");
 
-				// store id mapping
-				long nextNodeId = soinnm.getNextNodeId();
-				nodeIdMap.put(id, nextNodeId);
+		// DEBUG
+		System.out.println("Inserting nodes, edges and clusters...");
 
-				// create node				
-				Node node = new Node(nextNodeId, pattern);
-				node.setThreshold(threshold);
-				node.setError(error);
-				node.setNumSignals(numSignals);
+		// Nodes, Edges, Clusters
+		soinnm.getNodeSet().addAll(nodes);
+		soinnm.getEdgeSet().addAll(edges);
+		soinnm.getClusterSet().addAll(clusters);
 
-				// add node
-				soinnm.getNodeSet().add(node);
+		// DEBUG
+		System.out.println("Skipping variables...");
 
-				// increase next node id
-				nextNodeId++;
-				soinnm.setNextNodeId(nextNodeId);
+		// rebuild auxiliary structures
+		soinnm.rebuild();
 
-				/*
-				// increase number of inputs
-				long numInputs = soinnm.getNumInputs();
-				numInputs++;
-				soinnm.setNumInputs(numInputs);
-				*/
-			}
+		clear();
 
-			// DEBUG
-			System.out.println("Inserting edges...");
-
-			// Edges
-			Element elemEdges = (Element) elemSOINNM.getElementsByTagName("Edges").item(0);
-			NodeList nlEdges = elemEdges.getElementsByTagName("Edge");
-			for (int i = 0; i < nlEdges.getLength(); i++) {
-				Element elemEdge = (Element) nlEdges.item(i);
-				//long id = Long.parseLong(elemEdge.getAttribute("id"));
-				long age = Long.parseLong(elemEdge.getAttribute("age"));
-				long nodeAId = Long.parseLong(elemEdge.getAttribute("nodeAId"));
-				long nodeBId = Long.parseLong(elemEdge.getAttribute("nodeBId"));
-
-				// use mapped id
-				nodeAId = nodeIdMap.get(nodeAId);
-				nodeBId = nodeIdMap.get(nodeBId);
-
-				// find nodes
-				Node nodeA = null;
-				Node nodeB = null;
-				for (Node node : soinnm.getNodeSet()) {
-					if (node.getId() == nodeAId) {
-						nodeA = node;
-					}
-					if (node.getId() == nodeBId) {
-						nodeB = node;
-					}
-				}
+		// DEBUG
+		System.out.println("Inserting from XML finished!");
 
-				// create edge
-				long nextEdgeId = soinnm.getNextEdgeId();
-				Edge edge = new Edge(nextEdgeId, nodeA, nodeB);
-				edge.setAge(age);
+		return true;
+	}
 
-				// add edge
-				soinnm.getEdgeSet().add(edge);
+	/**
+	 * Reads nodes, edges and clusters of the file without changing the
+	 * topology. New ids are taken from the topology if requested (labels are
+	 * not inserted then). Returns false if the file cannot be read.
+	 */
+	private boolean readFile(String filename, SOINNM soinnm, boolean newIds) {
 
-				// increase next edge id
-				nextEdgeId++;
-				soinnm.setNextEdgeId(nextEdgeId);
-			}
+		InputStream inputStream = null;
+
+		try {
+
+			parameters = new HashMap<String, String>();
+			variables = new HashMap<String, String>();
+			nodes = new ArrayList<Node>();
+			nodeMap = new HashMap<Long, Node>();
+			edges = new ArrayList<Edge>();
+			clusters = new ArrayList<Cluster>();
+			token = new char[64];
+			long nextNodeId = soinnm.getNextNodeId();
+			long nextEdgeId = soinnm.getNextEdgeId();
+			long nextClusterId = soinnm.getNextClusterId();
+			int inputDim = soinnm.getInputDim();
+
+			inputStream = new BufferedInputStream(new FileInputStream(filename));
+			xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+
+			boolean soinnmFound = false;
+			Node node = null;
+			long clusterId = -1;
+			LinkedList<Node> clusterNodes = null;
+			while (xmlStreamReader.hasNext()) {
+				int event = xmlStreamReader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = xmlStreamReader.getLocalName();
+
+					if (name.equals("SOINNM")) {
+
+						// check file version
+						soinnmFound = true;
+						String fileVersion = xmlStreamReader.getAttributeValue(null, "fileVersion");
+						if (!FILE_VERSION.equals(fileVersion)) {
+							System.err.println("Wrong file version!");
+							clear();
+							return false;
+						}
+
+						// check input dimensionality
+						if (Integer.parseInt(xmlStreamReader.getAttributeValue(null, "inputDim")) != inputDim) {
+							System.err.println("Wrong input dimensionality!");
+							clear();
+							return false;
+						}
 
-			// DEBUG
-			System.out.println("Inserting clusters...");
-
-			// Clusters
-			Element elemClusters = (Element) elemSOINNM.getElementsByTagName("Clusters").item(0);
-			NodeList nlClusters = elemClusters.getElementsByTagName("Cluster");
-			for (int i = 0; i < nlClusters.getLength(); i++) {
-				Element elemCluster = (Element) nlClusters.item(i);
-				//long id = Long.parseLong(elemCluster.getAttribute("id"));
-
-				// create cluster
-				long nextClusterId = soinnm.getNextClusterId();
-				LinkedList<Node> nodes = new LinkedList<Node>();
-				Cluster cluster = new Cluster(nextClusterId, nodes);
-
-				// add nodes
-				NodeList nlNodeRefs = elemCluster.getElementsByTagName("NodeRef");
-				for (int j = 0; j < nlNodeRefs.getLength(); j++) {
-					Element elemNodeRef = (Element) nlNodeRefs.item(j);
-					long nodeId = Long.parseLong(elemNodeRef.getAttribute("nodeId"));
-
-					// use mapped id
-					nodeId = nodeIdMap.get(nodeId);
-
-					// find node
-					for (Node node : soinnm.getNodeSet()) {
-						if (node.getId() == nodeId) {
-							nodes.add(node);
-							break;
+					} else if (name.equals("Parameters")) {
+						readAttributes(parameters);
+
+					} else if (name.equals("Node")) {
+						long id = Long.parseLong(xmlStreamReader.getAttributeValue(null, "id"));
+						double threshold = Double.parseDouble(xmlStreamReader.getAttributeValue(null, "threshold"));
+						double error = Double.parseDouble(xmlStreamReader.getAttributeValue(null, "error"));
+						long numSignals = Long.parseLong(xmlStreamReader.getAttributeValue(null, "numSignals"));
+						String label = xmlStreamReader.getAttributeValue(null, "label");
+
+						// create node
+						node = new Node(newIds ? nextNodeId++ : id, new double[inputDim]);
+						node.setThreshold(threshold);
+						node.setError(error);
+						node.setNumSignals(numSignals);
+						if (!newIds) {
+							node.setLabel(label);
 						}
+						nodes.add(node);
+						nodeMap.put(id, node);
+
+					} else if (name.equals("Pattern")) {
+						readPattern(node.getPattern());
+
+					} else if (name.equals("Edge")) {
+						long id = Long.parseLong(xmlStreamReader.getAttributeValue(null, "id"));
+						long age = Long.parseLong(xmlStreamReader.getAttributeValue(null, "age"));
+						Node nodeA = nodeMap.get(Long.parseLong(xmlStreamReader.getAttributeValue(null, "nodeAId")));
+						Node nodeB = nodeMap.get(Long.parseLong(xmlStreamReader.getAttributeValue(null, "nodeBId")));
+
+						// create edge
+						Edge edge = new Edge(newIds ? nextEdgeId++ : id, nodeA, nodeB);
+						edge.setAge(age);
+						edges.add(edge);
+
+					} else if (name.equals("Cluster")) {
+						long id = Long.parseLong(xmlStreamReader.getAttributeValue(null, "id"));
+						clusterId = newIds ? nextClusterId++ : id;
+						clusterNodes = new LinkedList<Node>();
+
+					} else if (name.equals("NodeRef")) {
+						Node nodeRef = nodeMap.get(Long.parseLong(xmlStreamReader.getAttributeValue(null, "nodeId")));
+						if (nodeRef != null) {
+							clusterNodes.add(nodeRef);
+						}
+
+					} else if (name.equals("Variables")) {
+						readAttributes(variables);
+					}
+
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = xmlStreamReader.getLocalName();
+
+					if (name.equals("Cluster")) {
+
+						// create cluster
+						clusters.add(new Cluster(clusterId, clusterNodes));
+						clusterNodes = null;
 					}
 				}
-				soinnm.getClusterSet().add(cluster);
+			}
 
-				// increase next cluster id
-				nextClusterId++;
-				soinnm.setNextClusterId(nextClusterId);
+			if (!soinnmFound) {
+				System.err.println("Wrong file format!");
+				clear();
+				return false;
 			}
 
-			// DEBUG
-			System.out.println("Skipping variables...");
+			// use next ids after inserted elements
+			if (newIds) {
+				soinnm.setNextNodeId(nextNodeId);
+				soinnm.setNextEdgeId(nextEdgeId);
+				soinnm.setNextClusterId(nextClusterId);
+			}
 
-			// DEBUG
-			System.out.println("Inserting from XML finished!");
+			return true;
 
 		} catch (Exception e) {
 			e.printStackTrace();
+			clear();
+			return false;
+		} finally {
+			try {
+				if (xmlStreamReader != null) {
+					xmlStreamReader.close();
+				}
+				if (inputStream != null) {
+					inputStream.close();
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			xmlStreamReader = null;
+			token = null;
+		}
+	}
+
+	private void clear() {
+		parameters = null;
+		variables = null;
+		nodes = null;
+		nodeMap = null;
+		edges = null;
+		clusters = null;
+	}
+
+	private void readAttributes(HashMap<String, String> attributes) {
+		for (int a = 0; a < xmlStreamReader.getAttributeCount(); a++) {
+			attributes.put(xmlStreamReader.getAttributeLocalName(a), xmlStreamReader.getAttributeValue(a));
+		}
+	}
+
+	/**
+	 * Reads the whitespace-separated values of the current element into the
+	 * given pattern, directly from the characters of the stream.
+	 */
+	private void readPattern(double[] pattern) throws Exception {
+		int patternIndex = 0;
+		char[] token = this.token;
+		int tokenLength = 0;
+		while (true) {
+			int event = xmlStreamReader.next();
+			if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+				char[] chars = xmlStreamReader.getTextCharacters();
+				int start = xmlStreamReader.getTextStart();
+				int end = start + xmlStreamReader.getTextLength();
+				for (int c = start; c < end; c++) {
+					char character = chars[c];
+					if (character == ' ' || character == '\t' || character == '\n' || character == '\r' || character == '\f') {
+						if (tokenLength > 0) {
+							if (patternIndex < pattern.length) {
+								pattern[patternIndex] = parseValue(token, tokenLength);
+							}
+							patternIndex++;
+							tokenLength = 0;
+						}
+					} else {
+						if (tokenLength == token.length) {
+							char[] tokenNew = new char[2 * token.length];
+							System.arraycopy(token, 0, tokenNew, 0, tokenLength);
+							token = tokenNew;
+							this.token = token;
+						}
+						token[tokenLength++] = character;
+					}
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+		}
+		if (tokenLength > 0) {
+			if (patternIndex < pattern.length) {
+				pattern[patternIndex] = parseValue(token, tokenLength);
+			}
+			patternIndex++;
+		}
+		if (patternIndex < pattern.length) {
+			throw new Exception("Pattern has " + patternIndex + " values instead of " + pattern.length);
+		}
+	}
+
+	/**
+	 * Parses a value like Double.parseDouble. Values in plain decimal
+	 * notation with at most 15 significant digits (such as written by
+	 * XMLWriter) are computed directly, which gives the same result.
+	 */
+	static double parseValue(char[] chars, int length) {
+		int c = 0;
+		boolean negative = false;
+		if (c < length && (chars[c] == '-' || chars[c] == '+')) {
+			negative = chars[c] == '-';
+			c++;
+		}
+		long mantissa = 0;
+		int numDigits = 0;
+		int numDecimals = 0;
+		boolean point = false;
+		for (; c < length; c++) {
+			char character = chars[c];
+			if (character >= '0' && character <= '9') {
+				if (mantissa > 0 || character != '0') {
+					numDigits++;
+				}
+				mantissa = mantissa * 10 + (character - '0');
+				if (point) {
+					numDecimals++;
+				}
+				if (numDigits > 15 || numDecimals >= POWERS_OF_TEN.length) {
+					break;
+				}
+			} else if (character == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (c < length || c == 0 || (c == 1 && (point || negative || chars[0] == '+'))) {
+			return Double.parseDouble(new String(chars, 0, length));
 		}
+		double value = mantissa / POWERS_OF_TEN[numDecimals];
+		return negative ? -value : value;
 	}
 
 }
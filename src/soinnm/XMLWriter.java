@@ -1,17 +1,13 @@
 package soinnm;
 
-import java.io.File;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
 
 import soinnm.Cluster;
 import soinnm.Edge;
@@ -20,7 +16,11 @@ import soinnm.SOINNM;
 
 /**
  * Class for writing a topology state of M-SOINN to an XML file.
- * 
+ * <p>
+ * The file is written as a stream, element by element, with attributes in
+ * alphabetical order and indented by four spaces per level. Values are
+ * formatted like String.format("%f") (independently of the default locale).
+ *
  * @author Matthias Keysermann
  *
  */
@@ -28,137 +28,259 @@ public class XMLWriter {
 
 	private static final String FILE_VERSION = "1.6";
 
+	private static final char[] INDENT = "\n                ".toCharArray(); // line break and indentation of up to four levels
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final int VALUE_LENGTH_MAX = 400; // maximum length of a formatted value
+
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L };
+
+	private XMLStreamWriter xmlStreamWriter;
+
+	private char[] buffer; // formatted values
+
 	public void writeToFile(SOINNM soinnm, String filename) {
 
+		Writer writer = null;
+
 		try {
 
 			// DEBUG
 			System.out.println("Saving to XML...");
 
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document doc = db.newDocument();
+			// DEBUG
+			System.out.println("Writing to file \"" + filename + "\"...");
+
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF-8"));
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+			xmlStreamWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+			buffer = new char[BUFFER_SIZE];
 
 			// SOINNM
-			Element elemSOINNM = doc.createElement("SOINNM");
-			elemSOINNM.setAttribute("fileVersion", FILE_VERSION);
-			elemSOINNM.setAttribute("inputDim", String.valueOf(soinnm.getInputDim()));
-			doc.appendChild(elemSOINNM);
+			xmlStreamWriter.writeStartElement("SOINNM");
+			xmlStreamWriter.writeAttribute("fileVersion", FILE_VERSION);
+			xmlStreamWriter.writeAttribute("inputDim", String.valueOf(soinnm.getInputDim()));
 
 			// DEBUG
-			System.out.println("Creating parameters element...");
+			System.out.println("Writing parameters element...");
 
 			// Parameters
-			Element elemParameters = doc.createElement("Parameters");
-			elemParameters.setAttribute("noiseLevel", String.valueOf(soinnm.getNoiseLevel()));
-			elemParameters.setAttribute("useFixedThreshold", String.valueOf(soinnm.isUseFixedThreshold()));
-			elemParameters.setAttribute("fixedThreshold", String.valueOf(soinnm.getFixedThreshold()));
-			elemParameters.setAttribute("minimumThreshold", String.valueOf(soinnm.getMinimumThreshold()));
-			elemParameters.setAttribute("ageDead", String.valueOf(soinnm.getAgeDead()));
-			elemParameters.setAttribute("connectNewNodes", String.valueOf(soinnm.isConnectNewNodes()));
-			elemParameters.setAttribute("lambda", String.valueOf(soinnm.getLambda()));
-			elemParameters.setAttribute("edgeMaxRemoval", String.valueOf(soinnm.isEdgeMaxRemoval()));
-			elemParameters.setAttribute("nodeNumSignalsMinRemoval", String.valueOf(soinnm.isNodeNumSignalsMinRemoval()));
-			elemParameters.setAttribute("reduceErrorInsertion", String.valueOf(soinnm.isReduceErrorInsertion()));
-			elemParameters.setAttribute("smallClusterRemoval", String.valueOf(soinnm.isSmallClusterRemoval()));
-			elemParameters.setAttribute("c2Param", String.valueOf(soinnm.getC2Param()));
-			elemParameters.setAttribute("c1Param", String.valueOf(soinnm.getC1Param()));
-			elemParameters.setAttribute("clusterJoining", String.valueOf(soinnm.isClusterJoining()));
-			elemParameters.setAttribute("joinTolerance", String.valueOf(soinnm.getJoinTolerance()));
-			elemParameters.setAttribute("useAbsoluteJoinTolerance", String.valueOf(soinnm.isUseAbsoluteJoinTolerance()));
-			elemParameters.setAttribute("joinToleranceAbsolute", String.valueOf(soinnm.getJoinToleranceAbsolute()));
-			elemParameters.setAttribute("joiningIterationsMax", String.valueOf(soinnm.getJoiningIterationsMax()));
-			elemSOINNM.appendChild(elemParameters);
+			indent(1);
+			xmlStreamWriter.writeEmptyElement("Parameters");
+			xmlStreamWriter.writeAttribute("ageDead", String.valueOf(soinnm.getAgeDead()));
+			xmlStreamWriter.writeAttribute("c1Param", String.valueOf(soinnm.getC1Param()));
+			xmlStreamWriter.writeAttribute("c2Param", String.valueOf(soinnm.getC2Param()));
+			xmlStreamWriter.writeAttribute("clusterJoining", String.valueOf(soinnm.isClusterJoining()));
+			xmlStreamWriter.writeAttribute("connectNewNodes", String.valueOf(soinnm.isConnectNewNodes()));
+			xmlStreamWriter.writeAttribute("edgeMaxRemoval", String.valueOf(soinnm.isEdgeMaxRemoval()));
+			xmlStreamWriter.writeAttribute("fixedThreshold", String.valueOf(soinnm.getFixedThreshold()));
+			xmlStreamWriter.writeAttribute("joinTolerance", String.valueOf(soinnm.getJoinTolerance()));
+			xmlStreamWriter.writeAttribute("joinToleranceAbsolute", String.valueOf(soinnm.getJoinToleranceAbsolute()));
+			xmlStreamWriter.writeAttribute("joiningIterationsMax", String.valueOf(soinnm.getJoiningIterationsMax()));
+			xmlStreamWriter.writeAttribute("lambda", String.valueOf(soinnm.getLambda()));
+			xmlStreamWriter.writeAttribute("minimumThreshold", String.valueOf(soinnm.getMinimumThreshold()));
+			xmlStreamWriter.writeAttribute("nodeNumSignalsMinRemoval", String.valueOf(soinnm.isNodeNumSignalsMinRemoval()));
+			xmlStreamWriter.writeAttribute("noiseLevel", String.valueOf(soinnm.getNoiseLevel()));
+			xmlStreamWriter.writeAttribute("reduceErrorInsertion", String.valueOf(soinnm.isReduceErrorInsertion()));
+			xmlStreamWriter.writeAttribute("smallClusterRemoval", String.valueOf(soinnm.isSmallClusterRemoval()));
+			xmlStreamWriter.writeAttribute("useAbsoluteJoinTolerance", String.valueOf(soinnm.isUseAbsoluteJoinTolerance()));
+			xmlStreamWriter.writeAttribute("useFixedThreshold", String.valueOf(soinnm.isUseFixedThreshold()));
 
 			// DEBUG
-			System.out.println("Creating nodes element...");
+			System.out.println("Writing nodes element...");
 
 			// Nodes
-			Element elemNodes = doc.createElement("Nodes");
-			for (Node node : soinnm.getNodeSet()) {
-				Element elemNode = doc.createElement("Node");
-				elemNode.setAttribute("id", String.valueOf(node.getId()));
-				elemNode.setAttribute("threshold", String.format("%f", node.getThreshold()));
-				elemNode.setAttribute("error", String.format("%f", node.getError()));
-				elemNode.setAttribute("numSignals", String.valueOf(node.getNumSignals()));
-				elemNode.setAttribute("label", String.valueOf(node.getLabel()));
-				Element elemPattern = doc.createElement("Pattern");
-				StringBuffer stringBuffer = new StringBuffer();
-				for (double pattern : node.getPattern()) {
-					stringBuffer.append(String.format("%f ", pattern));
+			indent(1);
+			if (soinnm.getNodeSet().isEmpty()) {
+				xmlStreamWriter.writeEmptyElement("Nodes");
+			} else {
+				xmlStreamWriter.writeStartElement("Nodes");
+				for (Node node : soinnm.getNodeSet()) {
+					indent(2);
+					xmlStreamWriter.writeStartElement("Node");
+					xmlStreamWriter.writeAttribute("error", formatToString(node.getError()));
+					xmlStreamWriter.writeAttribute("id", String.valueOf(node.getId()));
+					xmlStreamWriter.writeAttribute("label", String.valueOf(node.getLabel()));
+					xmlStreamWriter.writeAttribute("numSignals", String.valueOf(node.getNumSignals()));
+					xmlStreamWriter.writeAttribute("threshold", formatToString(node.getThreshold()));
+					indent(3);
+					xmlStreamWriter.writeStartElement("Pattern");
+					writePattern(node.getPattern());
+					xmlStreamWriter.writeEndElement();
+					indent(2);
+					xmlStreamWriter.writeEndElement();
 				}
-				elemPattern.setTextContent(stringBuffer.toString());
-				elemNode.appendChild(elemPattern);
-				elemNodes.appendChild(elemNode);
+				indent(1);
+				xmlStreamWriter.writeEndElement();
 			}
-			elemSOINNM.appendChild(elemNodes);
 
 			// DEBUG
-			System.out.println("Creating edges element...");
+			System.out.println("Writing edges element...");
 
 			// Edges
-			Element elemEdges = doc.createElement("Edges");
-			for (Edge edge : soinnm.getEdgeSet()) {
-				Element elemEdge = doc.createElement("Edge");
-				elemEdge.setAttribute("id", String.valueOf(edge.getId()));
-				elemEdge.setAttribute("age", String.valueOf(edge.getAge()));
-				elemEdge.setAttribute("nodeAId", String.valueOf(edge.getNodeA().getId()));
-				elemEdge.setAttribute("nodeBId", String.valueOf(edge.getNodeB().getId()));
-				elemEdges.appendChild(elemEdge);
+			indent(1);
+			if (soinnm.getEdgeSet().isEmpty()) {
+				xmlStreamWriter.writeEmptyElement("Edges");
+			} else {
+				xmlStreamWriter.writeStartElement("Edges");
+				for (Edge edge : soinnm.getEdgeSet()) {
+					indent(2);
+					xmlStreamWriter.writeEmptyElement("Edge");
+					xmlStreamWriter.writeAttribute("age", String.valueOf(edge.getAge()));
+					xmlStreamWriter.writeAttribute("id", String.valueOf(edge.getId()));
+					xmlStreamWriter.writeAttribute("nodeAId", String.valueOf(edge.getNodeA().getId()));
+					xmlStreamWriter.writeAttribute("nodeBId", String.valueOf(edge.getNodeB().getId()));
+				}
+				indent(1);
+				xmlStreamWriter.writeEndElement();
 			}
-			elemSOINNM.appendChild(elemEdges);
 
 			// DEBUG
-			System.out.println("Creating clusters element...");
+			System.out.println("Writing clusters element...");
 
 			// Clusters
-			Element elemClusters = doc.createElement("Clusters");
-			for (Cluster cluster : soinnm.getClusterSet()) {
-				Element elemCluster = doc.createElement("Cluster");
-				elemCluster.setAttribute("id", String.valueOf(cluster.getId()));
-				for (Node node : cluster.getNodes()) {
-					Element elemNodeRef = doc.createElement("NodeRef");
-					elemNodeRef.setAttribute("nodeId", String.valueOf(node.getId()));
-					elemCluster.appendChild(elemNodeRef);
+			indent(1);
+			if (soinnm.getClusterSet().isEmpty()) {
+				xmlStreamWriter.writeEmptyElement("Clusters");
+			} else {
+				xmlStreamWriter.writeStartElement("Clusters");
+				for (Cluster cluster : soinnm.getClusterSet()) {
+					indent(2);
+					if (cluster.getNodes().isEmpty()) {
+						xmlStreamWriter.writeEmptyElement("Cluster");
+						xmlStreamWriter.writeAttribute("id", String.valueOf(cluster.getId()));
+						continue;
+					}
+					xmlStreamWriter.writeStartElement("Cluster");
+					xmlStreamWriter.writeAttribute("id", String.valueOf(cluster.getId()));
+					for (Node node : cluster.getNodes()) {
+						indent(3);
+						xmlStreamWriter.writeEmptyElement("NodeRef");
+						xmlStreamWriter.writeAttribute("nodeId", String.valueOf(node.getId()));
+					}
+					indent(2);
+					xmlStreamWriter.writeEndElement();
 				}
-				elemClusters.appendChild(elemCluster);
+				indent(1);
+				xmlStreamWriter.writeEndElement();
 			}
-			elemSOINNM.appendChild(elemClusters);
 
 			// DEBUG
-			System.out.println("Creating variables element...");
+			System.out.println("Writing variables element...");
 
 			// Variables
-			Element elemVariables = doc.createElement("Variables");
-			elemVariables.setAttribute("nextNodeId", String.valueOf(soinnm.getNextNodeId()));
-			elemVariables.setAttribute("nextEdgeId", String.valueOf(soinnm.getNextEdgeId()));
-			elemVariables.setAttribute("nextClusterId", String.valueOf(soinnm.getNextClusterId()));
-			elemVariables.setAttribute("numInputs", String.valueOf(soinnm.getNumInputs()));
-			elemSOINNM.appendChild(elemVariables);
+			indent(1);
+			xmlStreamWriter.writeEmptyElement("Variables");
+			xmlStreamWriter.writeAttribute("nextClusterId", String.valueOf(soinnm.getNextClusterId()));
+			xmlStreamWriter.writeAttribute("nextEdgeId", String.valueOf(soinnm.getNextEdgeId()));
+			xmlStreamWriter.writeAttribute("nextNodeId", String.valueOf(soinnm.getNextNodeId()));
+			xmlStreamWriter.writeAttribute("numInputs", String.valueOf(soinnm.getNumInputs()));
 			/* not included:
 			activatedCluster
-			splitClusters
-			joinedClusters
-			removedClusters
+			topologyEvents
 			*/
 
-			// DEBUG
-			System.out.println("Writing to file \"" + filename + "\"...");
-
-			// write to xml file
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			DOMSource source = new DOMSource(doc);
-			StreamResult result = new StreamResult(new File(filename));
-			transformer.transform(source, result);
+			// end of SOINNM
+			indent(0);
+			xmlStreamWriter.writeEndElement();
+			xmlStreamWriter.writeCharacters("\n");
+			xmlStreamWriter.flush();
+			xmlStreamWriter.close();
 
 			// DEBUG
 			System.out.println("Saving to XML finished!");
 
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			try {
+				if (writer != null) {
+					writer.close();
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			xmlStreamWriter = null;
+			buffer = null;
+		}
+
+	}
+
+	private void indent(int level) throws Exception {
+		xmlStreamWriter.writeCharacters(INDENT, 0, 1 + 4 * level);
+	}
+
+	/**
+	 * Writes the values of the pattern, each followed by a space.
+	 */
+	private void writePattern(double[] pattern) throws Exception {
+		int length = 0;
+		for (double value : pattern) {
+			if (length > buffer.length - VALUE_LENGTH_MAX) {
+				xmlStreamWriter.writeCharacters(buffer, 0, length);
+				length = 0;
+			}
+			length = format(value, buffer, length);
+			buffer[length++] = ' ';
+		}
+		xmlStreamWriter.writeCharacters(buffer, 0, length);
+	}
+
+	private String formatToString(double value) {
+		int length = format(value, buffer, 0);
+		return new String(buffer, 0, length);
+	}
+
+	/**
+	 * Writes the value with six decimal places like String.format("%f") to the
+	 * given position of the array and returns the position after the value.
+	 * Only values that are too large or halfway between two results are
+	 * formatted with String.format.
+	 */
+	static int format(double value, char[] chars, int position) {
+		double valueAbs = Math.abs(value);
+		if (!(valueAbs < 1e9)) {
+			return formatSlow(value, chars, position);
 		}
+		double scaled = valueAbs * POWERS_OF_TEN[6];
+		double fraction = scaled - Math.floor(scaled);
+		if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+			return formatSlow(value, chars, position);
+		}
+		long units = Math.round(scaled);
+
+		// sign
+		if (value < 0.0 || (value == 0.0 && 1.0 / value < 0.0)) {
+			chars[position++] = '-';
+		}
+
+		// integer part
+		long integer = units / POWERS_OF_TEN[6];
+		int digits = 1;
+		for (long i = integer; i >= 10; i /= 10) {
+			digits++;
+		}
+		for (int d = digits - 1; d >= 0; d--) {
+			chars[position + d] = (char) ('0' + integer % 10);
+			integer /= 10;
+		}
+		position += digits;
 
+		// decimal places
+		chars[position++] = '.';
+		long decimals = units % POWERS_OF_TEN[6];
+		for (int d = 5; d >= 0; d--) {
+			chars[position + d] = (char) ('0' + decimals % 10);
+			decimals /= 10;
+		}
+		return position + 6;
 	}
+
+	private static int formatSlow(double value, char[] chars, int position) {
+		String string = String.format(Locale.ROOT, "%f", value);
+		string.getChars(0, string.length(), chars, position);
+		return position + string.length();
+	}
+
 }
@@ -7,6 +7,7 @@ import java.awt.image.BufferedImage;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Random;
 
@@ -19,7 +20,9 @@ import javax.swing.JPanel;
 import com.jhlabs.image.GaussianFilter;
 
 import soinnm.Cluster;
+import soinnm.LSHNodeIndex;
 import soinnm.Node;
+import soinnm.NodeIndex;
 import soinnm.SOINNM;
 
 public class ComparisonFaces {
@@ -50,6 +53,16 @@ public class ComparisonFaces {
 
 	private final static boolean EVALUATE_PROTOTYPE_LABEL = true; // use cluster prototype label instead of node label for evaluation
 
+	private final static int LSH_NUM_TABLES = 8;
+
+	private final static int LSH_NUM_PROJECTIONS = 8;
+
+	private final static double LSH_BUCKET_WIDTH = 10.0;
+
+	private final static long LSH_SEED = 1;
+
+	private final static int BATCH_SIZE = 1000; // maximum number of patterns input as one batch
+
 	private void createPatterns() {
 
 		// initialise
@@ -208,6 +221,9 @@ public class ComparisonFaces {
 	public void learnStationary(SOINNM soinnm, int numIterationsPerPerson) {
 
 		int numIterations = NUM_PERSONS * numIterationsPerPerson;
+		double[][] patterns = new double[Math.min(numIterations, BATCH_SIZE)][];
+		String[] labels = new String[patterns.length];
+		int batchIndex = 0;
 		for (int i = 0; i < numIterations; i++) {
 
 			// choose random person
@@ -216,9 +232,16 @@ public class ComparisonFaces {
 			// choose random face
 			int f = random.nextInt(NUM_FACES);
 
-			// input pattern
-			double[] pattern = patternSets.get(p).get(f);
-			soinnm.input(pattern, String.valueOf(p));
+			// add pattern to batch
+			patterns[batchIndex] = patternSets.get(p).get(f);
+			labels[batchIndex] = String.valueOf(p);
+			batchIndex++;
+
+			// input batch
+			if (batchIndex == patterns.length || i == numIterations - 1) {
+				soinnm.inputBatch(Arrays.copyOf(patterns, batchIndex), Arrays.copyOf(labels, batchIndex));
+				batchIndex = 0;
+			}
 
 		}
 
@@ -226,15 +249,25 @@ public class ComparisonFaces {
 
 	public void learnNonStationary(SOINNM soinnm, int numIterationsPerPerson) {
 
+		double[][] patterns = new double[Math.min(numIterationsPerPerson, BATCH_SIZE)][];
+		String[] labels = new String[patterns.length];
 		for (int p = 0; p < NUM_PERSONS; p++) {
+			int batchIndex = 0;
 			for (int i = 0; i < numIterationsPerPerson; i++) {
 
 				// choose random face
 				int f = random.nextInt(NUM_FACES);
 
-				// input pattern
-				double[] pattern = patternSets.get(p).get(f);
-				soinnm.input(pattern, String.valueOf(p));
+				// add pattern to batch
+				patterns[batchIndex] = patternSets.get(p).get(f);
+				labels[batchIndex] = String.valueOf(p);
+				batchIndex++;
+
+				// input batch
+				if (batchIndex == patterns.length || i == numIterationsPerPerson - 1) {
+					soinnm.inputBatch(Arrays.copyOf(patterns, batchIndex), Arrays.copyOf(labels, batchIndex));
+					batchIndex = 0;
+				}
 
 			}
 		}
@@ -483,6 +516,7 @@ public class ComparisonFaces {
 		int edgeCounts[] = new int[numRuns];
 		int clusterCounts[] = new int[numRuns];
 		double recognitionRates[] = new double[numRuns];
+		long learningTimeSum = 0;
 
 		// loop over runs
 		for (int run = 0; run < numRuns; run++) {
@@ -492,6 +526,7 @@ public class ComparisonFaces {
 
 			// learn
 			soinnm.clear();
+			long timeStart = System.nanoTime();
 			switch (scenario) {
 			case STATIONARY:
 				learnStationary(soinnm, numIterationsPerPerson);
@@ -500,6 +535,7 @@ public class ComparisonFaces {
 				learnNonStationary(soinnm, numIterationsPerPerson);
 				break;
 			}
+			learningTimeSum += System.nanoTime() - timeStart;
 
 			// store topology data
 			int nodeCount = soinnm.getNodeSet().size();
@@ -539,6 +575,7 @@ public class ComparisonFaces {
 		filenameData += "-Data";
 		filenameData += getSuffixParameters(soinnm);
 		filenameData += getSuffixModifications(soinnm);
+		filenameData += getSuffixSearchMode(soinnm);
 		filenameData += ".csv";
 		try {
 			BufferedWriter bwData = new BufferedWriter(new FileWriter(filenameData));
@@ -639,6 +676,12 @@ public class ComparisonFaces {
 		System.out.println("maximum recognition rate: " + recognitionRateMax);
 		System.out.println("average recognition rate: " + recognitionRateAvg);
 
+		// throughput statistics
+		double inputsPerSecond = (double) NUM_PERSONS * numIterationsPerPerson * numRuns / (learningTimeSum / 1e9);
+
+		// DEBUG
+		System.out.println("inputs per second: " + inputsPerSecond);
+
 		// return statistics
 		Statistics statistics = new Statistics();
 		statistics.nodeCountMin = nodeCountMin;
@@ -653,9 +696,85 @@ public class ComparisonFaces {
 		statistics.recognitionRateMin = recognitionRateMin;
 		statistics.recognitionRateMax = recognitionRateMax;
 		statistics.recognitionRateAvg = recognitionRateAvg;
+		statistics.inputsPerSecond = inputsPerSecond;
 		return statistics;
 	}
 
+	public void testSearchModes(SCENARIO scenario, SOINNM soinnm, int numIterationsPerPerson, int numRuns) {
+
+		// set numbers of probes for approximate search (-1 for exact search)
+		int[] numProbesList = { -1, 0, 2, 4, 8, 16 };
+
+		// create directory
+		File file = new File(PREFIX_DIRECTORY);
+		file.mkdirs();
+
+		// write statistics to file
+		String filenameStatistics = PREFIX_DIRECTORY + "ComparisonFaces";
+		filenameStatistics += getSuffixScenario(scenario);
+		filenameStatistics += "-SearchModes";
+		filenameStatistics += ".csv";
+		BufferedWriter bwStatistics = null;
+		try {
+			bwStatistics = new BufferedWriter(new FileWriter(filenameStatistics));
+			bwStatistics.write("numProbes;");
+			bwStatistics.write("inputsPerSecond;");
+			bwStatistics.write("nodeCountAvg;");
+			bwStatistics.write("clusterCountAvg;");
+			bwStatistics.write("recognitionRateMin;");
+			bwStatistics.write("recognitionRateMax;");
+			bwStatistics.write("recognitionRateAvg;");
+			bwStatistics.write("\n");
+			bwStatistics.flush();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		// loop over search modes
+		NodeIndex nodeIndexExact = soinnm.getNodeIndex();
+		for (int numProbes : numProbesList) {
+
+			// set node index
+			if (numProbes < 0) {
+				soinnm.setNodeIndex(nodeIndexExact);
+			} else {
+				soinnm.setNodeIndex(new LSHNodeIndex(INPUT_DIM, LSH_NUM_TABLES, LSH_NUM_PROJECTIONS, LSH_BUCKET_WIDTH, numProbes, LSH_SEED));
+			}
+
+			// DEBUG
+			System.out.println("search mode" + getSuffixSearchMode(soinnm));
+
+			// test search mode
+			Statistics statistics = testRuns(scenario, soinnm, numIterationsPerPerson, numRuns);
+
+			// write statistics to file
+			try {
+				bwStatistics.write(numProbes + ";");
+				bwStatistics.write(statistics.inputsPerSecond + ";");
+				bwStatistics.write(statistics.nodeCountAvg + ";");
+				bwStatistics.write(statistics.clusterCountAvg + ";");
+				bwStatistics.write(statistics.recognitionRateMin + ";");
+				bwStatistics.write(statistics.recognitionRateMax + ";");
+				bwStatistics.write(statistics.recognitionRateAvg + ";");
+				bwStatistics.write("\n");
+				bwStatistics.flush();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+
+		}
+
+		// restore exact search
+		soinnm.setNodeIndex(nodeIndexExact);
+
+		// write statistics to file
+		try {
+			bwStatistics.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
 	private String getSuffixScenario(SCENARIO scenario) {
 		switch (scenario) {
 		case STATIONARY:
@@ -675,6 +794,13 @@ public class ComparisonFaces {
 		return suffixParameters;
 	}
 
+	private String getSuffixSearchMode(SOINNM soinnm) {
+		if (soinnm.getNodeIndex() instanceof LSHNodeIndex) {
+			return "-LSH" + ((LSHNodeIndex) soinnm.getNodeIndex()).getNumProbes();
+		}
+		return "";
+	}
+
 	private String getSuffixModifications(SOINNM soinnm) {
 		String suffixModifications = "";
 		if (soinnm.isSmallClusterRemoval()) {
@@ -724,6 +850,8 @@ public class ComparisonFaces {
 
 		public double recognitionRateAvg = -1;
 
+		public double inputsPerSecond = -1;
+
 	}
 
 	public static void main(String[] args) {
@@ -760,6 +888,7 @@ public class ComparisonFaces {
 		int numRuns = 1000; // 1000
 		comparisonFaces.testRuns(SCENARIO.NONSTATIONARY, soinnm, inputsPerPerson, numRuns);
 		//comparisonFaces.testConfigurations(SCENARIO.NONSTATIONARY, soinnm, inputsPerPerson, numRuns);
+		//comparisonFaces.testSearchModes(SCENARIO.NONSTATIONARY, soinnm, inputsPerPerson, numRuns);
 
 	}
 
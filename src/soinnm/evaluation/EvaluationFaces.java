@@ -8,6 +8,7 @@ import java.awt.image.BufferedImage;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Random;
 
@@ -63,6 +64,8 @@ public class EvaluationFaces {
 
 	private final static boolean SAVE_PLOTS = true;
 
+	private final static int BATCH_SIZE = 1000; // maximum number of patterns input as one batch
+
 	public EvaluationFaces() {
 
 		// initialise
@@ -501,6 +504,11 @@ public class EvaluationFaces {
 				// reset index
 				index = 0;
 
+				// initialise batch
+				double[][] patterns = new double[Math.min(numInputs, BATCH_SIZE)][];
+				String[] labels = new String[patterns.length];
+				int batchIndex = 0;
+
 				// loop over inputs
 				for (int input = 1; input <= numInputs; input++) {
 
@@ -586,8 +594,16 @@ public class EvaluationFaces {
 					}
 					String label = String.valueOf(imageLabel);
 
-					// input pattern
-					topology.input(pattern, label);
+					// add pattern to batch
+					patterns[batchIndex] = pattern;
+					labels[batchIndex] = label;
+					batchIndex++;
+
+					// input batch
+					if (batchIndex == patterns.length || input == numInputs) {
+						topology.inputBatch(Arrays.copyOf(patterns, batchIndex), Arrays.copyOf(labels, batchIndex));
+						batchIndex = 0;
+					}
 
 				}
 
@@ -53,6 +53,7 @@ public class Display2D {
 			int height = panel.getHeight() - 1;
 			int xPos, yPos;
 			double[] pattern;
+			double[] patternBuffer = new double[soinnm.getInputDim()];
 
 			// clear panel
 			g.setColor(Color.BLACK);
@@ -62,7 +63,7 @@ public class Display2D {
 			g.setColor(Color.RED);
 			int diameterNode = 8;
 			for (Node node : soinnm.getNodeSet()) {
-				pattern = node.getPattern();
+				pattern = node.getPattern(patternBuffer);
 				xPos = (int) Math.round(pattern[0] * width);
 				yPos = (int) Math.round(pattern[1] * height);
 				g.fillOval(xPos, yPos, diameterNode, diameterNode);
@@ -72,10 +73,10 @@ public class Display2D {
 			g.setColor(Color.BLUE);
 			int xPosA, yPosA, xPosB, yPosB;
 			for (Edge edge : soinnm.getEdgeSet()) {
-				pattern = edge.getNodeA().getPattern();
+				pattern = edge.getNodeA().getPattern(patternBuffer);
 				xPosA = (int) Math.round(pattern[0] * width);
 				yPosA = (int) Math.round(pattern[1] * height);
-				pattern = edge.getNodeB().getPattern();
+				pattern = edge.getNodeB().getPattern(patternBuffer);
 				xPosB = (int) Math.round(pattern[0] * width);
 				yPosB = (int) Math.round(pattern[1] * height);
 				g.drawLine(xPosA, yPosA, xPosB, yPosB);
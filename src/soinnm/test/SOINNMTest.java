@@ -2,10 +2,41 @@ package soinnm.test;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.junit.Test;
 
+import soinnm.BinaryReader;
+import soinnm.BinaryTopologyFile;
+import soinnm.BinaryWriter;
 import soinnm.Cluster;
+import soinnm.ClusterSnapshot;
+import soinnm.Edge;
+import soinnm.Journal;
+import soinnm.KDTreeNodeIndex;
+import soinnm.LSHNodeIndex;
+import soinnm.LinearNodeIndex;
+import soinnm.Node;
+import soinnm.NodeIndex;
+import soinnm.NodeIndexAbstract;
+import soinnm.NodeSnapshot;
+import soinnm.NodeStore;
+import soinnm.Quantization;
 import soinnm.SOINNM;
+import soinnm.TopologyEvents;
+import soinnm.TopologyListener;
+import soinnm.TopologySnapshot;
+import soinnm.XMLReader;
+import soinnm.XMLWriter;
 
 public class SOINNMTest {
 
@@ -105,6 +136,1064 @@ public class SOINNMTest {
 
 	}
 
+	@Test
+	public void testClusterStatistics() {
+
+		// create empty topology
+		SOINNM soinnm = new SOINNM(3);
+		soinnm.setLambda(50);
+		soinnm.setAgeDead(20);
+
+		// input random patterns around two centres
+		Random random = new Random(1);
+		double[] pattern = new double[3];
+		for (int n = 0; n < 2000; n++) {
+			double centre = (n % 2 == 0) ? 0.2 : 0.8;
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] = centre + random.nextGaussian() * 0.05;
+			}
+			soinnm.input(pattern);
+		}
+
+		// compare statistics with values computed from the nodes
+		for (Cluster cluster : soinnm.getClusterSet()) {
+			double[] sum = new double[3];
+			double[] weightedSum = new double[3];
+			double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+			long numSignalsSum = 0;
+			for (Node node : cluster.getNodes()) {
+				for (int i = 0; i < 3; i++) {
+					sum[i] += node.getPattern()[i];
+					weightedSum[i] += node.getPattern()[i] * node.getNumSignals();
+					min[i] = Math.min(min[i], node.getPattern()[i]);
+				}
+				numSignalsSum += node.getNumSignals();
+			}
+			for (int i = 0; i < 3; i++) {
+				assertEquals("mean", sum[i] / cluster.getNodes().size(), cluster.getMean()[i], 1e-9);
+				assertEquals("weighted mean", weightedSum[i] / numSignalsSum, cluster.getWeightedMean()[i], 1e-9);
+				assertEquals("min", min[i], cluster.getMin()[i], 0.0);
+			}
+			for (Node node : cluster.getNodes()) {
+				assertTrue("prototype", node.getNumSignals() <= cluster.getPrototypeNode().getNumSignals());
+			}
+		}
+
+	}
+
+	@Test
+	public void testKDTreeNodeIndex() {
+
+		// create topology with k-d tree
+		SOINNM soinnm = new SOINNM(4);
+		soinnm.setNodeIndex(new KDTreeNodeIndex(4));
+		soinnm.setLambda(50);
+
+		// input random patterns (nodes are added, moved and removed)
+		Random random = new Random(8);
+		double[][] patterns = createPatterns(random, 3000, 4);
+		for (int n = 0; n < patterns.length; n++) {
+			soinnm.input(patterns[n]);
+
+			// compare with linear scan
+			if (n % 1000 == 999) {
+				assertNearestNodes(soinnm, random);
+			}
+		}
+
+	}
+
+	@Test
+	public void testNodeStore() {
+
+		// create topologies with node store (default for high dimensionality) in each precision
+		for (Node.PRECISION precision : Node.PRECISION.values()) {
+			SOINNM soinnm = new SOINNM(40);
+			assertTrue("node store", soinnm.getNodeIndex() instanceof NodeStore);
+			soinnm.setPatternPrecision(precision, new Quantization(40, -0.5, 1.5));
+			soinnm.setLambda(50);
+
+			// input random patterns (slots are used, freed and reused)
+			Random random = new Random(11);
+			for (double[] pattern : createPatterns(random, 2000, 40)) {
+				soinnm.input(pattern);
+			}
+
+			// compare with linear scan
+			assertNearestNodes(soinnm, random);
+		}
+
+	}
+
+	@Test
+	public void testEarlyAbandon() {
+
+		// create topologies with and without early abandoning (k-d tree and node store)
+		for (boolean kdTree : new boolean[] { true, false }) {
+			SOINNM soinnm = new SOINNM(40);
+			SOINNM soinnmExact = new SOINNM(40);
+			if (kdTree) {
+				soinnm.setNodeIndex(new KDTreeNodeIndex(40));
+				soinnmExact.setNodeIndex(new KDTreeNodeIndex(40));
+			}
+			assertTrue("early abandoning", ((NodeIndexAbstract) soinnm.getNodeIndex()).isEarlyAbandon());
+			((NodeIndexAbstract) soinnmExact.getNodeIndex()).setEarlyAbandon(false);
+			soinnm.setLambda(50);
+			soinnmExact.setLambda(50);
+
+			// input the same random patterns and compare topologies
+			Random random = new Random(12);
+			for (double[] pattern : createPatterns(random, 2000, 40)) {
+				soinnm.input(pattern.clone());
+				soinnmExact.input(pattern.clone());
+			}
+			assertTopologiesEqual(soinnmExact, soinnm);
+
+			// compare with linear scan
+			assertNearestNodes(soinnm, random);
+		}
+
+	}
+
+	@Test
+	public void testParallelSearch() {
+
+		// use several threads also on a single processor
+		int poolParallelism = NodeIndexAbstract.getPoolParallelism();
+		NodeIndexAbstract.setPoolParallelism(4);
+		try {
+
+			// create topologies with parallel and sequential search in the node store
+			SOINNM soinnm = new SOINNM(40);
+			SOINNM soinnmSequential = new SOINNM(40);
+			soinnm.setParallelSearch(true);
+			soinnm.setParallelSearchNodesMin(1);
+			soinnm.setParallelSearchValuesMin(1);
+			soinnm.setLambda(50);
+			soinnmSequential.setLambda(50);
+
+			// input the same random patterns and compare topologies
+			Random random = new Random(14);
+			for (double[] pattern : createPatterns(random, 2000, 40)) {
+				soinnm.input(pattern.clone());
+				soinnmSequential.input(pattern.clone());
+			}
+			assertTopologiesEqual(soinnmSequential, soinnm);
+
+			// compare with linear scan
+			assertNearestNodes(soinnm, random);
+
+		} finally {
+			NodeIndexAbstract.setPoolParallelism(poolParallelism);
+		}
+
+	}
+
+	@Test
+	public void testLSHNodeIndex() {
+
+		// create random centres
+		Random random = new Random(15);
+		double[][] centres = new double[10][];
+		for (int c = 0; c < centres.length; c++) {
+			centres[c] = createPattern(random, 16, 0.5, 0.3);
+		}
+
+		// add nodes around the centres to a linear index and to indexes with 0, 4 and 8 probes
+		int[] numProbesList = { 0, 4, 8 };
+		LinearNodeIndex linearIndex = new LinearNodeIndex(16);
+		LSHNodeIndex[] lshIndexes = new LSHNodeIndex[numProbesList.length];
+		for (int l = 0; l < lshIndexes.length; l++) {
+			lshIndexes[l] = new LSHNodeIndex(16, 8, 4, 0.5, numProbesList[l], 16);
+			assertEquals("seed", 16, lshIndexes[l].getSeed());
+		}
+		LSHNodeIndex lshIndexSameSeed = new LSHNodeIndex(16, 8, 4, 0.5, 8, 16);
+		for (int n = 0; n < 2000; n++) {
+			double[] pattern = createPattern(random, 16, 0.0, 0.1);
+			for (int i = 0; i < 16; i++) {
+				pattern[i] += centres[n % centres.length][i];
+			}
+			Node node = new Node(n + 1, pattern);
+			linearIndex.add(node);
+			for (LSHNodeIndex lshIndex : lshIndexes) {
+				lshIndex.add(node);
+			}
+			lshIndexSameSeed.add(node);
+		}
+
+		// compare nearest nodes with linear scan
+		int[] numFound = new int[lshIndexes.length];
+		Node[] nodesExpected = new Node[1];
+		double[] distancesExpected = new double[1];
+		Node[] nodes = new Node[1];
+		double[] distances = new double[1];
+		Node[] nodesSameSeed = new Node[1];
+		double[] distancesSameSeed = new double[1];
+		for (int q = 0; q < 200; q++) {
+			double[] pattern = createPattern(random, 16, 0.0, 0.1);
+			for (int i = 0; i < 16; i++) {
+				pattern[i] += centres[q % centres.length][i];
+			}
+			linearIndex.findNearest(pattern, nodesExpected, distancesExpected);
+			for (int l = 0; l < lshIndexes.length; l++) {
+				lshIndexes[l].findNearest(pattern, nodes, distances);
+				if (nodes[0] == nodesExpected[0]) {
+					assertEquals("distance", distancesExpected[0], distances[0], 0.0);
+					numFound[l]++;
+				} else {
+					assertTrue("distance of approximate node", distances[0] >= distancesExpected[0]);
+				}
+			}
+
+			// same seed gives same result
+			lshIndexSameSeed.findNearest(pattern, nodesSameSeed, distancesSameSeed);
+			assertSame("same seed", nodes[0], nodesSameSeed[0]);
+		}
+
+		// recall increases with the number of probes
+		assertTrue("recall without probes", numFound[0] < numFound[1]);
+		assertTrue("recall with 4 probes", numFound[1] <= numFound[2]);
+		assertTrue("recall with 8 probes", numFound[2] >= 180);
+
+	}
+
+	@Test
+	public void testInputBatch() {
+
+		// create empty topologies
+		SOINNM soinnmSequential = new SOINNM(3);
+		SOINNM soinnmBatch = new SOINNM(3);
+		soinnmSequential.setLambda(50);
+		soinnmBatch.setLambda(50);
+
+		// create random patterns labelled by their centre
+		double[][] patterns = createPatterns(new Random(1), 3000, 3);
+		String[] labels = new String[patterns.length];
+		for (int n = 0; n < patterns.length; n++) {
+			labels[n] = String.valueOf(n % 3);
+		}
+
+		// collect events
+		final TopologyEvents eventsSequential = new TopologyEvents();
+		soinnmSequential.addTopologyListener(new TopologyListener() {
+			@Override
+			public void topologyChanged(SOINNM soinnm, TopologyEvents events) {
+				eventsSequential.addAll(events);
+			}
+		});
+		final TopologyEvents eventsBatch = new TopologyEvents();
+		final int[] numNotifications = new int[1];
+		soinnmBatch.addTopologyListener(new TopologyListener() {
+			@Override
+			public void topologyChanged(SOINNM soinnm, TopologyEvents events) {
+				eventsBatch.addAll(events);
+				numNotifications[0]++;
+			}
+		});
+
+		// input patterns one after another and as batch
+		for (int n = 0; n < patterns.length; n++) {
+			soinnmSequential.input(patterns[n], labels[n]);
+		}
+		soinnmBatch.inputBatch(patterns, labels);
+
+		// compare topologies
+		assertTopologiesEqual(soinnmSequential, soinnmBatch);
+
+		// compare events (notified once per chunk)
+		assertTrue("notifications", numNotifications[0] > 1);
+		assertEquals("number of events", eventsSequential.getNumEvents(), eventsBatch.getNumEvents());
+		for (int e = 0; e < eventsSequential.getNumEvents(); e++) {
+			assertEquals("event type", eventsSequential.getType(e), eventsBatch.getType(e));
+			assertEquals("event id A", eventsSequential.getIdA(e), eventsBatch.getIdA(e));
+			assertEquals("event id B", eventsSequential.getIdB(e), eventsBatch.getIdB(e));
+		}
+
+	}
+
+	@Test
+	public void testAdjacency() {
+
+		// create topology with clean up
+		SOINNM soinnm = new SOINNM(2);
+		soinnm.setLambda(50);
+		soinnm.setAgeDead(20);
+		soinnm.setNodeNumSignalsMinRemoval(true);
+		soinnm.setReduceErrorInsertion(true);
+
+		// input random patterns (edges are added and removed)
+		double[][] patterns = createPatterns(new Random(9), 3000, 2);
+		for (int n = 1; n <= patterns.length; n++) {
+			soinnm.input(patterns[n - 1]);
+
+			// compare adjacency of nodes with edge set
+			if (n % 100 == 0) {
+				int numEdgesOfNodes = 0;
+				for (Node node : soinnm.getNodeSet()) {
+					for (Edge edge : node.getEdges()) {
+						assertTrue("edge in edge set", soinnm.getEdgeSet().contains(edge));
+						assertTrue("edge of node", edge.getNodeA() == node || edge.getNodeB() == node);
+						Node neighbour = (edge.getNodeA() == node) ? edge.getNodeB() : edge.getNodeA();
+						assertSame("edge by neighbour", edge, node.getEdge(neighbour));
+						assertTrue("neighbour", node.getNeighbours().contains(neighbour));
+					}
+					assertEquals("number of neighbours", node.getEdges().size(), node.getNumNeighbours());
+					numEdgesOfNodes += node.getNumNeighbours();
+				}
+				for (Edge edge : soinnm.getEdgeSet()) {
+					assertSame("edge of node A", edge, edge.getNodeA().getEdge(edge.getNodeB()));
+					assertSame("edge of node B", edge, edge.getNodeB().getEdge(edge.getNodeA()));
+				}
+				assertEquals("number of edges", 2 * soinnm.getEdgeSet().size(), numEdgesOfNodes);
+			}
+		}
+
+	}
+
+	@Test
+	public void testClusterSplit() {
+
+		// create topology with clean up
+		SOINNM soinnm = new SOINNM(2);
+		soinnm.setLambda(50);
+		soinnm.setAgeDead(20);
+		soinnm.setNodeNumSignalsMinRemoval(true);
+
+		// input random patterns (clusters are split and joined)
+		double[][] patterns = createPatterns(new Random(10), 3000, 2);
+		for (int n = 1; n <= patterns.length; n++) {
+			soinnm.input(patterns[n - 1]);
+
+			// compare clusters with connected nodes
+			if (n % 100 == 0) {
+				int numNodesOfClusters = 0;
+				for (Cluster cluster : soinnm.getClusterSet()) {
+					Node nodeFirst = cluster.getNodes().iterator().next();
+					HashSet<Node> connectedNodes = new HashSet<Node>();
+					ArrayDeque<Node> queue = new ArrayDeque<Node>();
+					connectedNodes.add(nodeFirst);
+					queue.add(nodeFirst);
+					while (!queue.isEmpty()) {
+						for (Node neighbour : queue.poll().getNeighbours()) {
+							if (connectedNodes.add(neighbour)) {
+								queue.add(neighbour);
+							}
+						}
+					}
+					assertEquals("connected nodes", connectedNodes, cluster.getNodes());
+					for (Node node : cluster.getNodes()) {
+						assertSame("cluster of node", cluster, node.getCluster());
+					}
+					numNodesOfClusters += cluster.getNodes().size();
+				}
+				assertEquals("number of nodes", soinnm.getNodeSet().size(), numNodesOfClusters);
+			}
+		}
+
+	}
+
+	@Test
+	public void testClusterJoining() {
+
+		// create topology with clean up and unlimited joining
+		SOINNM soinnm = new SOINNM(2);
+		soinnm.setLambda(50);
+		soinnm.setAgeDead(20);
+		soinnm.setNodeNumSignalsMinRemoval(true);
+		soinnm.setUseAbsoluteJoinTolerance(true);
+		soinnm.setJoinToleranceAbsolute(0.03);
+		soinnm.setJoiningIterationsMax(Integer.MAX_VALUE);
+		double distanceJoin = Math.sqrt(0.03 * 0.03 * 2);
+
+		// count joined clusters
+		final int[] numClustersJoined = new int[1];
+		soinnm.addTopologyListener(new TopologyListener() {
+			@Override
+			public void topologyChanged(SOINNM soinnm, TopologyEvents events) {
+				for (int e = 0; e < events.getNumEvents(); e++) {
+					if (events.getType(e) == TopologyEvents.TYPE.CLUSTER_JOINED) {
+						numClustersJoined[0]++;
+					}
+				}
+			}
+		});
+
+		// input random patterns
+		double[][] patterns = createPatterns(new Random(13), 3000, 2);
+		for (int n = 1; n <= patterns.length; n++) {
+			soinnm.input(patterns[n - 1]);
+
+			// no nodes of different clusters closer than the join distance after clean up
+			if (n % 50 == 0) {
+				for (Node nodeA : soinnm.getNodeSet()) {
+					for (Node nodeB : soinnm.getNodeSet()) {
+						if (nodeA.getCluster() != nodeB.getCluster()) {
+							double[] patternA = nodeA.getPattern();
+							double[] patternB = nodeB.getPattern();
+							double dx = patternA[0] - patternB[0];
+							double dy = patternA[1] - patternB[1];
+							assertTrue("nodes of different clusters", Math.sqrt(dx * dx + dy * dy) >= distanceJoin - 1e-12);
+						}
+					}
+				}
+			}
+		}
+		assertTrue("clusters joined", numClustersJoined[0] > 0);
+
+	}
+
+	@Test
+	public void testCleanUp() {
+
+		// create empty topology
+		SOINNM soinnm = new SOINNM(2);
+		soinnm.setLambda(100);
+		soinnm.setNodeNumSignalsMinRemoval(true);
+		soinnm.setReduceErrorInsertion(true);
+
+		// input random patterns
+		double[][] patterns = createPatterns(new Random(2), 3000, 2);
+		for (int n = 1; n <= patterns.length; n++) {
+			soinnm.input(patterns[n - 1]);
+
+			// no isolated nodes after clean up
+			if (n % 100 == 0) {
+				for (Node node : soinnm.getNodeSet()) {
+					assertTrue("isolated node", node.getNumNeighbours() > 0);
+				}
+			}
+		}
+
+	}
+
+	@Test
+	public void testThresholdCache() {
+
+		// create empty topology with removal of nodes and edges
+		SOINNM soinnm = new SOINNM(2);
+		soinnm.setLambda(100);
+		soinnm.setAgeDead(50);
+		soinnm.setEdgeMaxRemoval(true);
+		soinnm.setNodeNumSignalsMinRemoval(true);
+		soinnm.setReduceErrorInsertion(true);
+		soinnm.setMinimumThreshold(0.01);
+
+		// input random patterns
+		for (double[] pattern : createPatterns(new Random(3), 3000, 2)) {
+
+			// determine nearest nodes and recompute their thresholds
+			Node nodeS1 = null;
+			Node nodeS2 = null;
+			for (Node node : soinnm.getNodeSet()) {
+				if (nodeS1 == null || distance(pattern, node.getPattern()) < distance(pattern, nodeS1.getPattern())) {
+					nodeS2 = nodeS1;
+					nodeS1 = node;
+				} else if (nodeS2 == null || distance(pattern, node.getPattern()) < distance(pattern, nodeS2.getPattern())) {
+					nodeS2 = node;
+				}
+			}
+			double thresholdS1 = (nodeS2 != null) ? computeThreshold(soinnm, nodeS1) : 0.0;
+			double thresholdS2 = (nodeS2 != null) ? computeThreshold(soinnm, nodeS2) : 0.0;
+
+			soinnm.input(pattern);
+
+			// cached thresholds equal recomputed thresholds
+			if (nodeS2 != null && soinnm.getNodeSet().contains(nodeS1)) {
+				assertEquals("threshold of s1", thresholdS1, nodeS1.getThreshold(), 1e-12);
+			}
+			if (nodeS2 != null && soinnm.getNodeSet().contains(nodeS2)) {
+				assertEquals("threshold of s2", thresholdS2, nodeS2.getThreshold(), 1e-12);
+			}
+		}
+
+	}
+
+	@Test
+	public void testPatternPrecision() {
+
+		// create empty topology with byte precision
+		SOINNM soinnm = new SOINNM(4);
+		soinnm.setPatternPrecision(Node.PRECISION.BYTE, new Quantization(4, 0.0, 1.0));
+
+		// input random patterns around two centres
+		Random random = new Random(1);
+		double[] pattern = new double[4];
+		for (int n = 0; n < 1000; n++) {
+			double centre = (n % 2 == 0) ? 0.25 : 0.75;
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] = centre + random.nextGaussian() * 0.05;
+			}
+			soinnm.input(pattern);
+		}
+
+		// check that patterns are stored as codes within the range
+		assertNotSame("number of nodes", 0, soinnm.getNodeSet().size());
+		double[] patternBuffer = new double[4];
+		for (Node node : soinnm.getNodeSet()) {
+			assertEquals("precision", Node.PRECISION.BYTE, node.getPrecision());
+			for (double value : node.getPattern()) {
+				assertTrue("range", value >= 0.0 && value <= 1.0);
+				assertEquals("code", Math.round(value * 255), value * 255, 1e-9);
+			}
+
+			// decoded into a buffer and component-wise
+			assertSame("buffer", patternBuffer, node.getPattern(patternBuffer));
+			assertArrayEquals("decoded pattern", node.getPattern(), patternBuffer, 0.0);
+			assertEquals("pattern length", 4, node.getPatternLength());
+			for (int i = 0; i < 4; i++) {
+				assertEquals("pattern value", node.getPattern()[i], node.getPatternValue(i), 0.0);
+			}
+		}
+
+		// compare with linear scan
+		soinnm.setNodeIndex(new KDTreeNodeIndex(4));
+		assertNearestNodes(soinnm, random);
+
+		// check that stochastic rounding is unbiased
+		Quantization quantization = new Quantization(1, 0.0, 1.0);
+		double sum = 0.0;
+		for (int n = 0; n < 10000; n++) {
+			sum += quantization.decode(0, quantization.encode(0, 0.1234, random));
+		}
+		assertEquals("mean of stochastic rounding", 0.1234, sum / 10000, 0.0005);
+
+	}
+
+	@Test
+	public void testSnapshot() {
+
+		// create empty topology publishing snapshots
+		SOINNM soinnm = new SOINNM(2);
+		soinnm.setPublishSnapshots(true);
+
+		// input random patterns around two centres
+		Random random = new Random(3);
+		TopologySnapshot snapshotOld = null;
+		double[] meanOld = null;
+		int numNodesOld = 0;
+		for (int n = 0; n < 2000; n++) {
+			double centre = (n % 2) * 0.5;
+			double[] pattern = { centre + random.nextGaussian() * 0.05, centre + random.nextGaussian() * 0.05 };
+			soinnm.input(pattern);
+
+			// check that snapshot reflects topology
+			TopologySnapshot snapshot = soinnm.getSnapshot();
+			if (snapshotOld != null) {
+				assertTrue("version", snapshot.getVersion() > snapshotOld.getVersion());
+			}
+			assertEquals("number of nodes", soinnm.getNodeSet().size(), snapshot.getNodes().size());
+			assertEquals("number of edges", soinnm.getEdgeSet().size(), snapshot.getNumEdges());
+			assertEquals("number of clusters", soinnm.getClusterSet().size(), snapshot.getClusters().size());
+			Iterator<Cluster> itClusters = soinnm.getClusterSet().iterator();
+			for (ClusterSnapshot clusterSnapshot : snapshot.getClusters()) {
+				Cluster cluster = itClusters.next();
+				assertEquals("cluster id", cluster.getId(), clusterSnapshot.getId());
+				assertEquals("cluster size", cluster.getNodes().size(), clusterSnapshot.getNumNodes());
+				assertArrayEquals("cluster mean", cluster.getMean(), clusterSnapshot.getMean(), 0.0);
+			}
+
+			// check that old snapshot has not changed
+			if (snapshotOld != null && snapshotOld.getClusters().size() > 0) {
+				ClusterSnapshot clusterSnapshot = snapshotOld.getClusters().get(0);
+				assertEquals("old cluster size", numNodesOld, clusterSnapshot.getNumNodes());
+				assertArrayEquals("old cluster mean", meanOld, clusterSnapshot.getMean(), 0.0);
+			}
+			snapshotOld = snapshot;
+			if (snapshot.getClusters().size() > 0) {
+				numNodesOld = snapshot.getClusters().get(0).getNumNodes();
+				meanOld = snapshot.getClusters().get(0).getMean().clone();
+			}
+		}
+
+		// publish only on request
+		soinnm.setPublishSnapshotsOnInput(false);
+		for (int n = 0; n < 100; n++) {
+			double centre = (n % 2) * 0.5;
+			double[] pattern = { centre + random.nextGaussian() * 0.05, centre + random.nextGaussian() * 0.05 };
+			soinnm.input(pattern);
+			assertSame("snapshot", snapshotOld, soinnm.getSnapshot());
+		}
+		soinnm.publishSnapshot();
+		TopologySnapshot snapshot = soinnm.getSnapshot();
+		assertEquals("version", snapshotOld.getVersion() + 1, snapshot.getVersion());
+		assertEquals("number of nodes", soinnm.getNodeSet().size(), snapshot.getNodes().size());
+		Iterator<Node> itNodes = soinnm.getNodeSet().iterator();
+		for (NodeSnapshot nodeSnapshot : snapshot.getNodes()) {
+			Node node = itNodes.next();
+			assertEquals("node id", node.getId(), nodeSnapshot.getId());
+			assertArrayEquals("node pattern", node.getPattern(), nodeSnapshot.getPattern(), 0.0);
+		}
+
+	}
+
+	@Test
+	public void testTopologyListener() {
+
+		// create empty topology with clean up
+		SOINNM soinnm = new SOINNM(2);
+		soinnm.setLambda(100);
+		soinnm.setNodeNumSignalsMinRemoval(true);
+
+		// track cluster ids by events
+		final HashSet<Long> clusterIds = new HashSet<Long>();
+		final int[] numEdgesRemoved = new int[1];
+		soinnm.addTopologyListener(new TopologyListener() {
+			@Override
+			public void topologyChanged(SOINNM soinnm, TopologyEvents events) {
+				for (int e = 0; e < events.getNumEvents(); e++) {
+					switch (events.getType(e)) {
+					case NODE_ADDED:
+						assertTrue("new cluster", clusterIds.add(events.getIdB(e)));
+						break;
+					case CLUSTER_SPLIT:
+						assertTrue("kept cluster", clusterIds.contains(events.getIdA(e)));
+						assertTrue("new cluster", clusterIds.add(events.getIdB(e)));
+						break;
+					case CLUSTER_JOINED:
+						assertTrue("kept cluster", clusterIds.contains(events.getIdA(e)));
+						assertTrue("removed cluster", clusterIds.contains(events.getIdB(e)));
+						break;
+					case CLUSTER_REMOVED:
+						assertTrue("removed cluster", clusterIds.remove(events.getIdA(e)));
+						break;
+					case EDGE_REMOVED:
+						numEdgesRemoved[0]++;
+						break;
+					}
+				}
+			}
+		});
+
+		// input random patterns
+		for (double[] pattern : createPatterns(new Random(4), 3000, 2)) {
+			soinnm.input(pattern);
+		}
+
+		// check that events match clusters
+		assertEquals("number of clusters", soinnm.getClusterSet().size(), clusterIds.size());
+		for (Cluster cluster : soinnm.getClusterSet()) {
+			assertTrue("cluster id", clusterIds.contains(cluster.getId()));
+		}
+		assertTrue("edges removed", numEdgesRemoved[0] > 0);
+
+	}
+
+	@Test
+	public void testBinaryFile() throws Exception {
+
+		// create topology with labels
+		SOINNM soinnm = new SOINNM(3);
+		soinnm.setLambda(100);
+		Random random = new Random(5);
+		for (int n = 0; n < 1000; n++) {
+			double centre = (n % 2) * 0.5;
+			double[] pattern = { centre + random.nextGaussian() * 0.05, centre + random.nextGaussian() * 0.05, random.nextDouble() };
+			soinnm.input(pattern, (n % 2 == 0) ? "A" : null);
+		}
+
+		// write and read again
+		File file = File.createTempFile("soinnm", ".bin");
+		file.deleteOnExit();
+		new BinaryWriter().writeToFile(soinnm, file.getAbsolutePath());
+		SOINNM soinnmRead = new SOINNM(3);
+		assertTrue("read", new BinaryReader().readFromFile(file.getAbsolutePath(), soinnmRead));
+
+		// check nodes
+		assertEquals("number of nodes", soinnm.getNodeSet().size(), soinnmRead.getNodeSet().size());
+		Iterator<Node> itNodes = soinnmRead.getNodeSet().iterator();
+		for (Node node : soinnm.getNodeSet()) {
+			Node nodeRead = itNodes.next();
+			assertEquals("node id", node.getId(), nodeRead.getId());
+			assertArrayEquals("pattern", node.getPattern(), nodeRead.getPattern(), 0.0);
+			assertEquals("threshold", node.getThreshold(), nodeRead.getThreshold(), 0.0);
+			assertEquals("error", node.getError(), nodeRead.getError(), 0.0);
+			assertEquals("number of signals", node.getNumSignals(), nodeRead.getNumSignals());
+			assertEquals("label", node.getLabel(), nodeRead.getLabel());
+		}
+
+		// check edges
+		assertEquals("number of edges", soinnm.getEdgeSet().size(), soinnmRead.getEdgeSet().size());
+		Iterator<Edge> itEdges = soinnmRead.getEdgeSet().iterator();
+		for (Edge edge : soinnm.getEdgeSet()) {
+			Edge edgeRead = itEdges.next();
+			assertEquals("edge id", edge.getId(), edgeRead.getId());
+			assertEquals("age", edge.getAge(), edgeRead.getAge());
+			assertEquals("node A", edge.getNodeA().getId(), edgeRead.getNodeA().getId());
+			assertEquals("node B", edge.getNodeB().getId(), edgeRead.getNodeB().getId());
+		}
+
+		// check clusters
+		assertEquals("number of clusters", soinnm.getClusterSet().size(), soinnmRead.getClusterSet().size());
+		Iterator<Cluster> itClusters = soinnmRead.getClusterSet().iterator();
+		for (Cluster cluster : soinnm.getClusterSet()) {
+			Cluster clusterRead = itClusters.next();
+			assertEquals("cluster id", cluster.getId(), clusterRead.getId());
+			assertEquals("cluster size", cluster.getNodes().size(), clusterRead.getNodes().size());
+			assertSame("cluster of node", clusterRead, clusterRead.getNodes().iterator().next().getCluster());
+		}
+
+		// check variables
+		assertEquals("next node id", soinnm.getNextNodeId(), soinnmRead.getNextNodeId());
+		assertEquals("next edge id", soinnm.getNextEdgeId(), soinnmRead.getNextEdgeId());
+		assertEquals("next cluster id", soinnm.getNextClusterId(), soinnmRead.getNextClusterId());
+		assertEquals("number of inputs", soinnm.getNumInputs(), soinnmRead.getNumInputs());
+		assertEquals("lambda", soinnm.getLambda(), soinnmRead.getLambda());
+
+		// check access without loading
+		BinaryTopologyFile topologyFile = BinaryTopologyFile.open(file.getAbsolutePath());
+		Node nodeLast = null;
+		for (Node node : soinnm.getNodeSet()) {
+			nodeLast = node;
+		}
+		int indexLast = topologyFile.getNumNodes() - 1;
+		assertEquals("node id", nodeLast.getId(), topologyFile.getNodeId(indexLast));
+		assertArrayEquals("pattern", nodeLast.getPattern(), topologyFile.getPattern(indexLast), 0.0);
+		topologyFile.close();
+
+		// insert again with new ids
+		assertTrue("insert", new BinaryReader().insertFromFile(file.getAbsolutePath(), soinnmRead));
+		assertEquals("number of nodes", 2 * soinnm.getNodeSet().size(), soinnmRead.getNodeSet().size());
+		assertEquals("number of edges", 2 * soinnm.getEdgeSet().size(), soinnmRead.getEdgeSet().size());
+		assertEquals("number of clusters", 2 * soinnm.getClusterSet().size(), soinnmRead.getClusterSet().size());
+		assertEquals("next node id", soinnm.getNextNodeId() + soinnm.getNodeSet().size(), soinnmRead.getNextNodeId());
+		for (Edge edge : soinnmRead.getEdgeSet()) {
+			assertTrue("edge nodes", soinnmRead.getNodeSet().contains(edge.getNodeA()) && soinnmRead.getNodeSet().contains(edge.getNodeB()));
+		}
+
+		// corrupt node index of last edge
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		randomAccessFile.seek(80);
+		long edgeTableOffset = randomAccessFile.readLong();
+		randomAccessFile.seek(edgeTableOffset + (soinnm.getEdgeSet().size() - 1) * 24 + 16);
+		randomAccessFile.writeInt(Integer.MAX_VALUE);
+		randomAccessFile.close();
+
+		// failed reading does not change topology
+		int numNodes = soinnmRead.getNodeSet().size();
+		Node nodeFirst = soinnmRead.getNodeSet().iterator().next();
+		soinnmRead.setLambda(7);
+		assertFalse("read corrupt file", new BinaryReader().readFromFile(file.getAbsolutePath(), soinnmRead));
+		assertFalse("insert corrupt file", new BinaryReader().insertFromFile(file.getAbsolutePath(), soinnmRead));
+		assertEquals("number of nodes", numNodes, soinnmRead.getNodeSet().size());
+		assertSame("first node", nodeFirst, soinnmRead.getNodeSet().iterator().next());
+		assertEquals("lambda", 7, soinnmRead.getLambda());
+
+	}
+
+	@Test
+	public void testXMLFile() throws Exception {
+
+		// create topology
+		SOINNM soinnm = new SOINNM(3);
+		soinnm.setLambda(100);
+		Random random = new Random(6);
+		for (int n = 0; n < 1000; n++) {
+			double centre = (n % 2) * 0.5;
+			double[] pattern = { centre + random.nextGaussian() * 0.05, -centre + random.nextGaussian() * 0.05, random.nextDouble() * 1000 };
+			soinnm.input(pattern);
+		}
+
+		// write and read again
+		File file = File.createTempFile("soinnm", ".xml");
+		file.deleteOnExit();
+		new XMLWriter().writeToFile(soinnm, file.getAbsolutePath());
+		SOINNM soinnmRead = new SOINNM(3);
+		new XMLReader().readFromFile(file.getAbsolutePath(), soinnmRead);
+
+		// check nodes (values are written with six decimal places)
+		assertEquals("number of nodes", soinnm.getNodeSet().size(), soinnmRead.getNodeSet().size());
+		Iterator<Node> itNodes = soinnmRead.getNodeSet().iterator();
+		for (Node node : soinnm.getNodeSet()) {
+			Node nodeRead = itNodes.next();
+			assertEquals("node id", node.getId(), nodeRead.getId());
+			assertArrayEquals("pattern", node.getPattern(), nodeRead.getPattern(), 0.5e-6);
+			assertEquals("number of signals", node.getNumSignals(), nodeRead.getNumSignals());
+		}
+
+		// check edges and clusters
+		assertEquals("number of edges", soinnm.getEdgeSet().size(), soinnmRead.getEdgeSet().size());
+		Iterator<Edge> itEdges = soinnmRead.getEdgeSet().iterator();
+		for (Edge edge : soinnm.getEdgeSet()) {
+			Edge edgeRead = itEdges.next();
+			assertEquals("node A", edge.getNodeA().getId(), edgeRead.getNodeA().getId());
+			assertEquals("node B", edge.getNodeB().getId(), edgeRead.getNodeB().getId());
+		}
+		assertEquals("number of clusters", soinnm.getClusterSet().size(), soinnmRead.getClusterSet().size());
+		assertEquals("next node id", soinnm.getNextNodeId(), soinnmRead.getNextNodeId());
+
+		// insert again with new ids
+		assertTrue("insert", new XMLReader().insertFromFile(file.getAbsolutePath(), soinnmRead));
+		assertEquals("number of nodes", 2 * soinnm.getNodeSet().size(), soinnmRead.getNodeSet().size());
+		assertEquals("number of edges", 2 * soinnm.getEdgeSet().size(), soinnmRead.getEdgeSet().size());
+		assertEquals("number of clusters", 2 * soinnm.getClusterSet().size(), soinnmRead.getClusterSet().size());
+		for (Edge edge : soinnmRead.getEdgeSet()) {
+			assertTrue("edge nodes", soinnmRead.getNodeSet().contains(edge.getNodeA()) && soinnmRead.getNodeSet().contains(edge.getNodeB()));
+		}
+
+	}
+
+	@Test
+	public void testJournal() throws Exception {
+
+		// create journal in empty directory
+		File directory = File.createTempFile("soinnm", "");
+		directory.delete();
+		directory.mkdir();
+		String basename = new File(directory, "topology").getAbsolutePath();
+		SOINNM soinnm = new SOINNM(3);
+		Journal journal = Journal.open(basename, soinnm);
+		assertNotNull("journal", journal);
+		journal.setCommitInputs(7);
+		journal.setForceWrites(false);
+		journal.setCompactionSizeMin(100000);
+
+		// input patterns with labels (single inputs and batches)
+		soinnm.setLambda(50);
+		journal.compact();
+		Random random = new Random(6);
+		for (int n = 0; n < 3000; n++) {
+			double centre = (n % 3) * 0.4;
+			double[] pattern = { centre + random.nextGaussian() * 0.05, centre + random.nextGaussian() * 0.05, random.nextDouble() };
+			if (n % 100 < 50) {
+				soinnm.input(pattern, (n % 2 == 0) ? "A" : null);
+			} else {
+				soinnm.inputBatch(new double[][] { pattern }, null);
+			}
+		}
+		assertTrue("compacted", journal.getGeneration() > 2);
+
+		// commit and keep expected topology
+		journal.commit();
+		File file = new File(directory, "expected.bin");
+		new BinaryWriter().writeToFile(soinnm, file.getAbsolutePath());
+		SOINNM soinnmExpected = new SOINNM(3);
+		new BinaryReader().readFromFile(file.getAbsolutePath(), soinnmExpected);
+		file.delete();
+
+		// simulate crash with an uncommitted input and an incomplete group
+		soinnm.input(new double[] { 0.9, 0.9, 0.9 });
+		String journalFilename = basename + "." + journal.getGeneration() + ".journal";
+		RandomAccessFile journalFile = new RandomAccessFile(journalFilename, "rw");
+		long journalLength = journalFile.length();
+		journalFile.seek(journalLength);
+		journalFile.write(new byte[] { 1, 0, 0, 0 });
+		journalFile.close();
+
+		// recover
+		SOINNM soinnmRecovered = new SOINNM(3);
+		Journal journalRecovered = Journal.open(basename, soinnmRecovered);
+		assertNotNull("journal", journalRecovered);
+		assertEquals("incomplete group discarded", journalLength, new File(journalFilename).length());
+
+		// check nodes
+		assertEquals("number of nodes", soinnmExpected.getNodeSet().size(), soinnmRecovered.getNodeSet().size());
+		Iterator<Node> itNodes = soinnmRecovered.getNodeSet().iterator();
+		for (Node node : soinnmExpected.getNodeSet()) {
+			Node nodeRecovered = itNodes.next();
+			assertEquals("node id", node.getId(), nodeRecovered.getId());
+			assertArrayEquals("pattern", node.getPattern(), nodeRecovered.getPattern(), 0.0);
+			assertEquals("threshold", node.getThreshold(), nodeRecovered.getThreshold(), 0.0);
+			assertEquals("error", node.getError(), nodeRecovered.getError(), 0.0);
+			assertEquals("number of signals", node.getNumSignals(), nodeRecovered.getNumSignals());
+			assertEquals("label", node.getLabel(), nodeRecovered.getLabel());
+			assertEquals("cluster id", node.getCluster().getId(), nodeRecovered.getCluster().getId());
+		}
+
+		// check edges
+		assertEquals("number of edges", soinnmExpected.getEdgeSet().size(), soinnmRecovered.getEdgeSet().size());
+		Iterator<Edge> itEdges = soinnmRecovered.getEdgeSet().iterator();
+		for (Edge edge : soinnmExpected.getEdgeSet()) {
+			Edge edgeRecovered = itEdges.next();
+			assertEquals("edge id", edge.getId(), edgeRecovered.getId());
+			assertEquals("age", edge.getAge(), edgeRecovered.getAge());
+			assertEquals("node A", edge.getNodeA().getId(), edgeRecovered.getNodeA().getId());
+			assertEquals("node B", edge.getNodeB().getId(), edgeRecovered.getNodeB().getId());
+		}
+
+		// check clusters and variables
+		assertEquals("number of clusters", soinnmExpected.getClusterSet().size(), soinnmRecovered.getClusterSet().size());
+		assertEquals("next node id", soinnmExpected.getNextNodeId(), soinnmRecovered.getNextNodeId());
+		assertEquals("next edge id", soinnmExpected.getNextEdgeId(), soinnmRecovered.getNextEdgeId());
+		assertEquals("next cluster id", soinnmExpected.getNextClusterId(), soinnmRecovered.getNextClusterId());
+		assertEquals("number of inputs", soinnmExpected.getNumInputs(), soinnmRecovered.getNumInputs());
+		assertEquals("lambda", 50, soinnmRecovered.getLambda());
+
+		// continue journal after recovery
+		soinnmRecovered.input(new double[] { 0.9, 0.9, 0.9 });
+		journalRecovered.close();
+		SOINNM soinnmReopened = new SOINNM(3);
+		Journal.open(basename, soinnmReopened).close();
+		assertEquals("number of nodes", soinnmRecovered.getNodeSet().size(), soinnmReopened.getNodeSet().size());
+		assertEquals("number of inputs", soinnmRecovered.getNumInputs(), soinnmReopened.getNumInputs());
+
+		// damaged variables of commit record discard the group
+		journalFile = new RandomAccessFile(journalFilename, "rw");
+		journalFile.seek(journalFile.length() - 33);
+		journalFile.write(0x7F);
+		journalFile.close();
+		soinnmReopened = new SOINNM(3);
+		Journal.open(basename, soinnmReopened).close();
+		assertEquals("number of inputs", soinnmExpected.getNumInputs(), soinnmReopened.getNumInputs());
+		assertEquals("next node id", soinnmExpected.getNextNodeId(), soinnmReopened.getNextNodeId());
+
+		// delete files
+		for (File journalFileOld : directory.listFiles()) {
+			journalFileOld.delete();
+		}
+		directory.delete();
+
+	}
+
+	@Test
+	public void testJournalBackground() throws Exception {
+
+		// create journal writing snapshots in the background
+		File directory = File.createTempFile("soinnm", "");
+		directory.delete();
+		directory.mkdir();
+		String basename = new File(directory, "topology").getAbsolutePath();
+		SOINNM soinnm = new SOINNM(3);
+		soinnm.setLambda(50);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Journal journal = Journal.open(basename, soinnm, executor);
+		assertNotNull("journal", journal);
+		assertTrue("snapshot", journal.waitForSnapshot());
+		journal.setCommitInputs(7);
+		journal.setForceWrites(false);
+		journal.setCompactionSizeMin(10000);
+
+		// block writing of snapshots
+		final CountDownLatch latch = new CountDownLatch(1);
+		executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+
+		// input patterns (new journals continue the previous ones)
+		Random random = new Random(7);
+		for (int n = 0; n < 2000; n++) {
+			double centre = (n % 3) * 0.4;
+			double[] pattern = { centre + random.nextGaussian() * 0.05, centre + random.nextGaussian() * 0.05, random.nextDouble() };
+			soinnm.input(pattern);
+			if (n == 1000) {
+				assertTrue("compacted", journal.compact());
+			}
+		}
+		journal.commit();
+		long generation = journal.getGeneration();
+		assertTrue("generation", generation >= 3);
+		assertFalse("snapshot written", new File(basename + "." + generation + ".bin").exists());
+
+		// keep expected topology
+		File file = new File(directory, "expected.bin");
+		new BinaryWriter().writeToFile(soinnm, file.getAbsolutePath());
+		SOINNM soinnmExpected = new SOINNM(3);
+		new BinaryReader().readFromFile(file.getAbsolutePath(), soinnmExpected);
+		file.delete();
+
+		// recover before snapshots have been written
+		SOINNM soinnmRecovered = new SOINNM(3);
+		Journal journalRecovered = Journal.open(basename, soinnmRecovered);
+		assertNotNull("journal", journalRecovered);
+		assertEquals("generation", generation, journalRecovered.getGeneration());
+		assertJournalRecovered(soinnmExpected, soinnmRecovered);
+		journalRecovered.close();
+
+		// write snapshots (older generations are deleted)
+		latch.countDown();
+		assertTrue("snapshot", journal.waitForSnapshot());
+		journal.close();
+		executor.shutdown();
+		assertTrue("snapshot written", new File(basename + "." + generation + ".bin").exists());
+		assertFalse("old snapshot deleted", new File(basename + ".1.bin").exists());
+
+		// recover from snapshot without notifying replayed changes
+		SOINNM soinnmReopened = new SOINNM(3);
+		final int[] numNodesAdded = new int[1];
+		soinnmReopened.addTopologyListener(new TopologyListener() {
+			@Override
+			public void topologyChanged(SOINNM soinnm, TopologyEvents events) {
+				for (int e = 0; e < events.getNumEvents(); e++) {
+					if (events.getType(e) == TopologyEvents.TYPE.NODE_ADDED) {
+						numNodesAdded[0]++;
+					}
+				}
+			}
+		});
+		Journal journalReopened = Journal.open(basename, soinnmReopened);
+		assertJournalRecovered(soinnmExpected, soinnmReopened);
+		soinnmReopened.input(new double[] { 0.9, 0.9, 0.9 });
+		assertTrue("nodes added", numNodesAdded[0] <= 1);
+		journalReopened.close();
+
+		// delete files
+		for (File journalFile : directory.listFiles()) {
+			journalFile.delete();
+		}
+		directory.delete();
+
+	}
+
+	@Test
+	public void testCopy() throws Exception {
+
+		// create topology
+		SOINNM soinnm = new SOINNM(3);
+		soinnm.setLambda(100);
+		Random random = new Random(7);
+		for (int n = 0; n < 1000; n++) {
+			double centre = (n % 2) * 0.5;
+			double[] pattern = { centre + random.nextGaussian() * 0.05, centre + random.nextGaussian() * 0.05, random.nextDouble() };
+			soinnm.input(pattern, (n % 2 == 0) ? "A" : null);
+		}
+		File file = File.createTempFile("soinnm", ".bin");
+		file.deleteOnExit();
+		new BinaryWriter().writeToFile(soinnm, file.getAbsolutePath());
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		// copy and continue learning
+		SOINNM soinnmCopy = soinnm.copy();
+		for (int n = 0; n < 1000; n++) {
+			double[] pattern = { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+			soinnm.input(pattern);
+		}
+
+		// check that copy has not changed
+		new BinaryWriter().writeToFile(soinnmCopy, file.getAbsolutePath());
+		assertArrayEquals("copy", bytes, Files.readAllBytes(file.toPath()));
+		assertEquals("mean", 3, soinnmCopy.getClusterSet().iterator().next().getMean().length);
+
+		// replace topology with copy
+		soinnmCopy.rebuild();
+		soinnm.replaceWith(soinnmCopy);
+		new BinaryWriter().writeToFile(soinnm, file.getAbsolutePath());
+		assertArrayEquals("replaced", bytes, Files.readAllBytes(file.toPath()));
+		for (int n = 0; n < 100; n++) {
+			double[] pattern = { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+			soinnm.input(pattern);
+		}
+
+		// insert topology read from file
+		SOINNM soinnmRead = soinnm.createEmpty();
+		assertTrue("read", new BinaryReader().readFromFile(file.getAbsolutePath(), soinnmRead));
+		int numNodes = soinnm.getNodeSet().size();
+		long nextNodeId = soinnm.getNextNodeId();
+		soinnm.insert(soinnmRead);
+		assertEquals("number of nodes", numNodes + soinnmRead.getNodeSet().size(), soinnm.getNodeSet().size());
+		assertEquals("next node id", nextNodeId + soinnmRead.getNodeSet().size(), soinnm.getNextNodeId());
+		for (int n = 0; n < 100; n++) {
+			double[] pattern = { random.nextDouble(), random.nextDouble(), random.nextDouble() };
+			soinnm.input(pattern);
+		}
+
+	}
+
 	@Test
 	public void testClear() {
 
@@ -154,4 +1243,135 @@ public class SOINNMTest {
 
 	}
 
+	/**
+	 * Compares the nodes, edges and clusters of two topologies, which are
+	 * expected to be identical.
+	 */
+	private static void assertTopologiesEqual(SOINNM soinnmExpected, SOINNM soinnm) {
+		assertEquals("number of nodes", soinnmExpected.getNodeSet().size(), soinnm.getNodeSet().size());
+		assertEquals("number of edges", soinnmExpected.getEdgeSet().size(), soinnm.getEdgeSet().size());
+		assertEquals("number of clusters", soinnmExpected.getClusterSet().size(), soinnm.getClusterSet().size());
+		Iterator<Node> itNodes = soinnm.getNodeSet().iterator();
+		for (Node nodeExpected : soinnmExpected.getNodeSet()) {
+			Node node = itNodes.next();
+			assertEquals("node id", nodeExpected.getId(), node.getId());
+			assertArrayEquals("pattern", nodeExpected.getPattern(), node.getPattern(), 0.0);
+			assertEquals("threshold", nodeExpected.getThreshold(), node.getThreshold(), 0.0);
+			assertEquals("cluster id", nodeExpected.getCluster().getId(), node.getCluster().getId());
+		}
+	}
+
+	private static void assertJournalRecovered(SOINNM soinnmExpected, SOINNM soinnmRecovered) {
+		assertEquals("number of nodes", soinnmExpected.getNodeSet().size(), soinnmRecovered.getNodeSet().size());
+		Iterator<Node> itNodes = soinnmRecovered.getNodeSet().iterator();
+		for (Node node : soinnmExpected.getNodeSet()) {
+			Node nodeRecovered = itNodes.next();
+			assertEquals("node id", node.getId(), nodeRecovered.getId());
+			assertArrayEquals("pattern", node.getPattern(), nodeRecovered.getPattern(), 0.0);
+			assertEquals("number of signals", node.getNumSignals(), nodeRecovered.getNumSignals());
+		}
+		assertEquals("number of edges", soinnmExpected.getEdgeSet().size(), soinnmRecovered.getEdgeSet().size());
+		assertEquals("number of clusters", soinnmExpected.getClusterSet().size(), soinnmRecovered.getClusterSet().size());
+		assertEquals("next node id", soinnmExpected.getNextNodeId(), soinnmRecovered.getNextNodeId());
+		assertEquals("number of inputs", soinnmExpected.getNumInputs(), soinnmRecovered.getNumInputs());
+	}
+
+	/**
+	 * Creates random patterns around three centres (0.0, 0.4 and 0.8 in each
+	 * dimension), one centre after another.
+	 */
+	private static double[][] createPatterns(Random random, int numPatterns, int inputDim) {
+		double[][] patterns = new double[numPatterns][];
+		for (int n = 0; n < numPatterns; n++) {
+			patterns[n] = createPattern(random, inputDim, (n % 3) * 0.4, 0.1);
+		}
+		return patterns;
+	}
+
+	private static double[] createPattern(Random random, int inputDim, double centre, double deviation) {
+		double[] pattern = new double[inputDim];
+		for (int i = 0; i < inputDim; i++) {
+			pattern[i] = centre + random.nextGaussian() * deviation;
+		}
+		return pattern;
+	}
+
+	/**
+	 * Recomputes the threshold of a node from the distances to its neighbours,
+	 * or to all other nodes if it has none.
+	 */
+	private static double computeThreshold(SOINNM soinnm, Node node) {
+		double threshold;
+		if (node.getNumNeighbours() > 0) {
+			threshold = Double.MIN_VALUE;
+			for (Node neighbour : node.getNeighbours()) {
+				threshold = Math.max(threshold, distance(node.getPattern(), neighbour.getPattern()));
+			}
+		} else {
+			threshold = Double.MAX_VALUE;
+			for (Node other : soinnm.getNodeSet()) {
+				if (other != node) {
+					threshold = Math.min(threshold, distance(node.getPattern(), other.getPattern()));
+				}
+			}
+		}
+		return Math.max(threshold, soinnm.getMinimumThreshold());
+	}
+
+	private static double distance(double[] A, double[] B) {
+		double sum = 0.0;
+		for (int i = 0; i < A.length; i++) {
+			sum += (A[i] - B[i]) * (A[i] - B[i]);
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Compares the nearest nodes found by the node index of the topology with
+	 * those found by a linear scan over all nodes, for random patterns, with
+	 * and without the cluster of the nearest node, and for a batch.
+	 */
+	private static void assertNearestNodes(SOINNM soinnm, Random random) {
+		int inputDim = soinnm.getInputDim();
+		NodeIndex nodeIndex = soinnm.getNodeIndex();
+		LinearNodeIndex linearIndex = new LinearNodeIndex(inputDim);
+		for (Node node : soinnm.getNodeSet()) {
+			linearIndex.add(node);
+		}
+
+		double[][] patterns = new double[50][];
+		for (int p = 0; p < patterns.length; p++) {
+			patterns[p] = createPattern(random, inputDim, random.nextDouble(), 0.1);
+			for (int k : new int[] { 1, 2, 5 }) {
+				Node[] nodesExpected = new Node[k];
+				double[] distancesExpected = new double[k];
+				Node[] nodes = new Node[k];
+				double[] distances = new double[k];
+				int numFound = linearIndex.findNearest(patterns[p], nodesExpected, distancesExpected);
+				assertEquals("number of nodes found", numFound, nodeIndex.findNearest(patterns[p], nodes, distances));
+				assertArrayEquals("nearest nodes", nodesExpected, nodes);
+				assertArrayEquals("nearest distances", distancesExpected, distances, 0.0);
+
+				// other clusters only
+				Cluster cluster = nodesExpected[0].getCluster();
+				numFound = linearIndex.findNearest(patterns[p], cluster, nodesExpected, distancesExpected);
+				assertEquals("number of nodes found", numFound, nodeIndex.findNearest(patterns[p], cluster, nodes, distances));
+				assertArrayEquals("nearest nodes of other clusters", nodesExpected, nodes);
+				assertArrayEquals("nearest distances of other clusters", distancesExpected, distances, 0.0);
+			}
+		}
+
+		// batch
+		Node[][] nodesExpected = new Node[patterns.length][3];
+		double[][] distancesExpected = new double[patterns.length][3];
+		Node[][] nodes = new Node[patterns.length][3];
+		double[][] distances = new double[patterns.length][3];
+		linearIndex.findNearest(patterns, nodesExpected, distancesExpected);
+		nodeIndex.findNearest(patterns, nodes, distances);
+		for (int p = 0; p < patterns.length; p++) {
+			assertArrayEquals("nearest nodes of batch", nodesExpected[p], nodes[p]);
+			assertArrayEquals("nearest distances of batch", distancesExpected[p], distances[p], 0.0);
+		}
+	}
+
 }
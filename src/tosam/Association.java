@@ -8,6 +8,9 @@ package tosam;
  * learning rate.
  * <p>
  * The weight can decay.
+ * <p>
+ * While the association is attached to a network core, the weight, the signal
+ * and the learning rate are stored in the columns of the core.
  * 
  * @author Matthias Keysermann
  *
@@ -22,6 +25,8 @@ public class Association {
 
 	public static final double CORRECTION_STRENGTH = 0.0; // 0.01
 
+	public static final double WEIGHT_DECAY = 0.000001;
+
 	private long id;
 
 	private Unit src;
@@ -36,6 +41,10 @@ public class Association {
 
 	private double signal;
 
+	private NetworkCore core; // stores learning rate, weight and signal if not null
+
+	private int index; // index in core
+
 	public Association(long id, Unit src, Unit dst) {
 		this.id = id;
 		this.src = src;
@@ -70,42 +79,86 @@ public class Association {
 	}
 
 	public double getLearningRate() {
+		if (core != null) {
+			return core.learningRates[index];
+		}
 		return learningRate;
 	}
 
 	public void setLearningRate(double learningRate) {
-		this.learningRate = learningRate;
+		if (core != null) {
+			core.learningRates[index] = learningRate;
+		} else {
+			this.learningRate = learningRate;
+		}
 	}
 
 	public double getWeight() {
+		if (core != null) {
+			return core.weights[index];
+		}
 		return weight;
 	}
 
 	public void setWeight(double weight) {
 
 		// check limits
-		if (weight < WEIGHT_MIN) {
-			this.weight = WEIGHT_MIN;
-		} else if (weight > WEIGHT_MAX) {
-			this.weight = WEIGHT_MAX;
+		weight = limitWeight(weight);
+		if (core != null) {
+			core.weights[index] = weight;
 		} else {
 			this.weight = weight;
 		}
 
 	}
 
+	static double limitWeight(double weight) {
+		if (weight < WEIGHT_MIN) {
+			return WEIGHT_MIN;
+		} else if (weight > WEIGHT_MAX) {
+			return WEIGHT_MAX;
+		} else {
+			return weight;
+		}
+	}
+
 	public double getSignal() {
+		if (core != null) {
+			return core.signals[index];
+		}
 		return signal;
 	}
 
 	public void setSignal(double signal) {
-		this.signal = signal;
+		if (core != null) {
+			core.signals[index] = signal;
+		} else {
+			this.signal = signal;
+		}
 	}
 
 	public void decayWeight() {
+		setWeight(decayedWeight(getWeight()));
+	}
+
+	/**
+	 * Returns the weight after decay (without checking limits).
+	 */
+	static double decayedWeight(double weight) {
 
 		// exponential decay
-		double deltaWeight = weight * -0.000001;
+		double deltaWeight = weight * -WEIGHT_DECAY;
+
+		// update weight
+		return weight + deltaWeight;
+
+	}
+
+	public void decayWeight(int cycles) {
+
+		// exponential decay over several cycles
+		double weight = getWeight();
+		double deltaWeight = weight * (Math.pow(1.0 - WEIGHT_DECAY, cycles) - 1.0);
 
 		// update weight
 		setWeight(weight + deltaWeight);
@@ -113,12 +166,14 @@ public class Association {
 	}
 
 	public void updateWeight() {
+		setWeight(updatedWeight(getWeight(), getLearningRate(), src.getLoad(), dst.getLoad(), src.getActivation(), dst.getActivation()));
+	}
 
-		// initialise
-		double loadSrc = src.getLoad();
-		double loadDst = dst.getLoad();
-		double actSrc = src.getActivation();
-		double actDst = dst.getActivation();
+	/**
+	 * Returns the weight after learning depending on loads and activations of
+	 * the connected units (without checking limits).
+	 */
+	static double updatedWeight(double weight, double learningRate, double loadSrc, double loadDst, double actSrc, double actDst) {
 
 		// source load triggers learning
 		double contributionSrc = loadSrc;
@@ -161,8 +216,37 @@ public class Association {
 		*/
 
 		// update weight
-		setWeight(weight + deltaWeight * learningRate);
+		return weight + deltaWeight * learningRate;
+
+	}
+
+	/**
+	 * Uses learning rate, weight and signal stored in the core at the given
+	 * index (which need to have been copied to the core before).
+	 */
+	void attach(NetworkCore core, int index) {
+		this.core = core;
+		this.index = index;
+	}
+
+	/**
+	 * Stores learning rate, weight and signal in this association again.
+	 */
+	void detach() {
+		if (core != null) {
+			learningRate = core.learningRates[index];
+			weight = core.weights[index];
+			signal = core.signals[index];
+			core = null;
+		}
+	}
+
+	boolean isAttached() {
+		return core != null;
+	}
 
+	int getIndex() {
+		return index;
 	}
 
 	public String toString() {
@@ -170,8 +254,8 @@ public class Association {
 		str += "  |  id=" + id;
 		str += "  |  srcId=" + src.getId();
 		str += "  |  dstId=" + dst.getId();
-		str += "  |  weight=" + String.format("%.3f", weight);
-		str += "  |  signal=" + String.format("%.3f", signal);
+		str += "  |  weight=" + String.format("%.3f", getWeight());
+		str += "  |  signal=" + String.format("%.3f", getSignal());
 		return str;
 	}
 
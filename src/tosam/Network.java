@@ -1,6 +1,17 @@
 package tosam;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class for holding the network of units and associations.
@@ -13,9 +24,32 @@ import java.util.LinkedList;
  * Globally manages leakage of input loads, decay of activation levels, decay of
  * weights. Can clean up insignificant units. Can join and split data.
  * <p>
+ * Units are indexed by their data, so that looking up the unit of a data
+ * pattern does not depend on the number of units. Units added to or removed
+ * from the list of units directly require a call of rebuild() afterwards.
+ * <p>
  * Manages the spreading of activation between units. The spreading process can
  * consider the activation level of the destination unit, i.e. signal
  * attraction, or allow overspreading of activation.
+ * <p>
+ * With sparse stepping, the processing steps only consider active units, i.e.
+ * units with load, activation or outgoing signals above the activity
+ * threshold, and their associations. Units that have become inactive are
+ * dropped once per cycle while activations are spread. Weights are decayed for
+ * all associations at once every few cycles, and the clean up then checks all
+ * units. Each processing step differs from full stepping by less than the
+ * activity threshold per unit, but the differences add up over cycles and are
+ * spread on to other units, so the results may differ by several times the
+ * activity threshold (e.g. with overspreading).
+ * Units returned by insertData() may be changed directly; other units changed
+ * directly require a call of rebuild() afterwards.
+ * <p>
+ * From the parallel threshold on, activations are spread in parallel on a
+ * fork/join pool, with or without sparse stepping and the array-based core:
+ * signals are computed per unit, and each unit then gathers the signals of
+ * its outgoing and incoming associations merged by id. The results are the
+ * same as for sequential spreading, as the associations of each unit are in
+ * the order of the list of associations.
  * 
  * @author Matthias Keysermann
  *
@@ -34,8 +68,28 @@ public class Network {
 
 	public static final double REMOVAL_THRESHOLD_LOAD = Unit.LOAD_MAX * REMOVAL_PERCENTAGE_LOAD;
 
+	public static final double ACTIVITY_THRESHOLD_DEFAULT = 0.0001;
+
+	public static final int PARALLEL_THRESHOLD_DEFAULT = 20000;
+
+	private static final Comparator<Unit> UNIT_ID_COMPARATOR = new Comparator<Unit>() {
+		@Override
+		public int compare(Unit unitA, Unit unitB) {
+			return Long.compare(unitA.getId(), unitB.getId());
+		}
+	};
+
+	private static final Comparator<Association> ASSOCIATION_ID_COMPARATOR = new Comparator<Association>() {
+		@Override
+		public int compare(Association associationA, Association associationB) {
+			return Long.compare(associationA.getId(), associationB.getId());
+		}
+	};
+
 	private LinkedList<Unit> units;
 
+	private HashMap<Object, Unit> unitIndex; // data -> unit
+
 	private long nextUnitId;
 
 	private LinkedList<Association> associations;
@@ -48,11 +102,33 @@ public class Network {
 
 	private boolean fullyConnected = false; // false
 
+	private boolean sparseStepping = false; // false
+
+	private double activityThreshold = ACTIVITY_THRESHOLD_DEFAULT;
+
+	private LinkedHashSet<Unit> unitsActive; // units above the activity threshold (sparse stepping)
+
+	private LinkedHashSet<Unit> unitsTouched; // units that may have become active (sparse stepping)
+
+	private LinkedHashSet<Unit> unitsChanged; // units that may have become removable (sparse stepping)
+
+	private int weightDecaysPending; // weight decays not applied yet (sparse stepping)
+
+	private boolean cleanUpAll; // next clean up checks all units (sparse stepping)
+
+	private NetworkCore core; // array-based core, null if not used
+
+	private int parallelThreshold = PARALLEL_THRESHOLD_DEFAULT; // minimum number of associations for parallel spreading
+
 	public Network() {
 		units = new LinkedList<Unit>();
+		unitIndex = new HashMap<Object, Unit>();
 		nextUnitId = 1;
 		associations = new LinkedList<Association>();
 		nextAssociationId = 1;
+		unitsActive = new LinkedHashSet<Unit>();
+		unitsTouched = new LinkedHashSet<Unit>();
+		unitsChanged = new LinkedHashSet<Unit>();
 	}
 
 	// variables getters/setters
@@ -105,14 +181,210 @@ public class Network {
 		this.fullyConnected = fullyConnected;
 	}
 
+	public boolean isSparseStepping() {
+		return sparseStepping;
+	}
+
+	public void setSparseStepping(boolean sparseStepping) {
+		synchronized (units) {
+			synchronized (associations) {
+				if (sparseStepping != this.sparseStepping) {
+					applyWeightDecays();
+					this.sparseStepping = sparseStepping;
+					resetUnitsActive();
+
+					// array-based core is not used with sparse stepping
+					if (sparseStepping) {
+						detachCore();
+					}
+				}
+			}
+		}
+	}
+
+	public boolean isArrayCore() {
+		return core != null;
+	}
+
+	/**
+	 * Enables or disables the array-based core (see NetworkCore). The core is
+	 * used for processing steps if sparse stepping is disabled, and spreads
+	 * activations in parallel from the parallel threshold on. Added and
+	 * removed units and associations are applied to the arrays of the core
+	 * without rebuilding them.
+	 */
+	public void setArrayCore(boolean arrayCore) {
+		synchronized (units) {
+			synchronized (associations) {
+				if (arrayCore && core == null) {
+					core = new NetworkCore();
+				} else if (!arrayCore && core != null) {
+					core.detach();
+					core = null;
+				}
+			}
+		}
+	}
+
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	public void setParallelThreshold(int parallelThreshold) {
+		// check limits
+		if (parallelThreshold < 0) {
+			System.err.println("Invalid parallel threshold!");
+			return;
+		}
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Returns the parallelism of the fork/join pool for parallel spreading
+	 * (the number of available processors unless set).
+	 */
+	public static int getSpreadingParallelism() {
+		return NetworkCore.getPoolParallelism();
+	}
+
+	/**
+	 * Sets the parallelism of the fork/join pool for parallel spreading, e.g.
+	 * in order to spread activations in parallel on a single processor.
+	 */
+	public static void setSpreadingParallelism(int parallelism) {
+		// check limits
+		if (parallelism < 1) {
+			System.err.println("Invalid spreading parallelism!");
+			return;
+		}
+		NetworkCore.setPoolParallelism(parallelism);
+	}
+
+	public double getActivityThreshold() {
+		return activityThreshold;
+	}
+
+	public void setActivityThreshold(double activityThreshold) {
+		// check limits (loaded and removable units must be active)
+		if (activityThreshold <= 0 || activityThreshold >= Math.min(REMOVAL_THRESHOLD_LOAD, REMOVAL_THRESHOLD_ACTIVATION)) {
+			System.err.println("Invalid activity threshold!");
+			return;
+		}
+		this.activityThreshold = activityThreshold;
+	}
+
 	/**
 	 * Clears all units and associations.
 	 */
 	public void clear() {
 		synchronized (units) {
 			synchronized (associations) {
+				detachCore();
 				units.clear();
+				unitIndex.clear();
 				associations.clear();
+				unitsActive.clear();
+				unitsTouched.clear();
+				unitsChanged.clear();
+				weightDecaysPending = 0;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the data index and the active units and marks the array-based
+	 * core to be rebuilt, e.g. after units have been added to the list of
+	 * units directly.
+	 */
+	public void rebuild() {
+		synchronized (units) {
+			invalidateCore();
+			unitIndex.clear();
+			for (Unit unit : units) {
+				// keep first unit for equal data
+				if (!unitIndex.containsKey(unit.getData())) {
+					unitIndex.put(unit.getData(), unit);
+				}
+			}
+			resetUnitsActive();
+		}
+	}
+
+	/**
+	 * Returns a copy of the units, associations and variables of this network,
+	 * e.g. for saving it in another thread while this network continues to be
+	 * simulated.
+	 */
+	public Network copy() {
+		synchronized (units) {
+			synchronized (associations) {
+				Network network = new Network();
+
+				// units
+				HashMap<Unit, Unit> unitMap = new HashMap<Unit, Unit>();
+				for (Unit unit : units) {
+					Unit unitCopy = new Unit(unit.getId(), unit.getData());
+					unitCopy.setLoad(unit.getLoad());
+					unitCopy.setActivation(unit.getActivation());
+					network.units.add(unitCopy);
+					unitMap.put(unit, unitCopy);
+				}
+
+				// data index
+				for (Map.Entry<Object, Unit> entry : unitIndex.entrySet()) {
+					network.unitIndex.put(entry.getKey(), unitMap.get(entry.getValue()));
+				}
+
+				// associations
+				for (Association association : associations) {
+					Unit srcUnit = unitMap.get(association.getSrc());
+					Unit dstUnit = unitMap.get(association.getDst());
+					Association associationCopy = new Association(association.getId(), srcUnit, dstUnit);
+					associationCopy.setLearningRate(association.getLearningRate());
+					associationCopy.setWeight(association.getWeight());
+					associationCopy.setSignal(association.getSignal());
+					network.associations.add(associationCopy);
+					srcUnit.getAssociationsOut().add(associationCopy);
+					dstUnit.getAssociationsIn().add(associationCopy);
+				}
+
+				// pending weight decays (sparse stepping)
+				network.weightDecaysPending = weightDecaysPending;
+				network.applyWeightDecays();
+
+				// variables
+				network.nextUnitId = nextUnitId;
+				network.nextAssociationId = nextAssociationId;
+				network.signalAttraction = signalAttraction;
+				network.allowOverspreading = allowOverspreading;
+				network.fullyConnected = fullyConnected;
+
+				return network;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the units, associations and variables of this network with
+	 * those of the given network, e.g. of a network that has been loaded from
+	 * a file in another thread. The given network must not be used afterwards.
+	 */
+	public void replaceWith(Network network) {
+		synchronized (units) {
+			synchronized (associations) {
+				detachCore();
+				units.clear();
+				units.addAll(network.units);
+				unitIndex = network.unitIndex;
+				associations.clear();
+				associations.addAll(network.associations);
+				nextUnitId = network.nextUnitId;
+				nextAssociationId = network.nextAssociationId;
+				signalAttraction = network.signalAttraction;
+				allowOverspreading = network.allowOverspreading;
+				fullyConnected = network.fullyConnected;
+				weightDecaysPending = 0;
+				resetUnitsActive();
 			}
 		}
 	}
@@ -126,15 +398,7 @@ public class Network {
 	 */
 	public Unit getUnit(Object data) {
 		synchronized (units) {
-
-			// check if data is contained in network
-			for (Unit unit : units) {
-				if (unit.getData().equals(data)) {
-					return unit;
-				}
-			}
-
-			return null;
+			return unitIndex.get(data);
 		}
 	}
 
@@ -149,10 +413,10 @@ public class Network {
 		synchronized (units) {
 
 			// check if data is contained in network
-			for (Unit unit : units) {
-				if (unit.getData().equals(data)) {
-					return unit;
-				}
+			Unit unitExisting = unitIndex.get(data);
+			if (unitExisting != null) {
+				touchUnit(unitExisting);
+				return unitExisting;
 			}
 
 			// create new unit
@@ -179,6 +443,8 @@ public class Network {
 
 			// add new unit
 			units.add(unitNew);
+			unitIndex.put(data, unitNew);
+			touchUnit(unitNew);
 
 			return unitNew;
 
@@ -196,16 +462,8 @@ public class Network {
 		synchronized (units) {
 			synchronized (associations) {
 
-				// initialise
-				Unit unitDelete = null;
-
 				// check if data is contained in network
-				for (Unit unit : units) {
-					if (unit.getData().equals(data)) {
-						unitDelete = unit;
-						break;
-					}
-				}
+				Unit unitDelete = unitIndex.get(data);
 
 				// delete unit and associations
 				if (unitDelete != null) {
@@ -243,6 +501,33 @@ public class Network {
 
 				// remove unit
 				units.remove(unit);
+				if (unitIndex.get(unit.getData()) == unit) {
+					unitIndex.remove(unit.getData());
+				}
+
+				// store values in removed unit and associations (array-based core)
+				if (core != null) {
+					core.remove(unit);
+					for (Association associationIn : unit.getAssociationsIn()) {
+						core.remove(associationIn);
+					}
+					for (Association associationOut : unit.getAssociationsOut()) {
+						core.remove(associationOut);
+					}
+				}
+
+				// associated units may have become removable
+				if (sparseStepping) {
+					unitsActive.remove(unit);
+					unitsTouched.remove(unit);
+					unitsChanged.remove(unit);
+					for (Association associationIn : unit.getAssociationsIn()) {
+						unitsChanged.add(associationIn.getSrc());
+					}
+					for (Association associationOut : unit.getAssociationsOut()) {
+						unitsChanged.add(associationOut.getDst());
+					}
+				}
 
 			}
 		}
@@ -261,19 +546,9 @@ public class Network {
 		synchronized (units) {
 			synchronized (associations) {
 
-				// initialise
-				Unit unitKeep = null;
-				Unit unitDelete = null;
-
 				// check if data is contained in network
-				for (Unit unit : units) {
-					if (unit.getData().equals(dataKeep)) {
-						unitKeep = unit;
-					}
-					if (unit.getData().equals(dataDelete)) {
-						unitDelete = unit;
-					}
-				}
+				Unit unitKeep = unitIndex.get(dataKeep);
+				Unit unitDelete = unitIndex.get(dataDelete);
 
 				// equivalent data
 				if (unitKeep == unitDelete) {
@@ -333,6 +608,7 @@ public class Network {
 							// determine maximum signal for incoming association
 							double associationInSignalMax = Math.max(associationInKeep.getSignal(), associationInDelete.getSignal());
 							associationInKeep.setSignal(associationInSignalMax);
+							touchSignal(associationInKeep);
 
 						}
 
@@ -376,6 +652,7 @@ public class Network {
 							// determine maximum signal for outgoing association
 							double associationOutSignalMax = Math.max(associationOutKeep.getSignal(), associationOutDelete.getSignal());
 							associationOutKeep.setSignal(associationOutSignalMax);
+							touchSignal(associationOutKeep);
 
 						}
 
@@ -384,6 +661,12 @@ public class Network {
 					// delete unit and associations
 					deleteUnit(unitDelete);
 
+					// joined associations may have changed removability
+					touchUnit(unitKeep);
+					if (sparseStepping) {
+						cleanUpAll = true;
+					}
+
 				}
 
 				return unitKeep;
@@ -405,100 +688,106 @@ public class Network {
 			synchronized (associations) {
 
 				// check if data is contained in network
-				for (Unit unitOld : units) {
-					if (unitOld.getData().equals(dataOld)) {
+				Unit unitOld = unitIndex.get(dataOld);
+				if (unitOld != null) {
 
-						// create new unit (and associations if fully-connected)
-						Unit unitNew = insertData(dataNew);
+					// create new unit (and associations if fully-connected)
+					Unit unitNew = insertData(dataNew);
 
-						// copy input load
-						unitNew.setLoad(unitOld.getLoad());
+					// copy input load
+					unitNew.setLoad(unitOld.getLoad());
 
-						// copy activation level						
-						unitNew.setActivation(unitOld.getActivation());
+					// copy activation level						
+					unitNew.setActivation(unitOld.getActivation());
 
-						// loop over incoming associations of old unit						
-						for (Association associationInOld : unitOld.getAssociationsIn()) {
-							Unit unitSrc = associationInOld.getSrc();
+					// loop over incoming associations of old unit						
+					for (Association associationInOld : unitOld.getAssociationsIn()) {
+						Unit unitSrc = associationInOld.getSrc();
 
-							// ignore associations from new unit
-							if (unitSrc != unitNew) {
+						// ignore associations from new unit
+						if (unitSrc != unitNew) {
 
-								// check if association exists for new unit
-								Association associationInNew = null;
-								for (Association associationIn : unitNew.getAssociationsIn()) {
-									if (associationIn.getSrc() == unitSrc) {
-										associationInNew = associationIn;
-										break;
-									}
+							// check if association exists for new unit
+							Association associationInNew = null;
+							for (Association associationIn : unitNew.getAssociationsIn()) {
+								if (associationIn.getSrc() == unitSrc) {
+									associationInNew = associationIn;
+									break;
 								}
+							}
 
-								// new unit does not have association
-								if (associationInNew == null) {
-
-									// create association
-									associationInNew = createAssociation(unitSrc, unitNew);
-									associations.add(associationInNew);
-									unitSrc.getAssociationsOut().add(associationInNew);
-									unitNew.getAssociationsIn().add(associationInNew);
+							// new unit does not have association
+							if (associationInNew == null) {
 
-								}
+								// create association
+								associationInNew = createAssociation(unitSrc, unitNew);
+								associations.add(associationInNew);
+								unitSrc.getAssociationsOut().add(associationInNew);
+								unitNew.getAssociationsIn().add(associationInNew);
 
-								// copy learning rate for incoming association
-								associationInNew.setLearningRate(associationInOld.getLearningRate());
+							}
 
-								// copy weight for incoming association
-								associationInNew.setWeight(associationInOld.getWeight());
+							// copy learning rate for incoming association
+							associationInNew.setLearningRate(associationInOld.getLearningRate());
 
-								// copy signal for incoming association
-								associationInNew.setSignal(associationInOld.getSignal());
+							// copy weight for incoming association
+							associationInNew.setWeight(associationInOld.getWeight());
 
-							}
+							// copy signal for incoming association
+							associationInNew.setSignal(associationInOld.getSignal());
+							touchSignal(associationInNew);
 
 						}
 
-						// loop over outgoing associations of old unit						
-						for (Association associationOutOld : unitOld.getAssociationsOut()) {
-							Unit unitDst = associationOutOld.getDst();
+					}
+
+					// loop over outgoing associations of old unit						
+					for (Association associationOutOld : unitOld.getAssociationsOut()) {
+						Unit unitDst = associationOutOld.getDst();
 
-							// ignore associations to new unit
-							if (unitDst != unitNew) {
+						// ignore associations to new unit
+						if (unitDst != unitNew) {
 
-								// check if association exists for new unit
-								Association associationOutNew = null;
-								for (Association associationOut : unitNew.getAssociationsOut()) {
-									if (associationOut.getDst() == unitDst) {
-										associationOutNew = associationOut;
-										break;
-									}
+							// check if association exists for new unit
+							Association associationOutNew = null;
+							for (Association associationOut : unitNew.getAssociationsOut()) {
+								if (associationOut.getDst() == unitDst) {
+									associationOutNew = associationOut;
+									break;
 								}
+							}
 
-								// new unit does not have association
-								if (associationOutNew == null) {
-
-									// create association
-									associationOutNew = createAssociation(unitNew, unitDst);
-									associations.add(associationOutNew);
-									unitNew.getAssociationsOut().add(associationOutNew);
-									unitDst.getAssociationsIn().add(associationOutNew);
+							// new unit does not have association
+							if (associationOutNew == null) {
 
-								}
+								// create association
+								associationOutNew = createAssociation(unitNew, unitDst);
+								associations.add(associationOutNew);
+								unitNew.getAssociationsOut().add(associationOutNew);
+								unitDst.getAssociationsIn().add(associationOutNew);
 
-								// copy learning rate for outgoing association
-								associationOutNew.setLearningRate(associationOutOld.getLearningRate());
+							}
 
-								// copy weight for outgoing association
-								associationOutNew.setWeight(associationOutOld.getWeight());
+							// copy learning rate for outgoing association
+							associationOutNew.setLearningRate(associationOutOld.getLearningRate());
 
-								// copy signal for outgoing association
-								associationOutNew.setSignal(associationOutOld.getSignal());
+							// copy weight for outgoing association
+							associationOutNew.setWeight(associationOutOld.getWeight());
 
-							}
+							// copy signal for outgoing association
+							associationOutNew.setSignal(associationOutOld.getSignal());
+							touchSignal(associationOutNew);
 
 						}
 
-						return unitNew;
 					}
+
+					// copied associations may have changed removability
+					if (sparseStepping) {
+						cleanUpAll = true;
+					}
+
+					return unitNew;
 				}
 
 				return null;
@@ -507,11 +796,222 @@ public class Network {
 	}
 
 	private Unit createUnit(Object data) {
-		return new Unit(nextUnitId++, data);
+		Unit unit = new Unit(nextUnitId++, data);
+		if (core != null) {
+			core.add(unit);
+		}
+		return unit;
 	}
 
 	private Association createAssociation(Unit src, Unit dst) {
-		return new Association(nextAssociationId++, src, dst);
+		Association association = new Association(nextAssociationId++, src, dst);
+		if (core != null) {
+			core.add(association);
+		}
+		return association;
+	}
+
+	private void invalidateCore() {
+		if (core != null) {
+			core.invalidate();
+		}
+	}
+
+	/**
+	 * Stores the values in the units and associations of the array-based core
+	 * again, e.g. before they are removed.
+	 */
+	private void detachCore() {
+		if (core != null) {
+			core.detach();
+		}
+	}
+
+	/**
+	 * Returns the array-based core to be used for processing steps, with added
+	 * units and associations appended, or null if the core is not used
+	 * (disabled or sparse stepping).
+	 */
+	private NetworkCore getCore() {
+		if (core == null || sparseStepping) {
+			return null;
+		}
+		if (core.isValid()) {
+			core.update();
+		} else {
+			core.rebuild(units, associations);
+		}
+		return core;
+	}
+
+	/**
+	 * Marks the unit to be checked for activity (sparse stepping).
+	 */
+	private void touchUnit(Unit unit) {
+		if (sparseStepping) {
+			unitsTouched.add(unit);
+		}
+	}
+
+	/**
+	 * Marks the source unit of an association whose signal has been set
+	 * directly to be checked for activity (sparse stepping).
+	 */
+	private void touchSignal(Association association) {
+		if (association.getSignal() > activityThreshold) {
+			touchUnit(association.getSrc());
+		}
+	}
+
+	/**
+	 * Marks all units to be checked for activity and removal (sparse
+	 * stepping), e.g. after units have been added to the list of units
+	 * directly.
+	 */
+	private void resetUnitsActive() {
+		unitsActive.clear();
+		unitsTouched.clear();
+		unitsChanged.clear();
+		if (sparseStepping) {
+			unitsTouched.addAll(units);
+			cleanUpAll = true;
+		}
+	}
+
+	private boolean isQuiescent(Unit unit) {
+		return unit.getLoad() <= activityThreshold && unit.getActivation() <= activityThreshold;
+	}
+
+	private boolean hasSignal(Unit unit) {
+		for (Association association : unit.getAssociationsOut()) {
+			if (association.getSignal() > activityThreshold) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes a unit that has become inactive from the active units while its
+	 * signals are computed (sparse stepping). The unit is checked by the next
+	 * clean up.
+	 */
+	private void removeUnitInactive(Iterator<Unit> iterator, Unit unit) {
+		iterator.remove();
+		unitsChanged.add(unit);
+	}
+
+	/**
+	 * Returns the units to be processed, i.e. all units or the active units
+	 * (sparse stepping). Adds touched units to the active units; units that
+	 * have become inactive are removed once per cycle while activations are
+	 * spread.
+	 */
+	private Collection<Unit> getUnitsStepped() {
+		if (!sparseStepping) {
+			return units;
+		}
+		if (!unitsTouched.isEmpty()) {
+			unitsActive.addAll(unitsTouched);
+			unitsTouched.clear();
+		}
+		return unitsActive;
+	}
+
+	/**
+	 * Returns the associations to spread activation over, i.e. all
+	 * associations or the outgoing associations of the active units (sparse
+	 * stepping), in the order of the list of associations (i.e. by id).
+	 */
+	private Collection<Association> getAssociationsSpreading() {
+		if (!sparseStepping) {
+			return associations;
+		}
+		int numAssociations = 0;
+		for (Unit unit : unitsActive) {
+			numAssociations += unit.getAssociationsOut().size();
+		}
+
+		// many associations: spread over all associations (cheaper than
+		// sorting, signals of inactive units are below the activity threshold)
+		if (numAssociations * 16 > associations.size()) {
+			return associations;
+		}
+
+		ArrayList<Association> associationsSpreading = new ArrayList<Association>(numAssociations);
+		for (Unit unit : unitsActive) {
+			associationsSpreading.addAll(unit.getAssociationsOut());
+		}
+		Collections.sort(associationsSpreading, ASSOCIATION_ID_COMPARATOR);
+		return associationsSpreading;
+	}
+
+	/**
+	 * Returns the associations to update the weights of, i.e. all associations
+	 * or the associations whose weight update is not negligible (sparse
+	 * stepping): the outgoing associations of units with load and, for error
+	 * correction, the incoming associations of active units.
+	 */
+	private Collection<Association> getAssociationsLearning() {
+		if (!sparseStepping) {
+			return associations;
+		}
+		ArrayList<Association> associationsLearning = new ArrayList<Association>();
+		for (Unit unit : unitsActive) {
+			if (unit.getLoad() > activityThreshold || Association.CORRECTION_STRENGTH != 0) {
+				associationsLearning.addAll(unit.getAssociationsOut());
+			}
+			if (Association.CORRECTION_STRENGTH != 0) {
+				for (Association association : unit.getAssociationsIn()) {
+					if (!unitsActive.contains(association.getSrc())) {
+						associationsLearning.add(association);
+					}
+				}
+			}
+		}
+		return associationsLearning;
+	}
+
+	/**
+	 * Returns the units to be checked by the clean up, i.e. all units or the
+	 * units whose removal may have changed (sparse stepping): active units,
+	 * units with weights updated below the removal threshold and units with
+	 * removed associations.
+	 */
+	private Collection<Unit> getUnitsCleanUp() {
+		if (!sparseStepping) {
+			return units;
+		}
+		Collection<Unit> unitsStepped = getUnitsStepped();
+
+		// many units: check all units (cheaper than collecting units)
+		if (cleanUpAll || (unitsStepped.size() + unitsChanged.size()) * 2 > units.size()) {
+			cleanUpAll = false;
+			unitsChanged.clear();
+			return units;
+		}
+
+		ArrayList<Unit> unitsCleanUp = new ArrayList<Unit>(unitsStepped.size() + unitsChanged.size());
+		unitsCleanUp.addAll(unitsStepped);
+		for (Unit unit : unitsChanged) {
+			if (!unitsActive.contains(unit)) {
+				unitsCleanUp.add(unit);
+			}
+		}
+		unitsChanged.clear();
+		return unitsCleanUp;
+	}
+
+	/**
+	 * Applies pending weight decays to all associations (sparse stepping).
+	 */
+	private void applyWeightDecays() {
+		if (weightDecaysPending > 0) {
+			for (Association association : associations) {
+				association.decayWeight(weightDecaysPending);
+			}
+			weightDecaysPending = 0;
+		}
 	}
 
 	/**
@@ -519,8 +1019,15 @@ public class Network {
 	 */
 	public void leakLoads() {
 		synchronized (units) {
-			for (Unit unit : units) {
-				unit.leakLoad();
+			synchronized (associations) {
+				NetworkCore core = getCore();
+				if (core != null) {
+					core.leakLoads();
+					return;
+				}
+				for (Unit unit : getUnitsStepped()) {
+					unit.leakLoad();
+				}
 			}
 		}
 	}
@@ -532,8 +1039,15 @@ public class Network {
 	 */
 	public void decayActivations() {
 		synchronized (units) {
-			for (Unit unit : units) {
-				unit.decayActivation();
+			synchronized (associations) {
+				NetworkCore core = getCore();
+				if (core != null) {
+					core.decayActivations();
+					return;
+				}
+				for (Unit unit : getUnitsStepped()) {
+					unit.decayActivation();
+				}
 			}
 		}
 	}
@@ -544,9 +1058,29 @@ public class Network {
 	 * Resembles long-term forgetting/trace decay.
 	 */
 	public void decayWeights() {
-		synchronized (associations) {
-			for (Association association : associations) {
-				association.decayWeight();
+		synchronized (units) {
+			synchronized (associations) {
+
+				// decay weights every few cycles such that the delay stays below
+				// the activity threshold (sparse stepping)
+				if (sparseStepping) {
+					weightDecaysPending++;
+					if (weightDecaysPending * Association.WEIGHT_DECAY >= activityThreshold) {
+						applyWeightDecays();
+						cleanUpAll = true;
+					}
+					return;
+				}
+
+				NetworkCore core = getCore();
+				if (core != null) {
+					core.decayWeights();
+					return;
+				}
+
+				for (Association association : associations) {
+					association.decayWeight();
+				}
 			}
 		}
 	}
@@ -562,51 +1096,49 @@ public class Network {
 				// associations have already been created in insertData()
 				if (!fullyConnected) {
 
-					for (Unit unitA : units) {
-						if (unitA.getLoad() > REMOVAL_THRESHOLD_LOAD) {
-
-							for (Unit unitB : units) {
-								if (unitB.getLoad() > REMOVAL_THRESHOLD_LOAD) {
-
-									// no self-associations
-									if (unitA != unitB) {
-
-										// check for associations between unit A and unit B
-										boolean associationsExist = false;
-										for (Association association : associations) {
-
-											// check for association from unit A to unit B
-											if (association.getSrc() == unitA && association.getDst() == unitB) {
-												associationsExist = true;
-												break;
-											}
-
-											// check for association from unit B to unit A
-											if (association.getSrc() == unitB && association.getDst() == unitA) {
-												associationsExist = true;
-												break;
-											}
-
-										}
+					// collect units with input load (in the order of the list of units)
+					ArrayList<Unit> unitsLoaded = new ArrayList<Unit>();
+					for (Unit unit : getUnitsStepped()) {
+						if (unit.getLoad() > REMOVAL_THRESHOLD_LOAD) {
+							unitsLoaded.add(unit);
+						}
+					}
+					if (sparseStepping) {
+						Collections.sort(unitsLoaded, UNIT_ID_COMPARATOR);
+					}
 
-										// create associations between unit A and unit B
-										if (!associationsExist) {
-											Association associationAB = createAssociation(unitA, unitB);
-											associations.add(associationAB);
-											unitA.getAssociationsOut().add(associationAB);
-											unitB.getAssociationsIn().add(associationAB);
-											Association associationBA = createAssociation(unitB, unitA);
-											associations.add(associationBA);
-											unitB.getAssociationsOut().add(associationBA);
-											unitA.getAssociationsIn().add(associationBA);
-										}
+					for (Unit unitA : unitsLoaded) {
 
-									}
+						// collect units associated with unit A
+						HashSet<Unit> unitsAssociated = new HashSet<Unit>();
+						for (Association association : unitA.getAssociationsOut()) {
+							unitsAssociated.add(association.getDst());
+						}
+						for (Association association : unitA.getAssociationsIn()) {
+							unitsAssociated.add(association.getSrc());
+						}
 
+						for (Unit unitB : unitsLoaded) {
+
+							// no self-associations
+							if (unitA != unitB) {
+
+								// create associations between unit A and unit B
+								if (!unitsAssociated.contains(unitB)) {
+									Association associationAB = createAssociation(unitA, unitB);
+									associations.add(associationAB);
+									unitA.getAssociationsOut().add(associationAB);
+									unitB.getAssociationsIn().add(associationAB);
+									Association associationBA = createAssociation(unitB, unitA);
+									associations.add(associationBA);
+									unitB.getAssociationsOut().add(associationBA);
+									unitA.getAssociationsIn().add(associationBA);
 								}
+
 							}
 
 						}
+
 					}
 
 				}
@@ -615,6 +1147,28 @@ public class Network {
 		}
 	}
 
+	/**
+	 * Returns true if activations are spread in parallel, i.e. from the
+	 * parallel threshold on and with a spreading parallelism of more than one.
+	 * With the array-based core, all steps of spreading are parallel. Without
+	 * the core, signals are computed in parallel, and they are transferred in
+	 * parallel if they are spread over all associations.
+	 */
+	private boolean isSpreadingParallel() {
+		return associations.size() >= parallelThreshold && NetworkCore.getPoolParallelism() > 1;
+	}
+
+	/**
+	 * Returns the signal of an association for the given share of activation.
+	 */
+	static double shapeSignal(double signal) {
+		// sigmoidal spreading
+		return Math.pow(1.0 - signal, 4.0) - 2.0 * Math.pow(1.0 - signal, 2.0) + 1.0; // effects: weaker decay, longer spreading
+		// sigmoid function
+		//return 1.0 / (1.0 * Math.exp(-15 * (signal - 0.5))); // effects: clear spreading for weights > 0.5
+		//return 1.0 / (1.0 + Math.exp(-15 * (signal - 0.5)));
+	}
+
 	/**
 	 * Spreads activations over associations, adds inputs to destination units.
 	 */
@@ -634,73 +1188,81 @@ public class Network {
 		synchronized (units) {
 			synchronized (associations) {
 
-				// transfer activation to associations (signal)
-
-				// loop over units
-				for (Unit unit : units) {
-
-					// store activation
-					double activation = unit.getActivation();
+				NetworkCore core = getCore();
+				if (core != null) {
+					core.spreadActivationsStandard(allowOverspreading, isSpreadingParallel());
+					return;
+				}
 
-					// sum up weights of outgoing associations
-					double weightSum = 0;
-					for (Association association : unit.getAssociationsOut()) {
-						weightSum += Math.abs(association.getWeight());
+				// transfer activation to associations (signal)
+				if (isSpreadingParallel()) {
+					computeSignalsParallel(SpreadingTask.SIGNALS_STANDARD);
+				} else {
+
+					// loop over units
+					Iterator<Unit> iterator = getUnitsStepped().iterator();
+					while (iterator.hasNext()) {
+						Unit unit = iterator.next();
+						if (computeSignalsStandard(unit)) {
+							removeUnitInactive(iterator, unit);
+						}
 					}
 
-					// activation needs to be spread
-					if (weightSum > 0) {
-
-						// unit has enough activation to spread over all associations
-						if (weightSum <= Unit.ACTIVATION_MAX) {
-							// do not divide by sum
-							weightSum = 1;
-						}
+				}
 
-						// allow spreading of more activation than unit actually has
-						if (allowOverspreading) {
-							// do not divide by sum
-							weightSum = 1;
-						}
+				// transfer signals
+				transferSignals();
 
-						// distribute whole activation of unit according to weights
-						for (Association association : unit.getAssociationsOut()) {
-							double signal = Math.abs(association.getWeight()) / weightSum * activation;
+			}
+		}
+	}
 
-							// sigmoidal spreading
-							signal = Math.pow(1.0 - signal, 4.0) - 2.0 * Math.pow(1.0 - signal, 2.0) + 1.0; // effects: weaker decay, longer spreading
-							// sigmoid function
-							//signal = 1.0 / (1.0 * Math.exp(-15 * (signal - 0.5))); // effects: clear spreading for weights > 0.5
-							//signal = 1.0 / (1.0 + Math.exp(-15 * (signal - 0.5)));
+	/**
+	 * Computes the signals of the outgoing associations of a unit, ignoring
+	 * the activation of the destination units. Returns true if the unit has
+	 * become inactive (sparse stepping).
+	 */
+	private boolean computeSignalsStandard(Unit unit) {
 
-							// set signal
-							association.setSignal(signal);
-						}
+		// store activation
+		double activation = unit.getActivation();
 
-					}
+		// sum up weights of outgoing associations
+		double weightSum = 0;
+		for (Association association : unit.getAssociationsOut()) {
+			weightSum += Math.abs(association.getWeight());
+		}
 
-				}
+		// activation needs to be spread
+		double signalMax = 0;
+		if (weightSum > 0) {
 
-				// transfer signals
+			// unit has enough activation to spread over all associations
+			if (weightSum <= Unit.ACTIVATION_MAX) {
+				// do not divide by sum
+				weightSum = 1;
+			}
 
-				// loop over associations
-				for (Association association : associations) {
-					double signal = association.getSignal();
-					//association.setSignal(0);	// do not reset if required for display
+			// allow spreading of more activation than unit actually has
+			if (allowOverspreading) {
+				// do not divide by sum
+				weightSum = 1;
+			}
 
-					// remove activation from source unit
-					association.getSrc().removeActivation(signal);
+			// distribute whole activation of unit according to weights
+			for (Association association : unit.getAssociationsOut()) {
+				double signal = Math.abs(association.getWeight()) / weightSum * activation;
 
-					// add activation to destination unit
-					if (association.getWeight() < 0) {
-						association.getDst().addActivation(signal * -1.0);
-					} else {
-						association.getDst().addActivation(signal);
-					}
-				}
 
+				// set signal
+				association.setSignal(shapeSignal(signal));
+				signalMax = Math.max(signalMax, association.getSignal());
 			}
+
 		}
+
+		// quiescent unit without signals has become inactive (sparse stepping)
+		return sparseStepping && isQuiescent(unit) && !(weightSum > 0 ? signalMax > activityThreshold : hasSignal(unit));
 	}
 
 	/**
@@ -711,83 +1273,260 @@ public class Network {
 		synchronized (units) {
 			synchronized (associations) {
 
+				NetworkCore core = getCore();
+				if (core != null) {
+					core.spreadActivationsAttraction(allowOverspreading, isSpreadingParallel());
+					return;
+				}
+
 				// transfer activation to associations (signal)
+				if (isSpreadingParallel()) {
+					computeSignalsParallel(SpreadingTask.SIGNALS_ATTRACTION);
+				} else {
+
+					// loop over units
+					Iterator<Unit> iterator = getUnitsStepped().iterator();
+					while (iterator.hasNext()) {
+						Unit unit = iterator.next();
+						if (computeSignalsAttraction(unit)) {
+							removeUnitInactive(iterator, unit);
+						}
+					}
 
-				// loop over units
-				for (Unit unit : units) {
+				}
 
-					// store activation
-					double activation = unit.getActivation();
+				// transfer signals
+				transferSignals();
 
-					// sum up signal attraction for outgoing associations
-					double attractionSum = 0;
-					for (Association association : unit.getAssociationsOut()) {
-						double weight = association.getWeight();
-						double attraction = Math.abs(weight) * (Unit.ACTIVATION_MAX - association.getDst().getActivation());
-						if (weight < 0) {
-							attraction = Math.abs(weight) * association.getDst().getActivation();
-						}
-						attractionSum += attraction;
-					}
+			}
+		}
+	}
 
-					// activation needs to be spread
-					if (attractionSum > 0) {
+	/**
+	 * Computes the signals of the outgoing associations of a unit, considering
+	 * the activation of the destination units. Returns true if the unit has
+	 * become inactive (sparse stepping).
+	 */
+	private boolean computeSignalsAttraction(Unit unit) {
+
+		// store activation
+		double activation = unit.getActivation();
+
+		// sum up signal attraction for outgoing associations
+		double attractionSum = 0;
+		for (Association association : unit.getAssociationsOut()) {
+			double weight = association.getWeight();
+			double attraction = Math.abs(weight) * (Unit.ACTIVATION_MAX - association.getDst().getActivation());
+			if (weight < 0) {
+				attraction = Math.abs(weight) * association.getDst().getActivation();
+			}
+			attractionSum += attraction;
+		}
 
-						// unit has enough activation to spread over all associations
-						if (attractionSum <= Unit.ACTIVATION_MAX) {
-							// do not divide by sum
-							attractionSum = 1;
-						}
+		// activation needs to be spread
+		double signalMax = 0;
+		if (attractionSum > 0) {
 
-						// allow spreading of more activation than unit actually has
-						if (allowOverspreading) {
-							// do not divide by sum
-							attractionSum = 1;
-						}
+			// unit has enough activation to spread over all associations
+			if (attractionSum <= Unit.ACTIVATION_MAX) {
+				// do not divide by sum
+				attractionSum = 1;
+			}
 
-						// distribute whole activation of unit according to weights
-						for (Association association : unit.getAssociationsOut()) {
-							double weight = association.getWeight();
-							double attraction = Math.abs(weight) * (Unit.ACTIVATION_MAX - association.getDst().getActivation());
-							if (weight < 0) {
-								attraction = Math.abs(weight) * association.getDst().getActivation();
-							}
-							double signal = attraction / attractionSum * activation;
+			// allow spreading of more activation than unit actually has
+			if (allowOverspreading) {
+				// do not divide by sum
+				attractionSum = 1;
+			}
 
-							// sigmoidal spreading
-							signal = Math.pow(1.0 - signal, 4.0) - 2.0 * Math.pow(1.0 - signal, 2.0) + 1.0; // effects: weaker decay, longer spreading
-							// sigmoid function
-							//signal = 1.0 / (1.0 * Math.exp(-15 * (signal - 0.5))); // effects: clear spreading for weights > 0.5
-							//signal = 1.0 / (1.0 + Math.exp(-15 * (signal - 0.5)));
+			// distribute whole activation of unit according to weights
+			for (Association association : unit.getAssociationsOut()) {
+				double weight = association.getWeight();
+				double attraction = Math.abs(weight) * (Unit.ACTIVATION_MAX - association.getDst().getActivation());
+				if (weight < 0) {
+					attraction = Math.abs(weight) * association.getDst().getActivation();
+				}
+				double signal = attraction / attractionSum * activation;
 
-							// set signal
-							association.setSignal(signal);
-						}
 
-					}
+				// set signal
+				association.setSignal(shapeSignal(signal));
+				signalMax = Math.max(signalMax, association.getSignal());
+			}
+
+		}
+
+		// quiescent unit without signals has become inactive (sparse stepping)
+		return sparseStepping && isQuiescent(unit) && !(attractionSum > 0 ? signalMax > activityThreshold : hasSignal(unit));
+	}
 
+	/**
+	 * Computes the signals of the outgoing associations of the stepped units
+	 * in parallel, then removes units that have become inactive from the
+	 * active units in the order of the active units (sparse stepping).
+	 */
+	private void computeSignalsParallel(int step) {
+		Collection<Unit> unitsStepped = getUnitsStepped();
+		Unit[] unitsSpreading = unitsStepped.toArray(new Unit[unitsStepped.size()]);
+		boolean[] inactive = new boolean[unitsSpreading.length];
+		invokeSpreading(step, unitsSpreading, inactive);
+		if (sparseStepping) {
+			for (int i = 0; i < unitsSpreading.length; i++) {
+				if (inactive[i]) {
+					unitsActive.remove(unitsSpreading[i]);
+					unitsChanged.add(unitsSpreading[i]);
 				}
+			}
+		}
+	}
 
-				// transfer signals
+	/**
+	 * Removes the signals from the source units and adds them to the
+	 * destination units, in the order of the list of associations. Signals
+	 * spread over all associations are gathered by each unit in parallel.
+	 */
+	private void transferSignals() {
+		Collection<Association> associationsSpreading = getAssociationsSpreading();
+
+		// gather signals in parallel (destination units that have become
+		// active are touched in the order of the list of units)
+		if (associationsSpreading == associations && isSpreadingParallel()) {
+			Unit[] unitsSpreading = units.toArray(new Unit[units.size()]);
+			boolean[] activated = new boolean[unitsSpreading.length];
+			invokeSpreading(SpreadingTask.GATHER, unitsSpreading, activated);
+			for (int i = 0; i < unitsSpreading.length; i++) {
+				if (activated[i]) {
+					touchUnit(unitsSpreading[i]);
+				}
+			}
+			return;
+		}
 
-				// loop over associations
-				for (Association association : associations) {
-					double signal = association.getSignal();
-					//association.setSignal(0);	// do not reset if required for display
+		// loop over associations
+		for (Association association : associationsSpreading) {
+			double signal = association.getSignal();
+			//association.setSignal(0);	// do not reset if required for display
 
-					// remove activation from source unit
-					association.getSrc().removeActivation(signal);
+			// remove activation from source unit
+			association.getSrc().removeActivation(signal);
 
-					// add activation to destination unit
-					if (association.getWeight() < 0) {
-						association.getDst().addActivation(signal * -1.0);
-					} else {
-						association.getDst().addActivation(signal);
-					}
+			// add activation to destination unit
+			boolean quiescent = sparseStepping && isQuiescent(association.getDst());
+			if (association.getWeight() < 0) {
+				association.getDst().addActivation(signal * -1.0);
+			} else {
+				association.getDst().addActivation(signal);
+			}
+
+			// destination unit has become active (sparse stepping)
+			if (quiescent && !isQuiescent(association.getDst())) {
+				touchUnit(association.getDst());
+			}
+		}
+	}
+
+	/**
+	 * Removes the signals of the outgoing associations from a unit and adds
+	 * the signals of the incoming associations, merged by id, i.e. in the
+	 * order of the list of associations like transferSignals(). Returns true
+	 * if the unit has become active (sparse stepping).
+	 */
+	private boolean gatherSignals(Unit unit) {
+		boolean activated = false;
+		boolean loaded = unit.getLoad() > activityThreshold;
+		double activation = unit.getActivation();
+		Iterator<Association> iteratorOut = unit.getAssociationsOut().iterator();
+		Iterator<Association> iteratorIn = unit.getAssociationsIn().iterator();
+		Association associationOut = iteratorOut.hasNext() ? iteratorOut.next() : null;
+		Association associationIn = iteratorIn.hasNext() ? iteratorIn.next() : null;
+		while (associationOut != null || associationIn != null) {
+			if (associationIn == null || (associationOut != null && associationOut.getId() <= associationIn.getId())) {
+				activation = Unit.limitActivation(activation - associationOut.getSignal());
+				associationOut = iteratorOut.hasNext() ? iteratorOut.next() : null;
+			} else {
+				boolean quiescent = sparseStepping && !loaded && activation <= activityThreshold;
+				if (associationIn.getWeight() < 0) {
+					activation = Unit.limitActivation(activation + associationIn.getSignal() * -1.0);
+				} else {
+					activation = Unit.limitActivation(activation + associationIn.getSignal());
 				}
+				if (quiescent && activation > activityThreshold) {
+					activated = true;
+				}
+				associationIn = iteratorIn.hasNext() ? iteratorIn.next() : null;
+			}
+		}
+		unit.setActivation(activation);
+		return activated;
+	}
+
+	/**
+	 * Runs a step of parallel spreading over the given units on the shared
+	 * fork/join pool, storing the result of each unit in the flags.
+	 */
+	private void invokeSpreading(int step, Unit[] unitsSpreading, boolean[] flags) {
+		ForkJoinPool pool = NetworkCore.getPool();
+		int unitsPerTask = NetworkCore.getUnitsPerTask(pool, unitsSpreading.length);
+		pool.invoke(new SpreadingTask(step, unitsSpreading, flags, 0, unitsSpreading.length, unitsPerTask));
+	}
+
+	/**
+	 * Task for one step of parallel spreading over a range of units, split
+	 * into halves until the range is small enough.
+	 */
+	private class SpreadingTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
 
+		static final int SIGNALS_STANDARD = 0;
+
+		static final int SIGNALS_ATTRACTION = 1;
+
+		static final int GATHER = 2;
+
+		private final int step;
+
+		private final Unit[] unitsSpreading;
+
+		private final boolean[] flags;
+
+		private final int from;
+
+		private final int to;
+
+		private final int unitsPerTask;
+
+		SpreadingTask(int step, Unit[] unitsSpreading, boolean[] flags, int from, int to, int unitsPerTask) {
+			this.step = step;
+			this.unitsSpreading = unitsSpreading;
+			this.flags = flags;
+			this.from = from;
+			this.to = to;
+			this.unitsPerTask = unitsPerTask;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > unitsPerTask) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SpreadingTask(step, unitsSpreading, flags, from, middle, unitsPerTask), new SpreadingTask(step, unitsSpreading, flags, middle, to, unitsPerTask));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				switch (step) {
+				case SIGNALS_STANDARD:
+					flags[i] = computeSignalsStandard(unitsSpreading[i]);
+					break;
+				case SIGNALS_ATTRACTION:
+					flags[i] = computeSignalsAttraction(unitsSpreading[i]);
+					break;
+				case GATHER:
+					flags[i] = gatherSignals(unitsSpreading[i]);
+					break;
+				}
 			}
 		}
+
 	}
 
 	/**
@@ -797,9 +1536,23 @@ public class Network {
 	 * Resembles learning (LTP, LTD).
 	 */
 	public void updateWeights() {
-		synchronized (associations) {
-			for (Association association : associations) {
-				association.updateWeight();
+		synchronized (units) {
+			synchronized (associations) {
+				NetworkCore core = getCore();
+				if (core != null) {
+					core.updateWeights();
+					return;
+				}
+				for (Association association : getAssociationsLearning()) {
+					double weight = association.getWeight();
+					association.updateWeight();
+
+					// connected units may have become removable (sparse stepping)
+					if (sparseStepping && Math.abs(weight) > REMOVAL_THRESHOLD_WEIGHT && Math.abs(association.getWeight()) <= REMOVAL_THRESHOLD_WEIGHT) {
+						unitsChanged.add(association.getSrc());
+						unitsChanged.add(association.getDst());
+					}
+				}
 			}
 		}
 	}
@@ -812,11 +1565,20 @@ public class Network {
 		synchronized (units) {
 			synchronized (associations) {
 
+				// check units in arrays (array-based core)
+				NetworkCore core = getCore();
+				if (core != null) {
+					for (Unit unitDelete : core.getUnitsRemovable()) {
+						deleteUnit(unitDelete);
+					}
+					return;
+				}
+
 				// initialise
 				LinkedList<Unit> unitsDelete = new LinkedList<Unit>();
 
 				// loop over units
-				for (Unit unit : units) {
+				for (Unit unit : getUnitsCleanUp()) {
 
 					// initialise
 					boolean removal = true;
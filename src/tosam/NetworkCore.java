@@ -0,0 +1,777 @@
+package tosam;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class for an array-based core of the network.
+ * <p>
+ * Input loads and activation levels of the units are stored in arrays, and
+ * learning rates, weights and signals of the associations in columns, in the
+ * order of the lists of units and associations. The processing steps are
+ * loops over these arrays and give the same results as the processing steps
+ * over the units and associations.
+ * <p>
+ * Units and associations are attached to the core, i.e. they store their
+ * values in the arrays and remain a view of the network. Added units and
+ * associations are appended to the arrays before the next processing step.
+ * Removed units and associations leave empty rows, which are skipped, and the
+ * arrays are compacted once more than half of their rows are empty. The core
+ * only needs to be rebuilt after the lists of units and associations have been
+ * changed directly.
+ * <p>
+ * Activations can be spread in parallel on a fork/join pool: signals are
+ * computed per source unit, and each unit then gathers the signals of its
+ * outgoing and incoming associations in the order of the list of
+ * associations. The results are the same as for sequential spreading. The
+ * associations of each unit are indexed for this in compressed sparse row
+ * form, once by source unit (outgoing associations) and once by destination
+ * unit (incoming associations), and the index is rebuilt after units or
+ * associations have been added or removed.
+ *
+ * @author Matthias Keysermann
+ *
+ */
+class NetworkCore {
+
+	private static final int CAPACITY_INITIAL = 64;
+
+	private static final int UNITS_PER_TASK_MIN = 64;
+
+	private static final int TASKS_PER_THREAD = 4;
+
+	private static ForkJoinPool pool; // shared by all networks, created on first use
+
+	private Unit[] units;
+
+	private int numUnits;
+
+	double[] loads;
+
+	double[] activations;
+
+	private Association[] associations;
+
+	private int numAssociations;
+
+	double[] learningRates;
+
+	double[] weights;
+
+	double[] signals;
+
+	private int numUnitsRemoved; // empty rows
+
+	private int numAssociationsRemoved; // empty rows
+
+	private ArrayList<Unit> unitsAdded; // units to be appended
+
+	private ArrayList<Association> associationsAdded; // associations to be appended
+
+	private double[] sums; // sum of weights or signal attraction of outgoing associations of unit
+
+	private int[] srcs; // source unit index of association
+
+	private int[] dsts; // destination unit index of association
+
+	private int[] outStart; // outgoing associations of unit u are outAssociations[outStart[u]] to outAssociations[outStart[u + 1] - 1]
+
+	private int[] outAssociations;
+
+	private int[] inStart; // incoming associations of unit u are inAssociations[inStart[u]] to inAssociations[inStart[u + 1] - 1]
+
+	private int[] inAssociations;
+
+	private boolean valid; // arrays match units and associations of the network
+
+	private boolean indexValid; // outgoing and incoming associations match arrays
+
+	NetworkCore() {
+		units = new Unit[0];
+		associations = new Association[0];
+		unitsAdded = new ArrayList<Unit>();
+		associationsAdded = new ArrayList<Association>();
+		valid = false;
+	}
+
+	boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Marks the core to be rebuilt, e.g. after units have been added to the
+	 * list of units directly.
+	 */
+	void invalidate() {
+		valid = false;
+		unitsAdded.clear();
+		associationsAdded.clear();
+	}
+
+	/**
+	 * Adds a unit to be appended to the arrays (in the order of the list of
+	 * units).
+	 */
+	void add(Unit unit) {
+		if (valid) {
+			unitsAdded.add(unit);
+		}
+	}
+
+	/**
+	 * Adds an association to be appended to the arrays (in the order of the
+	 * list of associations).
+	 */
+	void add(Association association) {
+		if (valid) {
+			associationsAdded.add(association);
+		}
+	}
+
+	/**
+	 * Stores the values in a removed unit again and empties its row.
+	 */
+	void remove(Unit unit) {
+		if (!unit.isAttached()) {
+			unitsAdded.remove(unit);
+			return;
+		}
+		int u = unit.getIndex();
+		unit.detach();
+		if (valid) {
+			units[u] = null;
+			loads[u] = 0;
+			activations[u] = 0;
+			numUnitsRemoved++;
+			indexValid = false;
+		}
+	}
+
+	/**
+	 * Stores the values in a removed association again and empties its row.
+	 */
+	void remove(Association association) {
+		if (!association.isAttached()) {
+			associationsAdded.remove(association);
+			return;
+		}
+		int a = association.getIndex();
+		association.detach();
+		if (valid) {
+			associations[a] = null;
+			learningRates[a] = 0;
+			weights[a] = 0;
+			signals[a] = 0;
+			numAssociationsRemoved++;
+			indexValid = false;
+		}
+	}
+
+	/**
+	 * Compacts the arrays if more than half of their rows are empty and
+	 * appends the added units and associations.
+	 */
+	void update() {
+		if (numUnitsRemoved * 2 > numUnits || numAssociationsRemoved * 2 > numAssociations) {
+			compact();
+		}
+		for (Unit unit : unitsAdded) {
+			if (numUnits == units.length) {
+				int capacity = capacity(numUnits + 1);
+				units = Arrays.copyOf(units, capacity);
+				loads = Arrays.copyOf(loads, capacity);
+				activations = Arrays.copyOf(activations, capacity);
+				sums = Arrays.copyOf(sums, capacity);
+			}
+			units[numUnits] = unit;
+			loads[numUnits] = unit.getLoad();
+			activations[numUnits] = unit.getActivation();
+			unit.attach(this, numUnits);
+			numUnits++;
+			indexValid = false;
+		}
+		unitsAdded.clear();
+		for (Association association : associationsAdded) {
+			if (numAssociations == associations.length) {
+				int capacity = capacity(numAssociations + 1);
+				associations = Arrays.copyOf(associations, capacity);
+				learningRates = Arrays.copyOf(learningRates, capacity);
+				weights = Arrays.copyOf(weights, capacity);
+				signals = Arrays.copyOf(signals, capacity);
+				srcs = Arrays.copyOf(srcs, capacity);
+				dsts = Arrays.copyOf(dsts, capacity);
+			}
+			associations[numAssociations] = association;
+			learningRates[numAssociations] = association.getLearningRate();
+			weights[numAssociations] = association.getWeight();
+			signals[numAssociations] = association.getSignal();
+			srcs[numAssociations] = association.getSrc().getIndex();
+			dsts[numAssociations] = association.getDst().getIndex();
+			association.attach(this, numAssociations);
+			numAssociations++;
+			indexValid = false;
+		}
+		associationsAdded.clear();
+	}
+
+	/**
+	 * Moves the rows of the units and associations together, keeping their
+	 * order.
+	 */
+	private void compact() {
+
+		// units
+		int v = 0;
+		for (int u = 0; u < numUnits; u++) {
+			if (units[u] != null) {
+				units[v] = units[u];
+				loads[v] = loads[u];
+				activations[v] = activations[u];
+				units[v].attach(this, v);
+				v++;
+			}
+		}
+		Arrays.fill(units, v, numUnits, null);
+		numUnits = v;
+		numUnitsRemoved = 0;
+
+		// associations
+		int b = 0;
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] != null) {
+				associations[b] = associations[a];
+				learningRates[b] = learningRates[a];
+				weights[b] = weights[a];
+				signals[b] = signals[a];
+				srcs[b] = associations[a].getSrc().getIndex();
+				dsts[b] = associations[a].getDst().getIndex();
+				associations[b].attach(this, b);
+				b++;
+			}
+		}
+		Arrays.fill(associations, b, numAssociations, null);
+		numAssociations = b;
+		numAssociationsRemoved = 0;
+
+		indexValid = false;
+	}
+
+	/**
+	 * Copies the values of the given units and associations into new arrays,
+	 * attaches them and indexes the associations of each unit.
+	 */
+	void rebuild(LinkedList<Unit> unitList, LinkedList<Association> associationList) {
+
+		// units
+		int capacity = capacity(unitList.size());
+		Unit[] unitsNew = new Unit[capacity];
+		double[] loadsNew = new double[capacity];
+		double[] activationsNew = new double[capacity];
+		sums = new double[capacity];
+		int u = 0;
+		for (Unit unit : unitList) {
+			unitsNew[u] = unit;
+			loadsNew[u] = unit.getLoad();
+			activationsNew[u] = unit.getActivation();
+			u++;
+		}
+
+		// associations
+		capacity = capacity(associationList.size());
+		Association[] associationsNew = new Association[capacity];
+		double[] learningRatesNew = new double[capacity];
+		double[] weightsNew = new double[capacity];
+		double[] signalsNew = new double[capacity];
+		int a = 0;
+		for (Association association : associationList) {
+			associationsNew[a] = association;
+			learningRatesNew[a] = association.getLearningRate();
+			weightsNew[a] = association.getWeight();
+			signalsNew[a] = association.getSignal();
+			a++;
+		}
+
+		// detach units and associations that have been removed
+		detach();
+
+		// attach units and associations
+		units = unitsNew;
+		numUnits = u;
+		loads = loadsNew;
+		activations = activationsNew;
+		for (u = 0; u < numUnits; u++) {
+			units[u].attach(this, u);
+		}
+		associations = associationsNew;
+		numAssociations = a;
+		learningRates = learningRatesNew;
+		weights = weightsNew;
+		signals = signalsNew;
+		srcs = new int[capacity];
+		dsts = new int[capacity];
+		for (a = 0; a < numAssociations; a++) {
+			associations[a].attach(this, a);
+			srcs[a] = associations[a].getSrc().getIndex();
+			dsts[a] = associations[a].getDst().getIndex();
+		}
+
+		numUnitsRemoved = 0;
+		numAssociationsRemoved = 0;
+		unitsAdded.clear();
+		associationsAdded.clear();
+		valid = true;
+		indexValid = false;
+	}
+
+	/**
+	 * Indexes the outgoing and incoming associations of each unit in the order
+	 * of the list of associations (counting sort by source and destination
+	 * unit).
+	 */
+	private void updateIndex() {
+		if (indexValid) {
+			return;
+		}
+		if (outStart == null || outStart.length < numUnits + 1) {
+			outStart = new int[numUnits + 1];
+			inStart = new int[numUnits + 1];
+		}
+		if (outAssociations == null || outAssociations.length < numAssociations) {
+			outAssociations = new int[numAssociations];
+			inAssociations = new int[numAssociations];
+		}
+
+		// count associations per unit
+		Arrays.fill(outStart, 0, numUnits + 1, 0);
+		Arrays.fill(inStart, 0, numUnits + 1, 0);
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] != null) {
+				outStart[srcs[a] + 1]++;
+				inStart[dsts[a] + 1]++;
+			}
+		}
+		for (int u = 0; u < numUnits; u++) {
+			outStart[u + 1] += outStart[u];
+			inStart[u + 1] += inStart[u];
+		}
+
+		// fill in associations (units temporarily count filled associations)
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] != null) {
+				outAssociations[outStart[srcs[a]]++] = a;
+				inAssociations[inStart[dsts[a]]++] = a;
+			}
+		}
+		for (int u = numUnits; u > 0; u--) {
+			outStart[u] = outStart[u - 1];
+			inStart[u] = inStart[u - 1];
+		}
+		outStart[0] = 0;
+		inStart[0] = 0;
+
+		indexValid = true;
+	}
+
+	private static int capacity(int size) {
+		int capacity = CAPACITY_INITIAL;
+		while (capacity < size) {
+			capacity *= 2;
+		}
+		return capacity;
+	}
+
+	/**
+	 * Stores the values in the units and associations again.
+	 */
+	void detach() {
+		for (int u = 0; u < numUnits; u++) {
+			if (units[u] != null) {
+				units[u].detach();
+			}
+		}
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] != null) {
+				associations[a].detach();
+			}
+		}
+		invalidate();
+	}
+
+	/**
+	 * Leaks loads of units.
+	 */
+	void leakLoads() {
+		for (int u = 0; u < numUnits; u++) {
+			double load = Unit.limitLoad(Unit.leakedLoad(loads[u]));
+			loads[u] = load;
+
+			// check for firing
+			if (load >= Unit.ACTIVATION_THRESHOLD) {
+				activations[u] = Unit.limitActivation(Unit.ACTIVATION_MAX);
+			}
+		}
+	}
+
+	/**
+	 * Decays activations of units.
+	 */
+	void decayActivations() {
+		for (int u = 0; u < numUnits; u++) {
+			activations[u] = Unit.limitActivation(Unit.decayedActivation(activations[u]));
+		}
+	}
+
+	/**
+	 * Decays weights of associations.
+	 */
+	void decayWeights() {
+		for (int a = 0; a < numAssociations; a++) {
+			weights[a] = Association.limitWeight(Association.decayedWeight(weights[a]));
+		}
+	}
+
+	/**
+	 * Spreads activations over associations, ignoring the activation of the
+	 * destination unit (see Network.spreadActivationsStandard()).
+	 */
+	void spreadActivationsStandard(boolean allowOverspreading, boolean parallel) {
+		if (parallel) {
+			spreadParallel(SpreadingTask.SIGNALS_STANDARD, allowOverspreading);
+		} else {
+			computeSignalsStandard(allowOverspreading);
+			transferSignals();
+		}
+	}
+
+	/**
+	 * Spreads activations over associations, considering the activation of the
+	 * destination unit (see Network.spreadActivationsAttraction()).
+	 */
+	void spreadActivationsAttraction(boolean allowOverspreading, boolean parallel) {
+		if (parallel) {
+			spreadParallel(SpreadingTask.SIGNALS_ATTRACTION, allowOverspreading);
+		} else {
+			computeSignalsAttraction(allowOverspreading);
+			transferSignals();
+		}
+	}
+
+	/**
+	 * Computes signals of all associations, in the order of the list of
+	 * associations (sums per source unit in the same order as over the
+	 * outgoing associations of the unit).
+	 */
+	private void computeSignalsStandard(boolean allowOverspreading) {
+
+		// sum up weights of outgoing associations
+		Arrays.fill(sums, 0, numUnits, 0.0);
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] != null) {
+				sums[srcs[a]] += Math.abs(weights[a]);
+			}
+		}
+
+		// distribute whole activation of units according to weights
+		for (int a = 0; a < numAssociations; a++) {
+			double weightSum = sums[srcs[a]];
+			if (associations[a] != null && weightSum > 0) {
+				if (weightSum <= Unit.ACTIVATION_MAX || allowOverspreading) {
+					weightSum = 1;
+				}
+				signals[a] = Network.shapeSignal(Math.abs(weights[a]) / weightSum * activations[srcs[a]]);
+			}
+		}
+	}
+
+	/**
+	 * Computes signals of all associations, considering the activation of the
+	 * destination units (see computeSignalsStandard()).
+	 */
+	private void computeSignalsAttraction(boolean allowOverspreading) {
+
+		// sum up signal attraction for outgoing associations
+		Arrays.fill(sums, 0, numUnits, 0.0);
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] != null) {
+				sums[srcs[a]] += attraction(a);
+			}
+		}
+
+		// distribute whole activation of units according to weights
+		for (int a = 0; a < numAssociations; a++) {
+			double attractionSum = sums[srcs[a]];
+			if (associations[a] != null && attractionSum > 0) {
+				if (attractionSum <= Unit.ACTIVATION_MAX || allowOverspreading) {
+					attractionSum = 1;
+				}
+				signals[a] = Network.shapeSignal(attraction(a) / attractionSum * activations[srcs[a]]);
+			}
+		}
+	}
+
+	/**
+	 * Computes signals of outgoing associations of the given units.
+	 */
+	private void computeSignalsStandard(int from, int to, boolean allowOverspreading) {
+		for (int u = from; u < to; u++) {
+			double activation = activations[u];
+			int outEnd = outStart[u + 1];
+
+			// sum up weights of outgoing associations
+			double weightSum = 0;
+			for (int k = outStart[u]; k < outEnd; k++) {
+				weightSum += Math.abs(weights[outAssociations[k]]);
+			}
+
+			// activation needs to be spread
+			if (weightSum > 0) {
+
+				// do not divide by sum
+				if (weightSum <= Unit.ACTIVATION_MAX || allowOverspreading) {
+					weightSum = 1;
+				}
+
+				// distribute whole activation of unit according to weights
+				for (int k = outStart[u]; k < outEnd; k++) {
+					int a = outAssociations[k];
+					signals[a] = Network.shapeSignal(Math.abs(weights[a]) / weightSum * activation);
+				}
+
+			}
+		}
+	}
+
+	/**
+	 * Computes signals of outgoing associations of the given units,
+	 * considering the activation of the destination units.
+	 */
+	private void computeSignalsAttraction(int from, int to, boolean allowOverspreading) {
+		for (int u = from; u < to; u++) {
+			double activation = activations[u];
+			int outEnd = outStart[u + 1];
+
+			// sum up signal attraction for outgoing associations
+			double attractionSum = 0;
+			for (int k = outStart[u]; k < outEnd; k++) {
+				attractionSum += attraction(outAssociations[k]);
+			}
+
+			// activation needs to be spread
+			if (attractionSum > 0) {
+
+				// do not divide by sum
+				if (attractionSum <= Unit.ACTIVATION_MAX || allowOverspreading) {
+					attractionSum = 1;
+				}
+
+				// distribute whole activation of unit according to weights
+				for (int k = outStart[u]; k < outEnd; k++) {
+					int a = outAssociations[k];
+					signals[a] = Network.shapeSignal(attraction(a) / attractionSum * activation);
+				}
+
+			}
+		}
+	}
+
+	private double attraction(int a) {
+		double weight = weights[a];
+		if (weight < 0) {
+			return Math.abs(weight) * activations[dsts[a]];
+		}
+		return Math.abs(weight) * (Unit.ACTIVATION_MAX - activations[dsts[a]]);
+	}
+
+	/**
+	 * Removes the signals from the source units and adds them to the
+	 * destination units, in the order of the list of associations.
+	 */
+	private void transferSignals() {
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] == null) {
+				continue;
+			}
+			double signal = signals[a];
+			activations[srcs[a]] = Unit.limitActivation(activations[srcs[a]] - signal);
+			if (weights[a] < 0) {
+				activations[dsts[a]] = Unit.limitActivation(activations[dsts[a]] + signal * -1.0);
+			} else {
+				activations[dsts[a]] = Unit.limitActivation(activations[dsts[a]] + signal);
+			}
+		}
+	}
+
+	/**
+	 * Removes the signals of outgoing associations from the given units and
+	 * adds the signals of incoming associations, for each unit in the order of
+	 * the list of associations (i.e. like transferSignals()).
+	 */
+	private void gatherSignals(int from, int to) {
+		for (int u = from; u < to; u++) {
+			double activation = activations[u];
+			int k = outStart[u];
+			int outEnd = outStart[u + 1];
+			int l = inStart[u];
+			int inEnd = inStart[u + 1];
+			while (k < outEnd || l < inEnd) {
+				if (l == inEnd || (k < outEnd && outAssociations[k] < inAssociations[l])) {
+					activation = Unit.limitActivation(activation - signals[outAssociations[k++]]);
+				} else {
+					int a = inAssociations[l++];
+					if (weights[a] < 0) {
+						activation = Unit.limitActivation(activation + signals[a] * -1.0);
+					} else {
+						activation = Unit.limitActivation(activation + signals[a]);
+					}
+				}
+			}
+			activations[u] = activation;
+		}
+	}
+
+	/**
+	 * Returns the shared fork/join pool for parallel spreading (also used by
+	 * Network for spreading without the core).
+	 */
+	static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	/**
+	 * Returns the parallelism of the shared fork/join pool (the number of
+	 * available processors unless set).
+	 */
+	static int getPoolParallelism() {
+		return getPool().getParallelism();
+	}
+
+	/**
+	 * Replaces the shared fork/join pool by one with the given parallelism.
+	 * The previous pool is not shut down, as spreading steps running in other
+	 * threads may still submit tasks to it; its daemon worker threads
+	 * terminate once they have been idle for a while.
+	 */
+	static synchronized void setPoolParallelism(int parallelism) {
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Returns the number of units per task for parallel spreading over the
+	 * given number of units on the given pool.
+	 */
+	static int getUnitsPerTask(ForkJoinPool pool, int numUnits) {
+		return Math.max(UNITS_PER_TASK_MIN, numUnits / (pool.getParallelism() * TASKS_PER_THREAD));
+	}
+
+	private void spreadParallel(int stepSignals, boolean allowOverspreading) {
+		updateIndex();
+		ForkJoinPool pool = getPool();
+		int unitsPerTask = getUnitsPerTask(pool, numUnits);
+		pool.invoke(new SpreadingTask(stepSignals, allowOverspreading, 0, numUnits, unitsPerTask));
+		pool.invoke(new SpreadingTask(SpreadingTask.GATHER, allowOverspreading, 0, numUnits, unitsPerTask));
+	}
+
+	/**
+	 * Task for one step of parallel spreading over a range of units, split
+	 * into halves until the range is small enough.
+	 */
+	private class SpreadingTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		static final int SIGNALS_STANDARD = 0;
+
+		static final int SIGNALS_ATTRACTION = 1;
+
+		static final int GATHER = 2;
+
+		private final int step;
+
+		private final boolean allowOverspreading;
+
+		private final int from;
+
+		private final int to;
+
+		private final int unitsPerTask;
+
+		SpreadingTask(int step, boolean allowOverspreading, int from, int to, int unitsPerTask) {
+			this.step = step;
+			this.allowOverspreading = allowOverspreading;
+			this.from = from;
+			this.to = to;
+			this.unitsPerTask = unitsPerTask;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > unitsPerTask) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SpreadingTask(step, allowOverspreading, from, middle, unitsPerTask), new SpreadingTask(step, allowOverspreading, middle, to, unitsPerTask));
+				return;
+			}
+			switch (step) {
+			case SIGNALS_STANDARD:
+				computeSignalsStandard(from, to, allowOverspreading);
+				break;
+			case SIGNALS_ATTRACTION:
+				computeSignalsAttraction(from, to, allowOverspreading);
+				break;
+			case GATHER:
+				gatherSignals(from, to);
+				break;
+			}
+		}
+
+	}
+
+	/**
+	 * Updates weights of associations depending on activations of connected
+	 * units.
+	 */
+	void updateWeights() {
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] == null) {
+				continue;
+			}
+			int src = srcs[a];
+			int dst = dsts[a];
+			weights[a] = Association.limitWeight(Association.updatedWeight(weights[a], learningRates[a], loads[src], loads[dst], activations[src], activations[dst]));
+		}
+	}
+
+	/**
+	 * Returns the units with low load, low activation and low weights of
+	 * connected associations (see Network.cleanUp()).
+	 */
+	ArrayList<Unit> getUnitsRemovable() {
+
+		// units connected by associations with high weights
+		boolean[] strong = new boolean[numUnits];
+		for (int a = 0; a < numAssociations; a++) {
+			if (associations[a] != null && Math.abs(weights[a]) > Network.REMOVAL_THRESHOLD_WEIGHT) {
+				strong[srcs[a]] = true;
+				strong[dsts[a]] = true;
+			}
+		}
+
+		ArrayList<Unit> unitsRemovable = new ArrayList<Unit>();
+		for (int u = 0; u < numUnits; u++) {
+			if (units[u] == null || strong[u]) {
+				continue;
+			}
+			if (loads[u] > Network.REMOVAL_THRESHOLD_LOAD || activations[u] > Network.REMOVAL_THRESHOLD_ACTIVATION) {
+				continue;
+			}
+			unitsRemovable.add(units[u]);
+		}
+		return unitsRemovable;
+	}
+
+}
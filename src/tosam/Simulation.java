@@ -2,14 +2,25 @@ package tosam;
 
 import java.io.File;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Class for a running TOSAM simulation.
  * <p>
  * Runs in short repetitive cycles, each executing the required processing
- * steps. Provides UDP input and output handlers for receiving and sending data.
- * Handles external text commands sent as data. Allows to write to XML and read
- * from XML.
+ * steps for all units of the network, optionally with its array-based core.
+ * Sparse stepping, which only processes the active units and approximates the
+ * results, can be selected instead. Activations are spread in parallel once
+ * the network has reached its parallel threshold, if more than one processor
+ * is available. Provides UDP input and output handlers for receiving and
+ * sending data. Handles external text commands sent as data. Allows to write
+ * to XML and read from XML. Files are written and read in the background: a
+ * copy of the network is written, and a network that has been read replaces
+ * the network between two cycles.
  * 
  * @author Matthias Keysermann
  *
@@ -36,6 +47,10 @@ public class Simulation implements Runnable {
 
 	protected File fileLoad;
 
+	private ExecutorService fileExecutor; // writes and reads files in the background
+
+	private Future<Network> networkLoaded; // network being read from a file (null if none)
+
 	private boolean printNetworkInfo;
 
 	private boolean printDebugInfo;
@@ -71,6 +86,32 @@ public class Simulation implements Runnable {
 		running = true;
 	}
 
+	public boolean isArrayCore() {
+		return network.isArrayCore();
+	}
+
+	/**
+	 * Enables or disables the array-based core of the network. The core is
+	 * only used without sparse stepping.
+	 */
+	public void setArrayCore(boolean arrayCore) {
+		network.setArrayCore(arrayCore);
+	}
+
+	public boolean isSparseStepping() {
+		return network.isSparseStepping();
+	}
+
+	/**
+	 * Enables or disables sparse stepping of the network, e.g. for large
+	 * networks in which few units are active. The results differ from those
+	 * of stepping all units, by up to several times the activity threshold of
+	 * the network.
+	 */
+	public void setSparseStepping(boolean sparseStepping) {
+		network.setSparseStepping(sparseStepping);
+	}
+
 	public void clearNetwork() {
 		network.clear();
 	}
@@ -111,6 +152,15 @@ public class Simulation implements Runnable {
 		// unset saving and loading file
 		fileSave = null;
 		fileLoad = null;
+		fileExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "File executor");
+				thread.setDaemon(true); // does not keep the application running
+				return thread;
+			}
+		});
+		networkLoaded = null;
 
 	}
 
@@ -201,20 +251,31 @@ public class Simulation implements Runnable {
 				// update user interface
 				updateUI();
 
-				// save network
+				// save network (copy is written in the background)
 				if (fileSave != null) {
-					XMLWriter xmlWriter = new XMLWriter();
-					xmlWriter.writeToFile(network, fileSave.getAbsolutePath());
+					saveNetwork(network.copy(), fileSave);
 					fileSave = null;
 				}
 
-				// load network
+				// load network (read in the background)
 				if (fileLoad != null) {
-					XMLReader xmlReader = new XMLReader();
-					xmlReader.readFromFile(fileLoad.getAbsolutePath(), network);
+					networkLoaded = loadNetwork(fileLoad);
 					fileLoad = null;
 				}
 
+				// replace network once it has been read
+				if (networkLoaded != null && networkLoaded.isDone()) {
+					try {
+						Network networkRead = networkLoaded.get();
+						if (networkRead != null) {
+							network.replaceWith(networkRead);
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					networkLoaded = null;
+				}
+
 			}
 
 			else {
@@ -231,6 +292,30 @@ public class Simulation implements Runnable {
 
 	}
 
+	private void saveNetwork(final Network networkCopy, final File file) {
+		fileExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				XMLWriter xmlWriter = new XMLWriter();
+				xmlWriter.writeToFile(networkCopy, file.getAbsolutePath());
+			}
+		});
+	}
+
+	private Future<Network> loadNetwork(final File file) {
+		return fileExecutor.submit(new Callable<Network>() {
+			@Override
+			public Network call() {
+				Network networkRead = new Network();
+				XMLReader xmlReader = new XMLReader();
+				if (!xmlReader.readFromFile(file.getAbsolutePath(), networkRead)) {
+					return null;
+				}
+				return networkRead;
+			}
+		});
+	}
+
 	protected void handleCommand(String commandString) {
 
 		// split command string
@@ -10,6 +10,9 @@ import java.util.LinkedList;
  * associations for faster access.
  * <p>
  * The input load can leak and the activation level can decay.
+ * <p>
+ * While the unit is attached to a network core, the input load and the
+ * activation level are stored in the arrays of the core.
  * 
  * @author Matthias Keysermann
  *
@@ -38,6 +41,10 @@ public class Unit {
 
 	private LinkedList<Association> associationsOut;
 
+	private NetworkCore core; // stores load and activation if not null
+
+	private int index; // index in core
+
 	public Unit(long id, Object data) {
 		this.id = id;
 		this.data = data;
@@ -63,49 +70,73 @@ public class Unit {
 	}
 
 	public double getLoad() {
+		if (core != null) {
+			return core.loads[index];
+		}
 		return load;
 	}
 
 	public void setLoad(double load) {
 
 		// check limits
-		if (load < LOAD_MIN) {
-			this.load = LOAD_MIN;
-		} else if (load > LOAD_MAX) {
-			this.load = LOAD_MAX;
+		load = limitLoad(load);
+		if (core != null) {
+			core.loads[index] = load;
 		} else {
 			this.load = load;
 		}
 
 		// check for firing
-		if (this.load >= ACTIVATION_THRESHOLD) {
+		if (load >= ACTIVATION_THRESHOLD) {
 			setActivation(ACTIVATION_MAX);
 		}
 
 		/*
 		// build up activation
-		addActivation(this.load * 0.1);
+		addActivation(load * 0.1);
 		*/
 
 	}
 
 	public double getActivation() {
+		if (core != null) {
+			return core.activations[index];
+		}
 		return activation;
 	}
 
 	public void setActivation(double activation) {
 
 		// check limits
-		if (activation < ACTIVATION_MIN) {
-			this.activation = ACTIVATION_MIN;
-		} else if (activation > ACTIVATION_MAX) {
-			this.activation = ACTIVATION_MAX;
+		activation = limitActivation(activation);
+		if (core != null) {
+			core.activations[index] = activation;
 		} else {
 			this.activation = activation;
 		}
 
 	}
 
+	static double limitLoad(double load) {
+		if (load < LOAD_MIN) {
+			return LOAD_MIN;
+		} else if (load > LOAD_MAX) {
+			return LOAD_MAX;
+		} else {
+			return load;
+		}
+	}
+
+	static double limitActivation(double activation) {
+		if (activation < ACTIVATION_MIN) {
+			return ACTIVATION_MIN;
+		} else if (activation > ACTIVATION_MAX) {
+			return ACTIVATION_MAX;
+		} else {
+			return activation;
+		}
+	}
+
 	public LinkedList<Association> getAssociationsIn() {
 		return associationsIn;
 	}
@@ -123,24 +154,38 @@ public class Unit {
 	}
 
 	public void leakLoad() {
+		setLoad(leakedLoad(getLoad()));
+	}
+
+	/**
+	 * Returns the input load after leakage (without checking limits).
+	 */
+	static double leakedLoad(double load) {
 
 		// exponential leakage
 		double deltaLoad = load * -0.2; //-0.2
 
 		// update load
-		setLoad(load + deltaLoad);
+		return load + deltaLoad;
 
 	}
 
 	public void addLoad(double load) {
-		setLoad(this.load + load);
+		setLoad(getLoad() + load);
 	}
 
 	public void removeLoad(double load) {
-		setLoad(this.load - load);
+		setLoad(getLoad() - load);
 	}
 
 	public void decayActivation() {
+		setActivation(decayedActivation(getActivation()));
+	}
+
+	/**
+	 * Returns the activation level after decay (without checking limits).
+	 */
+	static double decayedActivation(double activation) {
 
 		// exponential decay
 		double deltaActivation = activation * -0.1; //-0.01
@@ -158,24 +203,52 @@ public class Unit {
 		//weakeningFactor = Math.pow(weakeningFactor, 1); //1
 
 		// update activation
-		setActivation(activation + deltaActivation * weakeningFactor);
+		return activation + deltaActivation * weakeningFactor;
 
 	}
 
 	public void addActivation(double activation) {
-		setActivation(this.activation + activation);
+		setActivation(getActivation() + activation);
 	}
 
 	public void removeActivation(double activation) {
-		setActivation(this.activation - activation);
+		setActivation(getActivation() - activation);
+	}
+
+	/**
+	 * Uses load and activation stored in the core at the given index (which
+	 * need to have been copied to the core before).
+	 */
+	void attach(NetworkCore core, int index) {
+		this.core = core;
+		this.index = index;
+	}
+
+	/**
+	 * Stores load and activation in this unit again.
+	 */
+	void detach() {
+		if (core != null) {
+			load = core.loads[index];
+			activation = core.activations[index];
+			core = null;
+		}
+	}
+
+	boolean isAttached() {
+		return core != null;
+	}
+
+	int getIndex() {
+		return index;
 	}
 
 	public String toString() {
 		String str = "Unit";
 		str += "  |  id=" + id;
 		str += "  |  data=" + data;
-		str += "  |  load=" + String.format("%.3f", load);
-		str += "  |  activation=" + String.format("%.3f", activation);
+		str += "  |  load=" + String.format("%.3f", getLoad());
+		str += "  |  activation=" + String.format("%.3f", getActivation());
 		return str;
 	}
 
@@ -17,7 +17,11 @@ public class XMLReader {
 
 	private static final String FILE_VERSION = "1.3";
 
-	public void readFromFile(String filename, Network network) {
+	/**
+	 * Reads the network from the given file. Returns false if the file cannot
+	 * be read.
+	 */
+	public boolean readFromFile(String filename, Network network) {
 		try {
 
 			// DEBUG
@@ -37,7 +41,7 @@ public class XMLReader {
 			String fileVersion = elemTOSAM.getAttribute("fileVersion");
 			if (!fileVersion.equals(FILE_VERSION)) {
 				System.err.println("Wrong file version!");
-				return;
+				return false;
 			}
 
 			// DEBUG
@@ -61,6 +65,9 @@ public class XMLReader {
 				network.getUnits().add(unit);
 			}
 
+			// rebuild data index
+			network.rebuild();
+
 			// DEBUG
 			System.out.println("Recreating associations...");
 
@@ -112,8 +119,11 @@ public class XMLReader {
 			// DEBUG
 			System.out.println("Loading from XML finished!");
 
+			return true;
+
 		} catch (Exception e) {
 			e.printStackTrace();
+			return false;
 		}
 	}
 
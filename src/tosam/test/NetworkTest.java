@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import tosam.Association;
 import tosam.Network;
 import tosam.Unit;
 
@@ -215,6 +216,17 @@ public class NetworkTest {
 		// check number of associations
 		assertEquals("number of associations", 2, network.getAssociations().size());
 
+		// insert third data into network
+		Object dataC = "dataC";
+		Unit unitC = network.insertData(dataC);
+		unitC.setLoad(Unit.LOAD_MAX);
+
+		// generate associations again
+		network.generateAssociations();
+
+		// check number of associations (existing associations are kept)
+		assertEquals("number of associations", 6, network.getAssociations().size());
+
 	}
 
 	@Test
@@ -236,6 +248,174 @@ public class NetworkTest {
 		// check number of associations
 		assertEquals(0, network.getAssociations().size());
 
+		// check unit lookup
+		assertNull(network.getUnit(data));
+
+	}
+
+	@Test
+	public void testCopy() {
+
+		// create network with associated units
+		Network network = new Network();
+		network.insertData("data1").addLoad(1.0);
+		network.insertData("data2").addLoad(1.0);
+		network.generateAssociations();
+		network.spreadActivations();
+		network.updateWeights();
+
+		// copy network
+		Network networkCopy = network.copy();
+		assertEquals("number of units", network.getUnits().size(), networkCopy.getUnits().size());
+		assertEquals("number of associations", network.getAssociations().size(), networkCopy.getAssociations().size());
+		Association association = network.getAssociations().getFirst();
+		Association associationCopy = networkCopy.getAssociations().getFirst();
+		assertEquals("weight", association.getWeight(), associationCopy.getWeight(), 0.0);
+		assertNotSame("source unit", association.getSrc(), associationCopy.getSrc());
+		assertTrue("outgoing association", associationCopy.getSrc().getAssociationsOut().contains(associationCopy));
+
+		// change network
+		network.insertData("data3");
+		network.decayWeights();
+		assertEquals("number of units", 2, networkCopy.getUnits().size());
+		assertTrue("weight", association.getWeight() != associationCopy.getWeight());
+
+		// replace network with copy
+		network.replaceWith(networkCopy);
+		assertEquals("number of units", 2, network.getUnits().size());
+		assertEquals("weight", associationCopy.getWeight(), network.getAssociations().getFirst().getWeight(), 0.0);
+		assertEquals("next unit id", 3, network.getNextUnitId());
+		assertSame("unit lookup", networkCopy.getUnits().getFirst(), network.getUnit("data1"));
+		assertNull("unit lookup", network.getUnit("data3"));
+
+	}
+
+	@Test
+	public void testSparseStepping() {
+
+		// create networks with full and sparse stepping
+		Network network = new Network();
+		Network networkSparse = new Network();
+		networkSparse.setSparseStepping(true);
+
+		// simulate the same inputs, followed by a quiet phase
+		simulate(new Network[] { network, networkSparse }, 500, 200, 500, 2, 30);
+
+		// check units and associations
+		assertNetworksEqual(network, networkSparse, networkSparse.getActivityThreshold());
+
+	}
+
+	@Test
+	public void testArrayCore() {
+
+		// create networks with and without array-based core
+		Network network = new Network();
+		Network networkCore = new Network();
+		networkCore.setArrayCore(true);
+
+		// simulate the same inputs, with both kinds of spreading
+		simulate(new Network[] { network, networkCore }, 500, 500, 250, 2, 30);
+
+		// delete, join and split data, and simulate again (removed rows are compacted)
+		for (Network n : new Network[] { network, networkCore }) {
+			for (int i = 0; i < 20; i++) {
+				n.deleteData("data" + i);
+			}
+			n.joinData("data20", "data21");
+			n.splitData("data22", "data30");
+			n.insertData("data31");
+			n.deleteData("data31");
+		}
+		simulate(new Network[] { network, networkCore }, 100, 100, 50, 2, 30);
+
+		// check units and associations (attached and detached)
+		assertNetworksEqual(network, networkCore, 0.0);
+		networkCore.setArrayCore(false);
+		assertNetworksEqual(network, networkCore, 0.0);
+
+	}
+
+	@Test
+	public void testParallelSpreading() {
+
+		// use several threads also on a single processor
+		int spreadingParallelism = Network.getSpreadingParallelism();
+		Network.setSpreadingParallelism(4);
+		try {
+
+			// create networks with array-based core, sequential and parallel
+			Network network = new Network();
+			network.setArrayCore(true);
+			network.setParallelThreshold(Integer.MAX_VALUE);
+			Network networkParallel = new Network();
+			networkParallel.setArrayCore(true);
+			networkParallel.setParallelThreshold(0);
+
+			// create networks with sparse stepping, sequential and parallel
+			Network networkSparse = new Network();
+			networkSparse.setSparseStepping(true);
+			networkSparse.setParallelThreshold(Integer.MAX_VALUE);
+			Network networkSparseParallel = new Network();
+			networkSparseParallel.setSparseStepping(true);
+			networkSparseParallel.setParallelThreshold(0);
+
+			// simulate the same inputs, with both kinds of spreading
+			simulate(new Network[] { network, networkParallel, networkSparse, networkSparseParallel }, 500, 500, 250, 3, 200);
+
+			// check units and associations
+			assertNetworksEqual(network, networkParallel, 0.0);
+			assertNetworksEqual(networkSparse, networkSparseParallel, 0.0);
+
+		} finally {
+			Network.setSpreadingParallelism(spreadingParallelism);
+		}
+
+	}
+
+	/**
+	 * Simulates the given networks with the same inputs: two or more data
+	 * patterns out of the given number are inserted with load every fifth
+	 * cycle up to the input cycles, and signal attraction is used up to the
+	 * attraction cycles.
+	 */
+	private static void simulate(Network[] networks, int cycles, int cyclesInput, int cyclesAttraction, int numInputs, int numData) {
+		for (int cycle = 0; cycle < cycles; cycle++) {
+			for (Network network : networks) {
+				network.setSignalAttraction(cycle < cyclesAttraction);
+				network.leakLoads();
+				network.decayActivations();
+				network.decayWeights();
+				if (cycle < cyclesInput && cycle % 5 == 0) {
+					for (int i = 0; i < numInputs; i++) {
+						network.insertData("data" + ((cycle + i) * 13 % numData)).addLoad(1.0);
+					}
+				}
+				network.generateAssociations();
+				network.spreadActivations();
+				network.updateWeights();
+				network.cleanUp();
+			}
+		}
+	}
+
+	private static void assertNetworksEqual(Network expected, Network actual, double delta) {
+		assertEquals("number of units", expected.getUnits().size(), actual.getUnits().size());
+		assertEquals("number of associations", expected.getAssociations().size(), actual.getAssociations().size());
+		for (int i = 0; i < expected.getUnits().size(); i++) {
+			Unit unit = expected.getUnits().get(i);
+			Unit unitActual = actual.getUnits().get(i);
+			assertEquals("unit id", unit.getId(), unitActual.getId());
+			assertEquals("load", unit.getLoad(), unitActual.getLoad(), delta);
+			assertEquals("activation", unit.getActivation(), unitActual.getActivation(), delta);
+		}
+		for (int i = 0; i < expected.getAssociations().size(); i++) {
+			Association association = expected.getAssociations().get(i);
+			Association associationActual = actual.getAssociations().get(i);
+			assertEquals("association id", association.getId(), associationActual.getId());
+			assertEquals("weight", association.getWeight(), associationActual.getWeight(), delta);
+			assertEquals("signal", association.getSignal(), associationActual.getSignal(), delta);
+		}
 	}
 
 }